@@ -76,6 +76,16 @@ public class AdapterDeploymentContext {
         this.configResolver = configResolver;
     }
 
+    /**
+     * Closes the deployment of a single-tenant application. Deployments resolved by a KeycloakConfigResolver are managed
+     * by the resolver.
+     */
+    public void close() {
+        if (deployment != null) {
+            deployment.close();
+        }
+    }
+
     /**
      * For single-tenant deployments, it complements KeycloakDeployment
      * by resolving a relative Auth Server's URL based on the current request
@@ -301,6 +311,16 @@ public class AdapterDeploymentContext {
             delegate.setClient(client);
         }
 
+        @Override
+        public AsyncHttpTransport getAsyncTransport() {
+            return delegate.getAsyncTransport();
+        }
+
+        @Override
+        public void setAsyncTransport(AsyncHttpTransport asyncTransport) {
+            delegate.setAsyncTransport(asyncTransport);
+        }
+
         @Override
         public String getScope() {
             return delegate.getScope();
@@ -460,6 +480,41 @@ public class AdapterDeploymentContext {
         public void setTurnOffChangeSessionIdOnLogin(boolean turnOffChangeSessionIdOnLogin) {
             delegate.setTurnOffChangeSessionIdOnLogin(turnOffChangeSessionIdOnLogin);
         }
+
+        @Override
+        public VerifiedTokenCache getTokenCache() {
+            return delegate.getTokenCache();
+        }
+
+        @Override
+        public void setTokenCache(VerifiedTokenCache tokenCache) {
+            delegate.setTokenCache(tokenCache);
+        }
+
+        @Override
+        public TokenRefresher getTokenRefresher() {
+            return delegate.getTokenRefresher();
+        }
+
+        @Override
+        public void setTokenRefresher(TokenRefresher tokenRefresher) {
+            delegate.setTokenRefresher(tokenRefresher);
+        }
+
+        @Override
+        public int getTokenMinimumTimeToLive() {
+            return delegate.getTokenMinimumTimeToLive();
+        }
+
+        @Override
+        public byte[] getStateCookieKey() {
+            return delegate.getStateCookieKey();
+        }
+
+        @Override
+        public void setTokenMinimumTimeToLive(int tokenMinimumTimeToLive) {
+            delegate.setTokenMinimumTimeToLive(tokenMinimumTimeToLive);
+        }
     }
 
     protected KeycloakUriBuilder getBaseBuilder(HttpFacade facade, String base) {
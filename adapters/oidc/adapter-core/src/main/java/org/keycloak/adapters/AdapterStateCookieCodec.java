@@ -0,0 +1,263 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.adapters;
+
+import org.keycloak.common.util.Base64Url;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compact format of the adapter state cookie. The access, ID and refresh tokens are stored as decoded header, payload
+ * and signature bytes and compressed together, so claims repeated in the tokens are stored just once. The cookie is
+ * signed with HMAC-SHA256 by a key of the deployment:
+ * <pre>
+ * v1.&lt;base64url(deflate(tokens))&gt;.&lt;base64url(hmac)&gt;
+ * </pre>
+ * A cookie with a valid HMAC was written by this deployment from tokens it had verified already, so the tokens don't
+ * need to be verified again. If the HMAC doesn't match, for example because the cookie was written by another node of
+ * a cluster, the tokens are still decoded and must be verified by the caller.
+ */
+public class AdapterStateCookieCodec {
+
+    public static final String VERSION_PREFIX = "v1.";
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final int MAX_INFLATED_SIZE = 65536;
+
+    private static final byte NO_TOKEN = 0;
+    private static final byte RAW_TOKEN = 1;
+    private static final byte JWS_TOKEN = 2;
+
+    public static class Tokens {
+
+        private final String accessToken;
+        private final String idToken;
+        private final String refreshToken;
+        private final boolean verified;
+
+        public Tokens(String accessToken, String idToken, String refreshToken, boolean verified) {
+            this.accessToken = accessToken;
+            this.idToken = idToken;
+            this.refreshToken = refreshToken;
+            this.verified = verified;
+        }
+
+        public String getAccessToken() {
+            return accessToken;
+        }
+
+        public String getIdToken() {
+            return idToken;
+        }
+
+        public String getRefreshToken() {
+            return refreshToken;
+        }
+
+        /**
+         * @return true if the HMAC of the cookie is valid
+         */
+        public boolean isVerified() {
+            return verified;
+        }
+
+    }
+
+    public static boolean isCompactFormat(String cookie) {
+        return cookie.startsWith(VERSION_PREFIX);
+    }
+
+    public static String encode(byte[] key, String accessToken, String idToken, String refreshToken) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            writeToken(out, accessToken);
+            writeToken(out, idToken);
+            writeToken(out, refreshToken);
+            out.flush();
+
+            String content = VERSION_PREFIX + Base64Url.encode(deflate(bytes.toByteArray()));
+            return content + "." + Base64Url.encode(hmac(key, content));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return decoded tokens or null if the cookie isn't valid
+     */
+    public static Tokens decode(byte[] key, String cookie) {
+        if (!isCompactFormat(cookie)) {
+            return null;
+        }
+
+        int signatureIndex = cookie.lastIndexOf('.');
+        if (signatureIndex <= VERSION_PREFIX.length()) {
+            return null;
+        }
+
+        String content = cookie.substring(0, signatureIndex);
+        try {
+            byte[] signature = Base64Url.decode(cookie.substring(signatureIndex + 1));
+            boolean verified = MessageDigest.isEqual(signature, hmac(key, content));
+
+            byte[] payload = inflate(Base64Url.decode(content.substring(VERSION_PREFIX.length())));
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+            String accessToken = readToken(in);
+            String idToken = readToken(in);
+            String refreshToken = readToken(in);
+
+            if (accessToken == null) {
+                return null;
+            }
+            return new Tokens(accessToken, idToken, refreshToken, verified);
+        } catch (IOException | DataFormatException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static void writeToken(DataOutputStream out, String token) throws IOException {
+        if (token == null || token.isEmpty()) {
+            out.writeByte(NO_TOKEN);
+            return;
+        }
+
+        String[] parts = token.split("\\.", -1);
+        if (parts.length == 3) {
+            byte[][] decoded = new byte[3][];
+            for (int i = 0; i < 3; i++) {
+                decoded[i] = Base64Url.decode(parts[i]);
+            }
+
+            // Only store decoded token if the original string can be restored exactly
+            if (Arrays.equals(toJws(decoded).getBytes(StandardCharsets.US_ASCII), token.getBytes(StandardCharsets.US_ASCII))) {
+                out.writeByte(JWS_TOKEN);
+                for (byte[] part : decoded) {
+                    writeBytes(out, part);
+                }
+                return;
+            }
+        }
+
+        out.writeByte(RAW_TOKEN);
+        writeBytes(out, token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String readToken(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case NO_TOKEN:
+                return null;
+            case RAW_TOKEN:
+                return new String(readBytes(in), StandardCharsets.UTF_8);
+            case JWS_TOKEN:
+                byte[][] decoded = new byte[3][];
+                for (int i = 0; i < 3; i++) {
+                    decoded[i] = readBytes(in);
+                }
+                return toJws(decoded);
+            default:
+                throw new IOException("Unknown token type " + type);
+        }
+    }
+
+    private static String toJws(byte[][] decoded) {
+        return Base64Url.encode(decoded[0]) + "." + Base64Url.encode(decoded[1]) + "." + Base64Url.encode(decoded[2]);
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_INFLATED_SIZE) {
+            throw new IOException("Invalid length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static byte[] deflate(byte[] bytes) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length);
+            byte[] buffer = new byte[1024];
+            while (!deflater.finished()) {
+                int count = deflater.deflate(buffer);
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] bytes) throws DataFormatException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length * 4);
+            byte[] buffer = new byte[1024];
+            while (!inflater.finished()) {
+                int count = inflater.inflate(buffer);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new DataFormatException("Truncated cookie");
+                }
+
+                out.write(buffer, 0, count);
+                if (out.size() > MAX_INFLATED_SIZE) {
+                    throw new DataFormatException("Cookie too large");
+                }
+            }
+            return out.toByteArray();
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static byte[] hmac(byte[] key, String content) {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(new SecretKeySpec(key, HMAC_ALGORITHM));
+            return mac.doFinal(content.getBytes(StandardCharsets.US_ASCII));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.adapters;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.ssl.AllowAllHostnameVerifier;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.ssl.SSLContextBuilder;
+import org.apache.http.ssl.SSLContexts;
+import org.apache.http.ssl.TrustStrategy;
+import org.keycloak.representations.adapters.config.AdapterConfig;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import java.security.SecureRandom;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates non-blocking HttpClients on top of an NIO reactor, using the same SSL, pooling and timeout settings as
+ * {@link HttpClientBuilder}. Requests don't occupy a thread while waiting for the auth server, so back-channel calls
+ * can be made without pinning a request thread of the container.
+ *
+ * Needs httpasyncclient on the classpath of the deployment.
+ */
+public class AsyncHttpClientBuilder extends HttpClientBuilder {
+
+    private static final AtomicInteger clientCount = new AtomicInteger();
+
+    protected int ioThreadCount = -1;
+
+    /**
+     * Number of I/O dispatcher threads. Defaults to the number of available processors.
+     *
+     * @param ioThreadCount
+     * @return
+     */
+    public AsyncHttpClientBuilder ioThreadCount(int ioThreadCount) {
+        this.ioThreadCount = ioThreadCount;
+        return this;
+    }
+
+    public CloseableHttpAsyncClient buildAsync() {
+        HostnameVerifier verifier = createHostnameVerifier();
+        try {
+            SSLContext theContext = sslContext;
+            if (disableTrustManager) {
+                theContext = SSLContext.getInstance("SSL");
+                theContext.init(null, new TrustManager[]{new PassthroughTrustManager()},
+                        new SecureRandom());
+                verifier = new AllowAllHostnameVerifier();
+            } else if (theContext == null) {
+                SSLContextBuilder contextBuilder = SSLContexts.custom().useProtocol("TLS");
+                if (truststore != null) {
+                    contextBuilder.loadTrustMaterial(truststore, (TrustStrategy) null);
+                }
+                if (clientKeyStore != null) {
+                    contextBuilder.loadKeyMaterial(clientKeyStore, clientPrivateKeyPassword != null ? clientPrivateKeyPassword.toCharArray() : null);
+                }
+                theContext = contextBuilder.build();
+            }
+
+            Registry<SchemeIOSessionStrategy> registry = RegistryBuilder.<SchemeIOSessionStrategy>create()
+                    .register("http", NoopIOSessionStrategy.INSTANCE)
+                    .register("https", new SSLIOSessionStrategy(theContext, verifier))
+                    .build();
+
+            IOReactorConfig.Builder reactorConfig = IOReactorConfig.custom();
+            if (ioThreadCount > 0) {
+                reactorConfig.setIoThreadCount(ioThreadCount);
+            }
+            if (socketTimeout > -1) {
+                reactorConfig.setSoTimeout((int) socketTimeoutUnits.toMillis(socketTimeout));
+            }
+            if (establishConnectionTimeout > -1) {
+                reactorConfig.setConnectTimeout((int) establishConnectionTimeoutUnits.toMillis(establishConnectionTimeout));
+            }
+
+            ThreadFactory threadFactory = new DaemonThreadFactory("keycloak-adapter-http-" + clientCount.incrementAndGet());
+            DefaultConnectingIOReactor ioReactor = new DefaultConnectingIOReactor(reactorConfig.build(), threadFactory);
+
+            PoolingNHttpClientConnectionManager cm = new PoolingNHttpClientConnectionManager(ioReactor, null, registry,
+                    null, null, connectionTTL, connectionTTLUnit);
+            int poolSize = connectionPoolSize > 0 ? connectionPoolSize : 1;
+            cm.setMaxTotal(poolSize);
+            cm.setDefaultMaxPerRoute(maxPooledPerRoute > 0 ? Math.min(maxPooledPerRoute, poolSize) : poolSize);
+
+            RequestConfig.Builder requestConfig = RequestConfig.custom();
+            if (socketTimeout > -1) {
+                requestConfig.setSocketTimeout((int) socketTimeoutUnits.toMillis(socketTimeout));
+            }
+            if (establishConnectionTimeout > -1) {
+                requestConfig.setConnectTimeout((int) establishConnectionTimeoutUnits.toMillis(establishConnectionTimeout));
+            }
+
+            HttpAsyncClientBuilder builder = HttpAsyncClientBuilder.create()
+                    .setConnectionManager(cm)
+                    .setThreadFactory(threadFactory)
+                    .setDefaultRequestConfig(requestConfig.build());
+            ConnectionKeepAliveStrategy keepAliveStrategy = getKeepAliveStrategy();
+            if (keepAliveStrategy != null) {
+                builder.setKeepAliveStrategy(keepAliveStrategy);
+            }
+            if (disableCookieCache) {
+                builder.disableCookieManagement();
+            }
+            return builder.build();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public CloseableHttpAsyncClient buildAsync(AdapterConfig adapterConfig) {
+        configure(adapterConfig);
+        return buildAsync();
+    }
+
+    private static class DaemonThreadFactory implements ThreadFactory {
+
+        private final String prefix;
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        private DaemonThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, prefix + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+
+    }
+
+}
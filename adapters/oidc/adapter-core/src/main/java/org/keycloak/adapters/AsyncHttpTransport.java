@@ -0,0 +1,87 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.adapters;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.keycloak.representations.adapters.config.AdapterConfig;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Non-blocking transport for back-channel requests of a deployment, enabled with the <code>async-http-client</code>
+ * option. Responses are read on an I/O dispatcher thread of the client, so stages depending on a returned
+ * {@link CompletionStage} that may block should use the <code>*Async</code> methods with an executor of their own.
+ */
+public class AsyncHttpTransport implements Closeable {
+
+    public interface ResponseReader<T> {
+        T read(HttpResponse response) throws Exception;
+    }
+
+    private final CloseableHttpAsyncClient client;
+
+    public AsyncHttpTransport(CloseableHttpAsyncClient client) {
+        this.client = client;
+        client.start();
+    }
+
+    public static AsyncHttpTransport create(AdapterConfig adapterConfig) {
+        return new AsyncHttpTransport(new AsyncHttpClientBuilder().buildAsync(adapterConfig));
+    }
+
+    public <T> CompletionStage<T> execute(HttpUriRequest request, final ResponseReader<T> reader) {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        client.execute(request, new FutureCallback<HttpResponse>() {
+            @Override
+            public void completed(HttpResponse response) {
+                try {
+                    result.complete(reader.read(response));
+                } catch (Throwable t) {
+                    result.completeExceptionally(t);
+                }
+            }
+
+            @Override
+            public void failed(Exception e) {
+                result.completeExceptionally(e);
+            }
+
+            @Override
+            public void cancelled() {
+                result.cancel(false);
+            }
+        });
+        return result;
+    }
+
+    public CloseableHttpAsyncClient getClient() {
+        return client;
+    }
+
+    @Override
+    public void close() throws IOException {
+        client.close();
+    }
+
+}
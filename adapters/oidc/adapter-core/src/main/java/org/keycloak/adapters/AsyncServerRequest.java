@@ -0,0 +1,79 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.adapters;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.keycloak.representations.AccessTokenResponse;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Non-blocking variants of the token requests of {@link ServerRequest}. Requests go through the
+ * {@link AsyncHttpTransport} of the deployment, so adapters running on a non-blocking container (Undertow, Jetty) don't
+ * pin a thread while waiting for the auth server.
+ *
+ * Without an async transport configured, the request is made with the blocking client of the deployment on the calling
+ * thread and an already completed stage is returned.
+ *
+ * Stages complete exceptionally with the same {@link java.io.IOException} or {@link ServerRequest.HttpFailure} the
+ * blocking variants throw.
+ */
+public class AsyncServerRequest {
+
+    private static final AsyncHttpTransport.ResponseReader<AccessTokenResponse> ACCESS_TOKEN_RESPONSE_READER = new AsyncHttpTransport.ResponseReader<AccessTokenResponse>() {
+        @Override
+        public AccessTokenResponse read(HttpResponse response) throws Exception {
+            return ServerRequest.readAccessTokenResponse(response);
+        }
+    };
+
+    public static CompletionStage<AccessTokenResponse> invokeAccessCodeToToken(KeycloakDeployment deployment, String code, String redirectUri, String sessionId) {
+        AsyncHttpTransport transport = deployment.getAsyncTransport();
+        try {
+            if (transport == null) {
+                return CompletableFuture.completedFuture(ServerRequest.invokeAccessCodeToToken(deployment, code, redirectUri, sessionId));
+            }
+            HttpPost post = ServerRequest.createAccessCodeToTokenRequest(deployment, code, redirectUri, sessionId);
+            return transport.execute(post, ACCESS_TOKEN_RESPONSE_READER);
+        } catch (Exception e) {
+            return failed(e);
+        }
+    }
+
+    public static CompletionStage<AccessTokenResponse> invokeRefresh(KeycloakDeployment deployment, String refreshToken) {
+        AsyncHttpTransport transport = deployment.getAsyncTransport();
+        try {
+            if (transport == null) {
+                return CompletableFuture.completedFuture(ServerRequest.invokeRefresh(deployment, refreshToken));
+            }
+            HttpPost post = ServerRequest.createRefreshRequest(deployment, refreshToken);
+            return transport.execute(post, ACCESS_TOKEN_RESPONSE_READER);
+        } catch (Exception e) {
+            return failed(e);
+        }
+    }
+
+    private static <T> CompletionStage<T> failed(Exception e) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        result.completeExceptionally(e);
+        return result;
+    }
+
+}
@@ -32,6 +32,10 @@ import org.keycloak.representations.IDToken;
 import org.keycloak.common.util.KeycloakUriBuilder;
 
 /**
+ * Stores tokens in the adapter state cookie. The cookie is written in the compact format of
+ * {@link AdapterStateCookieCodec}, cookies in the previous format with tokens separated by <code>___</code> are still
+ * accepted.
+ *
  * @author <a href="mailto:mposolda@redhat.com">Marek Posolda</a>
  */
 public class CookieTokenStore {
@@ -44,9 +48,7 @@ public class CookieTokenStore {
         String accessToken = session.getTokenString();
         String idToken = session.getIdTokenString();
         String refreshToken = session.getRefreshToken();
-        String cookie = new StringBuilder(accessToken).append(DELIM)
-                .append(idToken).append(DELIM)
-                .append(refreshToken).toString();
+        String cookie = AdapterStateCookieCodec.encode(deployment.getStateCookieKey(), accessToken, idToken, refreshToken);
 
         String cookiePath = getContextPath(facade);
         facade.getResponse().setCookie(AdapterConstants.KEYCLOAK_ADAPTER_STATE_COOKIE, cookie, cookiePath, null, -1, deployment.getSslRequired().isRequired(facade.getRequest().getRemoteAddr()), true);
@@ -61,27 +63,48 @@ public class CookieTokenStore {
 
         String cookieVal = cookie.getValue();
 
-        String[] tokens = cookieVal.split(DELIM);
-        if (tokens.length != 3) {
-            log.warnf("Invalid format of %s cookie. Count of tokens: %s, expected 3", AdapterConstants.KEYCLOAK_ADAPTER_STATE_COOKIE, tokens.length);
-            return null;
-        }
+        String accessTokenString;
+        String idTokenString;
+        String refreshTokenString;
+        boolean verified;
+
+        if (AdapterStateCookieCodec.isCompactFormat(cookieVal)) {
+            AdapterStateCookieCodec.Tokens tokens = AdapterStateCookieCodec.decode(deployment.getStateCookieKey(), cookieVal);
+            if (tokens == null) {
+                log.warnf("Invalid format of %s cookie", AdapterConstants.KEYCLOAK_ADAPTER_STATE_COOKIE);
+                return null;
+            }
+
+            accessTokenString = tokens.getAccessToken();
+            idTokenString = tokens.getIdToken();
+            refreshTokenString = tokens.getRefreshToken();
+            verified = tokens.isVerified();
+        } else {
+            String[] tokens = cookieVal.split(DELIM);
+            if (tokens.length != 3) {
+                log.warnf("Invalid format of %s cookie. Count of tokens: %s, expected 3", AdapterConstants.KEYCLOAK_ADAPTER_STATE_COOKIE, tokens.length);
+                return null;
+            }
 
-        String accessTokenString = tokens[0];
-        String idTokenString = tokens[1];
-        String refreshTokenString = tokens[2];
+            accessTokenString = tokens[0];
+            idTokenString = tokens[1];
+            refreshTokenString = tokens[2];
+            verified = false;
+        }
 
         try {
-            // Skip check if token is active now. It's supposed to be done later by the caller
-            AccessToken accessToken = RSATokenVerifier.verifyToken(accessTokenString, deployment.getRealmKey(), deployment.getRealmInfoUrl(), false, true);
+            AccessToken accessToken;
+            if (verified) {
+                // Cookie was written by this deployment with tokens verified already
+                accessToken = readToken(accessTokenString, AccessToken.class);
+            } else {
+                // Skip check if token is active now. It's supposed to be done later by the caller
+                accessToken = RSATokenVerifier.verifyToken(accessTokenString, deployment.getRealmKey(), deployment.getRealmInfoUrl(), false, true);
+            }
+
             IDToken idToken;
             if (idTokenString != null && idTokenString.length() > 0) {
-                try {
-                    JWSInput input = new JWSInput(idTokenString);
-                    idToken = input.readJsonContent(IDToken.class);
-                } catch (JWSInputException e) {
-                    throw new VerificationException(e);
-                }
+                idToken = readToken(idTokenString, IDToken.class);
             } else {
                 idToken = null;
             }
@@ -95,6 +118,15 @@ public class CookieTokenStore {
         }
     }
 
+    private static <T> T readToken(String tokenString, Class<T> type) throws VerificationException {
+        try {
+            JWSInput input = new JWSInput(tokenString);
+            return input.readJsonContent(type);
+        } catch (JWSInputException e) {
+            throw new VerificationException(e);
+        }
+    }
+
     public static void removeCookie(HttpFacade facade) {
         String cookiePath = getContextPath(facade);
         facade.getResponse().resetCookie(AdapterConstants.KEYCLOAK_ADAPTER_STATE_COOKIE, cookiePath);
@@ -17,9 +17,11 @@
 
 package org.keycloak.adapters;
 
+import org.apache.http.HttpResponse;
 import org.apache.http.client.CookieStore;
 import org.apache.http.client.HttpClient;
 import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
 import org.apache.http.conn.scheme.PlainSocketFactory;
 import org.apache.http.conn.scheme.Scheme;
 import org.apache.http.conn.scheme.SchemeRegistry;
@@ -29,11 +31,13 @@ import org.apache.http.conn.ssl.SSLSocketFactory;
 import org.apache.http.conn.ssl.StrictHostnameVerifier;
 import org.apache.http.conn.ssl.X509HostnameVerifier;
 import org.apache.http.cookie.Cookie;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.impl.conn.SingleClientConnManager;
 import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
 import org.apache.http.params.BasicHttpParams;
 import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.protocol.HttpContext;
 import org.keycloak.representations.adapters.config.AdapterConfig;
 import org.keycloak.common.util.EnvUtil;
 import org.keycloak.common.util.KeystoreUtil;
@@ -82,7 +86,7 @@ public class HttpClientBuilder {
      * @author <a href="mailto:bill@burkecentral.com">Bill Burke</a>
      * @version $Revision: 1 $
      */
-    private static class PassthroughTrustManager implements X509TrustManager {
+    static class PassthroughTrustManager implements X509TrustManager {
         public void checkClientTrusted(X509Certificate[] chain,
                                        String authType) throws CertificateException {
         }
@@ -112,6 +116,8 @@ public class HttpClientBuilder {
     protected TimeUnit socketTimeoutUnits = TimeUnit.MILLISECONDS;
     protected long establishConnectionTimeout = -1;
     protected TimeUnit establishConnectionTimeoutUnits = TimeUnit.MILLISECONDS;
+    protected long keepAlive = -1;
+    protected TimeUnit keepAliveUnits = TimeUnit.MILLISECONDS;
 
 
     /**
@@ -148,6 +154,20 @@ public class HttpClientBuilder {
         return this;
     }
 
+    /**
+     * How long is an idle connection kept in the pool at most? Shorter keep-alive timeouts sent by the server are
+     * honored.
+     *
+     * @param keepAlive
+     * @param unit
+     * @return
+     */
+    public HttpClientBuilder keepAlive(long keepAlive, TimeUnit unit) {
+        this.keepAlive = keepAlive;
+        this.keepAliveUnits = unit;
+        return this;
+    }
+
     public HttpClientBuilder maxPooledPerRoute(int maxPooledPerRoute) {
         this.maxPooledPerRoute = maxPooledPerRoute;
         return this;
@@ -236,7 +256,29 @@ public class HttpClientBuilder {
         }
     }
 
-    public HttpClient build() {
+    static class CappedKeepAliveStrategy implements ConnectionKeepAliveStrategy {
+        private final long maxKeepAliveMillis;
+
+        CappedKeepAliveStrategy(long maxKeepAliveMillis) {
+            this.maxKeepAliveMillis = maxKeepAliveMillis;
+        }
+
+        @Override
+        public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+            long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            if (keepAlive < 0 || keepAlive > maxKeepAliveMillis) {
+                return maxKeepAliveMillis;
+            }
+            return keepAlive;
+        }
+    }
+
+    protected ConnectionKeepAliveStrategy getKeepAliveStrategy() {
+        if (keepAlive < 0) return null;
+        return new CappedKeepAliveStrategy(keepAliveUnits.toMillis(keepAlive));
+    }
+
+    protected X509HostnameVerifier createHostnameVerifier() {
         X509HostnameVerifier verifier = null;
         if (this.verifier != null) verifier = new VerifierWrapper(this.verifier);
         else {
@@ -252,6 +294,11 @@ public class HttpClientBuilder {
                     break;
             }
         }
+        return verifier;
+    }
+
+    public HttpClient build() {
+        X509HostnameVerifier verifier = createHostnameVerifier();
         try {
             SSLSocketFactory sslsf = null;
             SSLContext theContext = sslContext;
@@ -297,6 +344,10 @@ public class HttpClientBuilder {
                 HttpConnectionParams.setConnectionTimeout(params, (int)establishConnectionTimeoutUnits.toMillis(establishConnectionTimeout));
             }
             DefaultHttpClient client = new DefaultHttpClient(cm, params);
+            ConnectionKeepAliveStrategy keepAliveStrategy = getKeepAliveStrategy();
+            if (keepAliveStrategy != null) {
+                client.setKeepAliveStrategy(keepAliveStrategy);
+            }
             if (disableCookieCache) {
                 client.setCookieStore(new CookieStore() {
                     @Override
@@ -328,6 +379,11 @@ public class HttpClientBuilder {
     }
 
     public HttpClient build(AdapterConfig adapterConfig) {
+        configure(adapterConfig);
+        return build();
+    }
+
+    protected void configure(AdapterConfig adapterConfig) {
         disableCookieCache(); // disable cookie cache as we don't want sticky sessions for load balancing
 
         String truststorePath = adapterConfig.getTruststore();
@@ -358,12 +414,15 @@ public class HttpClientBuilder {
         if (adapterConfig.isAllowAnyHostname())
             policy = HttpClientBuilder.HostnameVerificationPolicy.ANY;
         connectionPoolSize(size);
+        if (adapterConfig.getConnectionPoolSizePerRoute() > 0)
+            maxPooledPerRoute(adapterConfig.getConnectionPoolSizePerRoute());
+        if (adapterConfig.getConnectionKeepAlive() > -1)
+            keepAlive(adapterConfig.getConnectionKeepAlive(), TimeUnit.SECONDS);
         hostnameVerification(policy);
         if (adapterConfig.isDisableTrustManager()) {
             disableTrustManager();
         } else {
             trustStore(truststore);
         }
-        return build();
     }
 }
\ No newline at end of file
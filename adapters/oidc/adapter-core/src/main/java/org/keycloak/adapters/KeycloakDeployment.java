@@ -27,8 +27,10 @@ import org.keycloak.enums.TokenStore;
 import org.keycloak.representations.adapters.config.AdapterConfig;
 import org.keycloak.common.util.KeycloakUriBuilder;
 
+import java.io.IOException;
 import java.net.URI;
 import java.security.PublicKey;
+import java.security.SecureRandom;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -40,6 +42,8 @@ public class KeycloakDeployment {
 
     private static final Logger log = Logger.getLogger(KeycloakDeployment.class);
 
+    private static final SecureRandom random = new SecureRandom();
+
     protected RelativeUrlsUsed relativeUrls;
     protected String realm;
     protected volatile PublicKey realmKey;
@@ -60,6 +64,7 @@ public class KeycloakDeployment {
     protected Map<String, Object> resourceCredentials = new HashMap<>();
     protected ClientCredentialsProvider clientAuthenticator;
     protected HttpClient client;
+    protected AsyncHttpTransport asyncTransport;
 
     protected String scope;
     protected SslRequired sslRequired = SslRequired.ALL;
@@ -75,6 +80,12 @@ public class KeycloakDeployment {
     protected boolean registerNodeAtStartup;
     protected int registerNodePeriod;
     protected boolean turnOffChangeSessionIdOnLogin;
+    protected VerifiedTokenCache tokenCache;
+    // Created on first use, not for every DeploymentDelegate made per request
+    protected volatile TokenRefresher tokenRefresher;
+    protected int tokenMinimumTimeToLive;
+    // Generated on first use, not for every DeploymentDelegate made per request
+    protected volatile byte[] stateCookieKey;
 
     protected volatile int notBefore;
 
@@ -103,6 +114,12 @@ public class KeycloakDeployment {
 
     public void setRealmKey(PublicKey realmKey) {
         this.realmKey = realmKey;
+        if (tokenCache != null) {
+            tokenCache.clear();
+        }
+
+        // Cookies with tokens signed by the old key must be verified again
+        this.stateCookieKey = null;
     }
 
     public String getAuthServerBaseUrl() {
@@ -261,6 +278,14 @@ public class KeycloakDeployment {
         this.client = client;
     }
 
+    public AsyncHttpTransport getAsyncTransport() {
+        return asyncTransport;
+    }
+
+    public void setAsyncTransport(AsyncHttpTransport asyncTransport) {
+        this.asyncTransport = asyncTransport;
+    }
+
     public String getScope() {
         return scope;
     }
@@ -388,4 +413,75 @@ public class KeycloakDeployment {
     public void setTurnOffChangeSessionIdOnLogin(boolean turnOffChangeSessionIdOnLogin) {
         this.turnOffChangeSessionIdOnLogin = turnOffChangeSessionIdOnLogin;
     }
+
+    public VerifiedTokenCache getTokenCache() {
+        return tokenCache;
+    }
+
+    public void setTokenCache(VerifiedTokenCache tokenCache) {
+        this.tokenCache = tokenCache;
+    }
+
+    public TokenRefresher getTokenRefresher() {
+        TokenRefresher tokenRefresher = this.tokenRefresher;
+        if (tokenRefresher == null) {
+            synchronized (this) {
+                tokenRefresher = this.tokenRefresher;
+                if (tokenRefresher == null) {
+                    tokenRefresher = new TokenRefresher();
+                    this.tokenRefresher = tokenRefresher;
+                }
+            }
+        }
+        return tokenRefresher;
+    }
+
+    public void setTokenRefresher(TokenRefresher tokenRefresher) {
+        this.tokenRefresher = tokenRefresher;
+    }
+
+    public int getTokenMinimumTimeToLive() {
+        return tokenMinimumTimeToLive;
+    }
+
+    /**
+     * @return key of the HMAC of adapter state cookies written by this deployment
+     */
+    public byte[] getStateCookieKey() {
+        byte[] stateCookieKey = this.stateCookieKey;
+        if (stateCookieKey == null) {
+            synchronized (this) {
+                stateCookieKey = this.stateCookieKey;
+                if (stateCookieKey == null) {
+                    stateCookieKey = new byte[32];
+                    random.nextBytes(stateCookieKey);
+                    this.stateCookieKey = stateCookieKey;
+                }
+            }
+        }
+        return stateCookieKey;
+    }
+
+    public void setTokenMinimumTimeToLive(int tokenMinimumTimeToLive) {
+        this.tokenMinimumTimeToLive = tokenMinimumTimeToLive;
+    }
+
+    /**
+     * Releases the resources of the deployment, which aren't released by the garbage collector. Called when the
+     * application is undeployed.
+     */
+    public void close() {
+        if (tokenRefresher != null) {
+            tokenRefresher.close();
+        }
+
+        AsyncHttpTransport asyncTransport = getAsyncTransport();
+        if (asyncTransport != null) {
+            try {
+                asyncTransport.close();
+            } catch (IOException e) {
+                log.debug("Failed to close async HTTP client", e);
+            }
+        }
+    }
 }
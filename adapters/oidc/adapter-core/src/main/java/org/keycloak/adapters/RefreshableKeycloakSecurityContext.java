@@ -19,8 +19,8 @@ package org.keycloak.adapters;
 
 import org.jboss.logging.Logger;
 import org.keycloak.KeycloakSecurityContext;
-import org.keycloak.RSATokenVerifier;
 import org.keycloak.common.VerificationException;
+import org.keycloak.common.util.Time;
 import org.keycloak.representations.AccessToken;
 import org.keycloak.representations.AccessTokenResponse;
 import org.keycloak.representations.IDToken;
@@ -66,6 +66,7 @@ public class RefreshableKeycloakSecurityContext extends KeycloakSecurityContext
     }
 
     public void logout(KeycloakDeployment deployment) {
+        deployment.getTokenRefresher().forget(refreshToken);
         try {
             ServerRequest.invokeLogout(deployment, refreshToken);
         } catch (Exception e) {
@@ -87,6 +88,9 @@ public class RefreshableKeycloakSecurityContext extends KeycloakSecurityContext
     }
 
     /**
+     * Parallel refreshes of the same refresh token are coalesced by {@link TokenRefresher}, so they send a single request
+     * to the auth server.
+     *
      * @param checkActive if true, then we won't send refresh request if current accessToken is still active.
      * @return true if accessToken is active or was successfully refreshed
      */
@@ -95,7 +99,10 @@ public class RefreshableKeycloakSecurityContext extends KeycloakSecurityContext
             if (log.isTraceEnabled()) {
                 log.trace("checking whether to refresh.");
             }
-            if (isActive()) return true;
+            if (isActive()) {
+                refreshBeforeExpiration();
+                return true;
+            }
         }
 
         if (this.deployment == null || refreshToken == null) return false; // Might be serialized in HttpSession?
@@ -108,41 +115,61 @@ public class RefreshableKeycloakSecurityContext extends KeycloakSecurityContext
         if (log.isTraceEnabled()) {
             log.trace("Doing refresh");
         }
-        AccessTokenResponse response = null;
+        TokenRefresher.RefreshResult result;
         try {
-            response = ServerRequest.invokeRefresh(deployment, refreshToken);
+            result = deployment.getTokenRefresher().refresh(deployment, refreshToken);
         } catch (IOException e) {
             log.error("Refresh token failure", e);
             return false;
         } catch (ServerRequest.HttpFailure httpFailure) {
             log.error("Refresh token failure status: " + httpFailure.getStatus() + " " + httpFailure.getError());
             return false;
+        } catch (VerificationException e) {
+            log.error("failed verification of token");
+            return false;
         }
         if (log.isTraceEnabled()) {
             log.trace("received refresh response");
         }
-        String tokenString = response.getToken();
-        AccessToken token = null;
-        try {
-            token = RSATokenVerifier.verifyToken(tokenString, deployment.getRealmKey(), deployment.getRealmInfoUrl());
-            log.debug("Token Verification succeeded!");
-        } catch (VerificationException e) {
-            log.error("failed verification of token");
-            return false;
+        applyRefresh(result);
+        return true;
+    }
+
+    /**
+     * Uses tokens refreshed in the background or starts the background refresh if the access token expires within
+     * {@link KeycloakDeployment#getTokenMinimumTimeToLive()}
+     */
+    protected void refreshBeforeExpiration() {
+        if (this.deployment == null || refreshToken == null || deployment.getTokenMinimumTimeToLive() <= 0) return;
+
+        int expiration = token.getExpiration();
+        if (expiration == 0 || expiration - deployment.getTokenMinimumTimeToLive() > Time.currentTime()) return;
+
+        TokenRefresher.RefreshResult result = deployment.getTokenRefresher().getRefreshed(refreshToken);
+        if (result != null) {
+            if (log.isTraceEnabled()) {
+                log.trace("Using token refreshed in the background");
+            }
+            applyRefresh(result);
+        } else {
+            deployment.getTokenRefresher().refreshInBackground(deployment, refreshToken);
         }
+    }
+
+    protected synchronized void applyRefresh(TokenRefresher.RefreshResult result) {
+        AccessTokenResponse response = result.getResponse();
         if (response.getNotBeforePolicy() > deployment.getNotBefore()) {
             deployment.setNotBefore(response.getNotBeforePolicy());
         }
 
-        this.token = token;
+        this.token = result.getToken();
         if (response.getRefreshToken() != null) {
             if (log.isTraceEnabled()) {
                 log.trace("Setup new refresh token to the security context");
             }
             this.refreshToken = response.getRefreshToken();
         }
-        this.tokenString = tokenString;
+        this.tokenString = response.getToken();
         tokenStore.refreshCallback(this);
-        return true;
     }
 }
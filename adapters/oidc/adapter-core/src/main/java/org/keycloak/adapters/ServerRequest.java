@@ -89,6 +89,18 @@ public class ServerRequest {
     }
 
     public static AccessTokenResponse invokeAccessCodeToToken(KeycloakDeployment deployment, String code, String redirectUri, String sessionId) throws IOException, HttpFailure {
+        HttpPost post = createAccessCodeToTokenRequest(deployment, code, redirectUri, sessionId);
+        HttpResponse response = deployment.getClient().execute(post);
+        return readAccessTokenResponse(response);
+    }
+
+    public static AccessTokenResponse invokeRefresh(KeycloakDeployment deployment, String refreshToken) throws IOException, HttpFailure {
+        HttpPost post = createRefreshRequest(deployment, refreshToken);
+        HttpResponse response = deployment.getClient().execute(post);
+        return readAccessTokenResponse(response);
+    }
+
+    protected static HttpPost createAccessCodeToTokenRequest(KeycloakDeployment deployment, String code, String redirectUri, String sessionId) throws IOException {
         List<NameValuePair> formparams = new ArrayList<>();
         redirectUri = stripOauthParametersFromRedirect(redirectUri);
         formparams.add(new BasicNameValuePair(OAuth2Constants.GRANT_TYPE, "authorization_code"));
@@ -104,39 +116,10 @@ public class ServerRequest {
 
         UrlEncodedFormEntity form = new UrlEncodedFormEntity(formparams, "UTF-8");
         post.setEntity(form);
-        HttpResponse response = deployment.getClient().execute(post);
-        int status = response.getStatusLine().getStatusCode();
-        HttpEntity entity = response.getEntity();
-        if (status != 200) {
-            error(status, entity);
-        }
-        if (entity == null) {
-            throw new HttpFailure(status, null);
-        }
-        InputStream is = entity.getContent();
-        try {
-            ByteArrayOutputStream os = new ByteArrayOutputStream();
-            int c;
-            while ((c = is.read()) != -1) {
-                os.write(c);
-            }
-            byte[] bytes = os.toByteArray();
-            String json = new String(bytes);
-            try {
-                return JsonSerialization.readValue(json, AccessTokenResponse.class);
-            } catch (IOException e) {
-                throw new IOException(json, e);
-            }
-        } finally {
-            try {
-                is.close();
-            } catch (IOException ignored) {
-
-            }
-        }
+        return post;
     }
 
-    public static AccessTokenResponse invokeRefresh(KeycloakDeployment deployment, String refreshToken) throws IOException, HttpFailure {
+    protected static HttpPost createRefreshRequest(KeycloakDeployment deployment, String refreshToken) throws IOException {
         List<NameValuePair> formparams = new ArrayList<NameValuePair>();
         formparams.add(new BasicNameValuePair(OAuth2Constants.GRANT_TYPE, OAuth2Constants.REFRESH_TOKEN));
         formparams.add(new BasicNameValuePair(OAuth2Constants.REFRESH_TOKEN, refreshToken));
@@ -146,7 +129,10 @@ public class ServerRequest {
 
         UrlEncodedFormEntity form = new UrlEncodedFormEntity(formparams, "UTF-8");
         post.setEntity(form);
-        HttpResponse response = deployment.getClient().execute(post);
+        return post;
+    }
+
+    protected static AccessTokenResponse readAccessTokenResponse(HttpResponse response) throws IOException, HttpFailure {
         int status = response.getStatusLine().getStatusCode();
         HttpEntity entity = response.getEntity();
         if (status != 200) {
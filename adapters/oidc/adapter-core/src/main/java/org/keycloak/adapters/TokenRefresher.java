@@ -0,0 +1,317 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.adapters;
+
+import org.jboss.logging.Logger;
+import org.keycloak.RSATokenVerifier;
+import org.keycloak.common.VerificationException;
+import org.keycloak.representations.AccessToken;
+import org.keycloak.representations.AccessTokenResponse;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * Coalesces refreshes of the same refresh token, so parallel requests of a session whose access token just expired send
+ * a single refresh request to the auth server and share its result.
+ * <p>
+ * A successful result is kept until the refreshed access token expires, so requests still carrying the old refresh
+ * token (for example parallel requests with the old token cookie) reuse it as well. Failures are never kept.
+ * <p>
+ * Refreshes can also be started in the background before the access token expires. The result is picked up by the next
+ * request of the session via {@link #getRefreshed(String)}. With the <code>async-http-client</code> option, background
+ * refreshes go through {@link AsyncServerRequest} and don't occupy a thread while waiting for the auth server.
+ */
+public class TokenRefresher {
+
+    private static final Logger log = Logger.getLogger(TokenRefresher.class);
+
+    private static final long WAIT_MILLIS = 30000;
+    private static final long MIN_REUSE_MILLIS = 10000;
+    private static final long SWEEP_INTERVAL_MILLIS = 60000;
+    private static final int BACKGROUND_QUEUE_SIZE = 100;
+
+    public static class RefreshResult {
+
+        private final AccessTokenResponse response;
+        private final AccessToken token;
+
+        public RefreshResult(AccessTokenResponse response, AccessToken token) {
+            this.response = response;
+            this.token = token;
+        }
+
+        public AccessTokenResponse getResponse() {
+            return response;
+        }
+
+        public AccessToken getToken() {
+            return token;
+        }
+
+    }
+
+    private final ConcurrentMap<String, Flight> flights = new ConcurrentHashMap<String, Flight>();
+    private final ExecutorService backgroundExecutor;
+    private volatile long nextSweep = System.currentTimeMillis() + SWEEP_INTERVAL_MILLIS;
+
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong coalescedRefreshes = new AtomicLong();
+    private final AtomicLong backgroundRefreshes = new AtomicLong();
+
+    public TokenRefresher() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(BACKGROUND_QUEUE_SIZE), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "keycloak-token-refresher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        }, new ThreadPoolExecutor.DiscardPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        this.backgroundExecutor = executor;
+    }
+
+    /**
+     * Refreshes the tokens or waits for the result of a refresh of the same refresh token, which is in progress or was
+     * done recently.
+     */
+    public RefreshResult refresh(KeycloakDeployment deployment, String refreshToken) throws IOException, ServerRequest.HttpFailure, VerificationException {
+        Flight flight = new Flight();
+        Flight existing = flights.putIfAbsent(refreshToken, flight);
+
+        if (existing != null && existing.isExpired()) {
+            if (flights.replace(refreshToken, existing, flight)) {
+                existing = null;
+            } else {
+                // Somebody else replaced the expired flight
+                return refresh(deployment, refreshToken);
+            }
+        }
+
+        if (existing != null) {
+            coalescedRefreshes.incrementAndGet();
+            if (existing.await(WAIT_MILLIS)) {
+                return existing.getResult();
+            }
+
+            log.debug("Timeout waiting for refresh of other request, refreshing token");
+            return invokeRefresh(deployment, refreshToken);
+        }
+
+        return refresh(deployment, refreshToken, flight);
+    }
+
+    /**
+     * Starts refresh of the tokens in the background, unless the refresh token is being refreshed already
+     */
+    public void refreshInBackground(final KeycloakDeployment deployment, final String refreshToken) {
+        final Flight flight = new Flight();
+        if (flights.putIfAbsent(refreshToken, flight) != null) {
+            return;
+        }
+
+        if (deployment != null && deployment.getAsyncTransport() != null) {
+            // No thread waits for the auth server
+            backgroundRefreshes.incrementAndGet();
+            refreshAsync(deployment, refreshToken, flight);
+            return;
+        }
+
+        try {
+            backgroundExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        backgroundRefreshes.incrementAndGet();
+                        refresh(deployment, refreshToken, flight);
+                    } catch (Exception e) {
+                        log.debugf(e, "Background refresh of token failed");
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            flights.remove(refreshToken, flight);
+        }
+    }
+
+    /**
+     * @return result of a successful refresh of the refresh token or null if there is none
+     */
+    public RefreshResult getRefreshed(String refreshToken) {
+        Flight flight = flights.get(refreshToken);
+        if (flight == null || !flight.isDone() || flight.isExpired()) {
+            return null;
+        }
+
+        try {
+            return flight.getResult();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Forgets the result of the refresh of the refresh token, for example after logout
+     */
+    public void forget(String refreshToken) {
+        flights.remove(refreshToken);
+    }
+
+    /**
+     * Stops the background refreshes
+     */
+    public void close() {
+        backgroundExecutor.shutdownNow();
+    }
+
+    public long getRefreshes() {
+        return refreshes.get();
+    }
+
+    public long getCoalescedRefreshes() {
+        return coalescedRefreshes.get();
+    }
+
+    public long getBackgroundRefreshes() {
+        return backgroundRefreshes.get();
+    }
+
+    private RefreshResult refresh(KeycloakDeployment deployment, String refreshToken, Flight flight) throws IOException, ServerRequest.HttpFailure, VerificationException {
+        try {
+            RefreshResult result = invokeRefresh(deployment, refreshToken);
+            flight.complete(result);
+            return result;
+        } catch (IOException | ServerRequest.HttpFailure | VerificationException | RuntimeException e) {
+            flights.remove(refreshToken, flight);
+            flight.fail(e);
+            throw e;
+        } finally {
+            sweep();
+        }
+    }
+
+    private void refreshAsync(final KeycloakDeployment deployment, final String refreshToken, final Flight flight) {
+        refreshes.incrementAndGet();
+        AsyncServerRequest.invokeRefresh(deployment, refreshToken).whenComplete(new BiConsumer<AccessTokenResponse, Throwable>() {
+            @Override
+            public void accept(AccessTokenResponse response, Throwable failure) {
+                try {
+                    if (failure != null) {
+                        throw failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+                    }
+                    AccessToken token = RSATokenVerifier.verifyToken(response.getToken(), deployment.getRealmKey(), deployment.getRealmInfoUrl());
+                    flight.complete(new RefreshResult(response, token));
+                } catch (Throwable t) {
+                    log.debugf(t, "Background refresh of token failed");
+                    flights.remove(refreshToken, flight);
+                    flight.fail(t instanceof Exception ? (Exception) t : new RuntimeException(t));
+                } finally {
+                    sweep();
+                }
+            }
+        });
+    }
+
+    protected RefreshResult invokeRefresh(KeycloakDeployment deployment, String refreshToken) throws IOException, ServerRequest.HttpFailure, VerificationException {
+        refreshes.incrementAndGet();
+        AccessTokenResponse response = ServerRequest.invokeRefresh(deployment, refreshToken);
+        AccessToken token = RSATokenVerifier.verifyToken(response.getToken(), deployment.getRealmKey(), deployment.getRealmInfoUrl());
+        return new RefreshResult(response, token);
+    }
+
+    private void sweep() {
+        long now = System.currentTimeMillis();
+        if (now < nextSweep) {
+            return;
+        }
+        nextSweep = now + SWEEP_INTERVAL_MILLIS;
+
+        for (Iterator<Flight> it = flights.values().iterator(); it.hasNext(); ) {
+            if (it.next().isExpired()) {
+                it.remove();
+            }
+        }
+    }
+
+    private static class Flight {
+
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile RefreshResult result;
+        private volatile Exception failure;
+        private volatile long reuseUntil = Long.MAX_VALUE;
+
+        private void complete(RefreshResult result) {
+            this.result = result;
+            long expiration = result.getToken().getExpiration() * 1000L;
+            this.reuseUntil = Math.max(expiration, System.currentTimeMillis() + MIN_REUSE_MILLIS);
+            done.countDown();
+        }
+
+        private void fail(Exception failure) {
+            this.failure = failure;
+            this.reuseUntil = 0;
+            done.countDown();
+        }
+
+        private boolean isDone() {
+            return done.getCount() == 0;
+        }
+
+        private boolean isExpired() {
+            return reuseUntil <= System.currentTimeMillis();
+        }
+
+        private boolean await(long waitMillis) {
+            try {
+                return done.await(waitMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        private RefreshResult getResult() throws IOException, ServerRequest.HttpFailure, VerificationException {
+            Exception failure = this.failure;
+            if (failure instanceof IOException) {
+                throw (IOException) failure;
+            } else if (failure instanceof ServerRequest.HttpFailure) {
+                throw (ServerRequest.HttpFailure) failure;
+            } else if (failure instanceof VerificationException) {
+                throw (VerificationException) failure;
+            } else if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            }
+            return result;
+        }
+
+    }
+
+}
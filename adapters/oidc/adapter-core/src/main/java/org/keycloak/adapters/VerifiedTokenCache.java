@@ -0,0 +1,119 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.adapters;
+
+import org.keycloak.RSATokenVerifier;
+import org.keycloak.common.VerificationException;
+import org.keycloak.common.util.Base64Url;
+import org.keycloak.representations.AccessToken;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of bearer tokens that were already verified by {@link RSATokenVerifier}. Tokens are keyed by the
+ * SHA-256 hash of the encoded token and are kept until they expire or are pushed out by more recently used tokens.
+ * <p>
+ * The cached {@link AccessToken} instance is shared by all requests that present the same token, so it must not be
+ * modified.
+ */
+public class VerifiedTokenCache {
+
+    private final int maxSize;
+    private final Map<String, AccessToken> tokens;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public VerifiedTokenCache(final int maxSize) {
+        this.maxSize = maxSize;
+        this.tokens = new LinkedHashMap<String, AccessToken>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, AccessToken> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    public AccessToken verifyToken(String tokenString, KeycloakDeployment deployment) throws VerificationException {
+        String key = hash(tokenString);
+
+        AccessToken token;
+        synchronized (tokens) {
+            token = tokens.get(key);
+            if (token != null && token.isExpired()) {
+                tokens.remove(key);
+                token = null;
+            }
+        }
+
+        if (token != null) {
+            hits.incrementAndGet();
+            return token;
+        }
+
+        misses.incrementAndGet();
+        token = RSATokenVerifier.verifyToken(tokenString, deployment.getRealmKey(), deployment.getRealmInfoUrl());
+
+        // Tokens without expiration are never cached as there's nothing that bounds their lifetime
+        if (token.getExpiration() != 0) {
+            synchronized (tokens) {
+                tokens.put(key, token);
+            }
+        }
+        return token;
+    }
+
+    public void clear() {
+        synchronized (tokens) {
+            tokens.clear();
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int size() {
+        synchronized (tokens) {
+            return tokens.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private static String hash(String tokenString) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return Base64Url.encode(digest.digest(tokenString.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
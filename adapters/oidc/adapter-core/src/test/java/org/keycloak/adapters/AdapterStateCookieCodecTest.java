@@ -0,0 +1,112 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.adapters;
+
+import org.junit.Test;
+import org.keycloak.common.util.Base64Url;
+
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class AdapterStateCookieCodecTest {
+
+    private static final String HEADER = "{\"alg\":\"RS256\"}";
+    private static final String CLAIMS = "\"iss\":\"http://localhost:8081/auth/realms/demo\",\"aud\":\"customer-portal\",\"sub\":\"a3a1b3c6-2e1b-4b4c-9d8a-5b5d1f2d9f3e\",\"session_state\":\"0f3c6e7b-1c2d-4e5f-8a9b-0c1d2e3f4a5b\"";
+
+    private final byte[] key = key();
+
+    @Test
+    public void roundTrip() {
+        String accessToken = jws(HEADER, "{" + CLAIMS + ",\"typ\":\"Bearer\"}");
+        String idToken = jws(HEADER, "{" + CLAIMS + ",\"typ\":\"ID\"}");
+        String refreshToken = jws(HEADER, "{" + CLAIMS + ",\"typ\":\"Refresh\"}");
+
+        String cookie = AdapterStateCookieCodec.encode(key, accessToken, idToken, refreshToken);
+        assertTrue(AdapterStateCookieCodec.isCompactFormat(cookie));
+        assertTrue(cookie.length() < accessToken.length() + idToken.length() + refreshToken.length());
+
+        AdapterStateCookieCodec.Tokens tokens = AdapterStateCookieCodec.decode(key, cookie);
+        assertEquals(accessToken, tokens.getAccessToken());
+        assertEquals(idToken, tokens.getIdToken());
+        assertEquals(refreshToken, tokens.getRefreshToken());
+        assertTrue(tokens.isVerified());
+    }
+
+    @Test
+    public void missingIdToken() {
+        String accessToken = jws(HEADER, "{" + CLAIMS + "}");
+
+        AdapterStateCookieCodec.Tokens tokens = AdapterStateCookieCodec.decode(key, AdapterStateCookieCodec.encode(key, accessToken, null, "opaque-refresh-token"));
+        assertEquals(accessToken, tokens.getAccessToken());
+        assertNull(tokens.getIdToken());
+        assertEquals("opaque-refresh-token", tokens.getRefreshToken());
+    }
+
+    @Test
+    public void otherKeyIsNotVerified() {
+        String accessToken = jws(HEADER, "{" + CLAIMS + "}");
+        String cookie = AdapterStateCookieCodec.encode(key(), accessToken, null, null);
+
+        AdapterStateCookieCodec.Tokens tokens = AdapterStateCookieCodec.decode(key, cookie);
+        assertEquals(accessToken, tokens.getAccessToken());
+        assertFalse(tokens.isVerified());
+    }
+
+    @Test
+    public void invalidCookie() {
+        String accessToken = jws(HEADER, "{" + CLAIMS + "}");
+        String cookie = AdapterStateCookieCodec.encode(key, accessToken, null, null);
+
+        assertNull(AdapterStateCookieCodec.decode(key, "v1.invalid"));
+        assertNull(AdapterStateCookieCodec.decode(key, accessToken + "___" + "___"));
+        assertNull(AdapterStateCookieCodec.decode(key, cookie.substring(0, cookie.indexOf('.', 3) - 4) + cookie.substring(cookie.indexOf('.', 3))));
+    }
+
+    @Test
+    public void deploymentKey() {
+        KeycloakDeployment deployment = new KeycloakDeployment();
+        byte[] deploymentKey = deployment.getStateCookieKey();
+        assertSame(deploymentKey, deployment.getStateCookieKey());
+
+        // Delegates created per request use the key of the deployment
+        assertSame(deploymentKey, new AdapterDeploymentContext.DeploymentDelegate(deployment).getStateCookieKey());
+
+        deployment.setRealmKey(null);
+        assertFalse(Arrays.equals(deploymentKey, deployment.getStateCookieKey()));
+    }
+
+    private static String jws(String header, String payload) {
+        byte[] signature = new byte[256];
+        new SecureRandom().nextBytes(signature);
+        return Base64Url.encode(header.getBytes(StandardCharsets.UTF_8)) + "." + Base64Url.encode(payload.getBytes(StandardCharsets.UTF_8)) + "." + Base64Url.encode(signature);
+    }
+
+    private static byte[] key() {
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        return key;
+    }
+
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.adapters;
+
+import org.junit.Test;
+import org.keycloak.common.util.Time;
+import org.keycloak.representations.AccessToken;
+import org.keycloak.representations.AccessTokenResponse;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TokenRefresherTest {
+
+    @Test
+    public void parallelRefreshesAreCoalesced() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final MockRefresher refresher = new MockRefresher(release);
+
+        final List<TokenRefresher.RefreshResult> results = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        TokenRefresher.RefreshResult result = refresher.refresh(null, "refresh-token");
+                        synchronized (results) {
+                            results.add(result);
+                        }
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+
+        while (refresher.getCoalescedRefreshes() < 9) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+        for (Thread thread : threads) {
+            thread.join(10000);
+        }
+
+        assertEquals(1, refresher.calls.get());
+        assertEquals(10, results.size());
+        for (TokenRefresher.RefreshResult result : results) {
+            assertSame(results.get(0), result);
+        }
+    }
+
+    @Test
+    public void recentResultIsReused() throws Exception {
+        MockRefresher refresher = new MockRefresher(null);
+        TokenRefresher.RefreshResult first = refresher.refresh(null, "refresh-token");
+
+        assertSame(first, refresher.refresh(null, "refresh-token"));
+        assertSame(first, refresher.getRefreshed("refresh-token"));
+        assertEquals(1, refresher.calls.get());
+
+        refresher.forget("refresh-token");
+        assertNull(refresher.getRefreshed("refresh-token"));
+        refresher.refresh(null, "refresh-token");
+        assertEquals(2, refresher.calls.get());
+    }
+
+    @Test
+    public void failureIsNotReused() throws Exception {
+        MockRefresher refresher = new MockRefresher(null);
+        refresher.fail = true;
+        try {
+            refresher.refresh(null, "refresh-token");
+            fail("Expected failure");
+        } catch (IOException expected) {
+        }
+
+        refresher.fail = false;
+        assertNotNull(refresher.refresh(null, "refresh-token"));
+        assertEquals(2, refresher.calls.get());
+    }
+
+    @Test
+    public void backgroundRefresh() throws Exception {
+        MockRefresher refresher = new MockRefresher(null);
+        refresher.refreshInBackground(null, "refresh-token");
+
+        long deadline = System.currentTimeMillis() + 10000;
+        while (refresher.getRefreshed("refresh-token") == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+
+        assertNotNull(refresher.getRefreshed("refresh-token"));
+        assertEquals(1, refresher.getBackgroundRefreshes());
+        assertEquals(1, refresher.calls.get());
+    }
+
+    private static class MockRefresher extends TokenRefresher {
+
+        private final CountDownLatch release;
+        private final AtomicInteger calls = new AtomicInteger();
+        private volatile boolean fail;
+
+        private MockRefresher(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        protected RefreshResult invokeRefresh(KeycloakDeployment deployment, String refreshToken) throws IOException {
+            calls.incrementAndGet();
+            if (release != null) {
+                try {
+                    assertTrue(release.await(10, TimeUnit.SECONDS));
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+            if (fail) {
+                throw new IOException("Auth server not available");
+            }
+
+            AccessToken token = new AccessToken();
+            token.expiration(Time.currentTime() + 300);
+            return new RefreshResult(new AccessTokenResponse(), token);
+        }
+
+    }
+
+}
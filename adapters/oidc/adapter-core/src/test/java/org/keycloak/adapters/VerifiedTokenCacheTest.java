@@ -0,0 +1,133 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.adapters;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.keycloak.common.VerificationException;
+import org.keycloak.common.util.Time;
+import org.keycloak.jose.jws.JWSBuilder;
+import org.keycloak.representations.AccessToken;
+import org.keycloak.util.TokenUtil;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class VerifiedTokenCacheTest {
+
+    private static final String REALM_URL = "http://localhost:8080/auth/realms/demo";
+
+    private static KeyPair keyPair;
+
+    private KeycloakDeployment deployment;
+
+    @BeforeClass
+    public static void generateKeys() throws Exception {
+        keyPair = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+    }
+
+    @Before
+    public void before() {
+        deployment = new KeycloakDeployment() {
+            @Override
+            public String getRealmInfoUrl() {
+                return REALM_URL;
+            }
+        };
+        deployment.setRealmKey(keyPair.getPublic());
+    }
+
+    @Test
+    public void cachedToken() throws Exception {
+        VerifiedTokenCache cache = new VerifiedTokenCache(10);
+        String encoded = createToken("user1", Time.currentTime() + 100);
+
+        AccessToken token = cache.verifyToken(encoded, deployment);
+        assertSame(token, cache.verifyToken(encoded, deployment));
+        assertSame(token, cache.verifyToken(encoded, deployment));
+
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void expiredToken() throws Exception {
+        VerifiedTokenCache cache = new VerifiedTokenCache(10);
+        String encoded = createToken("user1", Time.currentTime() + 100);
+
+        cache.verifyToken(encoded, deployment);
+
+        Time.setOffset(200);
+        try {
+            cache.verifyToken(encoded, deployment);
+            fail("Expected token to be expired");
+        } catch (VerificationException expected) {
+        } finally {
+            Time.setOffset(0);
+        }
+
+        assertEquals(0, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void maxSize() throws Exception {
+        VerifiedTokenCache cache = new VerifiedTokenCache(2);
+        String encoded1 = createToken("user1", Time.currentTime() + 100);
+        String encoded2 = createToken("user2", Time.currentTime() + 100);
+        String encoded3 = createToken("user3", Time.currentTime() + 100);
+
+        AccessToken token1 = cache.verifyToken(encoded1, deployment);
+        cache.verifyToken(encoded2, deployment);
+        cache.verifyToken(encoded3, deployment);
+
+        assertEquals(2, cache.size());
+        assertNotSame(token1, cache.verifyToken(encoded1, deployment));
+    }
+
+    @Test
+    public void invalidSignature() throws Exception {
+        VerifiedTokenCache cache = new VerifiedTokenCache(10);
+        String encoded = createToken("user1", Time.currentTime() + 100);
+
+        cache.verifyToken(encoded, deployment);
+
+        deployment.setRealmKey(KeyPairGenerator.getInstance("RSA").generateKeyPair().getPublic());
+        try {
+            cache.verifyToken(encoded, deployment);
+            fail("Expected invalid signature");
+        } catch (VerificationException expected) {
+        }
+    }
+
+    private String createToken(String subject, int expiration) {
+        AccessToken token = new AccessToken();
+        token.type(TokenUtil.TOKEN_TYPE_BEARER)
+                .subject(subject)
+                .issuer(REALM_URL)
+                .expiration(expiration);
+        return new JWSBuilder().jsonContent(token).rsa256(keyPair.getPrivate());
+    }
+
+}
@@ -25,13 +25,25 @@ import org.keycloak.common.util.Base64Url;
 import javax.crypto.Mac;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
+import java.security.Key;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
 
 /**
  * @author <a href="mailto:bill@burkecentral.com">Bill Burke</a>
  * @version $Revision: 1 $
  */
 public class HMACProvider implements SignatureProvider {
+
+    private static final ThreadLocal<Map<Algorithm, MacEngine>> engines = new ThreadLocal<Map<Algorithm, MacEngine>>() {
+        @Override
+        protected Map<Algorithm, MacEngine> initialValue() {
+            return new EnumMap<>(Algorithm.class);
+        }
+    };
+
     private static String getJavaAlgorithm(Algorithm alg) {
         switch (alg) {
             case HS256:
@@ -57,27 +69,38 @@ public class HMACProvider implements SignatureProvider {
     }
 
     public static byte[] sign(byte[] data, Algorithm algorithm, byte[] sharedSecret) {
+        Map<Algorithm, MacEngine> threadEngines = engines.get();
         try {
-            Mac mac = getMAC(algorithm);
-            mac.init(new SecretKeySpec(sharedSecret, mac.getAlgorithm()));
+            Mac mac = getEngine(threadEngines, algorithm).init(sharedSecret);
             mac.update(data);
             return mac.doFinal();
         } catch (Exception e) {
+            threadEngines.remove(algorithm);
             throw new RuntimeException(e);
         }
     }
 
     public static byte[] sign(byte[] data, Algorithm algorithm, SecretKey key) {
+        Map<Algorithm, MacEngine> threadEngines = engines.get();
         try {
-            Mac mac = getMAC(algorithm);
-            mac.init(key);
+            Mac mac = getEngine(threadEngines, algorithm).init(key);
             mac.update(data);
             return mac.doFinal();
         } catch (Exception e) {
+            threadEngines.remove(algorithm);
             throw new RuntimeException(e);
         }
     }
 
+    private static MacEngine getEngine(Map<Algorithm, MacEngine> threadEngines, Algorithm algorithm) {
+        MacEngine engine = threadEngines.get(algorithm);
+        if (engine == null) {
+            engine = new MacEngine(getMAC(algorithm));
+            threadEngines.put(algorithm, engine);
+        }
+        return engine;
+    }
+
     public static boolean verify(JWSInput input, SecretKey key) {
         try {
             byte[] signature = sign(input.getEncodedSignatureInput().getBytes("UTF-8"), input.getHeader().getAlgorithm(), key);
@@ -103,4 +126,40 @@ public class HMACProvider implements SignatureProvider {
     public boolean verify(JWSInput input, String key) {
         return false;
     }
+
+    /**
+     * Mac instance reused by a single thread. A mac is reset to its initial key once doFinal completes, so it's only
+     * initialized again when the key changes.
+     */
+    private static class MacEngine {
+
+        private final Mac mac;
+        private Key key;
+        private byte[] secret;
+
+        private MacEngine(Mac mac) {
+            this.mac = mac;
+        }
+
+        private Mac init(byte[] sharedSecret) throws Exception {
+            if (secret == null || !Arrays.equals(secret, sharedSecret)) {
+                key = null;
+                secret = null;
+                mac.init(new SecretKeySpec(sharedSecret, mac.getAlgorithm()));
+                secret = sharedSecret.clone();
+            }
+            return mac;
+        }
+
+        private Mac init(SecretKey secretKey) throws Exception {
+            if (key != secretKey) {
+                key = null;
+                secret = null;
+                mac.init(secretKey);
+                key = secretKey;
+            }
+            return mac;
+        }
+
+    }
 }
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.jose.jws.crypto;
+
+import org.keycloak.common.util.PemUtils;
+
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of keys and certificates parsed from PEM. Parsing is relatively expensive and the same few realm
+ * and client keys are decoded over and over again when tokens are signed and verified.
+ */
+public class ParsedKeyCache {
+
+    private static final int MAX_ENTRIES = 256;
+
+    private static final Map<String, PublicKey> publicKeys = createCache();
+    private static final Map<String, PrivateKey> privateKeys = createCache();
+    private static final Map<String, X509Certificate> certificates = createCache();
+
+    public static PublicKey getPublicKey(String pem) throws Exception {
+        PublicKey publicKey = publicKeys.get(pem);
+        if (publicKey == null) {
+            publicKey = PemUtils.decodePublicKey(pem);
+            publicKeys.put(pem, publicKey);
+        }
+        return publicKey;
+    }
+
+    public static PrivateKey getPrivateKey(String pem) throws Exception {
+        PrivateKey privateKey = privateKeys.get(pem);
+        if (privateKey == null) {
+            privateKey = PemUtils.decodePrivateKey(pem);
+            privateKeys.put(pem, privateKey);
+        }
+        return privateKey;
+    }
+
+    public static X509Certificate getCertificate(String pem) throws Exception {
+        X509Certificate certificate = certificates.get(pem);
+        if (certificate == null) {
+            certificate = PemUtils.decodeCertificate(pem);
+            certificates.put(pem, certificate);
+        }
+        return certificate;
+    }
+
+    public static void clear() {
+        publicKeys.clear();
+        privateKeys.clear();
+        certificates.clear();
+    }
+
+    private static <V> Map<String, V> createCache() {
+        return Collections.synchronizedMap(new LinkedHashMap<String, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return size() > MAX_ENTRIES;
+            }
+        });
+    }
+
+}
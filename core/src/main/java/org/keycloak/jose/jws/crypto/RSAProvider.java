@@ -20,18 +20,28 @@ package org.keycloak.jose.jws.crypto;
 
 import org.keycloak.jose.jws.Algorithm;
 import org.keycloak.jose.jws.JWSInput;
-import org.keycloak.common.util.PemUtils;
 
+import java.security.Key;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.Signature;
 import java.security.cert.X509Certificate;
+import java.util.EnumMap;
+import java.util.Map;
 
 /**
  * @author <a href="mailto:bill@burkecentral.com">Bill Burke</a>
  * @version $Revision: 1 $
  */
 public class RSAProvider implements SignatureProvider {
+
+    private static final ThreadLocal<Map<Algorithm, SignatureEngine>> engines = new ThreadLocal<Map<Algorithm, SignatureEngine>>() {
+        @Override
+        protected Map<Algorithm, SignatureEngine> initialValue() {
+            return new EnumMap<>(Algorithm.class);
+        }
+    };
+
     public static String getJavaAlgorithm(Algorithm alg) {
         switch (alg) {
             case RS256:
@@ -54,12 +64,13 @@ public class RSAProvider implements SignatureProvider {
     }
 
     public static byte[] sign(byte[] data, Algorithm algorithm, PrivateKey privateKey) {
+        Map<Algorithm, SignatureEngine> threadEngines = engines.get();
         try {
-            Signature signature = getSignature(algorithm);
-            signature.initSign(privateKey);
+            Signature signature = getEngine(threadEngines, algorithm).initSign(privateKey);
             signature.update(data);
             return signature.sign();
         } catch (Exception e) {
+            threadEngines.remove(algorithm);
             throw new RuntimeException(e);
         }
     }
@@ -67,7 +78,7 @@ public class RSAProvider implements SignatureProvider {
     public static boolean verifyViaCertificate(JWSInput input, String cert) {
         X509Certificate certificate = null;
         try {
-            certificate = PemUtils.decodeCertificate(cert);
+            certificate = ParsedKeyCache.getCertificate(cert);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
@@ -75,17 +86,67 @@ public class RSAProvider implements SignatureProvider {
     }
 
     public static boolean verify(JWSInput input, PublicKey publicKey) {
+        Map<Algorithm, SignatureEngine> threadEngines = engines.get();
+        Algorithm algorithm = input.getHeader().getAlgorithm();
         try {
-            Signature verifier = getSignature(input.getHeader().getAlgorithm());
-            verifier.initVerify(publicKey);
+            Signature verifier = getEngine(threadEngines, algorithm).initVerify(publicKey);
             verifier.update(input.getEncodedSignatureInput().getBytes("UTF-8"));
             return verifier.verify(input.getSignature());
         } catch (Exception e) {
+            if (algorithm != null) {
+                threadEngines.remove(algorithm);
+            }
             return false;
         }
 
     }
 
+    private static SignatureEngine getEngine(Map<Algorithm, SignatureEngine> threadEngines, Algorithm algorithm) {
+        SignatureEngine engine = threadEngines.get(algorithm);
+        if (engine == null) {
+            engine = new SignatureEngine(getSignature(algorithm));
+            threadEngines.put(algorithm, engine);
+        }
+        return engine;
+    }
+
+    /**
+     * Signature instance reused by a single thread. A signature returns to the state it was initialized in once
+     * sign or verify completes, so it's only initialized again when the key or the operation changes. If an
+     * operation fails the engine is discarded as its state is unknown.
+     */
+    private static class SignatureEngine {
+
+        private final Signature signature;
+        private Key key;
+        private boolean signing;
+
+        private SignatureEngine(Signature signature) {
+            this.signature = signature;
+        }
+
+        private Signature initSign(PrivateKey privateKey) throws Exception {
+            if (key != privateKey || !signing) {
+                key = null;
+                signature.initSign(privateKey);
+                key = privateKey;
+                signing = true;
+            }
+            return signature;
+        }
+
+        private Signature initVerify(PublicKey publicKey) throws Exception {
+            if (key != publicKey || signing) {
+                key = null;
+                signature.initVerify(publicKey);
+                key = publicKey;
+                signing = false;
+            }
+            return signature;
+        }
+
+    }
+
     @Override
     public boolean verify(JWSInput input, String key) {
         return verifyViaCertificate(input, key);
@@ -31,11 +31,12 @@ import com.fasterxml.jackson.annotation.JsonPropertyOrder;
         "use-resource-role-mappings",
         "enable-cors", "cors-max-age", "cors-allowed-methods",
         "expose-token", "bearer-only",
-        "connection-pool-size",
+        "connection-pool-size", "connection-pool-size-per-route", "connection-keep-alive", "async-http-client",
         "allow-any-hostname", "disable-trust-manager", "truststore", "truststore-password",
         "client-keystore", "client-keystore-password", "client-key-password",
         "auth-server-url-for-backend-requests", "always-refresh-token",
-        "register-node-at-startup", "register-node-period", "token-store", "principal-attribute"
+        "register-node-at-startup", "register-node-period", "token-store", "principal-attribute",
+        "token-cache-size", "token-minimum-time-to-live"
 })
 public class AdapterConfig extends BaseAdapterConfig {
 
@@ -55,6 +56,12 @@ public class AdapterConfig extends BaseAdapterConfig {
     protected String clientKeyPassword;
     @JsonProperty("connection-pool-size")
     protected int connectionPoolSize = 20;
+    @JsonProperty("connection-pool-size-per-route")
+    protected int connectionPoolSizePerRoute = 0;
+    @JsonProperty("connection-keep-alive")
+    protected int connectionKeepAlive = -1;
+    @JsonProperty("async-http-client")
+    protected boolean asyncHttpClient = false;
     @JsonProperty("auth-server-url-for-backend-requests")
     protected String authServerUrlForBackendRequests;
     @JsonProperty("always-refresh-token")
@@ -69,6 +76,10 @@ public class AdapterConfig extends BaseAdapterConfig {
     protected String principalAttribute;
     @JsonProperty("turn-off-change-session-id-on-login")
     protected Boolean turnOffChangeSessionIdOnLogin;
+    @JsonProperty("token-cache-size")
+    protected int tokenCacheSize = 0;
+    @JsonProperty("token-minimum-time-to-live")
+    protected int tokenMinimumTimeToLive = 0;
 
     public boolean isAllowAnyHostname() {
         return allowAnyHostname;
@@ -134,6 +145,30 @@ public class AdapterConfig extends BaseAdapterConfig {
         this.connectionPoolSize = connectionPoolSize;
     }
 
+    public int getConnectionPoolSizePerRoute() {
+        return connectionPoolSizePerRoute;
+    }
+
+    public void setConnectionPoolSizePerRoute(int connectionPoolSizePerRoute) {
+        this.connectionPoolSizePerRoute = connectionPoolSizePerRoute;
+    }
+
+    public int getConnectionKeepAlive() {
+        return connectionKeepAlive;
+    }
+
+    public void setConnectionKeepAlive(int connectionKeepAlive) {
+        this.connectionKeepAlive = connectionKeepAlive;
+    }
+
+    public boolean isAsyncHttpClient() {
+        return asyncHttpClient;
+    }
+
+    public void setAsyncHttpClient(boolean asyncHttpClient) {
+        this.asyncHttpClient = asyncHttpClient;
+    }
+
     public String getAuthServerUrlForBackendRequests() {
         return authServerUrlForBackendRequests;
     }
@@ -189,4 +224,20 @@ public class AdapterConfig extends BaseAdapterConfig {
     public void setTurnOffChangeSessionIdOnLogin(Boolean turnOffChangeSessionIdOnLogin) {
         this.turnOffChangeSessionIdOnLogin = turnOffChangeSessionIdOnLogin;
     }
+
+    public int getTokenCacheSize() {
+        return tokenCacheSize;
+    }
+
+    public void setTokenCacheSize(int tokenCacheSize) {
+        this.tokenCacheSize = tokenCacheSize;
+    }
+
+    public int getTokenMinimumTimeToLive() {
+        return tokenMinimumTimeToLive;
+    }
+
+    public void setTokenMinimumTimeToLive(int tokenMinimumTimeToLive) {
+        this.tokenMinimumTimeToLive = tokenMinimumTimeToLive;
+    }
 }
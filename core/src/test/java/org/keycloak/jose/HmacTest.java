@@ -43,5 +43,23 @@ public class HmacTest {
         Assert.assertTrue(HMACProvider.verify(input, secret));
     }
 
+    @Test
+    public void testHmacSignaturesDifferentKeys() throws Exception {
+        byte[] secret1 = UUID.randomUUID().toString().getBytes();
+        byte[] secret2 = UUID.randomUUID().toString().getBytes();
+
+        String encoded1 = new JWSBuilder().content("12345678901234567890".getBytes()).hmac256(secret1);
+        String encoded2 = new JWSBuilder().content("12345678901234567890".getBytes()).hmac256(secret2);
+
+        JWSInput input1 = new JWSInput(encoded1);
+        JWSInput input2 = new JWSInput(encoded2);
+
+        Assert.assertTrue(HMACProvider.verify(input1, secret1));
+        Assert.assertFalse(HMACProvider.verify(input1, secret2));
+        Assert.assertTrue(HMACProvider.verify(input2, secret2));
+        Assert.assertFalse(HMACProvider.verify(input2, secret1));
+        Assert.assertTrue(HMACProvider.verify(input1, secret1));
+    }
+
 
 }
@@ -109,6 +109,27 @@ public class LDAPConfig {
         return config.get(LDAPConstants.CONNECTION_POOLING);
     }
 
+    public int getConnectionPoolSize() {
+        return (int) getLong(LDAPConstants.CONNECTION_POOL_SIZE, LDAPConstants.DEFAULT_CONNECTION_POOL_SIZE);
+    }
+
+    public int getBindConnectionPoolSize() {
+        return (int) getLong(LDAPConstants.BIND_CONNECTION_POOL_SIZE, LDAPConstants.DEFAULT_BIND_CONNECTION_POOL_SIZE);
+    }
+
+    public long getConnectionPoolIdleTimeout() {
+        return getLong(LDAPConstants.CONNECTION_POOL_IDLE_TIMEOUT, LDAPConstants.DEFAULT_CONNECTION_POOL_IDLE_TIMEOUT);
+    }
+
+    public long getConnectionPoolValidationInterval() {
+        return getLong(LDAPConstants.CONNECTION_POOL_VALIDATION_INTERVAL, LDAPConstants.DEFAULT_CONNECTION_POOL_VALIDATION_INTERVAL);
+    }
+
+    private long getLong(String name, long defaultValue) {
+        String value = config.get(name);
+        return value == null || value.trim().isEmpty() ? defaultValue : Long.parseLong(value.trim());
+    }
+
     public Properties getAdditionalConnectionProperties() {
         // not supported for now
         return null;
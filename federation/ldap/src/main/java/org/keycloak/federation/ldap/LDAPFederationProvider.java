@@ -27,6 +27,7 @@ import org.keycloak.federation.ldap.idm.query.internal.LDAPQueryConditionsBuilde
 import org.keycloak.federation.ldap.idm.store.ldap.LDAPIdentityStore;
 import org.keycloak.federation.ldap.kerberos.LDAPProviderKerberosConfig;
 import org.keycloak.federation.ldap.mappers.LDAPFederationMapper;
+import org.keycloak.federation.ldap.mappers.membership.LDAPMembershipCache;
 import org.keycloak.models.CredentialValidationOutput;
 import org.keycloak.models.GroupModel;
 import org.keycloak.models.KeycloakSession;
@@ -100,15 +101,41 @@ public class LDAPFederationProvider implements UserFederationProvider {
         return this.ldapIdentityStore;
     }
 
+    /**
+     * @return usage of the LDAP connection pools of this provider
+     */
+    public Map<String, String> getConnectionPoolStatistics() {
+        return this.ldapIdentityStore.getConnectionPoolStatistics();
+    }
+
+    public LDAPMembershipCache getMembershipCache() {
+        return factory.getMembershipCache(model);
+    }
+
+    public LDAPUserCache getUserCache() {
+        return factory.getUserCache(model);
+    }
+
+    /**
+     * Drops the cached LDAP entry of the user after it was changed in LDAP
+     */
+    public void onLDAPUserUpdated(LDAPObject ldapUser) {
+        getUserCache().invalidateUser(ldapUser.getUuid());
+    }
+
     public EditMode getEditMode() {
         return editMode;
     }
 
     @Override
     public UserModel validateAndProxy(RealmModel realm, UserModel local) {
-        LDAPObject ldapObject = loadAndValidateUser(realm, local);
-        if (ldapObject == null) {
-            return null;
+        LDAPObject ldapObject = getUserCache().get(local.getUsername());
+        if (ldapObject == null || !ldapObject.getUuid().equals(local.getFirstAttribute(LDAPConstants.LDAP_ID))) {
+            ldapObject = loadAndValidateUser(realm, local);
+            if (ldapObject == null) {
+                return null;
+            }
+            getUserCache().put(local.getUsername(), ldapObject);
         }
 
         return proxy(realm, local, ldapObject);
@@ -187,6 +214,8 @@ public class LDAPFederationProvider implements UserFederationProvider {
         }
 
         ldapIdentityStore.remove(ldapObject);
+        getMembershipCache().invalidateUser(ldapObject.getDn().toString());
+        onLDAPUserUpdated(ldapObject);
         return true;
     }
 
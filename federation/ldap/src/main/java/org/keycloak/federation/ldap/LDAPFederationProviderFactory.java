@@ -33,6 +33,7 @@ import org.keycloak.federation.ldap.mappers.FullNameLDAPFederationMapperFactory;
 import org.keycloak.federation.ldap.mappers.LDAPFederationMapper;
 import org.keycloak.federation.ldap.mappers.UserAttributeLDAPFederationMapper;
 import org.keycloak.federation.ldap.mappers.UserAttributeLDAPFederationMapperFactory;
+import org.keycloak.federation.ldap.mappers.membership.LDAPMembershipCache;
 import org.keycloak.federation.ldap.mappers.msad.MSADUserAccountControlMapperFactory;
 import org.keycloak.mappers.UserFederationMapper;
 import org.keycloak.models.KeycloakSession;
@@ -48,23 +49,37 @@ import org.keycloak.models.UserFederationProviderModel;
 import org.keycloak.models.UserFederationSyncResult;
 import org.keycloak.models.UserModel;
 import org.keycloak.models.utils.KeycloakModelUtils;
+import org.keycloak.provider.ServerInfoAwareProviderFactory;
 
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * @author <a href="mailto:mposolda@redhat.com">Marek Posolda</a>
  * @author <a href="mailto:bill@burkecentral.com">Bill Burke</a>
  * @version $Revision: 1 $
  */
-public class LDAPFederationProviderFactory extends UserFederationEventAwareProviderFactory {
+public class LDAPFederationProviderFactory extends UserFederationEventAwareProviderFactory implements ServerInfoAwareProviderFactory {
     private static final Logger logger = Logger.getLogger(LDAPFederationProviderFactory.class);
     public static final String PROVIDER_NAME = LDAPConstants.LDAP_PROVIDER;
 
     private LDAPIdentityStoreRegistry ldapStoreRegistry;
 
+    // Progress of failed syncs by federation provider
+    private final ConcurrentMap<String, SyncCheckpoint> syncCheckpoints = new ConcurrentHashMap<String, SyncCheckpoint>();
+
+    // Caches by federation provider
+    private final ConcurrentMap<String, ProviderCaches> providerCaches = new ConcurrentHashMap<String, ProviderCaches>();
+    private int membershipCacheMaxSize;
+    private long membershipCacheTtl;
+
     @Override
     public UserFederationProvider create(KeycloakSession session) {
         throw new IllegalAccessError("Illegal to call this method");
@@ -79,13 +94,80 @@ public class LDAPFederationProviderFactory extends UserFederationEventAwareProvi
     @Override
     public void init(Config.Scope config) {
         this.ldapStoreRegistry = new LDAPIdentityStoreRegistry();
+        this.membershipCacheMaxSize = config.getInt("membershipCacheMaxSize", 10000);
+        this.membershipCacheTtl = config.getLong("membershipCacheTtl", 300000L);
+    }
+
+    /**
+     * @return cache of LDAP group memberships of users of the federation provider
+     */
+    public LDAPMembershipCache getMembershipCache(UserFederationProviderModel model) {
+        return getProviderCaches(model).membershipCache;
+    }
+
+    /**
+     * @return cache of LDAP entries of users of the federation provider
+     */
+    public LDAPUserCache getUserCache(UserFederationProviderModel model) {
+        return getProviderCaches(model).userCache;
+    }
+
+    // The caches are replaced when the configuration of the provider changes, also when it's changed on another node
+    private ProviderCaches getProviderCaches(UserFederationProviderModel model) {
+        ProviderCaches caches = providerCaches.get(model.getId());
+        if (caches != null && caches.config.equals(model.getConfig())) {
+            return caches;
+        }
+
+        synchronized (providerCaches) {
+            caches = providerCaches.get(model.getId());
+            if (caches == null || !caches.config.equals(model.getConfig())) {
+                caches = new ProviderCaches(model.getConfig());
+                providerCaches.put(model.getId(), caches);
+            }
+            return caches;
+        }
     }
 
     @Override
     public void close() {
+        if (this.ldapStoreRegistry != null) {
+            this.ldapStoreRegistry.close();
+        }
         this.ldapStoreRegistry = null;
     }
 
+    @Override
+    public Map<String, String> getOperationalInfo() {
+        if (this.ldapStoreRegistry == null) {
+            return null;
+        }
+
+        Map<String, String> info = this.ldapStoreRegistry.getConnectionPoolStatistics();
+
+        long hits = 0;
+        long misses = 0;
+        int size = 0;
+        long userHits = 0;
+        long userMisses = 0;
+        int userSize = 0;
+        for (ProviderCaches caches : providerCaches.values()) {
+            hits += caches.membershipCache.getHits();
+            misses += caches.membershipCache.getMisses();
+            size += caches.membershipCache.size();
+            userHits += caches.userCache.getHits();
+            userMisses += caches.userCache.getMisses();
+            userSize += caches.userCache.size();
+        }
+        info.put("membershipCacheSize", String.valueOf(size));
+        info.put("membershipCacheHits", String.valueOf(hits));
+        info.put("membershipCacheMisses", String.valueOf(misses));
+        info.put("userCacheSize", String.valueOf(userSize));
+        info.put("userCacheHits", String.valueOf(userHits));
+        info.put("userCacheMisses", String.valueOf(userMisses));
+        return info;
+    }
+
     @Override
     public String getId() {
         return PROVIDER_NAME;
@@ -97,9 +179,17 @@ public class LDAPFederationProviderFactory extends UserFederationEventAwareProvi
     }
 
 
+    @Override
+    public void onProviderModelRemoved(RealmModel realm, UserFederationProviderModel removedProviderModel) {
+        providerCaches.remove(removedProviderModel.getId());
+        syncCheckpoints.remove(removedProviderModel.getId());
+    }
+
     // Best effort to create appropriate mappers according to our LDAP config
     @Override
     public void onProviderModelCreated(RealmModel realm, UserFederationProviderModel newProviderModel) {
+        providerCaches.remove(newProviderModel.getId());
+
         LDAPConfig ldapConfig = new LDAPConfig(newProviderModel.getConfig());
 
         boolean activeDirectory = ldapConfig.isActiveDirectory();
@@ -217,12 +307,12 @@ public class LDAPFederationProviderFactory extends UserFederationEventAwareProvi
 
     @Override
     public UserFederationSyncResult syncAllUsers(KeycloakSessionFactory sessionFactory, final String realmId, final UserFederationProviderModel model) {
-        syncMappers(sessionFactory, realmId, model);
-
         logger.infof("Sync all users from LDAP to local store: realm: %s, federation provider: %s", realmId, model.getDisplayName());
+        getMembershipCache(model).invalidateAll();
+        getUserCache(model).invalidateAll();
 
         LDAPQuery userQuery = createQuery(sessionFactory, realmId, model);
-        UserFederationSyncResult syncResult = syncImpl(sessionFactory, userQuery, realmId, model);
+        UserFederationSyncResult syncResult = syncImpl(sessionFactory, userQuery, realmId, model, "all");
 
         // TODO: Remove all existing keycloak users, which have federation links, but are not in LDAP. Perhaps don't check users, which were just added or updated during this sync?
 
@@ -232,9 +322,9 @@ public class LDAPFederationProviderFactory extends UserFederationEventAwareProvi
 
     @Override
     public UserFederationSyncResult syncChangedUsers(KeycloakSessionFactory sessionFactory, String realmId, UserFederationProviderModel model, Date lastSync) {
-        syncMappers(sessionFactory, realmId, model);
-
         logger.infof("Sync changed users from LDAP to local store: realm: %s, federation provider: %s, last sync time: " + lastSync, realmId, model.getDisplayName());
+        getMembershipCache(model).invalidateAll();
+        getUserCache(model).invalidateAll();
 
         // Sync newly created and updated users
         LDAPQueryConditionsBuilder conditionsBuilder = new LDAPQueryConditionsBuilder();
@@ -244,7 +334,7 @@ public class LDAPFederationProviderFactory extends UserFederationEventAwareProvi
 
         LDAPQuery userQuery = createQuery(sessionFactory, realmId, model);
         userQuery.addWhereCondition(orCondition);
-        UserFederationSyncResult result = syncImpl(sessionFactory, userQuery, realmId, model);
+        UserFederationSyncResult result = syncImpl(sessionFactory, userQuery, realmId, model, "changed-" + lastSync.getTime());
 
         logger.infof("Sync changed users finished: %s", result.getStatus());
         return result;
@@ -270,32 +360,78 @@ public class LDAPFederationProviderFactory extends UserFederationEventAwareProvi
         });
     }
 
-    protected UserFederationSyncResult syncImpl(KeycloakSessionFactory sessionFactory, LDAPQuery userQuery, final String realmId, final UserFederationProviderModel fedModel) {
+    /**
+     * Syncs the federation mappers, then reads users from LDAP and imports them with parallel workers in batches of
+     * {@link LDAPConstants#BATCH_SIZE_FOR_SYNC} users per transaction.
+     *
+     * If the sync fails, the next sync of the same kind skips the users which were already imported.
+     */
+    protected UserFederationSyncResult syncImpl(final KeycloakSessionFactory sessionFactory, final LDAPQuery userQuery, final String realmId, final UserFederationProviderModel fedModel, String syncType) {
+        final boolean pagination = Boolean.parseBoolean(fedModel.getConfig().get(LDAPConstants.PAGINATION));
+
+        String pageSizeConfig = fedModel.getConfig().get(LDAPConstants.BATCH_SIZE_FOR_SYNC);
+        final int pageSize = pageSizeConfig!=null ? Integer.parseInt(pageSizeConfig) : LDAPConstants.DEFAULT_BATCH_SIZE_FOR_SYNC;
+
+        String workersConfig = fedModel.getConfig().get(LDAPConstants.SYNC_IMPORT_WORKERS);
+        int workers = workersConfig!=null ? Integer.parseInt(workersConfig) : LDAPConstants.DEFAULT_SYNC_IMPORT_WORKERS;
+
+        SyncCheckpoint checkpoint = syncCheckpoints.remove(fedModel.getId());
+        String[] skipIds = null;
+        if (checkpoint != null && checkpoint.syncType.equals(syncType)) {
+            skipIds = checkpoint.importedIds;
+            logger.infof("Resuming failed sync of federation provider '%s', skipping %d users imported already", fedModel.getDisplayName(), skipIds.length);
+        }
 
-        final UserFederationSyncResult syncResult = new UserFederationSyncResult();
+        LDAPSyncPipeline pipeline = new LDAPSyncPipeline(fedModel.getDisplayName(), workers, pageSize, skipIds, new LDAPSyncPipeline.BatchImporter() {
+
+            @Override
+            public UserFederationSyncResult importUsers(List<LDAPObject> users) {
+                return importLdapUsersBatch(sessionFactory, realmId, fedModel, users);
+            }
+
+        });
+
+        LDAPSyncPipeline.PageReader reader = new LDAPSyncPipeline.PageReader() {
+
+            private boolean nextPage = true;
+
+            @Override
+            public List<LDAPObject> nextPage() {
+                if (!nextPage) {
+                    return null;
+                }
 
-        boolean pagination = Boolean.parseBoolean(fedModel.getConfig().get(LDAPConstants.PAGINATION));
-        if (pagination) {
+                if (pagination) {
+                    userQuery.setLimit(pageSize);
+                    List<LDAPObject> users = userQuery.getResultList();
+                    nextPage = userQuery.getPaginationContext() != null;
+                    return users;
+                } else {
+                    // LDAP pagination not available. Read everything at once
+                    nextPage = false;
+                    return userQuery.getResultList();
+                }
+            }
 
-            String pageSizeConfig = fedModel.getConfig().get(LDAPConstants.BATCH_SIZE_FOR_SYNC);
-            int pageSize = pageSizeConfig!=null ? Integer.parseInt(pageSizeConfig) : LDAPConstants.DEFAULT_BATCH_SIZE_FOR_SYNC;
+        };
+
+        try {
+            return pipeline.run(reader, new Runnable() {
+
+                @Override
+                public void run() {
+                    syncMappers(sessionFactory, realmId, fedModel);
+                }
 
-            boolean nextPage = true;
-            while (nextPage) {
-                userQuery.setLimit(pageSize);
-                final List<LDAPObject> users = userQuery.getResultList();
-                nextPage = userQuery.getPaginationContext() != null;
-                UserFederationSyncResult currentPageSync = importLdapUsers(sessionFactory, realmId, fedModel, users);
-                syncResult.add(currentPageSync);
+            });
+        } catch (RuntimeException e) {
+            String[] importedIds = pipeline.getImportedIds();
+            if (importedIds.length > 0) {
+                syncCheckpoints.put(fedModel.getId(), new SyncCheckpoint(syncType, importedIds));
+                logger.warnf("Sync of federation provider '%s' failed after importing %d users. Next sync will skip them", fedModel.getDisplayName(), importedIds.length);
             }
-        } else {
-            // LDAP pagination not available. Do everything in single transaction
-            final List<LDAPObject> users = userQuery.getResultList();
-            UserFederationSyncResult currentSync = importLdapUsers(sessionFactory, realmId, fedModel, users);
-            syncResult.add(currentSync);
+            throw e;
         }
-
-        return syncResult;
     }
 
     private LDAPQuery createQuery(KeycloakSessionFactory sessionFactory, final String realmId, final UserFederationProviderModel model) {
@@ -317,15 +453,43 @@ public class LDAPFederationProviderFactory extends UserFederationEventAwareProvi
         return queryHolder.query;
     }
 
-    protected UserFederationSyncResult importLdapUsers(KeycloakSessionFactory sessionFactory, final String realmId, final UserFederationProviderModel fedModel, List<LDAPObject> ldapUsers) {
+    /**
+     * Imports the users in a single transaction. If that fails, every user is imported in its own transaction, so a
+     * single user doesn't fail the whole batch.
+     */
+    protected UserFederationSyncResult importLdapUsersBatch(KeycloakSessionFactory sessionFactory, final String realmId, final UserFederationProviderModel fedModel, final List<LDAPObject> ldapUsers) {
         final UserFederationSyncResult syncResult = new UserFederationSyncResult();
+        final List<String> addedUsernames = new LinkedList<String>();
+
+        try {
+            KeycloakModelUtils.runJobInTransaction(sessionFactory, new KeycloakSessionTask() {
+
+                @Override
+                public void run(KeycloakSession session) {
+                    LDAPFederationProvider ldapFedProvider = getInstance(session, fedModel);
+                    RealmModel currentRealm = session.realms().getRealm(realmId);
 
-        class BooleanHolder {
-            private boolean value = true;
+                    for (LDAPObject ldapUser : ldapUsers) {
+                        importLdapUser(session, ldapFedProvider, currentRealm, fedModel, ldapUser, syncResult, addedUsernames);
+                    }
+                }
+
+            });
+            return syncResult;
+        } catch (ModelException me) {
+            logger.debugf(me, "Failed to import batch of %d users from LDAP, importing them one by one", ldapUsers.size());
+
+            // Users added before the failure are only there if the store isn't transactional
+            removeUsers(sessionFactory, realmId, addedUsernames);
+            return importLdapUsers(sessionFactory, realmId, fedModel, ldapUsers);
         }
-        final BooleanHolder exists = new BooleanHolder();
+    }
+
+    protected UserFederationSyncResult importLdapUsers(KeycloakSessionFactory sessionFactory, final String realmId, final UserFederationProviderModel fedModel, List<LDAPObject> ldapUsers) {
+        final UserFederationSyncResult syncResult = new UserFederationSyncResult();
 
         for (final LDAPObject ldapUser : ldapUsers) {
+            final List<String> addedUsernames = new LinkedList<String>();
 
             try {
 
@@ -336,36 +500,7 @@ public class LDAPFederationProviderFactory extends UserFederationEventAwareProvi
                     public void run(KeycloakSession session) {
                         LDAPFederationProvider ldapFedProvider = getInstance(session, fedModel);
                         RealmModel currentRealm = session.realms().getRealm(realmId);
-
-                        String username = LDAPUtils.getUsername(ldapUser, ldapFedProvider.getLdapIdentityStore().getConfig());
-                        exists.value = true;
-                        LDAPUtils.checkUuid(ldapUser, ldapFedProvider.getLdapIdentityStore().getConfig());
-                        UserModel currentUser = session.userStorage().getUserByUsername(username, currentRealm);
-
-                        if (currentUser == null) {
-
-                            // Add new user to Keycloak
-                            exists.value = false;
-                            ldapFedProvider.importUserFromLDAP(session, currentRealm, ldapUser);
-                            syncResult.increaseAdded();
-
-                        } else {
-                            if ((fedModel.getId().equals(currentUser.getFederationLink())) && (ldapUser.getUuid().equals(currentUser.getFirstAttribute(LDAPConstants.LDAP_ID)))) {
-
-                                // Update keycloak user
-                                Set<UserFederationMapperModel> federationMappers = currentRealm.getUserFederationMappersByFederationProvider(fedModel.getId());
-                                for (UserFederationMapperModel mapperModel : federationMappers) {
-                                    LDAPFederationMapper ldapMapper = ldapFedProvider.getMapper(mapperModel);
-                                    ldapMapper.onImportUserFromLDAP(mapperModel, ldapFedProvider, ldapUser, currentUser, currentRealm, false);
-                                }
-
-                                logger.debugf("Updated user from LDAP: %s", currentUser.getUsername());
-                                syncResult.increaseUpdated();
-                            } else {
-                                logger.warnf("User '%s' is not updated during sync as he already exists in Keycloak database but is not linked to federation provider '%s'", username, fedModel.getDisplayName());
-                                syncResult.increaseFailed();
-                            }
-                        }
+                        importLdapUser(session, ldapFedProvider, currentRealm, fedModel, ldapUser, syncResult, addedUsernames);
                     }
 
                 });
@@ -374,35 +509,66 @@ public class LDAPFederationProviderFactory extends UserFederationEventAwareProvi
                 syncResult.increaseFailed();
 
                 // Remove user if we already added him during this transaction
-                if (!exists.value) {
-                    KeycloakModelUtils.runJobInTransaction(sessionFactory, new KeycloakSessionTask() {
-
-                        @Override
-                        public void run(KeycloakSession session) {
-                            LDAPFederationProvider ldapFedProvider = getInstance(session, fedModel);
-                            RealmModel currentRealm = session.realms().getRealm(realmId);
-                            String username = null;
-                            try {
-                                username = LDAPUtils.getUsername(ldapUser, ldapFedProvider.getLdapIdentityStore().getConfig());
-                            } catch (ModelException ignore) {
-                            }
-
-                            if (username != null) {
-                                UserModel existing = session.userStorage().getUserByUsername(username, currentRealm);
-                                if (existing != null) {
-                                    session.userStorage().removeUser(currentRealm, existing);
-                                }
-                            }
-                        }
-
-                    });
-                }
+                removeUsers(sessionFactory, realmId, addedUsernames);
             }
         }
 
         return syncResult;
     }
 
+    private void importLdapUser(KeycloakSession session, LDAPFederationProvider ldapFedProvider, RealmModel currentRealm, UserFederationProviderModel fedModel, LDAPObject ldapUser,
+                                UserFederationSyncResult syncResult, List<String> addedUsernames) {
+        String username = LDAPUtils.getUsername(ldapUser, ldapFedProvider.getLdapIdentityStore().getConfig());
+        LDAPUtils.checkUuid(ldapUser, ldapFedProvider.getLdapIdentityStore().getConfig());
+        UserModel currentUser = session.userStorage().getUserByUsername(username, currentRealm);
+
+        if (currentUser == null) {
+
+            // Add new user to Keycloak
+            addedUsernames.add(username);
+            ldapFedProvider.importUserFromLDAP(session, currentRealm, ldapUser);
+            syncResult.increaseAdded();
+
+        } else {
+            if ((fedModel.getId().equals(currentUser.getFederationLink())) && (ldapUser.getUuid().equals(currentUser.getFirstAttribute(LDAPConstants.LDAP_ID)))) {
+
+                // Update keycloak user
+                Set<UserFederationMapperModel> federationMappers = currentRealm.getUserFederationMappersByFederationProvider(fedModel.getId());
+                for (UserFederationMapperModel mapperModel : federationMappers) {
+                    LDAPFederationMapper ldapMapper = ldapFedProvider.getMapper(mapperModel);
+                    ldapMapper.onImportUserFromLDAP(mapperModel, ldapFedProvider, ldapUser, currentUser, currentRealm, false);
+                }
+
+                logger.debugf("Updated user from LDAP: %s", currentUser.getUsername());
+                syncResult.increaseUpdated();
+            } else {
+                logger.warnf("User '%s' is not updated during sync as he already exists in Keycloak database but is not linked to federation provider '%s'", username, fedModel.getDisplayName());
+                syncResult.increaseFailed();
+            }
+        }
+    }
+
+    private void removeUsers(KeycloakSessionFactory sessionFactory, final String realmId, final List<String> usernames) {
+        if (usernames.isEmpty()) {
+            return;
+        }
+
+        KeycloakModelUtils.runJobInTransaction(sessionFactory, new KeycloakSessionTask() {
+
+            @Override
+            public void run(KeycloakSession session) {
+                RealmModel currentRealm = session.realms().getRealm(realmId);
+                for (String username : usernames) {
+                    UserModel existing = session.userStorage().getUserByUsername(username, currentRealm);
+                    if (existing != null) {
+                        session.userStorage().removeUser(currentRealm, existing);
+                    }
+                }
+            }
+
+        });
+    }
+
     protected SPNEGOAuthenticator createSPNEGOAuthenticator(String spnegoToken, CommonKerberosConfig kerberosConfig) {
         KerberosServerSubjectAuthenticator kerberosAuth = createKerberosSubjectAuthenticator(kerberosConfig);
         return new SPNEGOAuthenticator(kerberosConfig, kerberosAuth, spnegoToken);
@@ -415,4 +581,30 @@ public class LDAPFederationProviderFactory extends UserFederationEventAwareProvi
     protected KerberosUsernamePasswordAuthenticator createKerberosUsernamePasswordAuthenticator(CommonKerberosConfig kerberosConfig) {
         return new KerberosUsernamePasswordAuthenticator(kerberosConfig);
     }
+
+    private static class SyncCheckpoint {
+
+        private final String syncType;
+        // Sorted LDAP ids of imported users
+        private final String[] importedIds;
+
+        private SyncCheckpoint(String syncType, String[] importedIds) {
+            this.syncType = syncType;
+            this.importedIds = importedIds;
+        }
+
+    }
+
+    private class ProviderCaches {
+
+        private final Map<String, String> config;
+        private final LDAPMembershipCache membershipCache = new LDAPMembershipCache(membershipCacheMaxSize, membershipCacheTtl);
+        private final LDAPUserCache userCache = new LDAPUserCache(membershipCacheMaxSize, membershipCacheTtl);
+
+        private ProviderCaches(Map<String, String> config) {
+            this.config = new HashMap<String, String>(config);
+        }
+
+    }
+
 }
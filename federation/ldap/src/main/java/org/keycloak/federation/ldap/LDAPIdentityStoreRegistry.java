@@ -18,6 +18,7 @@
 package org.keycloak.federation.ldap;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -44,12 +45,32 @@ public class LDAPIdentityStoreRegistry {
             logLDAPConfig(model.getDisplayName(), config);
 
             LDAPIdentityStore store = createLdapIdentityStore(config);
-            context = new LDAPIdentityStoreContext(config, store);
-            ldapStores.put(model.getId(), context);
+            LDAPIdentityStoreContext previous = ldapStores.put(model.getId(), new LDAPIdentityStoreContext(model.getDisplayName(), config, store));
+            if (previous != null) {
+                previous.store.close();
+            }
+            return store;
         }
         return context.store;
     }
 
+    public Map<String, String> getConnectionPoolStatistics() {
+        Map<String, String> stats = new LinkedHashMap<String, String>();
+        for (LDAPIdentityStoreContext context : ldapStores.values()) {
+            for (Map.Entry<String, String> e : context.store.getConnectionPoolStatistics().entrySet()) {
+                stats.put(context.displayName + "." + e.getKey(), e.getValue());
+            }
+        }
+        return stats;
+    }
+
+    public void close() {
+        for (LDAPIdentityStoreContext context : ldapStores.values()) {
+            context.store.close();
+        }
+        ldapStores.clear();
+    }
+
     // Don't log LDAP password
     private void logLDAPConfig(String fedProviderDisplayName, Map<String, String> ldapConfig) {
         Map<String, String> copy = new HashMap<String, String>(ldapConfig);
@@ -84,11 +105,13 @@ public class LDAPIdentityStoreRegistry {
 
     private class LDAPIdentityStoreContext {
 
-        private LDAPIdentityStoreContext(Map<String,String> config, LDAPIdentityStore store) {
+        private LDAPIdentityStoreContext(String displayName, Map<String,String> config, LDAPIdentityStore store) {
+            this.displayName = displayName;
             this.config = config;
             this.store = store;
         }
 
+        private String displayName;
         private Map<String,String> config;
         private LDAPIdentityStore store;
     }
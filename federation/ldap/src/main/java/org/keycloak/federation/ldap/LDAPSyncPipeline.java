@@ -0,0 +1,288 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.federation.ldap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.logging.Logger;
+import org.keycloak.federation.ldap.idm.model.LDAPObject;
+import org.keycloak.models.ModelException;
+import org.keycloak.models.UserFederationSyncResult;
+
+/**
+ * Syncs users from LDAP in parallel stages: the federation mappers are synced first, then the calling thread reads pages
+ * of users from LDAP and puts them to a bounded queue, and import workers take batches of users from the queue and import
+ * each batch in a single transaction.
+ *
+ * The LDAP ids of users in imported batches are tracked, so a sync failing in the middle can be resumed by a new pipeline
+ * skipping those users. LDAP doesn't return users in a stable order without a server-side sort, so users are skipped by
+ * their id rather than by their position in the results.
+ */
+public class LDAPSyncPipeline {
+
+    private static final Logger logger = Logger.getLogger(LDAPSyncPipeline.class);
+
+    private static final long POLL_MILLIS = 100;
+
+    // Tells a worker there are no more batches
+    private static final List<LDAPObject> END = new ArrayList<LDAPObject>();
+
+    public interface PageReader {
+        /**
+         * @return next page of users or null if there are no more users
+         */
+        List<LDAPObject> nextPage();
+    }
+
+    public interface BatchImporter {
+        /**
+         * Imports the batch. Failures of single users should be counted in the result rather than thrown.
+         */
+        UserFederationSyncResult importUsers(List<LDAPObject> users);
+    }
+
+    private final String name;
+    private final int workers;
+    private final int batchSize;
+    private final String[] skipIds;
+    private final BatchImporter importer;
+
+    private final UserFederationSyncResult syncResult = new UserFederationSyncResult();
+    private final BlockingQueue<List<LDAPObject>> queue;
+    private volatile RuntimeException failure;
+
+    // LDAP ids of users in imported batches
+    private final List<String> importedIds = new ArrayList<String>();
+
+    private final AtomicLong readUsers = new AtomicLong();
+    private final AtomicLong skippedUsers = new AtomicLong();
+    private final AtomicLong readNanos = new AtomicLong();
+    private final AtomicLong importedUsers = new AtomicLong();
+    private final AtomicLong importedBatches = new AtomicLong();
+    private volatile long importNanos;
+    private volatile long mappersNanos;
+
+    /**
+     * @param skipIds sorted LDAP ids of users imported already, as returned by {@link #getImportedIds()} of a failed sync
+     */
+    public LDAPSyncPipeline(String name, int workers, int batchSize, String[] skipIds, BatchImporter importer) {
+        this.name = name;
+        this.workers = Math.max(1, workers);
+        this.batchSize = Math.max(1, batchSize);
+        this.skipIds = skipIds != null ? skipIds : new String[0];
+        this.importer = importer;
+        this.queue = new ArrayBlockingQueue<List<LDAPObject>>(this.workers * 2);
+    }
+
+    public UserFederationSyncResult run(PageReader reader, Runnable mappersSync) {
+        long start = System.nanoTime();
+
+        // Mappers create groups and roles, which the imported users are then mapped to. Importing users at the same time
+        // would create them concurrently
+        mappersSync.run();
+        mappersNanos = System.nanoTime() - start;
+
+        long importStart = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(workers, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "ldap-sync-" + name + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        try {
+            List<Future<?>> importers = new ArrayList<Future<?>>();
+            for (int i = 0; i < workers; i++) {
+                importers.add(executor.submit(new ImportWorker()));
+            }
+
+            try {
+                readUsers(reader);
+            } catch (RuntimeException e) {
+                fail(e);
+            } finally {
+                for (int i = 0; i < workers; i++) {
+                    put(END);
+                }
+            }
+
+            for (Future<?> importer : importers) {
+                await(importer);
+            }
+            importNanos = System.nanoTime() - importStart;
+        } finally {
+            executor.shutdownNow();
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+
+        logStatistics(System.nanoTime() - start);
+        return syncResult;
+    }
+
+    private void readUsers(PageReader reader) {
+        List<LDAPObject> batch = new ArrayList<LDAPObject>(batchSize);
+
+        while (failure == null) {
+            long readStart = System.nanoTime();
+            List<LDAPObject> page = reader.nextPage();
+            readNanos.addAndGet(System.nanoTime() - readStart);
+            if (page == null) {
+                break;
+            }
+            readUsers.addAndGet(page.size());
+
+            for (LDAPObject user : page) {
+                if (user.getUuid() != null && Arrays.binarySearch(skipIds, user.getUuid()) >= 0) {
+                    // Imported by the sync we resume
+                    skippedUsers.incrementAndGet();
+                    continue;
+                }
+
+                batch.add(user);
+                if (batch.size() == batchSize) {
+                    put(batch);
+                    batch = new ArrayList<LDAPObject>(batchSize);
+                }
+            }
+        }
+
+        if (!batch.isEmpty() && failure == null) {
+            put(batch);
+        }
+    }
+
+    private void put(List<LDAPObject> batch) {
+        try {
+            while (!queue.offer(batch, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (failure != null) {
+                    // Workers might be gone already, don't wait for them
+                    queue.clear();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail(new ModelException("Interrupted while syncing users from LDAP"));
+        }
+    }
+
+    private void await(Future<?> future) {
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            fail(cause instanceof RuntimeException ? (RuntimeException) cause : new ModelException("Failed to sync users from LDAP", cause));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail(new ModelException("Interrupted while syncing users from LDAP"));
+        }
+    }
+
+    private synchronized void fail(RuntimeException e) {
+        if (failure == null) {
+            failure = e;
+        }
+    }
+
+    private synchronized void completed(List<LDAPObject> batch, UserFederationSyncResult result) {
+        syncResult.add(result);
+        for (LDAPObject user : batch) {
+            if (user.getUuid() != null) {
+                importedIds.add(user.getUuid());
+            }
+        }
+    }
+
+    /**
+     * @return sorted LDAP ids of users imported by this sync and by the sync it resumed
+     */
+    public synchronized String[] getImportedIds() {
+        String[] ids = Arrays.copyOf(skipIds, skipIds.length + importedIds.size());
+        for (int i = 0; i < importedIds.size(); i++) {
+            ids[skipIds.length + i] = importedIds.get(i);
+        }
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    private void logStatistics(long totalNanos) {
+        long readMillis = TimeUnit.NANOSECONDS.toMillis(readNanos.get());
+        long importMillis = TimeUnit.NANOSECONDS.toMillis(importNanos);
+
+        logger.infof("LDAP sync of '%s' took %d ms. Synced mappers in %d ms. Read %d users from LDAP in %d ms (%d users/s), skipped %d users imported already. Imported %d users in %d batches with %d workers in %d ms (%d users/s)",
+                name, TimeUnit.NANOSECONDS.toMillis(totalNanos), TimeUnit.NANOSECONDS.toMillis(mappersNanos),
+                readUsers.get(), readMillis, perSecond(readUsers.get(), readMillis), skippedUsers.get(),
+                importedUsers.get(), importedBatches.get(), workers, importMillis, perSecond(importedUsers.get(), importMillis));
+    }
+
+    private static long perSecond(long count, long millis) {
+        return millis > 0 ? count * 1000 / millis : count;
+    }
+
+    private class ImportWorker implements Runnable {
+
+        @Override
+        public void run() {
+            while (true) {
+                List<LDAPObject> batch;
+                try {
+                    batch = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+
+                if (batch == END || failure != null) {
+                    return;
+                } else if (batch == null) {
+                    continue;
+                }
+
+                try {
+                    UserFederationSyncResult result = importer.importUsers(batch);
+                    completed(batch, result);
+                    importedUsers.addAndGet(batch.size());
+                    importedBatches.incrementAndGet();
+                } catch (RuntimeException e) {
+                    logger.errorf(e, "Failed to import batch of %d users from LDAP", batch.size());
+                    fail(e);
+                    return;
+                }
+            }
+        }
+
+    }
+
+}
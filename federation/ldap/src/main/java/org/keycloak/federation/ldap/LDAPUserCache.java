@@ -0,0 +1,167 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.keycloak.federation.ldap;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.keycloak.federation.ldap.idm.model.LDAPDn;
+import org.keycloak.federation.ldap.idm.model.LDAPObject;
+
+/**
+ * Bounded cache of the LDAP entries of users, so proxying an LDAP user on each request (for example on token refresh)
+ * doesn't search LDAP each time.
+ * <p>
+ * There is one cache per federation provider, keyed by username. Entries are kept until they expire or are pushed out by
+ * more recently used entries. Changes of the user done through Keycloak invalidate the entry and syncs invalidate the
+ * whole cache. Changes done directly in LDAP or on another cluster node are visible after the entry expires.
+ * <p>
+ * Callers get their own copy of the entry, as proxied users modify it before writing it back to LDAP.
+ */
+public class LDAPUserCache {
+
+    private final int maxSize;
+    private final long ttlMillis;
+    private final Map<String, Entry> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public LDAPUserCache(final int maxSize, long ttlMillis) {
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMillis;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return maxSize > 0 && ttlMillis > 0;
+    }
+
+    /**
+     * @return copy of the cached LDAP entry of the user or null if there is none or it is expired
+     */
+    public LDAPObject get(String username) {
+        if (!isEnabled()) {
+            return null;
+        }
+
+        String key = username.toLowerCase();
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry != null && entry.expiration <= System.currentTimeMillis()) {
+                entries.remove(key);
+                entry = null;
+            }
+        }
+
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        hits.incrementAndGet();
+        return copy(entry.ldapUser);
+    }
+
+    public void put(String username, LDAPObject ldapUser) {
+        if (!isEnabled()) {
+            return;
+        }
+
+        Entry entry = new Entry(copy(ldapUser), System.currentTimeMillis() + ttlMillis);
+        synchronized (entries) {
+            entries.put(username.toLowerCase(), entry);
+        }
+    }
+
+    /**
+     * Removes the entry of the user with the given LDAP uuid. Entries are looked up by uuid, as the username may have
+     * been changed as well.
+     */
+    public void invalidateUser(String uuid) {
+        if (uuid == null) {
+            return;
+        }
+
+        synchronized (entries) {
+            for (Iterator<Entry> it = entries.values().iterator(); it.hasNext(); ) {
+                if (uuid.equals(it.next().ldapUser.getUuid())) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private static LDAPObject copy(LDAPObject ldapUser) {
+        LDAPObject copy = new LDAPObject();
+        copy.setUuid(ldapUser.getUuid());
+        copy.setDn(ldapUser.getDn() != null ? LDAPDn.fromString(ldapUser.getDn().toString()) : null);
+        copy.setRdnAttributeName(ldapUser.getRdnAttributeName());
+        copy.setObjectClasses(ldapUser.getObjectClasses());
+        for (String readOnlyAttribute : ldapUser.getReadOnlyAttributeNames()) {
+            copy.addReadOnlyAttributeName(readOnlyAttribute);
+        }
+        for (Map.Entry<String, Set<String>> attribute : ldapUser.getAttributes().entrySet()) {
+            Set<String> values = attribute.getValue() != null ? new LinkedHashSet<>(attribute.getValue()) : null;
+            copy.setAttribute(attribute.getKey(), values);
+        }
+        return copy;
+    }
+
+    private static class Entry {
+
+        private final LDAPObject ldapUser;
+        private final long expiration;
+
+        private Entry(LDAPObject ldapUser, long expiration) {
+            this.ldapUser = ldapUser;
+            this.expiration = expiration;
+        }
+
+    }
+
+}
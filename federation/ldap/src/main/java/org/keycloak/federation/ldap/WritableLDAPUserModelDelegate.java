@@ -51,6 +51,7 @@ public class WritableLDAPUserModelDelegate extends UserModelDelegate implements
             LDAPIdentityStore ldapIdentityStore = provider.getLdapIdentityStore();
             String password = cred.getValue();
             ldapIdentityStore.updatePassword(ldapObject, password);
+            provider.onLDAPUserUpdated(ldapObject);
         } else {
             logger.warnf("Don't know how to update credential of type [%s] for user [%s]", cred.getType(), delegate.getUsername());
         }
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.federation.ldap.idm.store.ldap;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.naming.NamingException;
+import javax.naming.ldap.LdapContext;
+
+import org.jboss.logging.Logger;
+
+/**
+ * <p>Pool of open LDAP contexts, so operations don't need a new connection, TLS handshake and bind each time.</p>
+ *
+ * <p>At most <code>maxSize</code> contexts are in use at the same time, callers wait for a free context up to
+ * <code>maxWaitMillis</code>. Contexts idle longer than <code>idleTimeoutMillis</code> are closed, and contexts idle
+ * longer than <code>validationIntervalMillis</code> are checked with a root DSE lookup before they are reused.</p>
+ *
+ * <p>After the pool is closed, contexts are still created on demand, but they are closed once released.</p>
+ */
+public class LDAPContextPool {
+
+    private static final Logger logger = Logger.getLogger(LDAPContextPool.class);
+
+    private static final String[] NO_ATTRIBUTES = new String[] { "1.1" };
+
+    public interface ContextFactory {
+        LdapContext create() throws NamingException;
+    }
+
+    private final String name;
+    private final ContextFactory factory;
+    private final int maxSize;
+    private final long idleTimeoutMillis;
+    private final long validationIntervalMillis;
+    private final long maxWaitMillis;
+
+    private final Semaphore permits;
+
+    // Most recently used context first
+    private final LinkedBlockingDeque<PooledContext> idle = new LinkedBlockingDeque<PooledContext>();
+    private volatile boolean closed;
+
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong reused = new AtomicLong();
+    private final AtomicLong invalidated = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+    private final AtomicLong waitTimeouts = new AtomicLong();
+
+    public LDAPContextPool(String name, ContextFactory factory, int maxSize, long idleTimeoutMillis, long validationIntervalMillis, long maxWaitMillis) {
+        this.name = name;
+        this.factory = factory;
+        this.maxSize = maxSize;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.validationIntervalMillis = validationIntervalMillis;
+        this.maxWaitMillis = maxWaitMillis;
+        this.permits = new Semaphore(maxSize, true);
+    }
+
+    /**
+     * Returns an idle context, or a new one if there is no idle context. Every borrowed context must be returned with
+     * {@link #release(LdapContext, boolean)}.
+     */
+    public LdapContext borrow() throws NamingException {
+        try {
+            if (!permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS)) {
+                waitTimeouts.incrementAndGet();
+                throw new NamingException("Timed out waiting for a connection of LDAP pool " + name);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NamingException("Interrupted while waiting for a connection of LDAP pool " + name);
+        }
+
+        try {
+            long currentTime = System.currentTimeMillis();
+            evictIdle(currentTime);
+
+            PooledContext pooled;
+            while ((pooled = idle.pollFirst()) != null) {
+                if (currentTime - pooled.lastUsed > validationIntervalMillis && !isValid(pooled.context)) {
+                    invalidated.incrementAndGet();
+                    close(pooled.context);
+                    continue;
+                }
+
+                reused.incrementAndGet();
+                return pooled.context;
+            }
+
+            LdapContext context = factory.create();
+            created.incrementAndGet();
+            return context;
+        } catch (NamingException e) {
+            permits.release();
+            throw e;
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * @param valid false if the connection of the context might be broken, so it is closed rather than reused
+     */
+    public void release(LdapContext context, boolean valid) {
+        try {
+            if (!valid) {
+                invalidated.incrementAndGet();
+                close(context);
+            } else if (closed) {
+                close(context);
+            } else {
+                PooledContext pooled = new PooledContext(context, System.currentTimeMillis());
+                idle.offerFirst(pooled);
+
+                // The pool might have been closed in the meantime
+                if (closed && idle.remove(pooled)) {
+                    close(context);
+                }
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    public void close() {
+        closed = true;
+
+        PooledContext pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            close(pooled.context);
+        }
+    }
+
+    private void evictIdle(long currentTime) {
+        PooledContext oldest;
+        while ((oldest = idle.peekLast()) != null && currentTime - oldest.lastUsed > idleTimeoutMillis) {
+            if (idle.removeLastOccurrence(oldest)) {
+                evicted.incrementAndGet();
+                close(oldest.context);
+            }
+        }
+    }
+
+    private boolean isValid(LdapContext context) {
+        try {
+            context.getAttributes("", NO_ATTRIBUTES);
+            return true;
+        } catch (NamingException e) {
+            logger.debugf(e, "Closing invalid connection of LDAP pool %s", name);
+            return false;
+        }
+    }
+
+    private void close(LdapContext context) {
+        try {
+            context.close();
+        } catch (NamingException e) {
+            logger.debugf(e, "Could not close connection of LDAP pool %s", name);
+        }
+    }
+
+    public int getActiveCount() {
+        return maxSize - permits.availablePermits();
+    }
+
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    public long getCreatedCount() {
+        return created.get();
+    }
+
+    public long getReusedCount() {
+        return reused.get();
+    }
+
+    public Map<String, String> getStatistics() {
+        Map<String, String> stats = new LinkedHashMap<String, String>();
+        stats.put("maxSize", String.valueOf(maxSize));
+        stats.put("active", String.valueOf(getActiveCount()));
+        stats.put("idle", String.valueOf(getIdleCount()));
+        stats.put("created", String.valueOf(getCreatedCount()));
+        stats.put("reused", String.valueOf(getReusedCount()));
+        stats.put("invalidated", String.valueOf(invalidated.get()));
+        stats.put("evicted", String.valueOf(evicted.get()));
+        stats.put("waitTimeouts", String.valueOf(waitTimeouts.get()));
+        return stats;
+    }
+
+    private static class PooledContext {
+
+        private final LdapContext context;
+        private final long lastUsed;
+
+        private PooledContext(LdapContext context, long lastUsed) {
+            this.context = context;
+            this.lastUsed = lastUsed;
+        }
+
+    }
+
+}
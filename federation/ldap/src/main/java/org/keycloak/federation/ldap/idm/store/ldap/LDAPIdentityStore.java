@@ -80,6 +80,14 @@ public class LDAPIdentityStore implements IdentityStore {
         return this.config;
     }
 
+    public Map<String, String> getConnectionPoolStatistics() {
+        return this.operationManager.getConnectionPoolStatistics();
+    }
+
+    public void close() {
+        this.operationManager.close();
+    }
+
     @Override
     public void add(LDAPObject ldapObject) {
         // id will be assigned by the ldap server
@@ -24,6 +24,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
@@ -31,10 +32,12 @@ import java.util.Set;
 
 import javax.naming.AuthenticationException;
 import javax.naming.Binding;
+import javax.naming.CommunicationException;
 import javax.naming.Context;
 import javax.naming.InitialContext;
 import javax.naming.NamingEnumeration;
 import javax.naming.NamingException;
+import javax.naming.ServiceUnavailableException;
 import javax.naming.directory.Attribute;
 import javax.naming.directory.Attributes;
 import javax.naming.directory.DirContext;
@@ -56,6 +59,9 @@ import org.keycloak.models.ModelException;
 /**
  * <p>This class provides a set of operations to manage LDAP trees.</p>
  *
+ * <p>Operations use contexts bound as the configured bind DN from a pool. Password checks use a separate pool, whose
+ * contexts are bound again as the user for every check.</p>
+ *
  * @author Anil Saldhana
  * @author <a href="mailto:psilva@redhat.com">Pedro Silva</a>
  */
@@ -66,9 +72,50 @@ public class LDAPOperationManager {
     private final LDAPConfig config;
     private final Map<String, Object> connectionProperties;
 
+    public static final long POOL_MAX_WAIT_MILLIS = 10000;
+
+    // Null if pooling is disabled
+    private final LDAPContextPool contextPool;
+    private final LDAPContextPool bindContextPool;
+
     public LDAPOperationManager(LDAPConfig config) throws NamingException {
         this.config = config;
         this.connectionProperties = Collections.unmodifiableMap(createConnectionProperties());
+        this.contextPool = createContextPool();
+        this.bindContextPool = createBindContextPool();
+    }
+
+    private LDAPContextPool createContextPool() {
+        if (config.getConnectionPoolSize() <= 0) {
+            return null;
+        }
+
+        return new LDAPContextPool("admin", new LDAPContextPool.ContextFactory() {
+            @Override
+            public LdapContext create() throws NamingException {
+                return createLdapContext();
+            }
+        }, config.getConnectionPoolSize(), config.getConnectionPoolIdleTimeout(), config.getConnectionPoolValidationInterval(), POOL_MAX_WAIT_MILLIS);
+    }
+
+    private LDAPContextPool createBindContextPool() {
+        if (config.getBindConnectionPoolSize() <= 0) {
+            return null;
+        }
+
+        return new LDAPContextPool("bind", new LDAPContextPool.ContextFactory() {
+            @Override
+            public LdapContext create() throws NamingException {
+                // Connect without bind, every password check binds the connection as the user
+                Hashtable<String, Object> env = new Hashtable<String, Object>(connectionProperties);
+                env.put(Context.SECURITY_AUTHENTICATION, LDAPConstants.AUTH_TYPE_NONE);
+                env.remove(Context.SECURITY_PRINCIPAL);
+                env.remove(Context.SECURITY_CREDENTIALS);
+                env.put("java.naming.ldap.version", "3");
+                env.put("com.sun.jndi.ldap.connect.pool", "false");
+                return new InitialLdapContext(env, null);
+            }
+        }, config.getBindConnectionPoolSize(), config.getConnectionPoolIdleTimeout(), config.getConnectionPoolValidationInterval(), POOL_MAX_WAIT_MILLIS);
     }
 
     /**
@@ -342,6 +389,11 @@ public class LDAPOperationManager {
      *
      */
     public void authenticate(String dn, String password) throws AuthenticationException {
+        if (bindContextPool != null) {
+            authenticatePooled(dn, password);
+            return;
+        }
+
         InitialContext authCtx = null;
 
         try {
@@ -380,6 +432,44 @@ public class LDAPOperationManager {
         }
     }
 
+    private void authenticatePooled(String dn, String password) throws AuthenticationException {
+        if (password == null || password.isEmpty()) {
+            throw new AuthenticationException("Empty password used");
+        }
+
+        LdapContext authCtx;
+        try {
+            authCtx = bindContextPool.borrow();
+        } catch (NamingException e) {
+            logger.errorf(e, "Unexpected exception when validating password of DN [%s]", dn);
+            throw new AuthenticationException("Unexpected exception when validating password of user");
+        }
+
+        boolean valid = false;
+        try {
+            authCtx.addToEnvironment(Context.SECURITY_AUTHENTICATION, LDAPConstants.AUTH_TYPE_SIMPLE);
+            authCtx.addToEnvironment(Context.SECURITY_PRINCIPAL, dn);
+            authCtx.addToEnvironment(Context.SECURITY_CREDENTIALS, password);
+            authCtx.reconnect(null);
+
+            // Don't keep the password of the user in the pooled context
+            authCtx.removeFromEnvironment(Context.SECURITY_CREDENTIALS);
+            valid = true;
+        } catch (AuthenticationException ae) {
+            if (logger.isDebugEnabled()) {
+                logger.debugf(ae, "Authentication failed for DN [%s]", dn);
+            }
+
+            throw ae;
+        } catch (Exception e) {
+            logger.errorf(e, "Unexpected exception when validating password of DN [%s]", dn);
+            throw new AuthenticationException("Unexpected exception when validating password of user");
+        } finally {
+            // Connection state after a failed bind differs between servers, so it isn't reused
+            bindContextPool.release(authCtx, valid);
+        }
+    }
+
     public void modifyAttributes(final String dn, final ModificationItem[] mods) {
         try {
             if (logger.isTraceEnabled()) {
@@ -535,6 +625,10 @@ public class LDAPOperationManager {
     }
 
     private <R> R execute(LdapOperation<R> operation) throws NamingException {
+        if (contextPool != null) {
+            return executePooled(operation);
+        }
+
         LdapContext context = null;
 
         try {
@@ -553,6 +647,70 @@ public class LDAPOperationManager {
         }
     }
 
+    private <R> R executePooled(LdapOperation<R> operation) throws NamingException {
+        LdapContext context = contextPool.borrow();
+        boolean valid = false;
+
+        try {
+            R result = operation.execute(context);
+            valid = true;
+            return result;
+        } catch (CommunicationException ce) {
+            throw ce;
+        } catch (ServiceUnavailableException sue) {
+            throw sue;
+        } catch (NamingException ne) {
+            // Connection is still fine
+            valid = true;
+            throw ne;
+        } finally {
+            if (valid) {
+                valid = resetContext(context);
+            }
+            contextPool.release(context, valid);
+        }
+    }
+
+    // Request controls set by an operation must not be sent by the next one
+    private boolean resetContext(LdapContext context) {
+        try {
+            if (context.getRequestControls() != null) {
+                context.setRequestControls(null);
+            }
+            return true;
+        } catch (NamingException ne) {
+            return false;
+        }
+    }
+
+    public Map<String, String> getConnectionPoolStatistics() {
+        Map<String, String> stats = new LinkedHashMap<String, String>();
+        if (contextPool != null) {
+            for (Map.Entry<String, String> e : contextPool.getStatistics().entrySet()) {
+                stats.put("connectionPool." + e.getKey(), e.getValue());
+            }
+        }
+        if (bindContextPool != null) {
+            for (Map.Entry<String, String> e : bindContextPool.getStatistics().entrySet()) {
+                stats.put("bindConnectionPool." + e.getKey(), e.getValue());
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Closes the idle contexts of the pools. Operations still running afterwards work, but don't return their contexts
+     * to the pool.
+     */
+    public void close() {
+        if (contextPool != null) {
+            contextPool.close();
+        }
+        if (bindContextPool != null) {
+            bindContextPool.close();
+        }
+    }
+
     private interface LdapOperation<R> {
         R execute(LdapContext context) throws NamingException;
     }
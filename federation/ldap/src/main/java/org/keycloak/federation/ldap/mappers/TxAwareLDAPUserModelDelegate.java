@@ -100,6 +100,7 @@ public abstract class TxAwareLDAPUserModelDelegate extends UserModelDelegate {
             }
 
             provider.getLdapIdentityStore().update(ldapUser);
+            provider.onLDAPUserUpdated(ldapUser);
             state = TransactionState.FINISHED;
         }
 
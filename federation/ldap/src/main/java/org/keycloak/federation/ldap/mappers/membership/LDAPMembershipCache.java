@@ -0,0 +1,154 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.federation.ldap.mappers.membership;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.keycloak.federation.ldap.idm.model.LDAPObject;
+
+/**
+ * Bounded cache of the LDAP groups (or roles) of users, as resolved by a {@link UserRolesRetrieveStrategy}, so reading
+ * groups of a proxied LDAP user doesn't send queries to LDAP each time. For recursive strategies the cached groups
+ * include the nested groups as well.
+ * <p>
+ * There is one cache per federation provider. Entries are kept until they expire or are pushed out by more recently
+ * used entries. Writes of group mappings through the mappers invalidate the entry of the user and syncs invalidate the
+ * whole cache. Changes done directly in LDAP or on another cluster node are visible after the entry expires.
+ * <p>
+ * Cached {@link LDAPObject} instances are shared by all sessions, so they must not be modified.
+ */
+public class LDAPMembershipCache {
+
+    private final int maxSize;
+    private final long ttlMillis;
+    private final Map<String, Entry> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public LDAPMembershipCache(final int maxSize, long ttlMillis) {
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMillis;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return maxSize > 0 && ttlMillis > 0;
+    }
+
+    /**
+     * @param mapperKey identifies the mapper and its configuration
+     * @return cached groups of the user or null if there are none or they are expired
+     */
+    public List<LDAPObject> get(String userDn, String mapperKey) {
+        if (!isEnabled()) {
+            return null;
+        }
+
+        String key = key(userDn, mapperKey);
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry != null && entry.expiration <= System.currentTimeMillis()) {
+                entries.remove(key);
+                entry = null;
+            }
+        }
+
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        hits.incrementAndGet();
+        return entry.groups;
+    }
+
+    public void put(String userDn, String mapperKey, List<LDAPObject> groups) {
+        if (!isEnabled()) {
+            return;
+        }
+
+        Entry entry = new Entry(Collections.unmodifiableList(groups), System.currentTimeMillis() + ttlMillis);
+        synchronized (entries) {
+            entries.put(key(userDn, mapperKey), entry);
+        }
+    }
+
+    /**
+     * Removes the groups of the user cached for all mappers
+     */
+    public void invalidateUser(String userDn) {
+        String prefix = userDn.toLowerCase() + '|';
+        synchronized (entries) {
+            for (Iterator<String> it = entries.keySet().iterator(); it.hasNext(); ) {
+                if (it.next().startsWith(prefix)) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    // DNs are case insensitive
+    private static String key(String userDn, String mapperKey) {
+        return userDn.toLowerCase() + '|' + mapperKey;
+    }
+
+    private static class Entry {
+
+        private final List<LDAPObject> groups;
+        private final long expiration;
+
+        private Entry(List<LDAPObject> groups, long expiration) {
+            this.groups = groups;
+            this.expiration = expiration;
+        }
+
+    }
+
+}
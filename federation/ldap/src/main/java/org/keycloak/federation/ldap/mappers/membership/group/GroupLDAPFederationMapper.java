@@ -37,6 +37,7 @@ import org.keycloak.federation.ldap.idm.query.internal.LDAPQueryConditionsBuilde
 import org.keycloak.federation.ldap.mappers.AbstractLDAPFederationMapper;
 import org.keycloak.federation.ldap.mappers.membership.CommonLDAPGroupMapper;
 import org.keycloak.federation.ldap.mappers.membership.CommonLDAPGroupMapperConfig;
+import org.keycloak.federation.ldap.mappers.membership.LDAPMembershipCache;
 import org.keycloak.federation.ldap.mappers.membership.LDAPGroupMapperMode;
 import org.keycloak.federation.ldap.mappers.membership.MembershipType;
 import org.keycloak.federation.ldap.mappers.membership.UserRolesRetrieveStrategy;
@@ -148,6 +149,9 @@ public class GroupLDAPFederationMapper extends AbstractLDAPFederationMapper impl
 
         logger.debugf("Syncing groups from LDAP into Keycloak DB. Mapper is [%s], LDAP provider is [%s]", mapperModel.getName(), ldapProvider.getModel().getDisplayName());
 
+        // Group tree in LDAP might have changed
+        ldapProvider.getMembershipCache().invalidateAll();
+
         // Get all LDAP groups
         LDAPQuery ldapQuery = createGroupQuery();
         List<LDAPObject> ldapGroups = ldapQuery.getResultList();
@@ -380,6 +384,8 @@ public class GroupLDAPFederationMapper extends AbstractLDAPFederationMapper impl
             }
         }
 
+        ldapProvider.getMembershipCache().invalidateAll();
+
         return syncResult;
     }
 
@@ -473,10 +479,12 @@ public class GroupLDAPFederationMapper extends AbstractLDAPFederationMapper impl
         }
 
         LDAPUtils.addMember(ldapProvider, config.getMembershipTypeLdapAttribute(), config.getMembershipLdapAttribute(), ldapGroup, ldapUser, true);
+        ldapProvider.getMembershipCache().invalidateUser(ldapUser.getDn().toString());
     }
 
     public void deleteGroupMappingInLDAP(LDAPObject ldapUser, LDAPObject ldapGroup) {
         LDAPUtils.deleteMember(ldapProvider, config.getMembershipTypeLdapAttribute(), config.getMembershipLdapAttribute(), ldapGroup, ldapUser, true);
+        ldapProvider.getMembershipCache().invalidateUser(ldapUser.getDn().toString());
     }
 
     protected List<LDAPObject> getLDAPGroupMappings(LDAPObject ldapUser) {
@@ -485,6 +493,25 @@ public class GroupLDAPFederationMapper extends AbstractLDAPFederationMapper impl
         return strategy.getLDAPRoleMappings(this, ldapUser);
     }
 
+    /**
+     * Same as {@link #getLDAPGroupMappings(LDAPObject)}, but reuses the groups loaded by previous requests until they
+     * expire or are invalidated
+     */
+    protected List<LDAPObject> getCachedLDAPGroupMappings(LDAPObject ldapUser) {
+        LDAPMembershipCache cache = ldapProvider.getMembershipCache();
+        String userDn = ldapUser.getDn().toString();
+
+        // Changed mapper configuration results in different key
+        String mapperKey = mapperModel.getId() + ":" + mapperModel.getConfig().hashCode();
+
+        List<LDAPObject> ldapGroups = cache.get(userDn, mapperKey);
+        if (ldapGroups == null) {
+            ldapGroups = getLDAPGroupMappings(ldapUser);
+            cache.put(userDn, mapperKey, ldapGroups);
+        }
+        return ldapGroups;
+    }
+
     public void beforeLDAPQuery(LDAPQuery query) {
         String strategyKey = config.getUserGroupsRetrieveStrategy();
         UserRolesRetrieveStrategy strategy = factory.getUserGroupsRetrieveStrategy(strategyKey);
@@ -601,7 +628,7 @@ public class GroupLDAPFederationMapper extends AbstractLDAPFederationMapper impl
                 return new HashSet<>(cachedLDAPGroupMappings);
             }
 
-            List<LDAPObject> ldapGroups = getLDAPGroupMappings(ldapUser);
+            List<LDAPObject> ldapGroups = getCachedLDAPGroupMappings(ldapUser);
 
             Set<GroupModel> result = new HashSet<>();
             for (LDAPObject ldapGroup : ldapGroups) {
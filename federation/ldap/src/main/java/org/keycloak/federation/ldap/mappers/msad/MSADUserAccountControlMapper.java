@@ -197,6 +197,7 @@ public class MSADUserAccountControlMapper extends AbstractLDAPFederationMapper {
 
                 ldapUser.setSingleAttribute(LDAPConstants.PWD_LAST_SET, "0");
                 ldapProvider.getLdapIdentityStore().update(ldapUser);
+                ldapProvider.onLDAPUserUpdated(ldapUser);
             }
         }
 
@@ -223,6 +224,7 @@ public class MSADUserAccountControlMapper extends AbstractLDAPFederationMapper {
 
                     ldapUser.setSingleAttribute(LDAPConstants.PWD_LAST_SET, "-1");
                     ldapProvider.getLdapIdentityStore().update(ldapUser);
+                    ldapProvider.onLDAPUserUpdated(ldapUser);
                 }
             }
         }
@@ -260,6 +262,7 @@ public class MSADUserAccountControlMapper extends AbstractLDAPFederationMapper {
 
             ldapUser.setSingleAttribute(LDAPConstants.USER_ACCOUNT_CONTROL, userAccountControlValue);
             ldapProvider.getLdapIdentityStore().update(ldapUser);
+            ldapProvider.onLDAPUserUpdated(ldapUser);
         }
     }
 
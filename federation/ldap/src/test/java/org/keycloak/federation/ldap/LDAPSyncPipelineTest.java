@@ -0,0 +1,158 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.federation.ldap;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.keycloak.federation.ldap.idm.model.LDAPObject;
+import org.keycloak.models.ModelException;
+import org.keycloak.models.UserFederationSyncResult;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class LDAPSyncPipelineTest {
+
+    @Test
+    public void importAllPages() {
+        final RecordingImporter importer = new RecordingImporter(-1);
+        final boolean[] mappersSynced = new boolean[1];
+
+        LDAPSyncPipeline pipeline = new LDAPSyncPipeline("test", 3, 4, null, importer);
+        UserFederationSyncResult result = pipeline.run(pages(10, 10, 5), new Runnable() {
+            @Override
+            public void run() {
+                // Mappers are synced before any user is imported
+                Assert.assertTrue(importer.imported.isEmpty());
+                mappersSynced[0] = true;
+            }
+        });
+
+        Assert.assertEquals(25, result.getAdded());
+        Assert.assertEquals(25, importer.imported.size());
+        Assert.assertEquals(25, pipeline.getImportedIds().length);
+        Assert.assertTrue(mappersSynced[0]);
+        for (List<LDAPObject> batch : importer.batches) {
+            Assert.assertTrue(batch.size() <= 4);
+        }
+    }
+
+    @Test
+    public void resumeAfterFailure() {
+        List<LDAPObject> users = users(25);
+
+        // Second batch fails, only the first one is imported with a single worker
+        RecordingImporter failing = new RecordingImporter(1);
+        LDAPSyncPipeline pipeline = new LDAPSyncPipeline("test", 1, 5, null, failing);
+        try {
+            pipeline.run(pages(users, 10), noMappers());
+            Assert.fail("Expected failure");
+        } catch (ModelException expected) {
+        }
+        String[] importedIds = pipeline.getImportedIds();
+        Assert.assertEquals(5, importedIds.length);
+
+        // LDAP returns the users in a different order this time
+        List<LDAPObject> reordered = new ArrayList<>(users);
+        Collections.reverse(reordered);
+
+        RecordingImporter importer = new RecordingImporter(-1);
+        LDAPSyncPipeline resumed = new LDAPSyncPipeline("test", 2, 5, importedIds, importer);
+        UserFederationSyncResult result = resumed.run(pages(reordered, 10), noMappers());
+
+        Assert.assertEquals(20, result.getAdded());
+        for (LDAPObject user : failing.imported) {
+            Assert.assertFalse(importer.imported.contains(user));
+        }
+        Assert.assertEquals(25, resumed.getImportedIds().length);
+    }
+
+    private static Runnable noMappers() {
+        return new Runnable() {
+            @Override
+            public void run() {
+            }
+        };
+    }
+
+    private static List<LDAPObject> users(int count) {
+        List<LDAPObject> users = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            LDAPObject user = new LDAPObject();
+            user.setUuid(String.valueOf(i));
+            users.add(user);
+        }
+        return users;
+    }
+
+    private static LDAPSyncPipeline.PageReader pages(int... sizes) {
+        final List<List<LDAPObject>> pages = new ArrayList<>();
+        for (int size : sizes) {
+            pages.add(users(size));
+        }
+        return reader(pages);
+    }
+
+    private static LDAPSyncPipeline.PageReader pages(List<LDAPObject> users, int pageSize) {
+        List<List<LDAPObject>> pages = new ArrayList<>();
+        for (int i = 0; i < users.size(); i += pageSize) {
+            pages.add(users.subList(i, Math.min(users.size(), i + pageSize)));
+        }
+        return reader(pages);
+    }
+
+    private static LDAPSyncPipeline.PageReader reader(final List<List<LDAPObject>> pages) {
+        return new LDAPSyncPipeline.PageReader() {
+            private int page;
+
+            @Override
+            public List<LDAPObject> nextPage() {
+                return page < pages.size() ? pages.get(page++) : null;
+            }
+        };
+    }
+
+    private static class RecordingImporter implements LDAPSyncPipeline.BatchImporter {
+
+        private final List<List<LDAPObject>> batches = Collections.synchronizedList(new ArrayList<List<LDAPObject>>());
+        private final List<LDAPObject> imported = Collections.synchronizedList(new ArrayList<LDAPObject>());
+        private final int failingBatch;
+
+        private RecordingImporter(int failingBatch) {
+            this.failingBatch = failingBatch;
+        }
+
+        @Override
+        public UserFederationSyncResult importUsers(List<LDAPObject> users) {
+            if (batches.size() == failingBatch) {
+                throw new ModelException("Database down");
+            }
+            batches.add(users);
+            imported.addAll(users);
+
+            UserFederationSyncResult result = new UserFederationSyncResult();
+            for (int i = 0; i < users.size(); i++) {
+                result.increaseAdded();
+            }
+            return result;
+        }
+
+    }
+
+}
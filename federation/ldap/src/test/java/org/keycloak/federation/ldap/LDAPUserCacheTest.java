@@ -0,0 +1,113 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.keycloak.federation.ldap;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.keycloak.federation.ldap.idm.model.LDAPDn;
+import org.keycloak.federation.ldap.idm.model.LDAPObject;
+
+public class LDAPUserCacheTest {
+
+    @Test
+    public void cachedUser() {
+        LDAPUserCache cache = new LDAPUserCache(10, 60000);
+
+        Assert.assertNull(cache.get("john"));
+        cache.put("john", user("john-uuid", "john"));
+
+        LDAPObject cached = cache.get("John");
+        Assert.assertEquals("john-uuid", cached.getUuid());
+        Assert.assertEquals("uid=john,ou=People,dc=example,dc=org", cached.getDn().toString());
+        Assert.assertEquals("john@example.org", cached.getAttributeAsString("mail"));
+        Assert.assertTrue(cached.getReadOnlyAttributeNames().contains("pwdlastset"));
+        Assert.assertEquals(1, cache.getHits());
+        Assert.assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void changesOfCopyNotCached() {
+        LDAPUserCache cache = new LDAPUserCache(10, 60000);
+        LDAPObject user = user("john-uuid", "john");
+        cache.put("john", user);
+        user.setSingleAttribute("mail", "changed@example.org");
+
+        LDAPObject cached = cache.get("john");
+        Assert.assertEquals("john@example.org", cached.getAttributeAsString("mail"));
+        cached.setSingleAttribute("mail", "changed@example.org");
+        cached.getDn().addFirst("cn", "other");
+
+        Assert.assertEquals("john@example.org", cache.get("john").getAttributeAsString("mail"));
+        Assert.assertEquals("uid=john,ou=People,dc=example,dc=org", cache.get("john").getDn().toString());
+    }
+
+    @Test
+    public void expiredUser() throws Exception {
+        LDAPUserCache cache = new LDAPUserCache(10, 1);
+        cache.put("john", user("john-uuid", "john"));
+        Thread.sleep(10);
+
+        Assert.assertNull(cache.get("john"));
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void leastRecentlyUsedEvicted() {
+        LDAPUserCache cache = new LDAPUserCache(2, 60000);
+        cache.put("john", user("john-uuid", "john"));
+        cache.put("mary", user("mary-uuid", "mary"));
+        cache.get("john");
+        cache.put("bob", user("bob-uuid", "bob"));
+
+        Assert.assertEquals(2, cache.size());
+        Assert.assertNotNull(cache.get("john"));
+        Assert.assertNull(cache.get("mary"));
+    }
+
+    @Test
+    public void invalidateUser() {
+        LDAPUserCache cache = new LDAPUserCache(10, 60000);
+        cache.put("john", user("john-uuid", "john"));
+        cache.put("mary", user("mary-uuid", "mary"));
+
+        cache.invalidateUser("john-uuid");
+        Assert.assertNull(cache.get("john"));
+        Assert.assertNotNull(cache.get("mary"));
+
+        cache.invalidateAll();
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void disabled() {
+        LDAPUserCache cache = new LDAPUserCache(10, 0);
+        cache.put("john", user("john-uuid", "john"));
+        Assert.assertNull(cache.get("john"));
+    }
+
+    private static LDAPObject user(String uuid, String username) {
+        LDAPObject user = new LDAPObject();
+        user.setUuid(uuid);
+        user.setDn(LDAPDn.fromString("uid=" + username + ",ou=People,dc=example,dc=org"));
+        user.setRdnAttributeName("uid");
+        user.setSingleAttribute("uid", username);
+        user.setSingleAttribute("mail", username + "@example.org");
+        user.addReadOnlyAttributeName("pwdLastSet");
+        return user;
+    }
+
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.federation.ldap.idm.store.ldap;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.naming.CommunicationException;
+import javax.naming.NamingException;
+import javax.naming.ldap.LdapContext;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LDAPContextPoolTest {
+
+    @Test
+    public void testReuse() throws Exception {
+        ContextFactory factory = new ContextFactory();
+        LDAPContextPool pool = new LDAPContextPool("test", factory, 2, 60000, 60000, 100);
+
+        LdapContext ctx1 = pool.borrow();
+        LdapContext ctx2 = pool.borrow();
+        Assert.assertNotSame(ctx1, ctx2);
+        Assert.assertEquals(2, pool.getActiveCount());
+
+        try {
+            pool.borrow();
+            Assert.fail("Expected timeout");
+        } catch (NamingException expected) {
+        }
+
+        pool.release(ctx1, true);
+        Assert.assertSame(ctx1, pool.borrow());
+        pool.release(ctx1, true);
+
+        // Broken contexts are closed
+        pool.release(ctx2, false);
+        Assert.assertEquals(1, factory.closed.get());
+        Assert.assertEquals(0, pool.getActiveCount());
+        Assert.assertEquals(1, pool.getIdleCount());
+        Assert.assertEquals(2, pool.getCreatedCount());
+        Assert.assertEquals(1, pool.getReusedCount());
+
+        pool.close();
+        Assert.assertEquals(2, factory.closed.get());
+        Assert.assertEquals(0, pool.getIdleCount());
+
+        // Closed pool doesn't keep contexts
+        LdapContext ctx3 = pool.borrow();
+        pool.release(ctx3, true);
+        Assert.assertEquals(3, factory.closed.get());
+    }
+
+    @Test
+    public void testIdleEvictionAndValidation() throws Exception {
+        ContextFactory factory = new ContextFactory();
+        LDAPContextPool pool = new LDAPContextPool("test", factory, 2, 50, 0, 100);
+
+        LdapContext ctx = pool.borrow();
+        pool.release(ctx, true);
+        Thread.sleep(100);
+
+        // Idle too long
+        Assert.assertNotSame(ctx, pool.borrow());
+        Assert.assertEquals(1, factory.closed.get());
+
+        pool = new LDAPContextPool("test", factory, 2, 60000, 0, 100);
+        ctx = pool.borrow();
+        pool.release(ctx, true);
+        Thread.sleep(10);
+
+        // Validated before reuse
+        Assert.assertSame(ctx, pool.borrow());
+        pool.release(ctx, true);
+        Thread.sleep(10);
+
+        factory.failValidation = true;
+        Assert.assertNotSame(ctx, pool.borrow());
+        Assert.assertEquals(2, factory.closed.get());
+    }
+
+    private static class ContextFactory implements LDAPContextPool.ContextFactory {
+
+        private final AtomicInteger closed = new AtomicInteger();
+        private volatile boolean failValidation;
+
+        @Override
+        public LdapContext create() throws NamingException {
+            return (LdapContext) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { LdapContext.class }, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    if (method.getDeclaringClass() == Object.class) {
+                        return method.getName().equals("equals") ? proxy == args[0] : method.getName().equals("hashCode") ? System.identityHashCode(proxy) : "LdapContext";
+                    } else if (method.getName().equals("close")) {
+                        closed.incrementAndGet();
+                    } else if (method.getName().equals("getAttributes") && failValidation) {
+                        throw new CommunicationException("Connection closed");
+                    }
+                    return null;
+                }
+            });
+        }
+
+    }
+
+}
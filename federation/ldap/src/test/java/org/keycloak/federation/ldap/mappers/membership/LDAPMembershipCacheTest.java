@@ -0,0 +1,99 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.federation.ldap.mappers.membership;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.keycloak.federation.ldap.idm.model.LDAPObject;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class LDAPMembershipCacheTest {
+
+    private static final String JOHN = "uid=john,ou=People,dc=example,dc=org";
+    private static final String MARY = "uid=mary,ou=People,dc=example,dc=org";
+
+    @Test
+    public void cachedGroups() {
+        LDAPMembershipCache cache = new LDAPMembershipCache(10, 60000);
+        List<LDAPObject> groups = Arrays.asList(group());
+
+        Assert.assertNull(cache.get(JOHN, "mapper"));
+        cache.put(JOHN, "mapper", groups);
+
+        Assert.assertEquals(groups, cache.get(JOHN, "mapper"));
+        Assert.assertEquals(groups, cache.get(JOHN.toUpperCase(), "mapper"));
+        Assert.assertNull(cache.get(JOHN, "otherMapper"));
+        Assert.assertEquals(2, cache.getHits());
+        Assert.assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void expiredGroups() throws Exception {
+        LDAPMembershipCache cache = new LDAPMembershipCache(10, 1);
+        cache.put(JOHN, "mapper", Arrays.asList(group()));
+        Thread.sleep(10);
+
+        Assert.assertNull(cache.get(JOHN, "mapper"));
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void leastRecentlyUsedEvicted() {
+        LDAPMembershipCache cache = new LDAPMembershipCache(2, 60000);
+        cache.put(JOHN, "mapper1", Arrays.asList(group()));
+        cache.put(JOHN, "mapper2", Arrays.asList(group()));
+        cache.get(JOHN, "mapper1");
+        cache.put(MARY, "mapper1", Arrays.asList(group()));
+
+        Assert.assertEquals(2, cache.size());
+        Assert.assertNotNull(cache.get(JOHN, "mapper1"));
+        Assert.assertNull(cache.get(JOHN, "mapper2"));
+    }
+
+    @Test
+    public void invalidateUser() {
+        LDAPMembershipCache cache = new LDAPMembershipCache(10, 60000);
+        cache.put(JOHN, "mapper1", Arrays.asList(group()));
+        cache.put(JOHN, "mapper2", Arrays.asList(group()));
+        cache.put(MARY, "mapper1", Arrays.asList(group()));
+
+        cache.invalidateUser(JOHN);
+        Assert.assertNull(cache.get(JOHN, "mapper1"));
+        Assert.assertNull(cache.get(JOHN, "mapper2"));
+        Assert.assertNotNull(cache.get(MARY, "mapper1"));
+
+        cache.invalidateAll();
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void disabled() {
+        LDAPMembershipCache cache = new LDAPMembershipCache(10, 0);
+        cache.put(JOHN, "mapper", Arrays.asList(group()));
+        Assert.assertNull(cache.get(JOHN, "mapper"));
+    }
+
+    private static LDAPObject group() {
+        LDAPObject group = new LDAPObject();
+        group.setUuid("group1");
+        return group;
+    }
+
+}
@@ -21,6 +21,7 @@ import org.keycloak.models.*;
 import org.keycloak.models.cache.CacheRealmProvider;
 import org.keycloak.models.cache.RealmCache;
 import org.keycloak.models.cache.entities.CachedClient;
+import org.keycloak.models.cache.entities.CachedRealm;
 
 import java.util.*;
 
@@ -377,7 +378,7 @@ public class ClientAdapter implements ClientModel {
     public void setClientId(String clientId) {
         getDelegateForUpdate();
         updated.setClientId(clientId);
-        cacheSession.registerRealmInvalidation(cachedRealm.getId());
+        cacheSession.registerRealmInvalidation(cachedRealm.getId(), CachedRealm.Slice.CLIENTS);
     }
 
     @Override
@@ -571,6 +572,8 @@ public class ClientAdapter implements ClientModel {
     @Override
     public boolean removeRole(RoleModel role) {
         cacheSession.registerRoleInvalidation(role.getId());
+        // Cached composite roles and client scope mappings may refer to the role, so the whole realm is evicted
+        cacheSession.registerRealmInvalidation(cachedRealm.getId());
         getDelegateForUpdate();
         return updated.removeRole(role);
     }
@@ -27,7 +27,9 @@ import org.keycloak.models.RealmModel;
 import org.keycloak.models.RealmProvider;
 import org.keycloak.models.RoleModel;
 import org.keycloak.models.cache.CacheRealmProvider;
+import org.keycloak.models.cache.EffectiveRoleCache;
 import org.keycloak.models.cache.RealmCache;
+import org.keycloak.models.cache.SingleFlightLoader;
 import org.keycloak.models.cache.entities.CachedClient;
 import org.keycloak.models.cache.entities.CachedClientRole;
 import org.keycloak.models.cache.entities.CachedClientTemplate;
@@ -36,6 +38,7 @@ import org.keycloak.models.cache.entities.CachedRealm;
 import org.keycloak.models.cache.entities.CachedRealmRole;
 import org.keycloak.models.cache.entities.CachedRole;
 
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -50,12 +53,16 @@ import java.util.Set;
  */
 public class DefaultCacheRealmProvider implements CacheRealmProvider {
     protected RealmCache cache;
+    protected EffectiveRoleCache effectiveRoleCache;
+    protected SingleFlightLoader loader;
     protected KeycloakSession session;
     protected RealmProvider delegate;
     protected boolean transactionActive;
     protected boolean setRollbackOnly;
 
     protected Set<String> realmInvalidations = new HashSet<>();
+    protected Set<String> fullRealmInvalidations = new HashSet<>();
+    protected Map<String, EnumSet<CachedRealm.Slice>> realmSliceInvalidations = new HashMap<>();
     protected Set<String> appInvalidations = new HashSet<>();
     protected Set<String> clientTemplateInvalidations = new HashSet<>();
     protected Set<String> roleInvalidations = new HashSet<>();
@@ -68,8 +75,10 @@ public class DefaultCacheRealmProvider implements CacheRealmProvider {
 
     protected boolean clearAll;
 
-    public DefaultCacheRealmProvider(RealmCache cache, KeycloakSession session) {
+    public DefaultCacheRealmProvider(RealmCache cache, EffectiveRoleCache effectiveRoleCache, SingleFlightLoader loader, KeycloakSession session) {
         this.cache = cache;
+        this.effectiveRoleCache = effectiveRoleCache;
+        this.loader = loader;
         this.session = session;
 
         session.getTransaction().enlistAfterCompletion(getTransaction());
@@ -78,6 +87,17 @@ public class DefaultCacheRealmProvider implements CacheRealmProvider {
     @Override
     public void clear() {
         cache.clear();
+        effectiveRoleCache.clear();
+    }
+
+    @Override
+    public EffectiveRoleCache getEffectiveRoleCache() {
+        return effectiveRoleCache;
+    }
+
+    @Override
+    public Map<String, Long> getRealmCacheSizes() {
+        return cache.getRealmSizes();
     }
 
     @Override
@@ -96,6 +116,18 @@ public class DefaultCacheRealmProvider implements CacheRealmProvider {
     @Override
     public void registerRealmInvalidation(String id) {
         realmInvalidations.add(id);
+        fullRealmInvalidations.add(id);
+    }
+
+    @Override
+    public void registerRealmInvalidation(String id, CachedRealm.Slice slice) {
+        realmInvalidations.add(id);
+        EnumSet<CachedRealm.Slice> slices = realmSliceInvalidations.get(id);
+        if (slices == null) {
+            slices = EnumSet.noneOf(CachedRealm.Slice.class);
+            realmSliceInvalidations.put(id, slices);
+        }
+        slices.add(slice);
     }
 
     @Override
@@ -120,19 +152,28 @@ public class DefaultCacheRealmProvider implements CacheRealmProvider {
 
     protected void runInvalidations() {
         for (String id : realmInvalidations) {
-            cache.invalidateRealmById(id);
+            if (fullRealmInvalidations.contains(id)) {
+                cache.invalidateRealmById(id);
+            } else {
+                cache.invalidateRealmSlices(id, realmSliceInvalidations.get(id));
+            }
+            effectiveRoleCache.invalidateRealm(id);
         }
         for (String id : roleInvalidations) {
             cache.invalidateRoleById(id);
+            effectiveRoleCache.invalidate(id);
         }
         for (String id : groupInvalidations) {
             cache.invalidateGroupById(id);
+            effectiveRoleCache.invalidate(id);
         }
         for (String id : appInvalidations) {
             cache.invalidateClientById(id);
+            effectiveRoleCache.invalidate(id);
         }
         for (String id : clientTemplateInvalidations) {
             cache.invalidateClientTemplateById(id);
+            effectiveRoleCache.invalidate(id);
         }
     }
 
@@ -148,6 +189,7 @@ public class DefaultCacheRealmProvider implements CacheRealmProvider {
                 if (delegate == null) return;
                 if (clearAll) {
                     cache.clear();
+                    effectiveRoleCache.clear();
                 }
                 runInvalidations();
                 transactionActive = false;
@@ -195,15 +237,15 @@ public class DefaultCacheRealmProvider implements CacheRealmProvider {
     public RealmModel getRealm(String id) {
         CachedRealm cached = cache.getRealm(id);
         if (cached == null) {
-            RealmModel model = getDelegate().getRealm(id);
-            if (model == null) return null;
-            if (realmInvalidations.contains(id)) return model;
-            cached = new CachedRealm(cache, this, model);
-            cache.addRealm(cached);
+            if (realmInvalidations.contains(id)) return getDelegate().getRealm(id);
+            cached = loadRealm(id);
+            if (cached == null) return null;
         } else if (realmInvalidations.contains(id)) {
             return getDelegate().getRealm(id);
         } else if (managedRealms.containsKey(id)) {
             return managedRealms.get(id);
+        } else if (cached.isStale()) {
+            cached = refreshRealm(cached);
         }
         RealmAdapter adapter = new RealmAdapter(cached, this);
         managedRealms.put(id, adapter);
@@ -214,21 +256,71 @@ public class DefaultCacheRealmProvider implements CacheRealmProvider {
     public RealmModel getRealmByName(String name) {
         CachedRealm cached = cache.getRealmByName(name);
         if (cached == null) {
-            RealmModel model = getDelegate().getRealmByName(name);
-            if (model == null) return null;
-            if (realmInvalidations.contains(model.getId())) return model;
-            cached = new CachedRealm(cache, this, model);
-            cache.addRealm(cached);
+            if (!realmInvalidations.isEmpty()) {
+                // The realm may have been updated by this session, so it can't be cached for others before commit
+                RealmModel model = getDelegate().getRealmByName(name);
+                if (model == null || realmInvalidations.contains(model.getId())) return model;
+            }
+            cached = loadRealmByName(name);
+            if (cached == null) return null;
         } else if (realmInvalidations.contains(cached.getId())) {
             return getDelegate().getRealmByName(name);
         } else if (managedRealms.containsKey(cached.getId())) {
             return managedRealms.get(cached.getId());
+        } else if (cached.isStale()) {
+            cached = refreshRealm(cached);
         }
         RealmAdapter adapter = new RealmAdapter(cached, this);
         managedRealms.put(cached.getId(), adapter);
         return adapter;
     }
 
+    protected CachedRealm loadRealm(final String id) {
+        return loader.load(id, new SingleFlightLoader.Loader<CachedRealm>() {
+            @Override
+            public CachedRealm load() {
+                return cacheRealm(getDelegate().getRealm(id));
+            }
+        });
+    }
+
+    protected CachedRealm loadRealmByName(final String name) {
+        return loader.load("name/" + name, new SingleFlightLoader.Loader<CachedRealm>() {
+            @Override
+            public CachedRealm load() {
+                return cacheRealm(getDelegate().getRealmByName(name));
+            }
+        });
+    }
+
+    private CachedRealm cacheRealm(RealmModel model) {
+        if (model == null) return null;
+        CachedRealm cached = new CachedRealm(cache, this, model);
+        cache.addRealm(cached);
+        return cached;
+    }
+
+    /**
+     * Reloads the stale slices of a cached realm. Only one thread rebuilds the entry, the others keep serving the
+     * previous consistent copy until the rebuilt one has replaced it.
+     */
+    protected CachedRealm refreshRealm(CachedRealm cached) {
+        if (!cached.startRefresh()) return cached;
+        try {
+            RealmModel model = getDelegate().getRealm(cached.getId());
+            if (model == null) {
+                cached.refreshFailed();
+                return cached;
+            }
+            CachedRealm rebuilt = new CachedRealm(cached, cache, this, model);
+            cache.replaceRealm(cached, rebuilt);
+            return rebuilt;
+        } catch (RuntimeException e) {
+            cached.refreshFailed();
+            throw e;
+        }
+    }
+
     @Override
     public List<RealmModel> getRealms() {
         // Retrieve realms from backend
@@ -279,16 +371,9 @@ public class DefaultCacheRealmProvider implements CacheRealmProvider {
         }
 
         if (cached == null) {
-            RoleModel model = getDelegate().getRoleById(id, realm);
-            if (model == null) return null;
-            if (roleInvalidations.contains(id)) return model;
-            if (model.getContainer() instanceof ClientModel) {
-                cached = new CachedClientRole(((ClientModel) model.getContainer()).getId(), model, realm);
-            } else {
-                cached = new CachedRealmRole(model, realm);
-            }
-            cache.addRole(cached);
-
+            if (roleInvalidations.contains(id)) return getDelegate().getRoleById(id, realm);
+            cached = loadRole(id, realm);
+            if (cached == null) return null;
         } else if (roleInvalidations.contains(id)) {
             return getDelegate().getRoleById(id, realm);
         } else if (managedRoles.containsKey(id)) {
@@ -299,6 +384,24 @@ public class DefaultCacheRealmProvider implements CacheRealmProvider {
         return adapter;
     }
 
+    protected CachedRole loadRole(final String id, final RealmModel realm) {
+        return loader.load(realm.getId() + "/" + id, new SingleFlightLoader.Loader<CachedRole>() {
+            @Override
+            public CachedRole load() {
+                RoleModel model = getDelegate().getRoleById(id, realm);
+                if (model == null) return null;
+                CachedRole cached;
+                if (model.getContainer() instanceof ClientModel) {
+                    cached = new CachedClientRole(((ClientModel) model.getContainer()).getId(), model, realm);
+                } else {
+                    cached = new CachedRealmRole(model, realm);
+                }
+                cache.addRole(cached);
+                return cached;
+            }
+        });
+    }
+
     @Override
     public GroupModel getGroupById(String id, RealmModel realm) {
         CachedGroup cached = cache.getGroup(id);
@@ -331,11 +434,9 @@ public class DefaultCacheRealmProvider implements CacheRealmProvider {
         }
 
         if (cached == null) {
-            ClientModel model = getDelegate().getClientById(id, realm);
-            if (model == null) return null;
-            if (appInvalidations.contains(id)) return model;
-            cached = new CachedClient(cache, getDelegate(), realm, model);
-            cache.addClient(cached);
+            if (appInvalidations.contains(id)) return getDelegate().getClientById(id, realm);
+            cached = loadClient(id, realm);
+            if (cached == null) return null;
         } else if (appInvalidations.contains(id)) {
             return getDelegate().getClientById(id, realm);
         } else if (managedApplications.containsKey(id)) {
@@ -346,6 +447,19 @@ public class DefaultCacheRealmProvider implements CacheRealmProvider {
         return adapter;
     }
 
+    protected CachedClient loadClient(final String id, final RealmModel realm) {
+        return loader.load(realm.getId() + "/" + id, new SingleFlightLoader.Loader<CachedClient>() {
+            @Override
+            public CachedClient load() {
+                ClientModel model = getDelegate().getClientById(id, realm);
+                if (model == null) return null;
+                CachedClient cached = new CachedClient(cache, getDelegate(), realm, model);
+                cache.addClient(cached);
+                return cached;
+            }
+        });
+    }
+
     @Override
     public ClientModel getClientByClientId(String clientId, RealmModel realm) {
         return getDelegate().getClientByClientId(clientId, realm);
@@ -19,6 +19,7 @@ package org.keycloak.models.cache.infinispan;
 
 import org.keycloak.models.*;
 import org.keycloak.models.cache.CacheUserProvider;
+import org.keycloak.models.cache.SingleFlightLoader;
 import org.keycloak.models.cache.UserCache;
 import org.keycloak.models.cache.entities.CachedUser;
 
@@ -30,6 +31,7 @@ import java.util.*;
  */
 public class DefaultCacheUserProvider implements CacheUserProvider {
     protected UserCache cache;
+    protected SingleFlightLoader loader;
     protected KeycloakSession session;
     protected UserProvider delegate;
     protected boolean transactionActive;
@@ -39,8 +41,9 @@ public class DefaultCacheUserProvider implements CacheUserProvider {
     protected Set<String> realmInvalidations = new HashSet<>();
     protected Map<String, UserModel> managedUsers = new HashMap<>();
 
-    public DefaultCacheUserProvider(UserCache cache, KeycloakSession session) {
+    public DefaultCacheUserProvider(UserCache cache, SingleFlightLoader loader, KeycloakSession session) {
         this.cache = cache;
+        this.loader = loader;
         this.session = session;
 
         session.getTransaction().enlistAfterCompletion(getTransaction());
@@ -116,19 +119,21 @@ public class DefaultCacheUserProvider implements CacheUserProvider {
     }
 
     @Override
-    public UserModel getUserById(String id, RealmModel realm) {
+    public UserModel getUserById(final String id, RealmModel realm) {
         if (isRegisteredForInvalidation(realm, id)) {
             return getDelegate().getUserById(id, realm);
         }
 
         CachedUser cached = cache.getCachedUser(realm.getId(), id);
         if (cached == null) {
-            UserModel model = getDelegate().getUserById(id, realm);
-            if (model == null) return null;
+            cached = loadUser(realm, "id/" + id, new UserLookup() {
+                @Override
+                public UserModel getUser(RealmModel realm) {
+                    return getDelegate().getUserById(id, realm);
+                }
+            });
+            if (cached == null) return null;
             if (managedUsers.containsKey(id)) return managedUsers.get(id);
-            if (userInvalidations.containsKey(id)) return model;
-            cached = new CachedUser(realm, model);
-            cache.addCachedUser(realm.getId(), cached);
         } else if (managedUsers.containsKey(id)) {
             return managedUsers.get(id);
         }
@@ -147,12 +152,22 @@ public class DefaultCacheUserProvider implements CacheUserProvider {
         }
         CachedUser cached = cache.getCachedUserByUsername(realm.getId(), username);
         if (cached == null) {
-            UserModel model = getDelegate().getUserByUsername(username, realm);
-            if (model == null) return null;
-            if (managedUsers.containsKey(model.getId())) return managedUsers.get(model.getId());
-            if (userInvalidations.containsKey(model.getId())) return model;
-            cached = new CachedUser(realm, model);
-            cache.addCachedUser(realm.getId(), cached);
+            if (!userInvalidations.isEmpty()) {
+                UserModel model = getDelegate().getUserByUsername(username, realm);
+                if (model == null) return null;
+                if (managedUsers.containsKey(model.getId())) return managedUsers.get(model.getId());
+                if (userInvalidations.containsKey(model.getId())) return model;
+            }
+            // Already lower-cased above, captured for the delegate lookup
+            final String normalizedUsername = username;
+            cached = loadUser(realm, "username/" + username, new UserLookup() {
+                @Override
+                public UserModel getUser(RealmModel realm) {
+                    return getDelegate().getUserByUsername(normalizedUsername, realm);
+                }
+            });
+            if (cached == null) return null;
+            if (managedUsers.containsKey(cached.getId())) return managedUsers.get(cached.getId());
         } else if (userInvalidations.containsKey(cached.getId())) {
             return getDelegate().getUserById(cached.getId(), realm);
         } else if (managedUsers.containsKey(cached.getId())) {
@@ -174,11 +189,19 @@ public class DefaultCacheUserProvider implements CacheUserProvider {
         }
         CachedUser cached = cache.getCachedUserByEmail(realm.getId(), email);
         if (cached == null) {
-            UserModel model = getDelegate().getUserByEmail(email, realm);
-            if (model == null) return null;
-            if (userInvalidations.containsKey(model.getId())) return model;
-            cached = new CachedUser(realm, model);
-            cache.addCachedUser(realm.getId(), cached);
+            if (!userInvalidations.isEmpty()) {
+                UserModel model = getDelegate().getUserByEmail(email, realm);
+                if (model == null || userInvalidations.containsKey(model.getId())) return model;
+            }
+            // Already lower-cased above, captured for the delegate lookup
+            final String normalizedEmail = email;
+            cached = loadUser(realm, "email/" + email, new UserLookup() {
+                @Override
+                public UserModel getUser(RealmModel realm) {
+                    return getDelegate().getUserByEmail(normalizedEmail, realm);
+                }
+            });
+            if (cached == null) return null;
         } else if (userInvalidations.containsKey(cached.getId())) {
             return getDelegate().getUserByEmail(email, realm);
         } else if (managedUsers.containsKey(cached.getId())) {
@@ -189,6 +212,26 @@ public class DefaultCacheUserProvider implements CacheUserProvider {
         return adapter;
     }
 
+    private interface UserLookup {
+        UserModel getUser(RealmModel realm);
+    }
+
+    /**
+     * Concurrent misses for the same user are loaded from the delegate only once
+     */
+    protected CachedUser loadUser(final RealmModel realm, String key, final UserLookup lookup) {
+        return loader.load(realm.getId() + "/" + key, new SingleFlightLoader.Loader<CachedUser>() {
+            @Override
+            public CachedUser load() {
+                UserModel model = lookup.getUser(realm);
+                if (model == null) return null;
+                CachedUser cached = new CachedUser(realm, model);
+                cache.addCachedUser(realm.getId(), cached);
+                return cached;
+            }
+        });
+    }
+
     @Override
     public void close() {
         if (delegate != null) delegate.close();
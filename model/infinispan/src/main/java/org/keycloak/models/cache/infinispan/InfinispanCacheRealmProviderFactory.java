@@ -34,16 +34,25 @@ import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.KeycloakSessionFactory;
 import org.keycloak.models.cache.CacheRealmProvider;
 import org.keycloak.models.cache.CacheRealmProviderFactory;
+import org.keycloak.models.cache.EffectiveRoleCache;
+import org.keycloak.models.cache.SingleFlightLoader;
 import org.keycloak.models.cache.entities.CachedClient;
+import org.keycloak.models.cache.entities.CachedClientTemplate;
+import org.keycloak.models.cache.entities.CachedGroup;
 import org.keycloak.models.cache.entities.CachedRealm;
+import org.keycloak.models.cache.entities.CachedRole;
+import org.keycloak.provider.ServerInfoAwareProviderFactory;
 
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author <a href="mailto:bill@burkecentral.com">Bill Burke</a>
  * @author <a href="mailto:sthorger@redhat.com">Stian Thorgersen</a>
  */
-public class InfinispanCacheRealmProviderFactory implements CacheRealmProviderFactory {
+public class InfinispanCacheRealmProviderFactory implements CacheRealmProviderFactory, ServerInfoAwareProviderFactory {
 
     private static final Logger log = Logger.getLogger(InfinispanCacheRealmProviderFactory.class);
 
@@ -51,10 +60,14 @@ public class InfinispanCacheRealmProviderFactory implements CacheRealmProviderFa
 
     protected final ConcurrentHashMap<String, String> realmLookup = new ConcurrentHashMap<>();
 
+    protected final EffectiveRoleCache effectiveRoleCache = new EffectiveRoleCache();
+
+    protected final SingleFlightLoader loader = new SingleFlightLoader();
+
     @Override
     public CacheRealmProvider create(KeycloakSession session) {
         lazyInit(session);
-        return new DefaultCacheRealmProvider(realmCache, session);
+        return new DefaultCacheRealmProvider(realmCache, effectiveRoleCache, loader, session);
     }
 
     private void lazyInit(KeycloakSession session) {
@@ -87,6 +100,14 @@ public class InfinispanCacheRealmProviderFactory implements CacheRealmProviderFa
         return "infinispan";
     }
 
+    @Override
+    public Map<String, String> getOperationalInfo() {
+        Map<String, String> info = new LinkedHashMap<>();
+        info.put("loads", String.valueOf(loader.getLoads()));
+        info.put("coalescedLoads", String.valueOf(loader.getCoalescedLoads()));
+        return info;
+    }
+
     @Listener
     public class CacheListener {
 
@@ -132,6 +153,16 @@ public class InfinispanCacheRealmProviderFactory implements CacheRealmProviderFa
         }
 
         private void remove(Object object) {
+            if (object instanceof RealmSliceMarker) {
+                RealmSliceMarker marker = (RealmSliceMarker) object;
+                realmCache.markRealmSlicesStale(marker.getRealmId(), EnumSet.of(marker.getSlice()));
+                effectiveRoleCache.invalidateRealm(marker.getRealmId());
+                log.tracev("Realm slice invalidated realm={0}, slice={1}", marker.getRealmId(), marker.getSlice());
+                return;
+            }
+
+            invalidateEffectiveRoles(object);
+
             if (object instanceof CachedRealm) {
                 CachedRealm realm = (CachedRealm) object;
 
@@ -156,5 +187,20 @@ public class InfinispanCacheRealmProviderFactory implements CacheRealmProviderFa
                 log.tracev("Client removed client={0}", client.getId());
             }
         }
+
+        // Closures may be computed from the removed entry, so they need to be dropped too
+        private void invalidateEffectiveRoles(Object object) {
+            if (object instanceof CachedRealm) {
+                effectiveRoleCache.invalidateRealm(((CachedRealm) object).getId());
+            } else if (object instanceof CachedRole) {
+                effectiveRoleCache.invalidateRealm(((CachedRole) object).getRealm());
+            } else if (object instanceof CachedGroup) {
+                effectiveRoleCache.invalidateRealm(((CachedGroup) object).getRealm());
+            } else if (object instanceof CachedClient) {
+                effectiveRoleCache.invalidateRealm(((CachedClient) object).getRealm());
+            } else if (object instanceof CachedClientTemplate) {
+                effectiveRoleCache.invalidateRealm(((CachedClientTemplate) object).getRealm());
+            }
+        }
     }
 }
@@ -28,14 +28,18 @@ import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.KeycloakSessionFactory;
 import org.keycloak.models.cache.CacheUserProvider;
 import org.keycloak.models.cache.CacheUserProviderFactory;
+import org.keycloak.models.cache.SingleFlightLoader;
 import org.keycloak.models.cache.entities.CachedUser;
+import org.keycloak.provider.ServerInfoAwareProviderFactory;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author <a href="mailto:sthorger@redhat.com">Stian Thorgersen</a>
  */
-public class InfinispanCacheUserProviderFactory implements CacheUserProviderFactory {
+public class InfinispanCacheUserProviderFactory implements CacheUserProviderFactory, ServerInfoAwareProviderFactory {
 
     private static final Logger log = Logger.getLogger(InfinispanCacheUserProviderFactory.class);
 
@@ -45,10 +49,12 @@ public class InfinispanCacheUserProviderFactory implements CacheUserProviderFact
 
     protected final RealmLookup emailLookup = new RealmLookup();
 
+    protected final SingleFlightLoader loader = new SingleFlightLoader();
+
     @Override
     public CacheUserProvider create(KeycloakSession session) {
         lazyInit(session);
-        return new DefaultCacheUserProvider(userCache, session);
+        return new DefaultCacheUserProvider(userCache, loader, session);
     }
 
     private void lazyInit(KeycloakSession session) {
@@ -81,6 +87,14 @@ public class InfinispanCacheUserProviderFactory implements CacheUserProviderFact
         return "infinispan";
     }
 
+    @Override
+    public Map<String, String> getOperationalInfo() {
+        Map<String, String> info = new LinkedHashMap<>();
+        info.put("loads", String.valueOf(loader.getLoads()));
+        info.put("coalescedLoads", String.valueOf(loader.getCoalescedLoads()));
+        return info;
+    }
+
     @Listener
     public class CacheListener {
 
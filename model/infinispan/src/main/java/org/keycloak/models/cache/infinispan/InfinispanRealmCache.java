@@ -18,6 +18,7 @@
 package org.keycloak.models.cache.infinispan;
 
 import org.infinispan.Cache;
+import org.infinispan.context.Flag;
 import org.jboss.logging.Logger;
 import org.keycloak.models.cache.RealmCache;
 import org.keycloak.models.cache.entities.CachedClient;
@@ -26,6 +27,9 @@ import org.keycloak.models.cache.entities.CachedGroup;
 import org.keycloak.models.cache.entities.CachedRealm;
 import org.keycloak.models.cache.entities.CachedRole;
 
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -70,13 +74,54 @@ public class InfinispanRealmCache implements RealmCache {
         if (cached != null) realmLookup.remove(cached.getName());
     }
 
+    @Override
+    public void invalidateRealmSlices(String id, Set<CachedRealm.Slice> slices) {
+        logger.tracev("Invalidating {0} of realm {1}", slices, id);
+        // Removing the markers invalidates them on all nodes, and the listener of each node holding the realm marks
+        // the slices stale. The realm entry itself isn't invalidated, which would evict all its roles and clients.
+        for (CachedRealm.Slice slice : slices) {
+            cache.remove(RealmSliceMarker.key(id, slice));
+        }
+    }
+
+    /**
+     * Marks slices of the locally cached realm stale, called when their markers are removed, invalidated or evicted.
+     * The entry is replaced even if the slices are stale already, so a rebuild that is in progress is discarded.
+     */
+    public void markRealmSlicesStale(String id, Set<CachedRealm.Slice> slices) {
+        while (true) {
+            CachedRealm cached = getRealm(id);
+            if (cached == null) {
+                return;
+            }
+            if (cache.getAdvancedCache().withFlags(Flag.CACHE_MODE_LOCAL).replace(id, cached, cached.stale(slices))) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void replaceRealm(CachedRealm stale, CachedRealm rebuilt) {
+        addSliceMarkers(rebuilt.getId(), stale.getStaleSlices());
+        cache.getAdvancedCache().withFlags(Flag.CACHE_MODE_LOCAL).replace(stale.getId(), stale, rebuilt);
+    }
+
     @Override
     public void addRealm(CachedRealm realm) {
         logger.tracev("Adding realm {0}", realm.getId());
+        // Markers first, so a realm is never cached without the markers notifying it of changes
+        addSliceMarkers(realm.getId(), EnumSet.allOf(CachedRealm.Slice.class));
         cache.putForExternalRead(realm.getId(), realm);
         realmLookup.put(realm.getName(), realm.getId());
     }
 
+    private void addSliceMarkers(String id, Set<CachedRealm.Slice> slices) {
+        for (CachedRealm.Slice slice : slices) {
+            RealmSliceMarker marker = new RealmSliceMarker(id, slice);
+            cache.putForExternalRead(marker.getKey(), marker);
+        }
+    }
+
     @Override
     public CachedRealm getRealmByName(String name) {
         String id = realmLookup.get(name);
@@ -198,5 +243,9 @@ public class InfinispanRealmCache implements RealmCache {
         cache.evict(id);
     }
 
+    @Override
+    public Map<String, Long> getRealmSizes() {
+        return RealmCacheSizeEstimator.estimateRealmSizes(cache);
+    }
 
 }
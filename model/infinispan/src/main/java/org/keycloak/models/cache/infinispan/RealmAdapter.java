@@ -51,8 +51,22 @@ public class RealmAdapter implements RealmModel {
     }
 
     protected void getDelegateForUpdate() {
+        cacheSession.registerRealmInvalidation(getId());
+        loadDelegate();
+    }
+
+    /**
+     * Only the given slices of the cached realm are reloaded after the update, instead of the whole realm
+     */
+    protected void getDelegateForUpdate(CachedRealm.Slice... slices) {
+        for (CachedRealm.Slice slice : slices) {
+            cacheSession.registerRealmInvalidation(getId(), slice);
+        }
+        loadDelegate();
+    }
+
+    private void loadDelegate() {
         if (updated == null) {
-            cacheSession.registerRealmInvalidation(getId());
             updated = cacheSession.getDelegate().getRealm(getId());
             if (updated == null) throw new IllegalStateException("Not found in database");
         }
@@ -84,7 +98,7 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public void setDisplayName(String displayName) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.SETTINGS);
         updated.setDisplayName(displayName);
     }
 
@@ -96,7 +110,7 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public void setDisplayNameHtml(String displayNameHtml) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.SETTINGS);
         updated.setDisplayNameHtml(displayNameHtml);
     }
 
@@ -108,7 +122,7 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public void setEnabled(boolean enabled) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.SETTINGS);
         updated.setEnabled(enabled);
     }
 
@@ -120,7 +134,7 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public void setSslRequired(SslRequired sslRequired) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.SETTINGS);
         updated.setSslRequired(sslRequired);
     }
 
@@ -132,7 +146,7 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public void setRegistrationAllowed(boolean registrationAllowed) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.SETTINGS);
         updated.setRegistrationAllowed(registrationAllowed);
     }
 
@@ -144,7 +158,7 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public void setRegistrationEmailAsUsername(boolean registrationEmailAsUsername) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.SETTINGS);
         updated.setRegistrationEmailAsUsername(registrationEmailAsUsername);
     }
 
@@ -156,7 +170,7 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public void setRememberMe(boolean rememberMe) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.SETTINGS);
         updated.setRememberMe(rememberMe);
     }
 
@@ -168,7 +182,7 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public void setBruteForceProtected(boolean value) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.SETTINGS);
         updated.setBruteForceProtected(value);
     }
 
@@ -180,7 +194,7 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public void setMaxFailureWaitSeconds(int val) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.SETTINGS);
         updated.setMaxFailureWaitSeconds(val);
     }
 
@@ -192,7 +206,7 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public void setWaitIncrementSeconds(int val) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.SETTINGS);
         updated.setWaitIncrementSeconds(val);
     }
 
@@ -204,7 +218,7 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public void setMinimumQuickLoginWaitSeconds(int val) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.SETTINGS);
         updated.setMinimumQuickLoginWaitSeconds(val);
     }
 
@@ -216,7 +230,7 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public void setQuickLoginCheckMilliSeconds(long val) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.SETTINGS);
         updated.setQuickLoginCheckMilliSeconds(val);
     }
 
@@ -228,7 +242,7 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public void setMaxDeltaTimeSeconds(int val) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.SETTINGS);
         updated.setMaxDeltaTimeSeconds(val);
     }
 
@@ -240,7 +254,7 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public void setFailureFactor(int failureFactor) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.SETTINGS);
         updated.setFailureFactor(failureFactor);
     }
 
@@ -252,7 +266,7 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public void setVerifyEmail(boolean verifyEmail) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.SETTINGS);
         updated.setVerifyEmail(verifyEmail);
     }
 
@@ -264,7 +278,7 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public void setResetPasswordAllowed(boolean resetPasswordAllowed) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.SETTINGS);
         updated.setResetPasswordAllowed(resetPasswordAllowed);
     }
 
@@ -276,7 +290,7 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public void setEditUsernameAllowed(boolean editUsernameAllowed) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.SETTINGS);
         updated.setEditUsernameAllowed(editUsernameAllowed);
     }
 
@@ -288,7 +302,7 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public void setRevokeRefreshToken(boolean revokeRefreshToken) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.SETTINGS);
         updated.setRevokeRefreshToken(revokeRefreshToken);
     }
 
@@ -300,7 +314,7 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public void setSsoSessionIdleTimeout(int seconds) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.SETTINGS);
         updated.setSsoSessionIdleTimeout(seconds);
     }
 
@@ -312,7 +326,7 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public void setSsoSessionMaxLifespan(int seconds) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.SETTINGS);
         updated.setSsoSessionMaxLifespan(seconds);
     }
 
@@ -325,7 +339,7 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public void setOfflineSessionIdleTimeout(int seconds) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.SETTINGS);
         updated.setOfflineSessionIdleTimeout(seconds);
     }
 
@@ -337,7 +351,7 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public void setAccessTokenLifespan(int seconds) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.SETTINGS);
         updated.setAccessTokenLifespan(seconds);
     }
 
@@ -349,7 +363,7 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public void setAccessTokenLifespanForImplicitFlow(int seconds) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.SETTINGS);
         updated.setAccessTokenLifespanForImplicitFlow(seconds);
     }
 
@@ -361,7 +375,7 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public void setAccessCodeLifespan(int seconds) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.SETTINGS);
         updated.setAccessCodeLifespan(seconds);
     }
 
@@ -373,7 +387,7 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public void setAccessCodeLifespanUserAction(int seconds) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.SETTINGS);
         updated.setAccessCodeLifespanUserAction(seconds);
     }
 
@@ -385,7 +399,7 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public void setAccessCodeLifespanLogin(int seconds) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.SETTINGS);
         updated.setAccessCodeLifespanLogin(seconds);
     }
 
@@ -397,7 +411,7 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public void setPublicKeyPem(String publicKeyPem) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.SETTINGS);
         updated.setPublicKeyPem(publicKeyPem);
     }
 
@@ -409,7 +423,7 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public void setPrivateKeyPem(String privateKeyPem) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.SETTINGS);
         updated.setPrivateKeyPem(privateKeyPem);
     }
 
@@ -455,7 +469,7 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public void setCertificatePem(String certificate) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.SETTINGS);
         updated.setCertificatePem(certificate);
 
     }
@@ -496,7 +510,7 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public void setCodeSecret(String codeSecret) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.SETTINGS);
         updated.setCodeSecret(codeSecret);
     }
 
@@ -511,7 +525,7 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public void addRequiredCredential(String cred) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.SETTINGS);
         updated.addRequiredCredential(cred);
     }
 
@@ -523,7 +537,7 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public void setPasswordPolicy(PasswordPolicy policy) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.SETTINGS);
         updated.setPasswordPolicy(policy);
     }
 
@@ -535,7 +549,7 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public void setOTPPolicy(OTPPolicy policy) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.SETTINGS);
         updated.setOTPPolicy(policy);
 
     }
@@ -558,14 +572,14 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public void addDefaultGroup(GroupModel group) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.SETTINGS);
         updated.addDefaultGroup(group);
 
     }
 
     @Override
     public void removeDefaultGroup(GroupModel group) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.SETTINGS);
         updated.removeDefaultGroup(group);
 
     }
@@ -578,13 +592,13 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public void addDefaultRole(String name) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.SETTINGS);
         updated.addDefaultRole(name);
     }
 
     @Override
     public void updateDefaultRoles(String[] defaultRoles) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.SETTINGS);
         updated.updateDefaultRoles(defaultRoles);
     }
 
@@ -619,7 +633,7 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public ClientModel addClient(String name) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.CLIENTS);
         ClientModel app = updated.addClient(name);
         cacheSession.registerApplicationInvalidation(app.getId());
         return app;
@@ -627,7 +641,7 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public ClientModel addClient(String id, String clientId) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.CLIENTS);
         ClientModel app =  updated.addClient(id, clientId);
         cacheSession.registerApplicationInvalidation(app.getId());
         return app;
@@ -653,7 +667,7 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public void updateRequiredCredentials(Set<String> creds) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.SETTINGS);
         updated.updateRequiredCredentials(creds);
     }
 
@@ -665,7 +679,7 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public void setBrowserSecurityHeaders(Map<String, String> headers) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.SETTINGS);
         updated.setBrowserSecurityHeaders(headers);
 
     }
@@ -678,7 +692,7 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public void setSmtpConfig(Map<String, String> smtpConfig) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.SETTINGS);
         updated.setSmtpConfig(smtpConfig);
     }
 
@@ -702,19 +716,19 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public void addIdentityProvider(IdentityProviderModel identityProvider) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.IDENTITY_PROVIDERS);
         updated.addIdentityProvider(identityProvider);
     }
 
     @Override
     public void updateIdentityProvider(IdentityProviderModel identityProvider) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.IDENTITY_PROVIDERS);
         updated.updateIdentityProvider(identityProvider);
     }
 
     @Override
     public void removeIdentityProviderByAlias(String alias) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.IDENTITY_PROVIDERS);
         updated.removeIdentityProviderByAlias(alias);
     }
 
@@ -726,26 +740,26 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public void setUserFederationProviders(List<UserFederationProviderModel> providers) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.SETTINGS);
         updated.setUserFederationProviders(providers);
     }
 
     @Override
     public UserFederationProviderModel addUserFederationProvider(String providerName, Map<String, String> config, int priority, String displayName, int fullSyncPeriod, int changedSyncPeriod, int lastSync) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.SETTINGS);
         return updated.addUserFederationProvider(providerName, config, priority, displayName, fullSyncPeriod, changedSyncPeriod, lastSync);
     }
 
     @Override
     public void removeUserFederationProvider(UserFederationProviderModel provider) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.SETTINGS);
         updated.removeUserFederationProvider(provider);
 
     }
 
     @Override
     public void updateUserFederationProvider(UserFederationProviderModel provider) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.SETTINGS);
         updated.updateUserFederationProvider(provider);
 
     }
@@ -758,7 +772,7 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public void setLoginTheme(String name) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.SETTINGS);
         updated.setLoginTheme(name);
     }
 
@@ -770,7 +784,7 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public void setAccountTheme(String name) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.SETTINGS);
         updated.setAccountTheme(name);
     }
 
@@ -782,7 +796,7 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public void setAdminTheme(String name) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.SETTINGS);
         updated.setAdminTheme(name);
     }
 
@@ -794,7 +808,7 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public void setEmailTheme(String name) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.SETTINGS);
         updated.setEmailTheme(name);
     }
 
@@ -806,13 +820,14 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public void setNotBefore(int notBefore) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.SETTINGS);
         updated.setNotBefore(notBefore);
     }
 
     @Override
     public boolean removeRoleById(String id) {
         cacheSession.registerRoleInvalidation(id);
+        // Cached composite roles and client scope mappings may refer to the role, so the whole realm is evicted
         getDelegateForUpdate();
         return updated.removeRoleById(id);
     }
@@ -825,7 +840,7 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public void setEventsEnabled(boolean enabled) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.SETTINGS);
         updated.setEventsEnabled(enabled);
     }
 
@@ -837,7 +852,7 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public void setEventsExpiration(long expiration) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.SETTINGS);
         updated.setEventsExpiration(expiration);
     }
 
@@ -849,7 +864,7 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public void setEventsListeners(Set<String> listeners) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.SETTINGS);
         updated.setEventsListeners(listeners);
     }
 
@@ -861,7 +876,7 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public void setEnabledEventTypes(Set<String> enabledEventTypes) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.SETTINGS);
         updated.setEnabledEventTypes(enabledEventTypes);        
     }
     
@@ -873,7 +888,7 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public void setAdminEventsEnabled(boolean enabled) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.SETTINGS);
         updated.setAdminEventsEnabled(enabled);
     }
 
@@ -885,7 +900,7 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public void setAdminEventsDetailsEnabled(boolean enabled) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.SETTINGS);
         updated.setAdminEventsDetailsEnabled(enabled);
     }
     
@@ -896,7 +911,7 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public void setMasterAdminClient(ClientModel client) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.SETTINGS);
         updated.setMasterAdminClient(client);
     }
 
@@ -910,7 +925,7 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public RoleModel addRole(String name) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.ROLES, CachedRealm.Slice.SETTINGS);
         RoleModel role = updated.addRole(name);
         cacheSession.registerRoleInvalidation(role.getId());
         return role;
@@ -918,7 +933,7 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public RoleModel addRole(String id, String name) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.ROLES, CachedRealm.Slice.SETTINGS);
         RoleModel role =  updated.addRole(id, name);
         cacheSession.registerRoleInvalidation(role.getId());
         return role;
@@ -927,6 +942,7 @@ public class RealmAdapter implements RealmModel {
     @Override
     public boolean removeRole(RoleModel role) {
         cacheSession.registerRoleInvalidation(role.getId());
+        // Cached composite roles and client scope mappings may refer to the role, so the whole realm is evicted
         getDelegateForUpdate();
         return updated.removeRole(role);
     }
@@ -973,7 +989,7 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public void setInternationalizationEnabled(boolean enabled) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.SETTINGS);
         updated.setInternationalizationEnabled(enabled);
     }
 
@@ -985,7 +1001,7 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public void setSupportedLocales(Set<String> locales) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.SETTINGS);
         updated.setSupportedLocales(locales);
     }
 
@@ -1025,19 +1041,19 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public IdentityProviderMapperModel addIdentityProviderMapper(IdentityProviderMapperModel model) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.IDENTITY_PROVIDERS);
         return updated.addIdentityProviderMapper(model);
     }
 
     @Override
     public void removeIdentityProviderMapper(IdentityProviderMapperModel mapping) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.IDENTITY_PROVIDERS);
         updated.removeIdentityProviderMapper(mapping);
     }
 
     @Override
     public void updateIdentityProviderMapper(IdentityProviderMapperModel mapping) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.IDENTITY_PROVIDERS);
         updated.updateIdentityProviderMapper(mapping);
     }
 
@@ -1088,19 +1104,19 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public UserFederationMapperModel addUserFederationMapper(UserFederationMapperModel mapper) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.SETTINGS);
         return updated.addUserFederationMapper(mapper);
     }
 
     @Override
     public void removeUserFederationMapper(UserFederationMapperModel mapper) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.SETTINGS);
         updated.removeUserFederationMapper(mapper);
     }
 
     @Override
     public void updateUserFederationMapper(UserFederationMapperModel mapper) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.SETTINGS);
         updated.updateUserFederationMapper(mapper);
     }
 
@@ -1134,7 +1150,7 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public void setBrowserFlow(AuthenticationFlowModel flow) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.AUTHENTICATION);
         updated.setBrowserFlow(flow);
 
     }
@@ -1147,7 +1163,7 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public void setRegistrationFlow(AuthenticationFlowModel flow) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.AUTHENTICATION);
         updated.setRegistrationFlow(flow);
 
     }
@@ -1160,7 +1176,7 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public void setDirectGrantFlow(AuthenticationFlowModel flow) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.AUTHENTICATION);
         updated.setDirectGrantFlow(flow);
 
     }
@@ -1172,7 +1188,7 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public void setResetCredentialsFlow(AuthenticationFlowModel flow) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.AUTHENTICATION);
         updated.setResetCredentialsFlow(flow);
 
     }
@@ -1185,7 +1201,7 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public void setClientAuthenticationFlow(AuthenticationFlowModel flow) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.AUTHENTICATION);
         updated.setClientAuthenticationFlow(flow);
     }
 
@@ -1220,7 +1236,7 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public AuthenticationFlowModel addAuthenticationFlow(AuthenticationFlowModel model) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.AUTHENTICATION);
         return updated.addAuthenticationFlow(model);
     }
 
@@ -1232,14 +1248,14 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public void removeAuthenticationFlow(AuthenticationFlowModel model) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.AUTHENTICATION);
         updated.removeAuthenticationFlow(model);
 
     }
 
     @Override
     public void updateAuthenticationFlow(AuthenticationFlowModel model) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.AUTHENTICATION);
         updated.updateAuthenticationFlow(model);
 
     }
@@ -1258,20 +1274,20 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public AuthenticationExecutionModel addAuthenticatorExecution(AuthenticationExecutionModel model) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.AUTHENTICATION);
         return updated.addAuthenticatorExecution(model);
     }
 
     @Override
     public void updateAuthenticatorExecution(AuthenticationExecutionModel model) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.AUTHENTICATION);
         updated.updateAuthenticatorExecution(model);
 
     }
 
     @Override
     public void removeAuthenticatorExecution(AuthenticationExecutionModel model) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.AUTHENTICATION);
         updated.removeAuthenticatorExecution(model);
 
     }
@@ -1286,20 +1302,20 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public AuthenticatorConfigModel addAuthenticatorConfig(AuthenticatorConfigModel model) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.AUTHENTICATION);
         return updated.addAuthenticatorConfig(model);
     }
 
     @Override
     public void updateAuthenticatorConfig(AuthenticatorConfigModel model) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.AUTHENTICATION);
         updated.updateAuthenticatorConfig(model);
 
     }
 
     @Override
     public void removeAuthenticatorConfig(AuthenticatorConfigModel model) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.AUTHENTICATION);
         updated.removeAuthenticatorConfig(model);
 
     }
@@ -1320,20 +1336,20 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public RequiredActionProviderModel addRequiredActionProvider(RequiredActionProviderModel model) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.AUTHENTICATION);
         return updated.addRequiredActionProvider(model);
     }
 
     @Override
     public void updateRequiredActionProvider(RequiredActionProviderModel model) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.AUTHENTICATION);
         updated.updateRequiredActionProvider(model);
 
     }
 
     @Override
     public void removeRequiredActionProvider(RequiredActionProviderModel model) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.AUTHENTICATION);
         updated.removeRequiredActionProvider(model);
 
     }
@@ -1390,26 +1406,26 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public GroupModel createGroup(String name) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.SETTINGS);
         return updated.createGroup(name);
     }
 
     @Override
     public GroupModel createGroup(String id, String name) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.SETTINGS);
         return updated.createGroup(id, name);
     }
 
     @Override
     public void addTopLevelGroup(GroupModel subGroup) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.SETTINGS);
         updated.addTopLevelGroup(subGroup);
 
     }
 
     @Override
     public void moveGroup(GroupModel group, GroupModel toParent) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.SETTINGS);
         updated.moveGroup(group, toParent);
     }
 
@@ -1430,7 +1446,7 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public ClientTemplateModel addClientTemplate(String name) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.CLIENTS);
         ClientTemplateModel app = updated.addClientTemplate(name);
         cacheSession.registerClientTemplateInvalidation(app.getId());
         return app;
@@ -1438,7 +1454,7 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public ClientTemplateModel addClientTemplate(String id, String name) {
-        getDelegateForUpdate();
+        getDelegateForUpdate(CachedRealm.Slice.CLIENTS);
         ClientTemplateModel app =  updated.addClientTemplate(id, name);
         cacheSession.registerClientTemplateInvalidation(app.getId());
         return app;
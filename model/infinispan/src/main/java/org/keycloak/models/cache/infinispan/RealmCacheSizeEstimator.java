@@ -0,0 +1,197 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.cache.infinispan;
+
+import org.infinispan.Cache;
+import org.keycloak.models.cache.entities.CachedClient;
+import org.keycloak.models.cache.entities.CachedClientTemplate;
+import org.keycloak.models.cache.entities.CachedGroup;
+import org.keycloak.models.cache.entities.CachedRealm;
+import org.keycloak.models.cache.entities.CachedRole;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Estimates the memory retained by the entries of the realm cache, grouped by realm. The estimate walks the object
+ * graph of each entry assuming a 64-bit JVM with compressed references. Objects shared by entries of the same realm
+ * are counted once, objects shared between realms (interned ids for example) are counted for each realm.
+ */
+public class RealmCacheSizeEstimator {
+
+    private static final int OBJECT_HEADER = 12;
+    private static final int ARRAY_HEADER = 16;
+    private static final int REFERENCE = 4;
+    private static final int ALIGNMENT = 8;
+
+    private static final Map<Class<?>, ClassLayout> layouts = new ConcurrentHashMap<>();
+
+    public static Map<String, Long> estimateRealmSizes(Cache<String, Object> cache) {
+        Map<String, IdentityHashMap<Object, Object>> visited = new HashMap<>();
+        Map<String, Long> sizes = new HashMap<>();
+
+        for (Object entry : cache.values()) {
+            String realm = getRealm(entry);
+            if (realm == null) {
+                continue;
+            }
+
+            IdentityHashMap<Object, Object> realmVisited = visited.get(realm);
+            if (realmVisited == null) {
+                realmVisited = new IdentityHashMap<>();
+                visited.put(realm, realmVisited);
+            }
+
+            long size = estimate(entry, realmVisited);
+            Long current = sizes.get(realm);
+            sizes.put(realm, current != null ? current + size : size);
+        }
+
+        return sizes;
+    }
+
+    private static String getRealm(Object entry) {
+        if (entry instanceof CachedRealm) {
+            return ((CachedRealm) entry).getId();
+        } else if (entry instanceof CachedClient) {
+            return ((CachedClient) entry).getRealm();
+        } else if (entry instanceof CachedRole) {
+            return ((CachedRole) entry).getRealm();
+        } else if (entry instanceof CachedGroup) {
+            return ((CachedGroup) entry).getRealm();
+        } else if (entry instanceof CachedClientTemplate) {
+            return ((CachedClientTemplate) entry).getRealm();
+        } else {
+            return null;
+        }
+    }
+
+    private static long estimate(Object root, IdentityHashMap<Object, Object> visited) {
+        long size = 0;
+        Deque<Object> stack = new ArrayDeque<>();
+        stack.push(root);
+
+        while (!stack.isEmpty()) {
+            Object o = stack.pop();
+            if (visited.put(o, o) != null) {
+                continue;
+            }
+
+            Class<?> clazz = o.getClass();
+            if (clazz.isArray()) {
+                Class<?> componentType = clazz.getComponentType();
+                int length = Array.getLength(o);
+                size += align(ARRAY_HEADER + (long) length * sizeOf(componentType));
+                if (!componentType.isPrimitive()) {
+                    for (int i = 0; i < length; i++) {
+                        push(stack, Array.get(o, i));
+                    }
+                }
+            } else {
+                ClassLayout layout = getLayout(clazz);
+                size += layout.size;
+                for (Field field : layout.references) {
+                    try {
+                        push(stack, field.get(o));
+                    } catch (IllegalAccessException e) {
+                        // Not accessible, only the reference itself is counted
+                    }
+                }
+            }
+        }
+
+        return size;
+    }
+
+    private static void push(Deque<Object> stack, Object o) {
+        if (o != null && !isShared(o)) {
+            stack.push(o);
+        }
+    }
+
+    private static boolean isShared(Object o) {
+        return o instanceof Class || o instanceof Enum || o instanceof ClassLoader || o instanceof Thread;
+    }
+
+    private static ClassLayout getLayout(Class<?> clazz) {
+        ClassLayout layout = layouts.get(clazz);
+        if (layout == null) {
+            layout = new ClassLayout(clazz);
+            layouts.put(clazz, layout);
+        }
+        return layout;
+    }
+
+    private static int sizeOf(Class<?> type) {
+        if (type == long.class || type == double.class) {
+            return 8;
+        } else if (type == int.class || type == float.class) {
+            return 4;
+        } else if (type == short.class || type == char.class) {
+            return 2;
+        } else if (type == byte.class || type == boolean.class) {
+            return 1;
+        } else {
+            return REFERENCE;
+        }
+    }
+
+    private static long align(long size) {
+        return (size + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    private static class ClassLayout {
+
+        private final long size;
+        private final List<Field> references = new ArrayList<>();
+
+        private ClassLayout(Class<?> clazz) {
+            long fieldsSize = 0;
+            for (Class<?> c = clazz; c != null; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers())) {
+                        continue;
+                    }
+
+                    fieldsSize += sizeOf(field.getType());
+
+                    if (!field.getType().isPrimitive()) {
+                        try {
+                            field.setAccessible(true);
+                            references.add(field);
+                        } catch (RuntimeException e) {
+                            // Not accessible, only the reference itself is counted
+                        }
+                    }
+                }
+            }
+            size = align(OBJECT_HEADER + fieldsSize);
+        }
+
+    }
+
+}
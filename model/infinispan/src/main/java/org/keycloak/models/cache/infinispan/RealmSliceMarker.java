@@ -0,0 +1,54 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.keycloak.models.cache.infinispan;
+
+import org.keycloak.models.cache.entities.CachedRealm;
+
+import java.io.Serializable;
+
+/**
+ * Entry cached next to a realm for each of its slices. Slice invalidations remove the marker instead of the realm entry,
+ * so every node holding the realm is notified of the changed slice through the invalidation of the marker and marks
+ * only that slice stale, instead of evicting the realm with all its roles and clients.
+ */
+public class RealmSliceMarker implements Serializable {
+
+    private final String realmId;
+    private final CachedRealm.Slice slice;
+
+    public RealmSliceMarker(String realmId, CachedRealm.Slice slice) {
+        this.realmId = realmId;
+        this.slice = slice;
+    }
+
+    public static String key(String realmId, CachedRealm.Slice slice) {
+        return realmId + ".slice." + slice.name();
+    }
+
+    public String getKey() {
+        return key(realmId, slice);
+    }
+
+    public String getRealmId() {
+        return realmId;
+    }
+
+    public CachedRealm.Slice getSlice() {
+        return slice;
+    }
+
+}
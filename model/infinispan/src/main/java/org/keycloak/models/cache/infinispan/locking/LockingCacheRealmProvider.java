@@ -28,6 +28,7 @@ import org.keycloak.models.RealmModel;
 import org.keycloak.models.RealmProvider;
 import org.keycloak.models.RoleModel;
 import org.keycloak.models.cache.CacheRealmProvider;
+import org.keycloak.models.cache.EffectiveRoleCache;
 import org.keycloak.models.cache.entities.CachedClient;
 import org.keycloak.models.cache.entities.CachedClientTemplate;
 import org.keycloak.models.cache.entities.CachedGroup;
@@ -61,6 +62,7 @@ import java.util.Set;
 public class LockingCacheRealmProvider implements CacheRealmProvider {
     protected static final Logger logger = Logger.getLogger(LockingCacheRealmProvider.class);
     protected LockingRealmCache cache;
+    protected EffectiveRoleCache effectiveRoleCache;
     protected KeycloakSession session;
     protected RealmProvider delegate;
     protected boolean transactionActive;
@@ -79,8 +81,9 @@ public class LockingCacheRealmProvider implements CacheRealmProvider {
 
     protected boolean clearAll;
 
-    public LockingCacheRealmProvider(LockingRealmCache cache, KeycloakSession session) {
+    public LockingCacheRealmProvider(LockingRealmCache cache, EffectiveRoleCache effectiveRoleCache, KeycloakSession session) {
         this.cache = cache;
+        this.effectiveRoleCache = effectiveRoleCache;
         this.session = session;
 
         session.getTransaction().enlistPrepare(getPrepareTransaction());
@@ -90,6 +93,17 @@ public class LockingCacheRealmProvider implements CacheRealmProvider {
     @Override
     public void clear() {
         cache.clear();
+        effectiveRoleCache.clear();
+    }
+
+    @Override
+    public EffectiveRoleCache getEffectiveRoleCache() {
+        return effectiveRoleCache;
+    }
+
+    @Override
+    public Map<String, Long> getRealmCacheSizes() {
+        return cache.getRealmSizes();
     }
 
     @Override
@@ -114,6 +128,11 @@ public class LockingCacheRealmProvider implements CacheRealmProvider {
         realmInvalidations.add(id);
     }
 
+    @Override
+    public void registerRealmInvalidation(String id, CachedRealm.Slice slice) {
+        registerRealmInvalidation(id);
+    }
+
     @Override
     public void registerApplicationInvalidation(String id) {
         appInvalidations.add(id);
@@ -137,18 +156,23 @@ public class LockingCacheRealmProvider implements CacheRealmProvider {
     protected void runInvalidations() {
         for (String id : realmInvalidations) {
             cache.invalidateRealmById(id);
+            effectiveRoleCache.invalidateRealm(id);
         }
         for (String id : roleInvalidations) {
             cache.invalidateRoleById(id);
+            effectiveRoleCache.invalidate(id);
         }
         for (String id : groupInvalidations) {
             cache.invalidateGroupById(id);
+            effectiveRoleCache.invalidate(id);
         }
         for (String id : appInvalidations) {
             cache.invalidateClientById(id);
+            effectiveRoleCache.invalidate(id);
         }
         for (String id : clientTemplateInvalidations) {
             cache.invalidateClientTemplateById(id);
+            effectiveRoleCache.invalidate(id);
         }
     }
 
@@ -223,6 +247,7 @@ public class LockingCacheRealmProvider implements CacheRealmProvider {
                     if (delegate == null) return;
                     if (clearAll) {
                         cache.clear();
+                        effectiveRoleCache.clear();
                     }
                     runInvalidations();
                     transactionActive = false;
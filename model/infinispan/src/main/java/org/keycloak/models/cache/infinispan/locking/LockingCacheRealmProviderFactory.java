@@ -34,8 +34,12 @@ import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.KeycloakSessionFactory;
 import org.keycloak.models.cache.CacheRealmProvider;
 import org.keycloak.models.cache.CacheRealmProviderFactory;
+import org.keycloak.models.cache.EffectiveRoleCache;
 import org.keycloak.models.cache.entities.CachedClient;
+import org.keycloak.models.cache.entities.CachedClientTemplate;
+import org.keycloak.models.cache.entities.CachedGroup;
 import org.keycloak.models.cache.entities.CachedRealm;
+import org.keycloak.models.cache.entities.CachedRole;
 
 /**
  * @author <a href="mailto:bill@burkecentral.com">Bill Burke</a>
@@ -47,10 +51,12 @@ public class LockingCacheRealmProviderFactory implements CacheRealmProviderFacto
 
     protected volatile LockingRealmCache realmCache;
 
+    protected final EffectiveRoleCache effectiveRoleCache = new EffectiveRoleCache();
+
     @Override
     public CacheRealmProvider create(KeycloakSession session) {
         lazyInit(session);
-        return new LockingCacheRealmProvider(realmCache, session);
+        return new LockingCacheRealmProvider(realmCache, effectiveRoleCache, session);
     }
 
     private void lazyInit(KeycloakSession session) {
@@ -129,6 +135,8 @@ public class LockingCacheRealmProviderFactory implements CacheRealmProviderFacto
         }
 
         private void remove(Object object) {
+            invalidateEffectiveRoles(object);
+
             if (object instanceof CachedRealm) {
                 CachedRealm realm = (CachedRealm) object;
 
@@ -155,5 +163,20 @@ public class LockingCacheRealmProviderFactory implements CacheRealmProviderFacto
                 log.tracev("Client removed client={0}", client.getId());
             }
         }
+
+        // Closures may be computed from the removed entry, so they need to be dropped too
+        private void invalidateEffectiveRoles(Object object) {
+            if (object instanceof CachedRealm) {
+                effectiveRoleCache.invalidateRealm(((CachedRealm) object).getId());
+            } else if (object instanceof CachedRole) {
+                effectiveRoleCache.invalidateRealm(((CachedRole) object).getRealm());
+            } else if (object instanceof CachedGroup) {
+                effectiveRoleCache.invalidateRealm(((CachedGroup) object).getRealm());
+            } else if (object instanceof CachedClient) {
+                effectiveRoleCache.invalidateRealm(((CachedClient) object).getRealm());
+            } else if (object instanceof CachedClientTemplate) {
+                effectiveRoleCache.invalidateRealm(((CachedClientTemplate) object).getRealm());
+            }
+        }
     }
 }
@@ -21,12 +21,15 @@ import org.infinispan.Cache;
 import org.jboss.logging.Logger;
 import org.keycloak.models.RealmModel;
 import org.keycloak.models.cache.RealmCache;
+import org.keycloak.models.cache.infinispan.RealmCacheSizeEstimator;
 import org.keycloak.models.cache.entities.CachedClient;
 import org.keycloak.models.cache.entities.CachedClientTemplate;
 import org.keycloak.models.cache.entities.CachedGroup;
 import org.keycloak.models.cache.entities.CachedRealm;
 import org.keycloak.models.cache.entities.CachedRole;
 
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -158,6 +161,17 @@ public class LockingRealmCache implements RealmCache {
         if (cached != null) realmLookup.remove(cached.getName());
     }
 
+    @Override
+    public void invalidateRealmSlices(String id, Set<CachedRealm.Slice> slices) {
+        // Revisioned entries can't be partially reloaded
+        invalidateRealmById(id);
+    }
+
+    @Override
+    public void replaceRealm(CachedRealm stale, CachedRealm rebuilt) {
+        // Never called, realms are never left stale by invalidateRealmSlices
+    }
+
     @Override
     public void addRealm(CachedRealm realm) {
         logger.tracev("Adding realm {0}", realm.getId());
@@ -296,5 +310,9 @@ public class LockingRealmCache implements RealmCache {
         cache.evict(id);
     }
 
+    @Override
+    public Map<String, Long> getRealmSizes() {
+        return RealmCacheSizeEstimator.estimateRealmSizes(cache);
+    }
 
 }
@@ -25,6 +25,7 @@ import org.keycloak.models.RealmModel;
 import org.keycloak.models.UserModel;
 import org.keycloak.models.UserSessionModel;
 import org.keycloak.models.sessions.infinispan.entities.ClientSessionEntity;
+import org.keycloak.models.sessions.infinispan.entities.ClientSessionEntityDelta;
 import org.keycloak.models.sessions.infinispan.entities.SessionEntity;
 
 import java.util.Collections;
@@ -118,7 +119,10 @@ public class ClientSessionAdapter implements ClientSessionModel {
     @Override
     public void setTimestamp(int timestamp) {
         entity.setTimestamp(timestamp);
-        update();
+        ClientSessionEntityDelta delta = updateDelta();
+        if (delta != null) {
+            delta.setTimestamp(timestamp);
+        }
     }
 
     @Override
@@ -129,7 +133,10 @@ public class ClientSessionAdapter implements ClientSessionModel {
     @Override
     public void setAction(String action) {
         entity.setAction(action);
-        update();
+        ClientSessionEntityDelta delta = updateDelta();
+        if (delta != null) {
+            delta.setAction(action);
+        }
     }
 
     @Override
@@ -178,14 +185,20 @@ public class ClientSessionAdapter implements ClientSessionModel {
             entity.setNotes(new HashMap<String, String>());
         }
         entity.getNotes().put(name, value);
-        update();
+        ClientSessionEntityDelta delta = updateDelta();
+        if (delta != null) {
+            delta.setNote(name, value);
+        }
     }
 
     @Override
     public void removeNote(String name) {
         if (entity.getNotes() != null) {
             entity.getNotes().remove(name);
-            update();
+            ClientSessionEntityDelta delta = updateDelta();
+            if (delta != null) {
+                delta.removeNote(name);
+            }
         }
     }
 
@@ -203,7 +216,10 @@ public class ClientSessionAdapter implements ClientSessionModel {
             entity.setUserSessionNotes(new HashMap<String, String>());
         }
         entity.getUserSessionNotes().put(name, value);
-        update();
+        ClientSessionEntityDelta delta = updateDelta();
+        if (delta != null) {
+            delta.setUserSessionNote(name, value);
+        }
 
     }
 
@@ -259,6 +275,11 @@ public class ClientSessionAdapter implements ClientSessionModel {
     void update() {
         provider.getTx().replace(cache, entity.getId(), entity);
     }
+
+    private ClientSessionEntityDelta updateDelta() {
+        return provider.getTx().update(cache, entity.getId(), entity, new ClientSessionEntityDelta());
+    }
+
     @Override
     public Map<String, ExecutionStatus> getExecutionStatus() {
         return entity.getAuthenticatorStatus();
@@ -267,7 +288,10 @@ public class ClientSessionAdapter implements ClientSessionModel {
     @Override
     public void setExecutionStatus(String authenticator, ExecutionStatus status) {
         entity.getAuthenticatorStatus().put(authenticator, status);
-        update();
+        ClientSessionEntityDelta delta = updateDelta();
+        if (delta != null) {
+            delta.setExecutionStatus(authenticator, status);
+        }
 
     }
 
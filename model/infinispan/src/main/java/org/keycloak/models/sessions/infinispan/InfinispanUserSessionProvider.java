@@ -18,12 +18,18 @@
 package org.keycloak.models.sessions.infinispan;
 
 import org.infinispan.Cache;
-import org.infinispan.CacheStream;
+import org.infinispan.atomic.Delta;
+import org.infinispan.atomic.DeltaAware;
+import org.infinispan.context.Flag;
+import org.infinispan.distribution.DistributionManager;
+import org.infinispan.remoting.transport.Address;
 import org.jboss.logging.Logger;
 import org.keycloak.common.util.Time;
 import org.keycloak.models.*;
 import org.keycloak.models.session.UserSessionPersisterProvider;
 import org.keycloak.models.sessions.infinispan.entities.*;
+import org.keycloak.models.sessions.infinispan.index.SessionExpirationQueue;
+import org.keycloak.models.sessions.infinispan.index.SessionIndex;
 import org.keycloak.models.sessions.infinispan.initializer.TimeAwareInitializerState;
 import org.keycloak.models.sessions.infinispan.stream.*;
 import org.keycloak.models.utils.KeycloakModelUtils;
@@ -45,14 +51,23 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
     protected final Cache<String, SessionEntity> sessionCache;
     protected final Cache<String, SessionEntity> offlineSessionCache;
     protected final Cache<LoginFailureKey, LoginFailureEntity> loginFailureCache;
+    protected final SessionIndex sessionIndex;
+    protected final SessionIndex offlineSessionIndex;
+    protected final int expirationBatchSize;
+    protected final LastSessionRefreshBatcher lastSessionRefreshBatcher;
     protected final InfinispanKeycloakTransaction tx;
 
     public InfinispanUserSessionProvider(KeycloakSession session, Cache<String, SessionEntity> sessionCache, Cache<String, SessionEntity> offlineSessionCache,
-                                         Cache<LoginFailureKey, LoginFailureEntity> loginFailureCache) {
+                                         Cache<LoginFailureKey, LoginFailureEntity> loginFailureCache, SessionIndex sessionIndex, SessionIndex offlineSessionIndex,
+                                         int expirationBatchSize, LastSessionRefreshBatcher lastSessionRefreshBatcher) {
         this.session = session;
         this.sessionCache = sessionCache;
         this.offlineSessionCache = offlineSessionCache;
         this.loginFailureCache = loginFailureCache;
+        this.sessionIndex = sessionIndex;
+        this.offlineSessionIndex = offlineSessionIndex;
+        this.expirationBatchSize = expirationBatchSize;
+        this.lastSessionRefreshBatcher = lastSessionRefreshBatcher;
         this.tx = new InfinispanKeycloakTransaction();
 
         session.getTransaction().enlistAfterCompletion(tx);
@@ -62,6 +77,35 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
         return offline ? offlineSessionCache : sessionCache;
     }
 
+    protected SessionIndex getIndex(boolean offline) {
+        return offline ? offlineSessionIndex : sessionIndex;
+    }
+
+    protected SessionIndex getCacheIndex(Cache cache) {
+        if (cache == sessionCache) {
+            return sessionIndex;
+        } else if (cache == offlineSessionCache) {
+            return offlineSessionIndex;
+        } else {
+            return null;
+        }
+    }
+
+    // Loads sessions referenced by the index and re-checks them, as index may be slightly behind the cache
+    protected List<Map.Entry<String, SessionEntity>> getIndexedEntries(Cache<String, SessionEntity> cache, Set<String> ids, Predicate<Map.Entry<String, SessionEntity>> predicate) {
+        List<Map.Entry<String, SessionEntity>> entries = new LinkedList<>();
+        if (ids.isEmpty()) {
+            return entries;
+        }
+
+        for (Map.Entry<String, SessionEntity> entry : cache.getAdvancedCache().getAll(ids).entrySet()) {
+            if (entry.getValue() != null && predicate.test(entry)) {
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
     @Override
     public ClientSessionModel createClientSession(RealmModel realm, ClientModel client) {
         String id = KeycloakModelUtils.generateId();
@@ -155,30 +199,27 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
         return wrap(realm, entity, offline);
     }
 
-    protected List<UserSessionModel> getUserSessions(RealmModel realm, Predicate<Map.Entry<String, SessionEntity>> predicate, boolean offline) {
-        CacheStream<Map.Entry<String, SessionEntity>> cacheStream = getCache(offline).entrySet().stream();
-        Iterator<Map.Entry<String, SessionEntity>> itr = cacheStream.filter(predicate).iterator();
+    protected List<UserSessionModel> getUserSessions(RealmModel realm, Set<String> indexedIds, Predicate<Map.Entry<String, SessionEntity>> predicate, boolean offline) {
         List<UserSessionModel> sessions = new LinkedList<>();
-        while (itr.hasNext()) {
-            UserSessionEntity e = (UserSessionEntity) itr.next().getValue();
-            sessions.add(wrap(realm, e, offline));
+        for (Map.Entry<String, SessionEntity> entry : getIndexedEntries(getCache(offline), indexedIds, predicate)) {
+            sessions.add(wrap(realm, (UserSessionEntity) entry.getValue(), offline));
         }
         return sessions;
     }
 
     @Override
     public List<UserSessionModel> getUserSessions(final RealmModel realm, UserModel user) {
-        return getUserSessions(realm, UserSessionPredicate.create(realm.getId()).user(user.getId()), false);
+        return getUserSessions(realm, sessionIndex.getUserSessionsByUser(user.getId()), UserSessionPredicate.create(realm.getId()).user(user.getId()), false);
     }
 
     @Override
     public List<UserSessionModel> getUserSessionByBrokerUserId(RealmModel realm, String brokerUserId) {
-        return getUserSessions(realm, UserSessionPredicate.create(realm.getId()).brokerUserId(brokerUserId), false);
+        return getUserSessions(realm, sessionIndex.getUserSessionsByBrokerUser(brokerUserId), UserSessionPredicate.create(realm.getId()).brokerUserId(brokerUserId), false);
     }
 
     @Override
     public UserSessionModel getUserSessionByBrokerSessionId(RealmModel realm, String brokerSessionId) {
-        List<UserSessionModel> userSessions = getUserSessions(realm, UserSessionPredicate.create(realm.getId()).brokerSessionId(brokerSessionId), false);
+        List<UserSessionModel> userSessions = getUserSessions(realm, sessionIndex.getUserSessionsByBrokerSession(brokerSessionId), UserSessionPredicate.create(realm.getId()).brokerSessionId(brokerSessionId), false);
         return userSessions.isEmpty() ? null : userSessions.get(0);
     }
 
@@ -195,8 +236,8 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
     protected List<UserSessionModel> getUserSessions(final RealmModel realm, ClientModel client, int firstResult, int maxResults, final boolean offline) {
         final Cache<String, SessionEntity> cache = getCache(offline);
 
-        Iterator<UserSessionTimestamp> itr = cache.entrySet().stream()
-                .filter(ClientSessionPredicate.create(realm.getId()).client(client.getId()).requireUserSession())
+        Iterator<UserSessionTimestamp> itr = getIndexedEntries(cache, getIndex(offline).getClientSessionsByClient(client.getId()),
+                ClientSessionPredicate.create(realm.getId()).client(client.getId()).requireUserSession()).stream()
                 .map(Mappers.clientSessionToUserSessionTimestamp())
                 .iterator();
 
@@ -237,8 +278,9 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
         return getUserSessionsCount(realm, client, false);
     }
 
+    // Counted by the index when sessions are added and removed, client ids are unique across realms
     protected long getUserSessionsCount(RealmModel realm, ClientModel client, boolean offline) {
-        return getCache(offline).entrySet().stream().filter(ClientSessionPredicate.create(realm.getId()).client(client.getId()).requireUserSession()).map(Mappers.clientSessionToUserSessionId()).distinct().count();
+        return getIndex(offline).getUserSessionsCountByClient(client.getId());
     }
 
     @Override
@@ -254,82 +296,137 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
     protected void removeUserSessions(RealmModel realm, UserModel user, boolean offline) {
         Cache<String, SessionEntity> cache = getCache(offline);
 
-        Iterator<String> itr = cache.entrySet().stream().filter(UserSessionPredicate.create(realm.getId()).user(user.getId())).map(Mappers.sessionId()).iterator();
-        while (itr.hasNext()) {
-            removeUserSession(realm, itr.next(), offline);
+        for (Map.Entry<String, SessionEntity> entry : getIndexedEntries(cache, getIndex(offline).getUserSessionsByUser(user.getId()), UserSessionPredicate.create(realm.getId()).user(user.getId()))) {
+            removeUserSession(realm, entry.getKey(), offline);
         }
     }
 
     @Override
     public void removeExpired(RealmModel realm) {
-        removeExpiredUserSessions(realm);
-        removeExpiredClientSessions(realm);
-        removeExpiredOfflineUserSessions(realm);
-        removeExpiredOfflineClientSessions(realm);
-        removeExpiredClientInitialAccess(realm);
-    }
+        long start = System.currentTimeMillis();
 
-    private void removeExpiredUserSessions(RealmModel realm) {
-        int expired = Time.currentTime() - realm.getSsoSessionMaxLifespan();
-        int expiredRefresh = Time.currentTime() - realm.getSsoSessionIdleTimeout();
+        int removed = removeExpired(realm, false);
+        int removedOffline = removeExpired(realm, true);
 
-        Iterator<Map.Entry<String, SessionEntity>> itr = sessionCache.entrySet().stream().filter(UserSessionPredicate.create(realm.getId()).expired(expired, expiredRefresh)).iterator();
-
-        while (itr.hasNext()) {
-            UserSessionEntity entity = (UserSessionEntity) itr.next().getValue();
-            tx.remove(sessionCache, entity.getId());
-
-            if (entity.getClientSessions() != null) {
-                for (String clientSessionId : entity.getClientSessions()) {
-                    tx.remove(sessionCache, clientSessionId);
-                }
-            }
+        if (removed > 0 || removedOffline > 0) {
+            log.infov("Removed {0} expired sessions and {1} expired offline sessions from realm {2} in {3} ms", removed, removedOffline, realm.getName(), System.currentTimeMillis() - start);
         }
     }
 
-    private void removeExpiredClientSessions(RealmModel realm) {
-        int expiredDettachedClientSession = Time.currentTime() - RealmInfoUtil.getDettachedClientSessionLifespan(realm);
+    // Removes sessions polled from the expiration queue instead of streaming the whole cache. Returns count of removed entries
+    protected int removeExpired(RealmModel realm, boolean offline) {
+        Cache<String, SessionEntity> cache = getCache(offline);
+        SessionExpirationQueue queue = getIndex(offline).getExpirationQueue();
+        UserSessionPersisterProvider persister = offline ? session.getProvider(UserSessionPersisterProvider.class) : null;
 
-        Iterator<Map.Entry<String, SessionEntity>> itr = sessionCache.entrySet().stream().filter(ClientSessionPredicate.create(realm.getId()).expiredRefresh(expiredDettachedClientSession).requireNullUserSession()).iterator();
-        while (itr.hasNext()) {
-            tx.remove(sessionCache, itr.next().getKey());
-        }
-    }
+        int currentTime = Time.currentTime();
 
-    private void removeExpiredOfflineUserSessions(RealmModel realm) {
-        UserSessionPersisterProvider persister = session.getProvider(UserSessionPersisterProvider.class);
-        int expiredOffline = Time.currentTime() - realm.getOfflineSessionIdleTimeout();
+        Predicate<Map.Entry<String, SessionEntity>> expiredUserSession;
+        Predicate<Map.Entry<String, SessionEntity>> expiredClientSession;
+        if (offline) {
+            int expiredOffline = currentTime - realm.getOfflineSessionIdleTimeout();
+            expiredUserSession = UserSessionPredicate.create(realm.getId()).expired(null, expiredOffline);
+            expiredClientSession = ClientSessionPredicate.create(realm.getId()).expiredRefresh(expiredOffline);
 
-        Iterator<Map.Entry<String, SessionEntity>> itr = offlineSessionCache.entrySet().stream().filter(UserSessionPredicate.create(realm.getId()).expired(null, expiredOffline)).iterator();
-        while (itr.hasNext()) {
-            UserSessionEntity entity = (UserSessionEntity) itr.next().getValue();
-            tx.remove(offlineSessionCache, entity.getId());
+            queue.setTimeouts(realm.getId(), new SessionExpirationQueue.Timeouts(-1, realm.getOfflineSessionIdleTimeout(), realm.getOfflineSessionIdleTimeout(), true));
+        } else {
+            int dettachedClientSessionLifespan = RealmInfoUtil.getDettachedClientSessionLifespan(realm);
+            expiredUserSession = UserSessionPredicate.create(realm.getId()).expired(currentTime - realm.getSsoSessionMaxLifespan(), currentTime - realm.getSsoSessionIdleTimeout());
+            expiredClientSession = ClientSessionPredicate.create(realm.getId()).expiredRefresh(currentTime - dettachedClientSessionLifespan).requireNullUserSession();
 
-            persister.removeUserSession(entity.getId(), true);
+            queue.setTimeouts(realm.getId(), new SessionExpirationQueue.Timeouts(realm.getSsoSessionMaxLifespan(), realm.getSsoSessionIdleTimeout(), dettachedClientSessionLifespan, false));
+        }
+        Predicate<Map.Entry<String, SessionEntity>> expiredClientInitialAccess = ClientInitialAccessPredicate.create(realm.getId()).expired(currentTime);
+
+        int removed = 0;
+        List<String> notOwned = new LinkedList<>();
+
+        Set<String> ids;
+        while (!(ids = queue.pollExpired(realm.getId(), currentTime, expirationBatchSize)).isEmpty()) {
+            // Every node has the whole queue, but the session is removed just by its primary owner
+            Iterator<String> idItr = ids.iterator();
+            while (idItr.hasNext()) {
+                String id = idItr.next();
+                if (!isLocalPrimaryOwner(cache, id)) {
+                    notOwned.add(id);
+                    idItr.remove();
+                }
+            }
 
-            for (String clientSessionId : entity.getClientSessions()) {
-                tx.remove(offlineSessionCache, clientSessionId);
+            List<String> batch = new ArrayList<>(ids);
+            int processed = 0;
+            try {
+                Map<String, SessionEntity> entities = batch.isEmpty() ? Collections.<String, SessionEntity>emptyMap() : cache.getAdvancedCache().getAll(ids);
+                for (String id : batch) {
+                    SessionEntity entity = entities.get(id);
+                    if (entity == null) {
+                        queue.remove(realm.getId(), id);
+                    } else if (removeIfExpired(cache, persister, id, entity, expiredUserSession, expiredClientSession, expiredClientInitialAccess)) {
+                        removed++;
+                    } else {
+                        // Session was refreshed and the queue was not yet notified
+                        queue.update(entity);
+                    }
+                    processed++;
+                }
+            } catch (RuntimeException e) {
+                // Put back what this run didn't get to, so the sessions are removed by the next run
+                for (String id : batch.subList(processed, batch.size())) {
+                    queue.reschedule(realm.getId(), id);
+                }
+                for (String id : notOwned) {
+                    queue.reschedule(realm.getId(), id);
+                }
+                throw e;
             }
         }
+
+        for (String id : notOwned) {
+            queue.reschedule(realm.getId(), id);
+        }
+
+        return removed;
     }
 
-    private void removeExpiredOfflineClientSessions(RealmModel realm) {
-        UserSessionPersisterProvider persister = session.getProvider(UserSessionPersisterProvider.class);
-        int expiredOffline = Time.currentTime() - realm.getOfflineSessionIdleTimeout();
+    private boolean removeIfExpired(Cache<String, SessionEntity> cache, UserSessionPersisterProvider persister, String id, SessionEntity entity,
+                                    Predicate<Map.Entry<String, SessionEntity>> expiredUserSession,
+                                    Predicate<Map.Entry<String, SessionEntity>> expiredClientSession,
+                                    Predicate<Map.Entry<String, SessionEntity>> expiredClientInitialAccess) {
+        Map.Entry<String, SessionEntity> entry = new AbstractMap.SimpleImmutableEntry<>(id, entity);
+        if (entity instanceof UserSessionEntity && expiredUserSession.test(entry)) {
+            tx.remove(cache, id);
+            if (persister != null) {
+                persister.removeUserSession(id, true);
+            }
 
-        Iterator<String> itr = offlineSessionCache.entrySet().stream().filter(ClientSessionPredicate.create(realm.getId()).expiredRefresh(expiredOffline)).map(Mappers.sessionId()).iterator();
-        while (itr.hasNext()) {
-            String sessionId = itr.next();
-            tx.remove(offlineSessionCache, sessionId);
-            persister.removeClientSession(sessionId, true);
+            UserSessionEntity userSession = (UserSessionEntity) entity;
+            if (userSession.getClientSessions() != null) {
+                for (String clientSessionId : userSession.getClientSessions()) {
+                    tx.remove(cache, clientSessionId);
+                }
+            }
+            return true;
+        } else if (entity instanceof ClientSessionEntity && expiredClientSession.test(entry)) {
+            tx.remove(cache, id);
+            if (persister != null) {
+                persister.removeClientSession(id, true);
+            }
+            return true;
+        } else if (entity instanceof ClientInitialAccessEntity && expiredClientInitialAccess.test(entry)) {
+            tx.remove(cache, id);
+            return true;
         }
+        return false;
     }
 
-    private void removeExpiredClientInitialAccess(RealmModel realm) {
-        Iterator<String> itr = sessionCache.entrySet().stream().filter(ClientInitialAccessPredicate.create(realm.getId()).expired(Time.currentTime())).map(Mappers.sessionId()).iterator();
-        while (itr.hasNext()) {
-            tx.remove(sessionCache, itr.next());
+    private boolean isLocalPrimaryOwner(Cache<String, SessionEntity> cache, String key) {
+        DistributionManager distributionManager = cache.getAdvancedCache().getDistributionManager();
+        if (distributionManager == null) {
+            return true;
         }
+
+        Address primaryOwner = distributionManager.getPrimaryLocation(key);
+        return primaryOwner == null || primaryOwner.equals(cache.getCacheManager().getAddress());
     }
 
     @Override
@@ -381,6 +478,9 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
         removeUserSessions(realm, true);
         removeUserSessions(realm, false);
         removeAllUserLoginFailures(realm);
+
+        sessionIndex.getExpirationQueue().removeRealm(realm.getId());
+        offlineSessionIndex.getExpirationQueue().removeRealm(realm.getId());
     }
 
     @Override
@@ -392,9 +492,8 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
     private void onClientRemoved(RealmModel realm, ClientModel client, boolean offline) {
         Cache<String, SessionEntity> cache = getCache(offline);
 
-        Iterator<Map.Entry<String, SessionEntity>> itr = cache.entrySet().stream().filter(ClientSessionPredicate.create(realm.getId()).client(client.getId())).iterator();
-        while (itr.hasNext()) {
-            ClientSessionEntity entity = (ClientSessionEntity) itr.next().getValue();
+        for (Map.Entry<String, SessionEntity> entry : getIndexedEntries(cache, getIndex(offline).getClientSessionsByClient(client.getId()), ClientSessionPredicate.create(realm.getId()).client(client.getId()))) {
+            ClientSessionEntity entity = (ClientSessionEntity) entry.getValue();
             ClientSessionAdapter adapter = wrap(realm, entity, offline);
             adapter.setUserSession(null);
 
@@ -490,6 +589,10 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
         return tx;
     }
 
+    LastSessionRefreshBatcher getLastSessionRefreshBatcher() {
+        return lastSessionRefreshBatcher;
+    }
+
     UserSessionAdapter wrap(RealmModel realm, UserSessionEntity entity, boolean offline) {
         Cache<String, SessionEntity> cache = getCache(offline);
         return entity != null ? new UserSessionAdapter(session, this, cache, realm, entity, offline) : null;
@@ -574,11 +677,10 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
 
     @Override
     public List<ClientSessionModel> getOfflineClientSessions(RealmModel realm, UserModel user) {
-        Iterator<Map.Entry<String, SessionEntity>> itr = offlineSessionCache.entrySet().stream().filter(UserSessionPredicate.create(realm.getId()).user(user.getId())).iterator();
         List<ClientSessionModel> clientSessions = new LinkedList<>();
 
-        while(itr.hasNext()) {
-            UserSessionEntity entity = (UserSessionEntity) itr.next().getValue();
+        for (Map.Entry<String, SessionEntity> entry : getIndexedEntries(offlineSessionCache, offlineSessionIndex.getUserSessionsByUser(user.getId()), UserSessionPredicate.create(realm.getId()).user(user.getId()))) {
+            UserSessionEntity entity = (UserSessionEntity) entry.getValue();
             Set<String> currClientSessions = entity.getClientSessions();
             for (String clientSessionId : currClientSessions) {
                 ClientSessionEntity cls = (ClientSessionEntity) offlineSessionCache.get(clientSessionId);
@@ -718,8 +820,41 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
                 throw new RuntimeException("Rollback only!");
             }
 
+            // Added entries are written with one putAll per cache, so importing many sessions doesn't need a round trip per session
+            Map<Cache, Map<Object, Object>> added = new HashMap<>();
             for (CacheTask task : tasks.values()) {
-                task.execute();
+                if (task.operation == CacheOperation.ADD) {
+                    Map<Object, Object> entries = added.get(task.cache);
+                    if (entries == null) {
+                        entries = new HashMap<>();
+                        added.put(task.cache, entries);
+                    }
+                    entries.put(task.key, task.value);
+                } else {
+                    task.execute();
+                }
+            }
+
+            for (Map.Entry<Cache, Map<Object, Object>> entry : added.entrySet()) {
+                putAll(entry.getKey(), entry.getValue());
+            }
+        }
+
+        private void putAll(Cache cache, Map<Object, Object> entries) {
+            log.tracev("Executing cache operation: {0} on {1} entries", CacheOperation.ADD, entries.size());
+
+            if (entries.size() == 1) {
+                Map.Entry<Object, Object> entry = entries.entrySet().iterator().next();
+                cache.put(entry.getKey(), entry.getValue());
+            } else {
+                cache.putAll(entries);
+            }
+
+            SessionIndex index = getCacheIndex(cache);
+            if (index != null) {
+                for (Object value : entries.values()) {
+                    index.add((SessionEntity) value);
+                }
             }
         }
 
@@ -765,6 +900,12 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
                     case REPLACE:
                         current.value = value;
                         return;
+                    case UPDATE:
+                        // The whole entity contains the changes of the delta as well
+                        current.operation = CacheOperation.REPLACE;
+                        current.value = value;
+                        current.delta = null;
+                        return;
                     case REMOVE:
                         return;
                 }
@@ -773,6 +914,46 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
             }
         }
 
+        /**
+         * Returns the delta collecting the changes of an entity in this transaction, so only the changes are sent to
+         * the owners of the entity on commit. Returns null if the entity is added, replaced or removed as a whole in
+         * this transaction, in which case the changes don't need to be recorded.
+         *
+         * @param delta empty delta used if there is no delta for the entity yet
+         */
+        @SuppressWarnings("unchecked")
+        public <D extends Delta> D update(Cache cache, Object key, Object value, D delta) {
+            log.tracev("Adding cache operation: {0} on {1}", CacheOperation.UPDATE, key);
+
+            Object taskKey = getTaskKey(cache, key);
+            CacheTask current = tasks.get(taskKey);
+            if (current != null) {
+                switch (current.operation) {
+                    case ADD:
+                    case REPLACE:
+                        current.value = value;
+                        return null;
+                    case UPDATE:
+                        current.value = value;
+                        return (D) current.delta;
+                    case REMOVE:
+                        return null;
+                }
+            }
+
+            CacheTask task = new CacheTask(cache, CacheOperation.UPDATE, key, value);
+            task.delta = delta;
+            tasks.put(taskKey, task);
+            return delta;
+        }
+
+        /**
+         * Returns true if the entity is added, replaced, updated or removed in this transaction
+         */
+        public boolean contains(Cache cache, Object key) {
+            return tasks.containsKey(getTaskKey(cache, key));
+        }
+
         public void remove(Cache cache, Object key) {
             log.tracev("Adding cache operation: {0} on {1}", CacheOperation.REMOVE, key);
 
@@ -788,6 +969,7 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
                 switch (current.operation) {
                     case ADD:
                     case REPLACE:
+                    case UPDATE:
                         return current.value;                 }
             }
 
@@ -810,6 +992,7 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
             private CacheOperation operation;
             private Object key;
             private Object value;
+            private Delta delta;
 
             public CacheTask(Cache cache, CacheOperation operation, Object key, Object value) {
                 this.cache = cache;
@@ -821,15 +1004,39 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
             public void execute() {
                 log.tracev("Executing cache operation: {0} on {1}", operation, key);
 
+                // Index is updated directly, so that this node sees the change even before the cache listener is notified
+                SessionIndex index = getCacheIndex(cache);
+
                 switch (operation) {
                     case ADD:
                         cache.put(key, value);
+                        if (index != null) {
+                            index.add((SessionEntity) value);
+                        }
                         break;
                     case REMOVE:
-                        cache.remove(key);
+                        Object removed = cache.remove(key);
+                        if (index != null && removed != null) {
+                            index.remove((SessionEntity) removed);
+                        }
                         break;
                     case REPLACE:
-                        cache.replace(key, value);
+                        if (value instanceof DeltaAware) {
+                            // Owners would store a replaced session as its delta, see SessionEntityFullDelta
+                            cache.getAdvancedCache().withFlags(Flag.IGNORE_RETURN_VALUES).put(key, new SessionEntityFullDelta((SessionEntity) value, true));
+                        } else {
+                            cache.replace(key, value);
+                        }
+                        if (index != null) {
+                            index.update((SessionEntity) value);
+                        }
+                        break;
+                    case UPDATE:
+                        // The owners merge the delta into their entry, an entry removed in the meantime isn't re-created
+                        cache.getAdvancedCache().withFlags(Flag.IGNORE_RETURN_VALUES).put(key, delta);
+                        if (index != null) {
+                            index.update((SessionEntity) value);
+                        }
                         break;
                 }
             }
@@ -838,7 +1045,7 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
     }
 
     public enum CacheOperation {
-        ADD, REMOVE, REPLACE
+        ADD, REMOVE, REPLACE, UPDATE
     }
 
 }
@@ -25,14 +25,22 @@ import org.keycloak.models.*;
 import org.keycloak.models.sessions.infinispan.entities.LoginFailureEntity;
 import org.keycloak.models.sessions.infinispan.entities.LoginFailureKey;
 import org.keycloak.models.sessions.infinispan.entities.SessionEntity;
+import org.keycloak.models.sessions.infinispan.index.SessionIndex;
+import org.keycloak.models.sessions.infinispan.index.SessionIndexListener;
 import org.keycloak.models.sessions.infinispan.initializer.InfinispanUserSessionInitializer;
+import org.keycloak.models.sessions.infinispan.initializer.InitializerState;
 import org.keycloak.models.sessions.infinispan.initializer.OfflineUserSessionLoader;
 import org.keycloak.models.utils.KeycloakModelUtils;
 import org.keycloak.models.utils.PostMigrationEvent;
+import org.keycloak.models.utils.PreShutdownEvent;
 import org.keycloak.provider.ProviderEvent;
 import org.keycloak.provider.ProviderEventListener;
+import org.keycloak.provider.ServerInfoAwareProviderFactory;
 
-public class InfinispanUserSessionProviderFactory implements UserSessionProviderFactory {
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class InfinispanUserSessionProviderFactory implements UserSessionProviderFactory, ServerInfoAwareProviderFactory {
 
     private static final String STATE_KEY_PREFIX = "initializerState";
     public static final String SESSION_INITIALIZER_STATE_KEY = STATE_KEY_PREFIX + "::offlineUserSessions";
@@ -41,6 +49,16 @@ public class InfinispanUserSessionProviderFactory implements UserSessionProvider
 
     private Config.Scope config;
 
+    private final SessionIndex sessionIndex = new SessionIndex();
+    private final SessionIndex offlineSessionIndex = new SessionIndex();
+    private volatile boolean indexesInitialized;
+
+    private int expirationBatchSize;
+
+    private LastSessionRefreshBatcher lastSessionRefreshBatcher;
+
+    private volatile InfinispanUserSessionInitializer offlineSessionsInitializer;
+
     @Override
     public UserSessionProvider create(KeycloakSession session) {
         InfinispanConnectionProvider connections = session.getProvider(InfinispanConnectionProvider.class);
@@ -48,12 +66,35 @@ public class InfinispanUserSessionProviderFactory implements UserSessionProvider
         Cache<String, SessionEntity> offlineSessionsCache = connections.getCache(InfinispanConnectionProvider.OFFLINE_SESSION_CACHE_NAME);
         Cache<LoginFailureKey, LoginFailureEntity> loginFailures = connections.getCache(InfinispanConnectionProvider.LOGIN_FAILURE_CACHE_NAME);
 
-        return new InfinispanUserSessionProvider(session, cache, offlineSessionsCache, loginFailures);
+        lazyInitIndexes(cache, offlineSessionsCache);
+
+        return new InfinispanUserSessionProvider(session, cache, offlineSessionsCache, loginFailures, sessionIndex, offlineSessionIndex, expirationBatchSize, lastSessionRefreshBatcher);
+    }
+
+    private void lazyInitIndexes(Cache<String, SessionEntity> cache, Cache<String, SessionEntity> offlineSessionsCache) {
+        if (!indexesInitialized) {
+            synchronized (this) {
+                if (!indexesInitialized) {
+                    // Listeners are registered with current state, so the indexes are populated from the existing cluster content
+                    cache.addListener(new SessionIndexListener(sessionIndex));
+                    offlineSessionsCache.addListener(new SessionIndexListener(offlineSessionIndex));
+                    indexesInitialized = true;
+
+                    log.debug("Initialized user session indexes");
+                }
+            }
+        }
     }
 
     @Override
     public void init(Config.Scope config) {
         this.config = config;
+
+        // Count of expired sessions loaded and removed at once
+        this.expirationBatchSize = config.getInt("expirationBatchSize", 1000);
+
+        // Seconds the stored last refresh of a session may be behind, 0 writes each refresh
+        this.lastSessionRefreshBatcher = LastSessionRefreshBatcher.create(config);
     }
 
     @Override
@@ -64,12 +105,19 @@ public class InfinispanUserSessionProviderFactory implements UserSessionProvider
         // Count of sessions to be computed in each segment
         final int sessionsPerSegment = config.getInt("sessionsPerSegment", 100);
 
+        if (lastSessionRefreshBatcher != null) {
+            lastSessionRefreshBatcher.start();
+        }
+
         factory.register(new ProviderEventListener() {
 
             @Override
             public void onEvent(ProviderEvent event) {
                 if (event instanceof PostMigrationEvent) {
                     loadPersistentSessions(factory, maxErrors, sessionsPerSegment);
+                } else if (event instanceof PreShutdownEvent && lastSessionRefreshBatcher != null) {
+                    // Write pending refreshes while the cache manager is still running
+                    lastSessionRefreshBatcher.close();
                 }
             }
         });
@@ -88,6 +136,7 @@ public class InfinispanUserSessionProviderFactory implements UserSessionProvider
                 Cache<String, SessionEntity> cache = connections.getCache(InfinispanConnectionProvider.OFFLINE_SESSION_CACHE_NAME);
 
                 InfinispanUserSessionInitializer initializer = new InfinispanUserSessionInitializer(sessionFactory, cache, new OfflineUserSessionLoader(), maxErrors, sessionsPerSegment, SESSION_INITIALIZER_STATE_KEY);
+                offlineSessionsInitializer = initializer;
                 initializer.initCache();
                 initializer.loadPersistentSessions();
             }
@@ -99,6 +148,11 @@ public class InfinispanUserSessionProviderFactory implements UserSessionProvider
 
     @Override
     public void close() {
+        if (lastSessionRefreshBatcher != null) {
+            lastSessionRefreshBatcher.close();
+        }
+        sessionIndex.clear();
+        offlineSessionIndex.clear();
     }
 
     @Override
@@ -106,5 +160,24 @@ public class InfinispanUserSessionProviderFactory implements UserSessionProvider
         return "infinispan";
     }
 
+    @Override
+    public Map<String, String> getOperationalInfo() {
+        InfinispanUserSessionInitializer initializer = offlineSessionsInitializer;
+        InitializerState state = initializer != null ? initializer.getState() : null;
+
+        Map<String, String> info = new LinkedHashMap<>();
+        if (state != null) {
+            info.put("offlineSessionsLoaded", String.valueOf(state.isFinished()));
+            info.put("offlineSessionsCount", String.valueOf(state.getSessionsCount()));
+            info.put("offlineSessionsSegments", String.valueOf(state.getSegmentsCount()));
+            info.put("offlineSessionsFinishedSegments", String.valueOf(state.getFinishedSegmentsCount()));
+            info.put("offlineSessionsLoadingTimeMillis", String.valueOf(initializer.getLoadingTime()));
+        }
+        if (lastSessionRefreshBatcher != null) {
+            info.putAll(lastSessionRefreshBatcher.getOperationalInfo());
+        }
+        return info.isEmpty() ? null : info;
+    }
+
 }
 
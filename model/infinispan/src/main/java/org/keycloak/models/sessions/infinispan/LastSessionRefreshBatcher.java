@@ -0,0 +1,272 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.sessions.infinispan;
+
+import org.infinispan.AdvancedCache;
+import org.infinispan.Cache;
+import org.infinispan.context.Flag;
+import org.jboss.logging.Logger;
+import org.keycloak.Config;
+import org.keycloak.models.sessions.infinispan.entities.UserSessionEntityDelta;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces updates of the last refresh of user sessions, so refreshing tokens doesn't write to the session cache each
+ * time. An update is skipped if the stored time is less than half of the tolerance behind the new time. Otherwise it's
+ * queued and written together with the other updates of this node once the flush interval, the other half of the
+ * tolerance, has passed. The stored time is so never more than the tolerance behind the last refresh, and sessions
+ * don't expire more than the tolerance before their idle timeout.
+ *
+ * Updates still queued when the server stops are written by {@link #close()}. Updates queued when a node crashes are
+ * lost, which can expire a session up to the tolerance early.
+ */
+public class LastSessionRefreshBatcher {
+
+    private static final Logger logger = Logger.getLogger(LastSessionRefreshBatcher.class);
+
+    private static final long POLL_MILLIS = 100;
+
+    public interface RefreshWriter {
+        void write(Cache cache, Map<String, Integer> refreshes);
+    }
+
+    private final RefreshWriter writer;
+    private final int skipWindow;
+    private final long flushIntervalMillis;
+    private final ConcurrentMap<Cache, ConcurrentMap<String, Integer>> pending = new ConcurrentHashMap<>();
+
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+
+    private volatile boolean running;
+    private Thread thread;
+
+    /**
+     * @param tolerance seconds the stored last refresh of a session may be behind its actual last refresh
+     */
+    public LastSessionRefreshBatcher(int tolerance, RefreshWriter writer) {
+        this.writer = writer;
+        this.skipWindow = tolerance / 2;
+        this.flushIntervalMillis = tolerance * 1000L - skipWindow * 1000L;
+    }
+
+    /**
+     * Creates a batcher from the <code>lastSessionRefreshTolerance</code> option, or returns null if updates aren't
+     * coalesced
+     */
+    public static LastSessionRefreshBatcher create(Config.Scope config) {
+        int tolerance = config.getInt("lastSessionRefreshTolerance", 0);
+        if (tolerance <= 0) {
+            return null;
+        }
+
+        logger.debugv("Coalescing updates of last session refresh: tolerance={0}", tolerance);
+        return new LastSessionRefreshBatcher(tolerance, new DeltaWriter());
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+
+        running = true;
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                flushPeriodically();
+            }
+        }, "keycloak-last-session-refresh-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Skips or queues an update of the last refresh of a session
+     *
+     * @param storedLastSessionRefresh last refresh of the session as loaded from the cache, so the last written one
+     * @return false if the update was skipped
+     */
+    public boolean refresh(Cache cache, String sessionId, int storedLastSessionRefresh, int lastSessionRefresh) {
+        if (lastSessionRefresh - storedLastSessionRefresh < skipWindow) {
+            skipped.incrementAndGet();
+            return false;
+        }
+
+        ConcurrentMap<String, Integer> refreshes = pending.get(cache);
+        if (refreshes == null) {
+            ConcurrentMap<String, Integer> created = new ConcurrentHashMap<>();
+            refreshes = pending.putIfAbsent(cache, created);
+            if (refreshes == null) {
+                refreshes = created;
+            }
+        }
+
+        // Keep the latest refresh if the session is refreshed again before the flush
+        Integer current = refreshes.putIfAbsent(sessionId, lastSessionRefresh);
+        while (current != null && current < lastSessionRefresh && !refreshes.replace(sessionId, current, lastSessionRefresh)) {
+            current = refreshes.putIfAbsent(sessionId, lastSessionRefresh);
+        }
+
+        queued.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Writes all queued updates
+     */
+    public void flush() {
+        for (Map.Entry<Cache, ConcurrentMap<String, Integer>> entry : pending.entrySet()) {
+            ConcurrentMap<String, Integer> refreshes = entry.getValue();
+            if (refreshes.isEmpty()) {
+                continue;
+            }
+
+            Map<String, Integer> batch = new HashMap<>();
+            for (String sessionId : refreshes.keySet()) {
+                Integer lastSessionRefresh = refreshes.remove(sessionId);
+                if (lastSessionRefresh != null) {
+                    batch.put(sessionId, lastSessionRefresh);
+                }
+            }
+
+            try {
+                writer.write(entry.getKey(), batch);
+                written.addAndGet(batch.size());
+            } catch (RuntimeException e) {
+                failed.addAndGet(batch.size());
+                logger.errorv(e, "Failed to write last refresh of {0} sessions", batch.size());
+            }
+            flushes.incrementAndGet();
+        }
+    }
+
+    /**
+     * Stops the writer thread after it has written all queued updates
+     */
+    public void close() {
+        Thread thread;
+        synchronized (this) {
+            running = false;
+            thread = this.thread;
+            this.thread = null;
+        }
+
+        if (thread != null) {
+            try {
+                thread.join(30000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void flushPeriodically() {
+        while (running) {
+            long deadline = System.currentTimeMillis() + flushIntervalMillis;
+            try {
+                // Wake up regularly, so close() doesn't wait for the flush interval
+                long remaining;
+                while (running && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                    Thread.sleep(Math.min(remaining, POLL_MILLIS));
+                }
+            } catch (InterruptedException e) {
+                running = false;
+            }
+
+            flush();
+        }
+
+        // Updates queued while stopping
+        flush();
+    }
+
+    public int getSkipWindow() {
+        return skipWindow;
+    }
+
+    public long getFlushIntervalMillis() {
+        return flushIntervalMillis;
+    }
+
+    public int getQueueDepth() {
+        int depth = 0;
+        for (ConcurrentMap<String, Integer> refreshes : pending.values()) {
+            depth += refreshes.size();
+        }
+        return depth;
+    }
+
+    public long getSkipped() {
+        return skipped.get();
+    }
+
+    public long getQueued() {
+        return queued.get();
+    }
+
+    public long getWritten() {
+        return written.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    public long getFlushes() {
+        return flushes.get();
+    }
+
+    public Map<String, String> getOperationalInfo() {
+        Map<String, String> info = new LinkedHashMap<>();
+        info.put("lastSessionRefreshQueueDepth", String.valueOf(getQueueDepth()));
+        info.put("lastSessionRefreshSkipped", String.valueOf(getSkipped()));
+        info.put("lastSessionRefreshQueued", String.valueOf(getQueued()));
+        info.put("lastSessionRefreshWritten", String.valueOf(getWritten()));
+        info.put("lastSessionRefreshFailed", String.valueOf(getFailed()));
+        info.put("lastSessionRefreshFlushes", String.valueOf(getFlushes()));
+        return info;
+    }
+
+    /**
+     * Sends the updates as deltas, which only move the last refresh forward and don't re-create removed sessions.
+     * Replication is asynchronous, as nothing waits for the flush.
+     */
+    static class DeltaWriter implements RefreshWriter {
+
+        @Override
+        public void write(Cache cache, Map<String, Integer> refreshes) {
+            AdvancedCache advancedCache = cache.getAdvancedCache().withFlags(Flag.IGNORE_RETURN_VALUES, Flag.FORCE_ASYNCHRONOUS);
+            for (Map.Entry<String, Integer> entry : refreshes.entrySet()) {
+                UserSessionEntityDelta delta = new UserSessionEntityDelta();
+                delta.setLastSessionRefreshIfNewer(entry.getValue());
+                advancedCache.put(entry.getKey(), delta);
+            }
+        }
+
+    }
+
+}
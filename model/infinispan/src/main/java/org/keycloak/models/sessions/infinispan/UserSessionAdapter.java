@@ -25,6 +25,7 @@ import org.keycloak.models.UserModel;
 import org.keycloak.models.UserSessionModel;
 import org.keycloak.models.sessions.infinispan.entities.SessionEntity;
 import org.keycloak.models.sessions.infinispan.entities.UserSessionEntity;
+import org.keycloak.models.sessions.infinispan.entities.UserSessionEntityDelta;
 
 import java.util.Collections;
 import java.util.HashMap;
@@ -49,6 +50,9 @@ public class UserSessionAdapter implements UserSessionModel {
 
     private final boolean offline;
 
+    // Refresh skipped or queued by the batcher. The cached entity isn't changed, as it must keep the last written refresh
+    private int batchedLastSessionRefresh;
+
     public UserSessionAdapter(KeycloakSession session, InfinispanUserSessionProvider provider, Cache<String, SessionEntity> cache, RealmModel realm,
                               UserSessionEntity entity, boolean offline) {
         this.session = session;
@@ -105,12 +109,25 @@ public class UserSessionAdapter implements UserSessionModel {
     }
 
     public int getLastSessionRefresh() {
-        return entity.getLastSessionRefresh();
+        return Math.max(entity.getLastSessionRefresh(), batchedLastSessionRefresh);
     }
 
     public void setLastSessionRefresh(int lastSessionRefresh) {
+        LastSessionRefreshBatcher batcher = provider.getLastSessionRefreshBatcher();
+        if (batcher != null && !provider.getTx().contains(cache, entity.getId())) {
+            // Not written by this transaction, but skipped or written later together with the refreshes of other sessions.
+            // On an owner node the entity is the cached instance, so changing it would move the stored refresh forward
+            // without a write and following refreshes would be skipped as well.
+            batchedLastSessionRefresh = lastSessionRefresh;
+            batcher.refresh(cache, entity.getId(), entity.getLastSessionRefresh(), lastSessionRefresh);
+            return;
+        }
+
         entity.setLastSessionRefresh(lastSessionRefresh);
-        update();
+        UserSessionEntityDelta delta = updateDelta();
+        if (delta != null) {
+            delta.setLastSessionRefresh(lastSessionRefresh);
+        }
     }
 
     @Override
@@ -124,14 +141,20 @@ public class UserSessionAdapter implements UserSessionModel {
             entity.setNotes(new HashMap<String, String>());
         }
         entity.getNotes().put(name, value);
-        update();
+        UserSessionEntityDelta delta = updateDelta();
+        if (delta != null) {
+            delta.setNote(name, value);
+        }
     }
 
     @Override
     public void removeNote(String name) {
         if (entity.getNotes() != null) {
             entity.getNotes().remove(name);
-            update();
+            UserSessionEntityDelta delta = updateDelta();
+            if (delta != null) {
+                delta.removeNote(name);
+            }
         }
     }
 
@@ -148,7 +171,10 @@ public class UserSessionAdapter implements UserSessionModel {
     @Override
     public void setState(State state) {
         entity.setState(state);
-        update();
+        UserSessionEntityDelta delta = updateDelta();
+        if (delta != null) {
+            delta.setState(state);
+        }
     }
 
     @Override
@@ -189,4 +215,8 @@ public class UserSessionAdapter implements UserSessionModel {
         provider.getTx().replace(cache, entity.getId(), entity);
     }
 
+    private UserSessionEntityDelta updateDelta() {
+        return provider.getTx().update(cache, entity.getId(), entity, new UserSessionEntityDelta());
+    }
+
 }
@@ -17,9 +17,18 @@
 
 package org.keycloak.models.sessions.infinispan.entities;
 
+import org.infinispan.commons.marshall.Externalizer;
+import org.infinispan.commons.marshall.SerializeWith;
+import org.keycloak.models.sessions.infinispan.util.KeycloakMarshallUtil;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
 /**
  * @author <a href="mailto:sthorger@redhat.com">Stian Thorgersen</a>
  */
+@SerializeWith(ClientInitialAccessEntity.ExternalizerImpl.class)
 public class ClientInitialAccessEntity extends SessionEntity {
 
     private int timestamp;
@@ -62,4 +71,35 @@ public class ClientInitialAccessEntity extends SessionEntity {
         this.remainingCount = remainingCount;
     }
 
+    public static class ExternalizerImpl implements Externalizer<ClientInitialAccessEntity> {
+
+        private static final int VERSION_1 = 1;
+
+        @Override
+        public void writeObject(ObjectOutput output, ClientInitialAccessEntity entity) throws IOException {
+            KeycloakMarshallUtil.writeVersion(output, VERSION_1);
+
+            KeycloakMarshallUtil.writeString(output, entity.getId());
+            KeycloakMarshallUtil.writeString(output, entity.getRealm());
+            output.writeInt(entity.getTimestamp());
+            output.writeInt(entity.getExpiration());
+            output.writeInt(entity.getCount());
+            output.writeInt(entity.getRemainingCount());
+        }
+
+        @Override
+        public ClientInitialAccessEntity readObject(ObjectInput input) throws IOException, ClassNotFoundException {
+            KeycloakMarshallUtil.readVersion(input, VERSION_1, ClientInitialAccessEntity.class);
+
+            ClientInitialAccessEntity entity = new ClientInitialAccessEntity();
+            entity.setId(KeycloakMarshallUtil.readString(input));
+            entity.setRealm(KeycloakMarshallUtil.readString(input));
+            entity.setTimestamp(input.readInt());
+            entity.setExpiration(input.readInt());
+            entity.setCount(input.readInt());
+            entity.setRemainingCount(input.readInt());
+            return entity;
+        }
+
+    }
 }
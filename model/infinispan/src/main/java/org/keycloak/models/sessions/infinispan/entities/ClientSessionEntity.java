@@ -17,8 +17,16 @@
 
 package org.keycloak.models.sessions.infinispan.entities;
 
+import org.infinispan.atomic.Delta;
+import org.infinispan.atomic.DeltaAware;
+import org.infinispan.commons.marshall.Externalizer;
+import org.infinispan.commons.marshall.SerializeWith;
 import org.keycloak.models.ClientSessionModel;
+import org.keycloak.models.sessions.infinispan.util.KeycloakMarshallUtil;
 
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -27,7 +35,8 @@ import java.util.Set;
 /**
  * @author <a href="mailto:sthorger@redhat.com">Stian Thorgersen</a>
  */
-public class ClientSessionEntity extends SessionEntity {
+@SerializeWith(ClientSessionEntity.ExternalizerImpl.class)
+public class ClientSessionEntity extends SessionEntity implements DeltaAware {
 
     private String client;
 
@@ -149,4 +158,69 @@ public class ClientSessionEntity extends SessionEntity {
     public Set<String> getRequiredActions() {
         return requiredActions;
     }
+
+    public void setRequiredActions(Set<String> requiredActions) {
+        this.requiredActions = requiredActions;
+    }
+
+    @Override
+    public Delta delta() {
+        // Infinispan sends delta() instead of the session when replicating a put or replace of the whole session.
+        // Changes are written with explicit deltas by the session adapters, see ClientSessionEntityDelta
+        return new SessionEntityFullDelta(this);
+    }
+
+    @Override
+    public void commit() {
+    }
+
+    public static class ExternalizerImpl implements Externalizer<ClientSessionEntity> {
+
+        private static final int VERSION_1 = 1;
+
+        @Override
+        public void writeObject(ObjectOutput output, ClientSessionEntity session) throws IOException {
+            KeycloakMarshallUtil.writeVersion(output, VERSION_1);
+
+            KeycloakMarshallUtil.writeString(output, session.getId());
+            KeycloakMarshallUtil.writeString(output, session.getRealm());
+            KeycloakMarshallUtil.writeString(output, session.getClient());
+            KeycloakMarshallUtil.writeString(output, session.getUserSession());
+            KeycloakMarshallUtil.writeString(output, session.getAuthMethod());
+            KeycloakMarshallUtil.writeString(output, session.getRedirectUri());
+            output.writeInt(session.getTimestamp());
+            KeycloakMarshallUtil.writeString(output, session.getAction());
+            KeycloakMarshallUtil.writeStringCollection(output, session.getRoles());
+            KeycloakMarshallUtil.writeStringCollection(output, session.getProtocolMappers());
+            KeycloakMarshallUtil.writeStringMap(output, session.getNotes());
+            KeycloakMarshallUtil.writeStringMap(output, session.getUserSessionNotes());
+            KeycloakMarshallUtil.writeEnumMap(output, session.getAuthenticatorStatus());
+            KeycloakMarshallUtil.writeString(output, session.getAuthUserId());
+            KeycloakMarshallUtil.writeStringCollection(output, session.getRequiredActions());
+        }
+
+        @Override
+        public ClientSessionEntity readObject(ObjectInput input) throws IOException, ClassNotFoundException {
+            KeycloakMarshallUtil.readVersion(input, VERSION_1, ClientSessionEntity.class);
+
+            ClientSessionEntity session = new ClientSessionEntity();
+            session.setId(KeycloakMarshallUtil.readString(input));
+            session.setRealm(KeycloakMarshallUtil.readString(input));
+            session.setClient(KeycloakMarshallUtil.readString(input));
+            session.setUserSession(KeycloakMarshallUtil.readString(input));
+            session.setAuthMethod(KeycloakMarshallUtil.readString(input));
+            session.setRedirectUri(KeycloakMarshallUtil.readString(input));
+            session.setTimestamp(input.readInt());
+            session.setAction(KeycloakMarshallUtil.readString(input));
+            session.setRoles(KeycloakMarshallUtil.readStringSet(input));
+            session.setProtocolMappers(KeycloakMarshallUtil.readStringSet(input));
+            session.setNotes(KeycloakMarshallUtil.readStringMap(input));
+            session.setUserSessionNotes(KeycloakMarshallUtil.readStringMap(input));
+            session.setAuthenticatorStatus(KeycloakMarshallUtil.readEnumMap(input, ClientSessionModel.ExecutionStatus.class));
+            session.setAuthUserId(KeycloakMarshallUtil.readString(input));
+            session.setRequiredActions(KeycloakMarshallUtil.readStringSet(input));
+            return session;
+        }
+
+    }
 }
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.sessions.infinispan.entities;
+
+import org.infinispan.atomic.Delta;
+import org.infinispan.atomic.DeltaAware;
+import org.infinispan.commons.marshall.Externalizer;
+import org.infinispan.commons.marshall.SerializeWith;
+import org.keycloak.models.ClientSessionModel;
+import org.keycloak.models.sessions.infinispan.util.KeycloakMarshallUtil;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Changes of a client session within a transaction, see {@link UserSessionEntityDelta}. Covers the fields changed
+ * during login and token refresh, other changes write the whole client session.
+ */
+@SerializeWith(ClientSessionEntityDelta.ExternalizerImpl.class)
+public class ClientSessionEntityDelta implements Delta {
+
+    private static final int TIMESTAMP = 1;
+    private static final int ACTION = 1 << 1;
+
+    private int changes;
+    private int timestamp;
+    private String action;
+    private Map<String, String> notes;
+    private Set<String> removedNotes;
+    private Map<String, String> userSessionNotes;
+    private Map<String, ClientSessionModel.ExecutionStatus> executionStatus;
+
+    public void setTimestamp(int timestamp) {
+        this.timestamp = timestamp;
+        changes |= TIMESTAMP;
+    }
+
+    public void setAction(String action) {
+        this.action = action;
+        changes |= ACTION;
+    }
+
+    public void setNote(String name, String value) {
+        if (notes == null) {
+            notes = new HashMap<>();
+        }
+        notes.put(name, value);
+        if (removedNotes != null) {
+            removedNotes.remove(name);
+        }
+    }
+
+    public void removeNote(String name) {
+        if (removedNotes == null) {
+            removedNotes = new HashSet<>();
+        }
+        removedNotes.add(name);
+        if (notes != null) {
+            notes.remove(name);
+        }
+    }
+
+    public void setUserSessionNote(String name, String value) {
+        if (userSessionNotes == null) {
+            userSessionNotes = new HashMap<>();
+        }
+        userSessionNotes.put(name, value);
+    }
+
+    public void setExecutionStatus(String authenticator, ClientSessionModel.ExecutionStatus status) {
+        if (executionStatus == null) {
+            executionStatus = new HashMap<>();
+        }
+        executionStatus.put(authenticator, status);
+    }
+
+    @Override
+    public DeltaAware merge(DeltaAware d) {
+        if (!(d instanceof ClientSessionEntity)) {
+            // The session was removed in the meantime, don't re-create it from a partial update
+            return null;
+        }
+
+        ClientSessionEntity session = copy((ClientSessionEntity) d);
+        applyTo(session);
+        return session;
+    }
+
+    public void applyTo(ClientSessionEntity session) {
+        if ((changes & TIMESTAMP) != 0) {
+            session.setTimestamp(timestamp);
+        }
+        if ((changes & ACTION) != 0) {
+            session.setAction(action);
+        }
+        if (removedNotes != null && session.getNotes() != null) {
+            for (String name : removedNotes) {
+                session.getNotes().remove(name);
+            }
+        }
+        if (notes != null) {
+            if (session.getNotes() == null) {
+                session.setNotes(new HashMap<String, String>());
+            }
+            session.getNotes().putAll(notes);
+        }
+        if (userSessionNotes != null) {
+            if (session.getUserSessionNotes() == null) {
+                session.setUserSessionNotes(new HashMap<String, String>());
+            }
+            session.getUserSessionNotes().putAll(userSessionNotes);
+        }
+        if (executionStatus != null) {
+            if (session.getAuthenticatorStatus() == null) {
+                session.setAuthenticatorStatus(new HashMap<String, ClientSessionModel.ExecutionStatus>());
+            }
+            session.getAuthenticatorStatus().putAll(executionStatus);
+        }
+    }
+
+    static ClientSessionEntity copy(ClientSessionEntity session) {
+        ClientSessionEntity copy = new ClientSessionEntity();
+        copy.setId(session.getId());
+        copy.setRealm(session.getRealm());
+        copy.setClient(session.getClient());
+        copy.setUserSession(session.getUserSession());
+        copy.setAuthMethod(session.getAuthMethod());
+        copy.setRedirectUri(session.getRedirectUri());
+        copy.setTimestamp(session.getTimestamp());
+        copy.setAction(session.getAction());
+        copy.setRoles(session.getRoles() != null ? new HashSet<>(session.getRoles()) : null);
+        copy.setProtocolMappers(session.getProtocolMappers() != null ? new HashSet<>(session.getProtocolMappers()) : null);
+        copy.setNotes(session.getNotes() != null ? new HashMap<>(session.getNotes()) : null);
+        copy.setUserSessionNotes(session.getUserSessionNotes() != null ? new HashMap<>(session.getUserSessionNotes()) : null);
+        copy.setAuthenticatorStatus(session.getAuthenticatorStatus() != null ? new HashMap<>(session.getAuthenticatorStatus()) : null);
+        copy.setAuthUserId(session.getAuthUserId());
+        copy.setRequiredActions(session.getRequiredActions() != null ? new HashSet<>(session.getRequiredActions()) : null);
+        return copy;
+    }
+
+    public static class ExternalizerImpl implements Externalizer<ClientSessionEntityDelta> {
+
+        private static final int VERSION_1 = 1;
+
+        @Override
+        public void writeObject(ObjectOutput output, ClientSessionEntityDelta delta) throws IOException {
+            KeycloakMarshallUtil.writeVersion(output, VERSION_1);
+
+            output.writeByte(delta.changes);
+            if ((delta.changes & TIMESTAMP) != 0) {
+                output.writeInt(delta.timestamp);
+            }
+            if ((delta.changes & ACTION) != 0) {
+                KeycloakMarshallUtil.writeString(output, delta.action);
+            }
+            KeycloakMarshallUtil.writeStringMap(output, delta.notes);
+            KeycloakMarshallUtil.writeStringCollection(output, delta.removedNotes);
+            KeycloakMarshallUtil.writeStringMap(output, delta.userSessionNotes);
+            KeycloakMarshallUtil.writeEnumMap(output, delta.executionStatus);
+        }
+
+        @Override
+        public ClientSessionEntityDelta readObject(ObjectInput input) throws IOException, ClassNotFoundException {
+            KeycloakMarshallUtil.readVersion(input, VERSION_1, ClientSessionEntityDelta.class);
+
+            ClientSessionEntityDelta delta = new ClientSessionEntityDelta();
+            delta.changes = input.readUnsignedByte();
+            if ((delta.changes & TIMESTAMP) != 0) {
+                delta.timestamp = input.readInt();
+            }
+            if ((delta.changes & ACTION) != 0) {
+                delta.action = KeycloakMarshallUtil.readString(input);
+            }
+            delta.notes = KeycloakMarshallUtil.readStringMap(input);
+            delta.removedNotes = KeycloakMarshallUtil.readStringSet(input);
+            delta.userSessionNotes = KeycloakMarshallUtil.readStringMap(input);
+            delta.executionStatus = KeycloakMarshallUtil.readEnumMap(input, ClientSessionModel.ExecutionStatus.class);
+            return delta;
+        }
+
+    }
+
+}
@@ -17,11 +17,19 @@
 
 package org.keycloak.models.sessions.infinispan.entities;
 
+import org.infinispan.commons.marshall.Externalizer;
+import org.infinispan.commons.marshall.SerializeWith;
+import org.keycloak.models.sessions.infinispan.util.KeycloakMarshallUtil;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 import java.io.Serializable;
 
 /**
  * @author <a href="mailto:sthorger@redhat.com">Stian Thorgersen</a>
  */
+@SerializeWith(LoginFailureEntity.ExternalizerImpl.class)
 public class LoginFailureEntity implements Serializable {
 
     private String username;
@@ -85,4 +93,36 @@ public class LoginFailureEntity implements Serializable {
         this.lastFailure = 0;
         this.lastIPFailure = null;
     }
+
+    public static class ExternalizerImpl implements Externalizer<LoginFailureEntity> {
+
+        private static final int VERSION_1 = 1;
+
+        @Override
+        public void writeObject(ObjectOutput output, LoginFailureEntity entity) throws IOException {
+            KeycloakMarshallUtil.writeVersion(output, VERSION_1);
+
+            KeycloakMarshallUtil.writeString(output, entity.getUsername());
+            KeycloakMarshallUtil.writeString(output, entity.getRealm());
+            output.writeInt(entity.getFailedLoginNotBefore());
+            output.writeInt(entity.getNumFailures());
+            output.writeLong(entity.getLastFailure());
+            KeycloakMarshallUtil.writeString(output, entity.getLastIPFailure());
+        }
+
+        @Override
+        public LoginFailureEntity readObject(ObjectInput input) throws IOException, ClassNotFoundException {
+            KeycloakMarshallUtil.readVersion(input, VERSION_1, LoginFailureEntity.class);
+
+            LoginFailureEntity entity = new LoginFailureEntity();
+            entity.setUsername(KeycloakMarshallUtil.readString(input));
+            entity.setRealm(KeycloakMarshallUtil.readString(input));
+            entity.setFailedLoginNotBefore(input.readInt());
+            entity.setNumFailures(input.readInt());
+            entity.setLastFailure(input.readLong());
+            entity.setLastIPFailure(KeycloakMarshallUtil.readString(input));
+            return entity;
+        }
+
+    }
 }
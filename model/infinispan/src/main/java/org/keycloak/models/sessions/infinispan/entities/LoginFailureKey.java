@@ -17,11 +17,19 @@
 
 package org.keycloak.models.sessions.infinispan.entities;
 
+import org.infinispan.commons.marshall.Externalizer;
+import org.infinispan.commons.marshall.SerializeWith;
+import org.keycloak.models.sessions.infinispan.util.KeycloakMarshallUtil;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 import java.io.Serializable;
 
 /**
  * @author <a href="mailto:sthorger@redhat.com">Stian Thorgersen</a>
  */
+@SerializeWith(LoginFailureKey.ExternalizerImpl.class)
 public class LoginFailureKey implements Serializable {
 
     private final String realm;
@@ -52,4 +60,24 @@ public class LoginFailureKey implements Serializable {
         return result;
     }
 
+    public static class ExternalizerImpl implements Externalizer<LoginFailureKey> {
+
+        private static final int VERSION_1 = 1;
+
+        @Override
+        public void writeObject(ObjectOutput output, LoginFailureKey key) throws IOException {
+            KeycloakMarshallUtil.writeVersion(output, VERSION_1);
+
+            KeycloakMarshallUtil.writeString(output, key.realm);
+            KeycloakMarshallUtil.writeString(output, key.username);
+        }
+
+        @Override
+        public LoginFailureKey readObject(ObjectInput input) throws IOException, ClassNotFoundException {
+            KeycloakMarshallUtil.readVersion(input, VERSION_1, LoginFailureKey.class);
+
+            return new LoginFailureKey(KeycloakMarshallUtil.readString(input), KeycloakMarshallUtil.readString(input));
+        }
+
+    }
 }
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.sessions.infinispan.entities;
+
+import org.infinispan.atomic.Delta;
+import org.infinispan.atomic.DeltaAware;
+import org.infinispan.commons.marshall.Externalizer;
+import org.infinispan.commons.marshall.SerializeWith;
+import org.keycloak.models.sessions.infinispan.util.KeycloakMarshallUtil;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+/**
+ * Whole state of a user or client session. Sessions are {@link DeltaAware}, so Infinispan replicates a put or replace
+ * of a session as its {@link DeltaAware#delta()}. Merging this delta replaces the session on the receiving node with a
+ * copy of the sent session, regardless of the session it had before.
+ *
+ * Infinispan merges deltas only for puts, so a replace of a session is written as a put of a delta created with
+ * <code>replace</code> set, which doesn't re-create a session removed in the meantime.
+ */
+@SerializeWith(SessionEntityFullDelta.ExternalizerImpl.class)
+public class SessionEntityFullDelta implements Delta {
+
+    private static final int USER_SESSION = 1;
+    private static final int CLIENT_SESSION = 2;
+
+    private final SessionEntity session;
+    private final boolean replace;
+
+    public SessionEntityFullDelta(SessionEntity session) {
+        this(session, false);
+    }
+
+    public SessionEntityFullDelta(SessionEntity session, boolean replace) {
+        if (!(session instanceof UserSessionEntity) && !(session instanceof ClientSessionEntity)) {
+            throw new IllegalArgumentException("Unsupported session: " + session);
+        }
+        this.session = session;
+        this.replace = replace;
+    }
+
+    public SessionEntity getSession() {
+        return session;
+    }
+
+    @Override
+    public DeltaAware merge(DeltaAware d) {
+        if (replace && d == null) {
+            return null;
+        }
+
+        // Copied, so the sender's session isn't shared with the cache when the command is executed locally
+        if (session instanceof UserSessionEntity) {
+            return UserSessionEntityDelta.copy((UserSessionEntity) session);
+        } else {
+            return ClientSessionEntityDelta.copy((ClientSessionEntity) session);
+        }
+    }
+
+    public static class ExternalizerImpl implements Externalizer<SessionEntityFullDelta> {
+
+        private static final int VERSION_1 = 1;
+
+        private final UserSessionEntity.ExternalizerImpl userSessionExternalizer = new UserSessionEntity.ExternalizerImpl();
+        private final ClientSessionEntity.ExternalizerImpl clientSessionExternalizer = new ClientSessionEntity.ExternalizerImpl();
+
+        @Override
+        public void writeObject(ObjectOutput output, SessionEntityFullDelta delta) throws IOException {
+            KeycloakMarshallUtil.writeVersion(output, VERSION_1);
+
+            if (delta.session instanceof UserSessionEntity) {
+                output.writeByte(USER_SESSION);
+                userSessionExternalizer.writeObject(output, (UserSessionEntity) delta.session);
+            } else {
+                output.writeByte(CLIENT_SESSION);
+                clientSessionExternalizer.writeObject(output, (ClientSessionEntity) delta.session);
+            }
+            output.writeBoolean(delta.replace);
+        }
+
+        @Override
+        public SessionEntityFullDelta readObject(ObjectInput input) throws IOException, ClassNotFoundException {
+            KeycloakMarshallUtil.readVersion(input, VERSION_1, SessionEntityFullDelta.class);
+
+            int type = input.readUnsignedByte();
+            SessionEntity session;
+            switch (type) {
+                case USER_SESSION:
+                    session = userSessionExternalizer.readObject(input);
+                    break;
+                case CLIENT_SESSION:
+                    session = clientSessionExternalizer.readObject(input);
+                    break;
+                default:
+                    throw new IOException("Unknown session type " + type);
+            }
+            return new SessionEntityFullDelta(session, input.readBoolean());
+        }
+
+    }
+
+}
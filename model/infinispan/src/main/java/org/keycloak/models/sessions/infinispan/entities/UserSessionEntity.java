@@ -17,15 +17,24 @@
 
 package org.keycloak.models.sessions.infinispan.entities;
 
+import org.infinispan.atomic.Delta;
+import org.infinispan.atomic.DeltaAware;
+import org.infinispan.commons.marshall.Externalizer;
+import org.infinispan.commons.marshall.SerializeWith;
 import org.keycloak.models.UserSessionModel;
+import org.keycloak.models.sessions.infinispan.util.KeycloakMarshallUtil;
 
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 import java.util.Map;
 import java.util.Set;
 
 /**
  * @author <a href="mailto:sthorger@redhat.com">Stian Thorgersen</a>
  */
-public class UserSessionEntity extends SessionEntity {
+@SerializeWith(UserSessionEntity.ExternalizerImpl.class)
+public class UserSessionEntity extends SessionEntity implements DeltaAware {
 
     private String user;
 
@@ -145,4 +154,63 @@ public class UserSessionEntity extends SessionEntity {
     public void setBrokerUserId(String brokerUserId) {
         this.brokerUserId = brokerUserId;
     }
+
+    @Override
+    public Delta delta() {
+        // Infinispan sends delta() instead of the session when replicating a put or replace of the whole session.
+        // Changes are written with explicit deltas by the session adapters, see UserSessionEntityDelta
+        return new SessionEntityFullDelta(this);
+    }
+
+    @Override
+    public void commit() {
+    }
+
+    public static class ExternalizerImpl implements Externalizer<UserSessionEntity> {
+
+        private static final int VERSION_1 = 1;
+
+        @Override
+        public void writeObject(ObjectOutput output, UserSessionEntity session) throws IOException {
+            KeycloakMarshallUtil.writeVersion(output, VERSION_1);
+
+            KeycloakMarshallUtil.writeString(output, session.getId());
+            KeycloakMarshallUtil.writeString(output, session.getRealm());
+            KeycloakMarshallUtil.writeString(output, session.getUser());
+            KeycloakMarshallUtil.writeString(output, session.getBrokerSessionId());
+            KeycloakMarshallUtil.writeString(output, session.getBrokerUserId());
+            KeycloakMarshallUtil.writeString(output, session.getLoginUsername());
+            KeycloakMarshallUtil.writeString(output, session.getIpAddress());
+            KeycloakMarshallUtil.writeString(output, session.getAuthMethod());
+            output.writeBoolean(session.isRememberMe());
+            output.writeInt(session.getStarted());
+            output.writeInt(session.getLastSessionRefresh());
+            KeycloakMarshallUtil.writeStringCollection(output, session.getClientSessions());
+            KeycloakMarshallUtil.writeEnum(output, session.getState());
+            KeycloakMarshallUtil.writeStringMap(output, session.getNotes());
+        }
+
+        @Override
+        public UserSessionEntity readObject(ObjectInput input) throws IOException, ClassNotFoundException {
+            KeycloakMarshallUtil.readVersion(input, VERSION_1, UserSessionEntity.class);
+
+            UserSessionEntity session = new UserSessionEntity();
+            session.setId(KeycloakMarshallUtil.readString(input));
+            session.setRealm(KeycloakMarshallUtil.readString(input));
+            session.setUser(KeycloakMarshallUtil.readString(input));
+            session.setBrokerSessionId(KeycloakMarshallUtil.readString(input));
+            session.setBrokerUserId(KeycloakMarshallUtil.readString(input));
+            session.setLoginUsername(KeycloakMarshallUtil.readString(input));
+            session.setIpAddress(KeycloakMarshallUtil.readString(input));
+            session.setAuthMethod(KeycloakMarshallUtil.readString(input));
+            session.setRememberMe(input.readBoolean());
+            session.setStarted(input.readInt());
+            session.setLastSessionRefresh(input.readInt());
+            session.setClientSessions(KeycloakMarshallUtil.readStringSet(input));
+            session.setState(KeycloakMarshallUtil.readEnum(input, UserSessionModel.State.class));
+            session.setNotes(KeycloakMarshallUtil.readStringMap(input));
+            return session;
+        }
+
+    }
 }
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.sessions.infinispan.entities;
+
+import org.infinispan.atomic.Delta;
+import org.infinispan.atomic.DeltaAware;
+import org.infinispan.commons.marshall.Externalizer;
+import org.infinispan.commons.marshall.SerializeWith;
+import org.keycloak.models.UserSessionModel;
+import org.keycloak.models.sessions.infinispan.util.KeycloakMarshallUtil;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Changes of a user session within a transaction. Only the changed fields and notes are sent to the owners of the
+ * session, which apply them to their copy of the session, so refreshing a session doesn't replicate all its notes and
+ * client sessions.
+ */
+@SerializeWith(UserSessionEntityDelta.ExternalizerImpl.class)
+public class UserSessionEntityDelta implements Delta {
+
+    private static final int LAST_SESSION_REFRESH = 1;
+    private static final int STATE = 1 << 1;
+    private static final int LAST_SESSION_REFRESH_IF_NEWER = 1 << 2;
+
+    private int changes;
+    private int lastSessionRefresh;
+    private UserSessionModel.State state;
+    private Map<String, String> notes;
+    private Set<String> removedNotes;
+
+    public void setLastSessionRefresh(int lastSessionRefresh) {
+        this.lastSessionRefresh = lastSessionRefresh;
+        changes |= LAST_SESSION_REFRESH;
+    }
+
+    /**
+     * Sets the last refresh only if it's later than the one of the session, so a delayed write can't move it back
+     */
+    public void setLastSessionRefreshIfNewer(int lastSessionRefresh) {
+        this.lastSessionRefresh = lastSessionRefresh;
+        changes |= LAST_SESSION_REFRESH_IF_NEWER;
+    }
+
+    public void setState(UserSessionModel.State state) {
+        this.state = state;
+        changes |= STATE;
+    }
+
+    public void setNote(String name, String value) {
+        if (notes == null) {
+            notes = new HashMap<>();
+        }
+        notes.put(name, value);
+        if (removedNotes != null) {
+            removedNotes.remove(name);
+        }
+    }
+
+    public void removeNote(String name) {
+        if (removedNotes == null) {
+            removedNotes = new HashSet<>();
+        }
+        removedNotes.add(name);
+        if (notes != null) {
+            notes.remove(name);
+        }
+    }
+
+    @Override
+    public DeltaAware merge(DeltaAware d) {
+        if (!(d instanceof UserSessionEntity)) {
+            // The session was removed in the meantime, don't re-create it from a partial update
+            return null;
+        }
+
+        // Changes are applied to a copy, so threads reading the current session don't see it half updated
+        UserSessionEntity session = copy((UserSessionEntity) d);
+        applyTo(session);
+        return session;
+    }
+
+    public void applyTo(UserSessionEntity session) {
+        if ((changes & LAST_SESSION_REFRESH) != 0) {
+            session.setLastSessionRefresh(lastSessionRefresh);
+        }
+        if ((changes & LAST_SESSION_REFRESH_IF_NEWER) != 0 && lastSessionRefresh > session.getLastSessionRefresh()) {
+            session.setLastSessionRefresh(lastSessionRefresh);
+        }
+        if ((changes & STATE) != 0) {
+            session.setState(state);
+        }
+        if (removedNotes != null && session.getNotes() != null) {
+            for (String name : removedNotes) {
+                session.getNotes().remove(name);
+            }
+        }
+        if (notes != null) {
+            if (session.getNotes() == null) {
+                session.setNotes(new HashMap<String, String>());
+            }
+            session.getNotes().putAll(notes);
+        }
+    }
+
+    static UserSessionEntity copy(UserSessionEntity session) {
+        UserSessionEntity copy = new UserSessionEntity();
+        copy.setId(session.getId());
+        copy.setRealm(session.getRealm());
+        copy.setUser(session.getUser());
+        copy.setBrokerSessionId(session.getBrokerSessionId());
+        copy.setBrokerUserId(session.getBrokerUserId());
+        copy.setLoginUsername(session.getLoginUsername());
+        copy.setIpAddress(session.getIpAddress());
+        copy.setAuthMethod(session.getAuthMethod());
+        copy.setRememberMe(session.isRememberMe());
+        copy.setStarted(session.getStarted());
+        copy.setLastSessionRefresh(session.getLastSessionRefresh());
+        copy.setState(session.getState());
+        copy.setClientSessions(session.getClientSessions() != null ? new HashSet<>(session.getClientSessions()) : null);
+        copy.setNotes(session.getNotes() != null ? new HashMap<>(session.getNotes()) : null);
+        return copy;
+    }
+
+    public static class ExternalizerImpl implements Externalizer<UserSessionEntityDelta> {
+
+        private static final int VERSION_1 = 1;
+
+        @Override
+        public void writeObject(ObjectOutput output, UserSessionEntityDelta delta) throws IOException {
+            KeycloakMarshallUtil.writeVersion(output, VERSION_1);
+
+            output.writeByte(delta.changes);
+            if ((delta.changes & (LAST_SESSION_REFRESH | LAST_SESSION_REFRESH_IF_NEWER)) != 0) {
+                output.writeInt(delta.lastSessionRefresh);
+            }
+            if ((delta.changes & STATE) != 0) {
+                KeycloakMarshallUtil.writeEnum(output, delta.state);
+            }
+            KeycloakMarshallUtil.writeStringMap(output, delta.notes);
+            KeycloakMarshallUtil.writeStringCollection(output, delta.removedNotes);
+        }
+
+        @Override
+        public UserSessionEntityDelta readObject(ObjectInput input) throws IOException, ClassNotFoundException {
+            KeycloakMarshallUtil.readVersion(input, VERSION_1, UserSessionEntityDelta.class);
+
+            UserSessionEntityDelta delta = new UserSessionEntityDelta();
+            delta.changes = input.readUnsignedByte();
+            if ((delta.changes & (LAST_SESSION_REFRESH | LAST_SESSION_REFRESH_IF_NEWER)) != 0) {
+                delta.lastSessionRefresh = input.readInt();
+            }
+            if ((delta.changes & STATE) != 0) {
+                delta.state = KeycloakMarshallUtil.readEnum(input, UserSessionModel.State.class);
+            }
+            delta.notes = KeycloakMarshallUtil.readStringMap(input);
+            delta.removedNotes = KeycloakMarshallUtil.readStringSet(input);
+            return delta;
+        }
+
+    }
+
+}
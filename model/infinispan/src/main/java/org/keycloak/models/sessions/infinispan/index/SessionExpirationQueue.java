@@ -0,0 +1,355 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.sessions.infinispan.index;
+
+import org.keycloak.models.sessions.infinispan.entities.ClientInitialAccessEntity;
+import org.keycloak.models.sessions.infinispan.entities.ClientSessionEntity;
+import org.keycloak.models.sessions.infinispan.entities.SessionEntity;
+import org.keycloak.models.sessions.infinispan.entities.UserSessionEntity;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Per-realm queues of sessions ordered by the time when they expire. Only the timestamps needed to compute the expiration
+ * are kept for each session. The expiration time depends on realm timeouts, which are provided by the reaper on each run;
+ * sessions are scheduled once the timeouts of their realm are known and re-scheduled when the timeouts change.
+ *
+ * Buckets are keyed by the expiration time in seconds. As with {@link SessionIndex}, polled ids are only candidates and
+ * the reaper must re-check the sessions before removing them.
+ */
+public class SessionExpirationQueue {
+
+    private static final int NEVER = Integer.MAX_VALUE;
+
+    private final ConcurrentMap<String, RealmQueue> realms = new ConcurrentHashMap<>();
+
+    public void update(SessionEntity entity) {
+        Timing timing = Timing.create(entity);
+        if (timing == null || entity.getRealm() == null) {
+            return;
+        }
+
+        getRealmQueue(entity.getRealm()).schedule(entity.getId(), timing);
+    }
+
+    public void remove(SessionEntity entity) {
+        if (entity.getRealm() != null) {
+            remove(entity.getRealm(), entity.getId());
+        }
+    }
+
+    public void remove(String realm, String id) {
+        RealmQueue queue = realms.get(realm);
+        if (queue != null) {
+            queue.remove(id);
+        }
+    }
+
+    /**
+     * Sets timeouts of the realm. Sessions of the realm are re-scheduled if the timeouts differ from the previous ones.
+     */
+    public void setTimeouts(String realm, Timeouts timeouts) {
+        getRealmQueue(realm).setTimeouts(timeouts);
+    }
+
+    /**
+     * Removes and returns at most <code>max</code> ids of sessions, which expire at <code>time</code> or earlier.
+     */
+    public Set<String> pollExpired(String realm, int time, int max) {
+        RealmQueue queue = realms.get(realm);
+        if (queue == null) {
+            return new LinkedHashSet<>();
+        }
+        return queue.pollExpired(time, max);
+    }
+
+    /**
+     * Puts back id polled by {@link #pollExpired(String, int, int)}, which was not processed.
+     */
+    public void reschedule(String realm, String id) {
+        RealmQueue queue = realms.get(realm);
+        if (queue != null) {
+            queue.reschedule(id);
+        }
+    }
+
+    public void removeRealm(String realm) {
+        realms.remove(realm);
+    }
+
+    public void clear() {
+        realms.clear();
+    }
+
+    public int size(String realm) {
+        RealmQueue queue = realms.get(realm);
+        return queue != null ? queue.timings.size() : 0;
+    }
+
+    private RealmQueue getRealmQueue(String realm) {
+        RealmQueue queue = realms.get(realm);
+        if (queue == null) {
+            queue = new RealmQueue();
+            RealmQueue existing = realms.putIfAbsent(realm, queue);
+            if (existing != null) {
+                queue = existing;
+            }
+        }
+        return queue;
+    }
+
+    private static class RealmQueue {
+
+        private volatile Timeouts timeouts;
+
+        private final ConcurrentMap<String, Timing> timings = new ConcurrentHashMap<>();
+
+        private final ConcurrentNavigableMap<Integer, Set<String>> buckets = new ConcurrentSkipListMap<>();
+
+        private void schedule(String id, Timing timing) {
+            Timing previous = timings.put(id, timing);
+
+            Timeouts timeouts = this.timeouts;
+            if (timeouts != null) {
+                timing.expiration = timing.computeExpiration(timeouts);
+                addToBucket(id, timing.expiration);
+
+                // Timeouts changed concurrently
+                if (this.timeouts != timeouts) {
+                    timing.expiration = timing.computeExpiration(this.timeouts);
+                    addToBucket(id, timing.expiration);
+                }
+            }
+
+            if (previous != null && previous.expiration != timing.expiration) {
+                removeFromBucket(id, previous.expiration);
+            }
+        }
+
+        private void reschedule(String id) {
+            Timing timing = timings.get(id);
+            if (timing != null) {
+                addToBucket(id, timing.expiration);
+            }
+        }
+
+        private void remove(String id) {
+            Timing timing = timings.remove(id);
+            if (timing != null) {
+                removeFromBucket(id, timing.expiration);
+            }
+        }
+
+        private synchronized void setTimeouts(Timeouts timeouts) {
+            if (timeouts.equals(this.timeouts)) {
+                return;
+            }
+
+            this.timeouts = timeouts;
+            buckets.clear();
+
+            for (Map.Entry<String, Timing> entry : timings.entrySet()) {
+                Timing timing = entry.getValue();
+                timing.expiration = timing.computeExpiration(timeouts);
+                addToBucket(entry.getKey(), timing.expiration);
+            }
+        }
+
+        private Set<String> pollExpired(int time, int max) {
+            Set<String> ids = new LinkedHashSet<>();
+
+            Iterator<Map.Entry<Integer, Set<String>>> bucketItr = buckets.headMap(time, true).entrySet().iterator();
+            while (bucketItr.hasNext() && ids.size() < max) {
+                Map.Entry<Integer, Set<String>> bucket = bucketItr.next();
+
+                Iterator<String> idItr = bucket.getValue().iterator();
+                while (idItr.hasNext() && ids.size() < max) {
+                    String id = idItr.next();
+                    idItr.remove();
+
+                    // Bucket may be stale if session was re-scheduled concurrently
+                    Timing timing = timings.get(id);
+                    if (timing != null && timing.expiration <= time) {
+                        ids.add(id);
+                    }
+                }
+
+                if (bucket.getValue().isEmpty()) {
+                    buckets.remove(bucket.getKey(), bucket.getValue());
+                }
+            }
+
+            return ids;
+        }
+
+        private void addToBucket(String id, int expiration) {
+            if (expiration == NEVER) {
+                return;
+            }
+
+            while (true) {
+                Set<String> bucket = buckets.get(expiration);
+                if (bucket == null) {
+                    bucket = ConcurrentHashMap.newKeySet();
+                    Set<String> existing = buckets.putIfAbsent(expiration, bucket);
+                    if (existing != null) {
+                        bucket = existing;
+                    }
+                }
+                bucket.add(id);
+
+                // Retry if the bucket was drained and removed concurrently
+                if (buckets.get(expiration) == bucket) {
+                    return;
+                }
+            }
+        }
+
+        private void removeFromBucket(String id, int expiration) {
+            Set<String> bucket = buckets.get(expiration);
+            if (bucket != null) {
+                bucket.remove(id);
+            }
+        }
+
+    }
+
+    private static class Timing {
+
+        private enum Type {
+            USER_SESSION, CLIENT_SESSION, CLIENT_INITIAL_ACCESS
+        }
+
+        private final Type type;
+        private final int started;
+        private final int timestamp;
+        private final int expires;
+        private final boolean attached;
+        private final boolean exhausted;
+
+        private volatile int expiration = NEVER;
+
+        private Timing(Type type, int started, int timestamp, int expires, boolean attached, boolean exhausted) {
+            this.type = type;
+            this.started = started;
+            this.timestamp = timestamp;
+            this.expires = expires;
+            this.attached = attached;
+            this.exhausted = exhausted;
+        }
+
+        private static Timing create(SessionEntity entity) {
+            if (entity instanceof UserSessionEntity) {
+                UserSessionEntity userSession = (UserSessionEntity) entity;
+                return new Timing(Type.USER_SESSION, userSession.getStarted(), userSession.getLastSessionRefresh(), 0, false, false);
+            } else if (entity instanceof ClientSessionEntity) {
+                ClientSessionEntity clientSession = (ClientSessionEntity) entity;
+                return new Timing(Type.CLIENT_SESSION, 0, clientSession.getTimestamp(), 0, clientSession.getUserSession() != null, false);
+            } else if (entity instanceof ClientInitialAccessEntity) {
+                ClientInitialAccessEntity initialAccess = (ClientInitialAccessEntity) entity;
+                return new Timing(Type.CLIENT_INITIAL_ACCESS, 0, initialAccess.getTimestamp(), initialAccess.getExpiration(), false, initialAccess.getRemainingCount() <= 0);
+            } else {
+                return null;
+            }
+        }
+
+        private int computeExpiration(Timeouts timeouts) {
+            switch (type) {
+                case USER_SESSION:
+                    int expiration = add(timestamp, timeouts.userSessionIdleTimeout);
+                    if (timeouts.userSessionMaxLifespan >= 0) {
+                        expiration = Math.min(expiration, add(started, timeouts.userSessionMaxLifespan));
+                    }
+                    return expiration;
+                case CLIENT_SESSION:
+                    // Attached client sessions are removed together with their user session
+                    if (attached && !timeouts.expireAttachedClientSessions) {
+                        return NEVER;
+                    }
+                    return add(timestamp, timeouts.clientSessionLifespan);
+                case CLIENT_INITIAL_ACCESS:
+                    if (exhausted) {
+                        return 0;
+                    }
+                    return expires > 0 ? add(timestamp, expires + 1) : NEVER;
+                default:
+                    return NEVER;
+            }
+        }
+
+        private static int add(int time, int timeout) {
+            long result = (long) time + timeout;
+            return result >= NEVER ? NEVER - 1 : (int) result;
+        }
+
+    }
+
+    /**
+     * Realm timeouts used to compute when sessions expire.
+     */
+    public static class Timeouts {
+
+        private final int userSessionMaxLifespan;
+        private final int userSessionIdleTimeout;
+        private final int clientSessionLifespan;
+        private final boolean expireAttachedClientSessions;
+
+        /**
+         * @param userSessionMaxLifespan max lifespan of user session or -1 if user sessions expire only after idle timeout
+         * @param userSessionIdleTimeout idle timeout of user session
+         * @param clientSessionLifespan lifespan of client session since its last refresh
+         * @param expireAttachedClientSessions if client sessions attached to user session expire on their own
+         */
+        public Timeouts(int userSessionMaxLifespan, int userSessionIdleTimeout, int clientSessionLifespan, boolean expireAttachedClientSessions) {
+            this.userSessionMaxLifespan = userSessionMaxLifespan;
+            this.userSessionIdleTimeout = userSessionIdleTimeout;
+            this.clientSessionLifespan = clientSessionLifespan;
+            this.expireAttachedClientSessions = expireAttachedClientSessions;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Timeouts)) return false;
+
+            Timeouts that = (Timeouts) o;
+
+            return userSessionMaxLifespan == that.userSessionMaxLifespan
+                    && userSessionIdleTimeout == that.userSessionIdleTimeout
+                    && clientSessionLifespan == that.clientSessionLifespan
+                    && expireAttachedClientSessions == that.expireAttachedClientSessions;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = userSessionMaxLifespan;
+            result = 31 * result + userSessionIdleTimeout;
+            result = 31 * result + clientSessionLifespan;
+            result = 31 * result + (expireAttachedClientSessions ? 1 : 0);
+            return result;
+        }
+    }
+
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.sessions.infinispan.index;
+
+import org.keycloak.models.sessions.infinispan.entities.ClientSessionEntity;
+import org.keycloak.models.sessions.infinispan.entities.SessionEntity;
+import org.keycloak.models.sessions.infinispan.entities.UserSessionEntity;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Node-local secondary indexes over one session cache. Maps user id, broker session id and broker user id to user session
+ * ids and client id to client session ids. Also keeps the {@link SessionExpirationQueue} of the cache and counts user
+ * sessions per client, so the counts shown in the admin console don't need to load any sessions.
+ *
+ * Index content is only a hint. Callers must load the referenced entities and re-check them, as the index may briefly
+ * contain ids of sessions which were already removed, or miss sessions which are not yet propagated to this node.
+ */
+public class SessionIndex {
+
+    private final ConcurrentMap<String, Set<String>> userSessionsByUser = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Set<String>> userSessionsByBrokerSession = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Set<String>> userSessionsByBrokerUser = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Set<String>> clientSessionsByClient = new ConcurrentHashMap<>();
+    // Client id to the user sessions of the client, with the count of client sessions of the client attached to each
+    private final ConcurrentMap<String, ConcurrentMap<String, Integer>> userSessionsByClient = new ConcurrentHashMap<>();
+    // Client session id to the user session it's attached to, so a count is only changed when the attachment changes
+    private final ConcurrentMap<String, String> userSessionByClientSession = new ConcurrentHashMap<>();
+    private final SessionExpirationQueue expirationQueue = new SessionExpirationQueue();
+
+    public void add(SessionEntity entity) {
+        expirationQueue.update(entity);
+
+        if (entity instanceof UserSessionEntity) {
+            UserSessionEntity userSession = (UserSessionEntity) entity;
+            add(userSessionsByUser, userSession.getUser(), userSession.getId());
+            add(userSessionsByBrokerSession, userSession.getBrokerSessionId(), userSession.getId());
+            add(userSessionsByBrokerUser, userSession.getBrokerUserId(), userSession.getId());
+        } else if (entity instanceof ClientSessionEntity) {
+            ClientSessionEntity clientSession = (ClientSessionEntity) entity;
+            add(clientSessionsByClient, clientSession.getClient(), clientSession.getId());
+            attach(clientSession.getId(), clientSession.getClient(), clientSession.getUserSession());
+        }
+    }
+
+    /**
+     * Called when existing session was modified. Besides expiration only the user session of a client session can change,
+     * the other indexed attributes never change.
+     */
+    public void update(SessionEntity entity) {
+        expirationQueue.update(entity);
+
+        if (entity instanceof ClientSessionEntity) {
+            ClientSessionEntity clientSession = (ClientSessionEntity) entity;
+            attach(clientSession.getId(), clientSession.getClient(), clientSession.getUserSession());
+        }
+    }
+
+    public void remove(SessionEntity entity) {
+        expirationQueue.remove(entity);
+
+        if (entity instanceof UserSessionEntity) {
+            UserSessionEntity userSession = (UserSessionEntity) entity;
+            remove(userSessionsByUser, userSession.getUser(), userSession.getId());
+            remove(userSessionsByBrokerSession, userSession.getBrokerSessionId(), userSession.getId());
+            remove(userSessionsByBrokerUser, userSession.getBrokerUserId(), userSession.getId());
+        } else if (entity instanceof ClientSessionEntity) {
+            ClientSessionEntity clientSession = (ClientSessionEntity) entity;
+            remove(clientSessionsByClient, clientSession.getClient(), clientSession.getId());
+            attach(clientSession.getId(), clientSession.getClient(), null);
+        }
+    }
+
+    public void clear() {
+        userSessionsByUser.clear();
+        userSessionsByBrokerSession.clear();
+        userSessionsByBrokerUser.clear();
+        clientSessionsByClient.clear();
+        userSessionsByClient.clear();
+        userSessionByClientSession.clear();
+        expirationQueue.clear();
+    }
+
+    public SessionExpirationQueue getExpirationQueue() {
+        return expirationQueue;
+    }
+
+    public Set<String> getUserSessionsByUser(String userId) {
+        return get(userSessionsByUser, userId);
+    }
+
+    public Set<String> getUserSessionsByBrokerSession(String brokerSessionId) {
+        return get(userSessionsByBrokerSession, brokerSessionId);
+    }
+
+    public Set<String> getUserSessionsByBrokerUser(String brokerUserId) {
+        return get(userSessionsByBrokerUser, brokerUserId);
+    }
+
+    public Set<String> getClientSessionsByClient(String clientId) {
+        return get(clientSessionsByClient, clientId);
+    }
+
+    /**
+     * Returns the number of user sessions with a client session of the client
+     */
+    public int getUserSessionsCountByClient(String clientId) {
+        Map<String, Integer> userSessions = clientId != null ? userSessionsByClient.get(clientId) : null;
+        return userSessions != null ? userSessions.size() : 0;
+    }
+
+    private void attach(String clientSessionId, String clientId, String userSessionId) {
+        if (clientSessionId == null || clientId == null) {
+            return;
+        }
+
+        // Counts are changed within the compute, so concurrent updates of the same client session are applied one by one
+        userSessionByClientSession.compute(clientSessionId, (id, previous) -> {
+            if (previous != null && !previous.equals(userSessionId)) {
+                userSessionsByClient.computeIfPresent(clientId, (k, userSessions) -> {
+                    userSessions.computeIfPresent(previous, (u, count) -> count > 1 ? count - 1 : null);
+                    return userSessions.isEmpty() ? null : userSessions;
+                });
+            }
+            if (userSessionId != null && !userSessionId.equals(previous)) {
+                userSessionsByClient.compute(clientId, (k, userSessions) -> {
+                    if (userSessions == null) {
+                        userSessions = new ConcurrentHashMap<>();
+                    }
+                    userSessions.merge(userSessionId, 1, Integer::sum);
+                    return userSessions;
+                });
+            }
+            return userSessionId;
+        });
+    }
+
+    private static void add(ConcurrentMap<String, Set<String>> index, String key, String id) {
+        if (key == null || id == null) {
+            return;
+        }
+
+        index.compute(key, (k, ids) -> {
+            if (ids == null) {
+                ids = ConcurrentHashMap.newKeySet();
+            }
+            ids.add(id);
+            return ids;
+        });
+    }
+
+    private static void remove(ConcurrentMap<String, Set<String>> index, String key, String id) {
+        if (key == null || id == null) {
+            return;
+        }
+
+        index.computeIfPresent(key, (k, ids) -> {
+            ids.remove(id);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    private static Set<String> get(ConcurrentMap<String, Set<String>> index, String key) {
+        if (key == null) {
+            return Collections.emptySet();
+        }
+
+        Set<String> ids = index.get(key);
+        return ids != null ? new HashSet<>(ids) : Collections.<String>emptySet();
+    }
+
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.sessions.infinispan.index;
+
+import org.infinispan.notifications.Listener;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryCreated;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryExpired;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryModified;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryRemoved;
+import org.infinispan.notifications.cachelistener.event.CacheEntryCreatedEvent;
+import org.infinispan.notifications.cachelistener.event.CacheEntryExpiredEvent;
+import org.infinispan.notifications.cachelistener.event.CacheEntryModifiedEvent;
+import org.infinispan.notifications.cachelistener.event.CacheEntryRemovedEvent;
+import org.keycloak.models.sessions.infinispan.entities.SessionEntity;
+
+/**
+ * Keeps {@link SessionIndex} up to date with changes done on any node in the cluster. Registering the listener with
+ * current state included populates the index from the existing cache content, which is how a joining node rebuilds it.
+ */
+@Listener(clustered = true, includeCurrentState = true)
+public class SessionIndexListener {
+
+    private final SessionIndex index;
+
+    public SessionIndexListener(SessionIndex index) {
+        this.index = index;
+    }
+
+    @CacheEntryCreated
+    public void created(CacheEntryCreatedEvent<String, Object> event) {
+        if (!event.isPre() && event.getValue() instanceof SessionEntity) {
+            index.add((SessionEntity) event.getValue());
+        }
+    }
+
+    @CacheEntryModified
+    public void modified(CacheEntryModifiedEvent<String, Object> event) {
+        if (!event.isPre() && !event.isCreated() && event.getValue() instanceof SessionEntity) {
+            index.update((SessionEntity) event.getValue());
+        }
+    }
+
+    @CacheEntryRemoved
+    public void removed(CacheEntryRemovedEvent<String, Object> event) {
+        if (!event.isPre() && event.getOldValue() instanceof SessionEntity) {
+            index.remove((SessionEntity) event.getOldValue());
+        }
+    }
+
+    @CacheEntryExpired
+    public void expired(CacheEntryExpiredEvent<String, Object> event) {
+        if (event.getValue() instanceof SessionEntity) {
+            index.remove((SessionEntity) event.getValue());
+        }
+    }
+
+}
@@ -18,10 +18,13 @@
 package org.keycloak.models.sessions.infinispan.initializer;
 
 import java.io.Serializable;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CompletionService;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -30,6 +33,7 @@ import java.util.concurrent.TimeUnit;
 import org.infinispan.Cache;
 import org.infinispan.context.Flag;
 import org.infinispan.distexec.DefaultExecutorService;
+import org.infinispan.distexec.DistributedExecutionCompletionService;
 import org.infinispan.notifications.Listener;
 import org.infinispan.notifications.cachemanagerlistener.annotation.ViewChanged;
 import org.infinispan.notifications.cachemanagerlistener.event.ViewChangedEvent;
@@ -59,6 +63,7 @@ public class InfinispanUserSessionInitializer {
     private final int sessionsPerSegment;
     private final String stateKey;
 
+    private volatile long loadingTime = -1;
 
     public InfinispanUserSessionInitializer(KeycloakSessionFactory sessionFactory, Cache<String, SessionEntity> cache, SessionLoader sessionLoader, int maxErrors, int sessionsPerSegment, String stateKey) {
         this.sessionFactory = sessionFactory;
@@ -79,6 +84,9 @@ public class InfinispanUserSessionInitializer {
             return;
         }
 
+        long start = System.currentTimeMillis();
+
+        // Other nodes compute segments submitted by the coordinator through the distributed executor while waiting here
         while (!isFinished()) {
             if (!isCoordinator()) {
                 try {
@@ -86,15 +94,36 @@ public class InfinispanUserSessionInitializer {
                 } catch (InterruptedException ie) {
                     log.error("Interrupted", ie);
                 }
+
+                InitializerState state = getState();
+                if (state != null && log.isDebugEnabled()) {
+                    log.debugf("Waiting for coordinator to finish loading. The state is: %s", state.printState());
+                }
             } else {
                 startLoading();
             }
         }
+
+        loadingTime = System.currentTimeMillis() - start;
+    }
+
+    /**
+     * @return current state shared by the cluster, or null if loading hasn't started yet
+     */
+    public InitializerState getState() {
+        return (InitializerState) cache.get(stateKey);
+    }
+
+    /**
+     * @return time this node spent in {@link #loadPersistentSessions()} in milliseconds, or -1 if it hasn't finished yet
+     */
+    public long getLoadingTime() {
+        return loadingTime;
     }
 
 
     private boolean isFinished() {
-        InitializerState state = (InitializerState) cache.get(stateKey);
+        InitializerState state = getState();
         return state != null && state.isFinished();
     }
 
@@ -124,8 +153,27 @@ public class InfinispanUserSessionInitializer {
 
             });
 
+            final List<String> segmentStarts = new ArrayList<>();
+
+            // Segments are defined by the last session ID before them, so every segment is loaded by an index range scan
+            KeycloakModelUtils.runJobInTransaction(sessionFactory, new KeycloakSessionTask() {
+                @Override
+                public void run(KeycloakSession session) {
+                    String lastSessionId = null;
+                    segmentStarts.add(null);
+                    for (int i = sessionsPerSegment; i < count[0]; i += sessionsPerSegment) {
+                        lastSessionId = sessionLoader.getSessionIdAfter(session, lastSessionId, sessionsPerSegment - 1);
+                        if (lastSessionId == null) {
+                            break;
+                        }
+                        segmentStarts.add(lastSessionId);
+                    }
+                }
+
+            });
+
             state = new TimeAwareInitializerState();
-            state.init(count[0], sessionsPerSegment);
+            state.init(count[0], segmentStarts);
             state.setClusterStartupTime(startTime);
             saveStateToCache(state);
         }
@@ -168,7 +216,17 @@ public class InfinispanUserSessionInitializer {
         ExecutorService localExecutor = Executors.newCachedThreadPool();
         Transport transport = cache.getCacheManager().getTransport();
         boolean distributed = transport != null;
-        ExecutorService executorService = distributed ? new DefaultExecutorService(cache, localExecutor) : localExecutor;
+        ExecutorService executorService;
+        CompletionService<WorkerResult> completionService;
+        if (distributed) {
+            // ExecutorCompletionService can't be used with the distributed executor, which only runs serializable tasks
+            DefaultExecutorService distributedExecutor = new DefaultExecutorService(cache, localExecutor);
+            executorService = distributedExecutor;
+            completionService = new DistributedExecutionCompletionService<>(distributedExecutor);
+        } else {
+            executorService = localExecutor;
+            completionService = new ExecutorCompletionService<>(localExecutor);
+        }
 
         int errors = 0;
 
@@ -179,26 +237,34 @@ public class InfinispanUserSessionInitializer {
 
                 log.debugf("Starting next iteration with %d workers", distributedWorkersCount);
 
-                List<Integer> segments = state.getUnfinishedSegments(distributedWorkersCount);
+                List<Integer> segments = state.getUnfinishedSegments(Integer.MAX_VALUE);
 
                 if (log.isTraceEnabled()) {
                     log.trace("unfinished segments for this iteration: " + segments);
                 }
 
-                List<Future<WorkerResult>> futures = new LinkedList<>();
-                for (Integer segment : segments) {
-                    SessionInitializerWorker worker = new SessionInitializerWorker();
-                    worker.setWorkerEnvironment(segment, sessionsPerSegment, sessionLoader);
-                    if (!distributed) {
-                        worker.setEnvironment(cache, null);
-                    }
+                // Next segment is submitted as soon as any worker finishes, so no worker waits for the slowest segment of the iteration
+                Iterator<Integer> segmentsItr = segments.iterator();
+                int running = 0;
+                int computed = 0;
 
-                    Future<WorkerResult> future = executorService.submit(worker);
-                    futures.add(future);
-                }
+                while (segmentsItr.hasNext() || running > 0) {
+                    while (running < distributedWorkersCount && segmentsItr.hasNext()) {
+                        Integer segment = segmentsItr.next();
+
+                        SessionInitializerWorker worker = new SessionInitializerWorker();
+                        worker.setWorkerEnvironment(segment, state.getSegmentStart(segment), sessionsPerSegment, sessionLoader);
+                        if (!distributed) {
+                            worker.setEnvironment(cache, null);
+                        }
+
+                        completionService.submit(worker);
+                        running++;
+                    }
 
-                for (Future<WorkerResult> future : futures) {
                     try {
+                        Future<WorkerResult> future = completionService.take();
+                        running--;
                         WorkerResult result = future.get();
 
                         if (result.getSuccess()) {
@@ -216,10 +282,15 @@ public class InfinispanUserSessionInitializer {
                         errors++;
                         log.error("ExecutionException when computed future. Errors: " + errors, ee);
                     }
-                }
 
-                if (errors >= maxErrors) {
-                    throw new RuntimeException("Maximum count of worker errors occured. Limit was " + maxErrors + ". See server.log for details");
+                    if (errors >= maxErrors) {
+                        throw new RuntimeException("Maximum count of worker errors occured. Limit was " + maxErrors + ". See server.log for details");
+                    }
+
+                    // Push the progress regularly, so the new coordinator can continue if this node fails
+                    if (++computed % distributedWorkersCount == 0) {
+                        saveStateToCache(state);
+                    }
                 }
 
                 saveStateToCache(state);
@@ -32,6 +32,7 @@ public class InitializerState extends SessionEntity {
 
     private int sessionsCount;
     private List<Boolean> segments = new ArrayList<>();
+    private List<String> segmentStarts = new ArrayList<>();
     private int lowestUnfinishedSegment = 0;
 
 
@@ -45,6 +46,20 @@ public class InitializerState extends SessionEntity {
 
         log.debugf("sessionsCount: %d, sessionsPerSegment: %d, segmentsCount: %d", sessionsCount, sessionsPerSegment, segmentsCount);
 
+        initSegments(segmentsCount);
+    }
+
+    // Segment "i" contains sessions following the session with ID segmentStarts[i] in ordering by ID. First segment starts with null
+    public void init(int sessionsCount, List<String> segmentStarts) {
+        this.sessionsCount = sessionsCount;
+        this.segmentStarts = new ArrayList<>(segmentStarts);
+
+        log.debugf("sessionsCount: %d, segmentsCount: %d", sessionsCount, segmentStarts.size());
+
+        initSegments(segmentStarts.size());
+    }
+
+    private void initSegments(int segmentsCount) {
         for (int i=0 ; i<segmentsCount ; i++) {
             segments.add(false);
         }
@@ -52,6 +67,29 @@ public class InitializerState extends SessionEntity {
         updateLowestUnfinishedSegment();
     }
 
+    // Returns ID of the last session before the segment, or null for the first segment
+    public String getSegmentStart(int index) {
+        return index < segmentStarts.size() ? segmentStarts.get(index) : null;
+    }
+
+    public int getSessionsCount() {
+        return sessionsCount;
+    }
+
+    public int getSegmentsCount() {
+        return segments.size();
+    }
+
+    public int getFinishedSegmentsCount() {
+        int finished = 0;
+        for (Boolean done : segments) {
+            if (done) {
+                finished++;
+            }
+        }
+        return finished;
+    }
+
     // Return true just if computation is entirely finished (all segments are true)
     public boolean isFinished() {
         return lowestUnfinishedSegment == -1;
@@ -49,13 +49,19 @@ public class OfflineUserSessionLoader implements SessionLoader {
     }
 
     @Override
-    public boolean loadSessions(KeycloakSession session, int first, int max) {
+    public String getSessionIdAfter(KeycloakSession session, String lastSessionId, int position) {
+        UserSessionPersisterProvider persister = session.getProvider(UserSessionPersisterProvider.class);
+        return persister.getUserSessionIdAfter(lastSessionId, position, true);
+    }
+
+    @Override
+    public boolean loadSessions(KeycloakSession session, String lastSessionId, int max) {
         if (log.isTraceEnabled()) {
-            log.tracef("Loading sessions - first: %d, max: %d", first, max);
+            log.tracef("Loading sessions - after: %s, max: %d", lastSessionId, max);
         }
 
         UserSessionPersisterProvider persister = session.getProvider(UserSessionPersisterProvider.class);
-        List<UserSessionModel> sessions = persister.loadUserSessions(first, max, true);
+        List<UserSessionModel> sessions = persister.loadUserSessions(lastSessionId, max, true);
 
         for (UserSessionModel persistentSession : sessions) {
 
@@ -30,5 +30,9 @@ public interface SessionLoader extends Serializable {
 
     int getSessionsCount(KeycloakSession session);
 
-    boolean loadSessions(KeycloakSession session, int first, int max);
+    // Returns ID of the session, which is "position" sessions after the session with ID lastSessionId (or from the beginning if null) in ordering by ID. It's used to find where the segments start
+    String getSessionIdAfter(KeycloakSession session, String lastSessionId, int position);
+
+    // Loads max sessions following the session with ID lastSessionId (or from the beginning if null) in ordering by ID
+    boolean loadSessions(KeycloakSession session, String lastSessionId, int max);
 }
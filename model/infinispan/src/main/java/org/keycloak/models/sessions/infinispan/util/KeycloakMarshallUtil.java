@@ -0,0 +1,192 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.sessions.infinispan.util;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Helpers for the externalizers of session entities. Strings are written as UTF-8 bytes with a length prefix instead of
+ * as objects, and collections as a size followed by their elements, so no class descriptors are sent over the wire.
+ * A length or size of -1 stands for null.
+ */
+public class KeycloakMarshallUtil {
+
+    private static final int NULL = -1;
+
+    public static void writeString(ObjectOutput output, String value) throws IOException {
+        if (value == null) {
+            writeSize(output, NULL);
+            return;
+        }
+
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeSize(output, bytes.length);
+        output.write(bytes);
+    }
+
+    public static String readString(ObjectInput input) throws IOException {
+        int length = readSize(input);
+        if (length == NULL) {
+            return null;
+        }
+
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public static <E extends Enum<E>> void writeEnum(ObjectOutput output, E value) throws IOException {
+        // Written by name, so nodes with a different order of the constants can still read it
+        writeString(output, value != null ? value.name() : null);
+    }
+
+    public static <E extends Enum<E>> E readEnum(ObjectInput input, Class<E> type) throws IOException {
+        String name = readString(input);
+        return name != null ? Enum.valueOf(type, name) : null;
+    }
+
+    public static void writeStringCollection(ObjectOutput output, Collection<String> values) throws IOException {
+        if (values == null) {
+            writeSize(output, NULL);
+            return;
+        }
+
+        writeSize(output, values.size());
+        for (String value : values) {
+            writeString(output, value);
+        }
+    }
+
+    public static Set<String> readStringSet(ObjectInput input) throws IOException {
+        int size = readSize(input);
+        if (size == NULL) {
+            return null;
+        }
+
+        Set<String> values = new HashSet<>(capacity(size));
+        for (int i = 0; i < size; i++) {
+            values.add(readString(input));
+        }
+        return values;
+    }
+
+    public static void writeStringMap(ObjectOutput output, Map<String, String> values) throws IOException {
+        if (values == null) {
+            writeSize(output, NULL);
+            return;
+        }
+
+        writeSize(output, values.size());
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            writeString(output, entry.getKey());
+            writeString(output, entry.getValue());
+        }
+    }
+
+    public static Map<String, String> readStringMap(ObjectInput input) throws IOException {
+        int size = readSize(input);
+        if (size == NULL) {
+            return null;
+        }
+
+        Map<String, String> values = new HashMap<>(capacity(size));
+        for (int i = 0; i < size; i++) {
+            values.put(readString(input), readString(input));
+        }
+        return values;
+    }
+
+    public static <E extends Enum<E>> void writeEnumMap(ObjectOutput output, Map<String, E> values) throws IOException {
+        if (values == null) {
+            writeSize(output, NULL);
+            return;
+        }
+
+        writeSize(output, values.size());
+        for (Map.Entry<String, E> entry : values.entrySet()) {
+            writeString(output, entry.getKey());
+            writeEnum(output, entry.getValue());
+        }
+    }
+
+    public static <E extends Enum<E>> Map<String, E> readEnumMap(ObjectInput input, Class<E> type) throws IOException {
+        int size = readSize(input);
+        if (size == NULL) {
+            return null;
+        }
+
+        Map<String, E> values = new HashMap<>(capacity(size));
+        for (int i = 0; i < size; i++) {
+            values.put(readString(input), readEnum(input, type));
+        }
+        return values;
+    }
+
+    public static void writeVersion(ObjectOutput output, int version) throws IOException {
+        output.writeByte(version);
+    }
+
+    /**
+     * Reads the format version written by {@link #writeVersion(ObjectOutput, int)} and fails if it's newer than the
+     * latest version known to this node
+     */
+    public static int readVersion(ObjectInput input, int latestVersion, Class<?> type) throws IOException {
+        int version = input.readUnsignedByte();
+        if (version < 1 || version > latestVersion) {
+            throw new IOException("Unsupported format version " + version + " of " + type.getName());
+        }
+        return version;
+    }
+
+    /**
+     * Writes a non-negative int or -1 in 1 to 5 bytes, so the common small lengths and sizes take a single byte
+     */
+    private static void writeSize(ObjectOutput output, int size) throws IOException {
+        int value = size + 1;
+        while ((value & ~0x7F) != 0) {
+            output.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.writeByte(value);
+    }
+
+    private static int readSize(ObjectInput input) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = input.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value - 1;
+            }
+        }
+        throw new IOException("Malformed size");
+    }
+
+    private static int capacity(int size) {
+        return Math.max((int) (size / .75f) + 1, 16);
+    }
+
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.sessions.infinispan;
+
+import org.infinispan.AdvancedCache;
+import org.infinispan.Cache;
+import org.infinispan.configuration.cache.CacheMode;
+import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.infinispan.configuration.global.GlobalConfigurationBuilder;
+import org.infinispan.context.Flag;
+import org.infinispan.manager.DefaultCacheManager;
+import org.infinispan.manager.EmbeddedCacheManager;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.keycloak.connections.infinispan.InfinispanConnectionProvider;
+import org.keycloak.models.UserSessionModel;
+import org.keycloak.models.sessions.infinispan.entities.ClientSessionEntity;
+import org.keycloak.models.sessions.infinispan.entities.SessionEntity;
+import org.keycloak.models.sessions.infinispan.entities.SessionEntityFullDelta;
+import org.keycloak.models.sessions.infinispan.entities.UserSessionEntity;
+import org.keycloak.models.sessions.infinispan.entities.UserSessionEntityDelta;
+
+import java.util.HashMap;
+
+/**
+ * Replicates sessions between two clustered cache managers, so the sessions and their deltas are marshalled like in
+ * a cluster. Sessions are {@link org.infinispan.atomic.DeltaAware}, so Infinispan sends their delta instead of them.
+ */
+public class ClusteredSessionReplicationTest {
+
+    private EmbeddedCacheManager node1;
+    private EmbeddedCacheManager node2;
+    private Cache<String, SessionEntity> cache1;
+    private AdvancedCache<String, SessionEntity> cache2;
+
+    @Before
+    public void startNodes() throws InterruptedException {
+        node1 = createCacheManager("node1");
+        node2 = createCacheManager("node2");
+        cache1 = node1.getCache(InfinispanConnectionProvider.SESSION_CACHE_NAME);
+        cache2 = node2.<String, SessionEntity>getCache(InfinispanConnectionProvider.SESSION_CACHE_NAME).getAdvancedCache().withFlags(Flag.CACHE_MODE_LOCAL);
+
+        long deadline = System.currentTimeMillis() + 30000;
+        while (cache1.getAdvancedCache().getRpcManager().getMembers().size() < 2) {
+            if (System.currentTimeMillis() > deadline) {
+                Assert.fail("Nodes didn't form a cluster");
+            }
+            Thread.sleep(100);
+        }
+    }
+
+    @After
+    public void stopNodes() {
+        if (node2 != null) {
+            node2.stop();
+        }
+        if (node1 != null) {
+            node1.stop();
+        }
+    }
+
+    @Test
+    public void putReplaceAndDelta() {
+        UserSessionEntity session = userSession("us1", 100);
+        cache1.put("us1", session);
+
+        UserSessionEntity replicated = (UserSessionEntity) cache2.get("us1");
+        Assert.assertEquals("user1", replicated.getUser());
+        Assert.assertEquals(100, replicated.getLastSessionRefresh());
+        Assert.assertEquals("value", replicated.getNotes().get("note"));
+
+        // Replace of whole session, as InfinispanKeycloakTransaction executes it
+        session.setLastSessionRefresh(200);
+        session.setState(UserSessionModel.State.LOGGED_IN);
+        cache1.getAdvancedCache().withFlags(Flag.IGNORE_RETURN_VALUES).put("us1", new SessionEntityFullDelta(session, true));
+
+        replicated = (UserSessionEntity) cache2.get("us1");
+        Assert.assertEquals(200, replicated.getLastSessionRefresh());
+        Assert.assertEquals(UserSessionModel.State.LOGGED_IN, replicated.getState());
+
+        UserSessionEntityDelta delta = new UserSessionEntityDelta();
+        delta.setLastSessionRefresh(300);
+        delta.setNote("added", "value2");
+        cache1.getAdvancedCache().withFlags(Flag.IGNORE_RETURN_VALUES).put("us1", delta);
+
+        replicated = (UserSessionEntity) cache2.get("us1");
+        Assert.assertEquals(300, replicated.getLastSessionRefresh());
+        Assert.assertEquals("value", replicated.getNotes().get("note"));
+        Assert.assertEquals("value2", replicated.getNotes().get("added"));
+        Assert.assertEquals(300, ((UserSessionEntity) cache1.get("us1")).getLastSessionRefresh());
+    }
+
+    @Test
+    public void replaceDoesNotRecreateRemovedSession() {
+        cache1.getAdvancedCache().withFlags(Flag.IGNORE_RETURN_VALUES).put("us2", new SessionEntityFullDelta(userSession("us2", 100), true));
+
+        Assert.assertNull(cache1.get("us2"));
+        Assert.assertNull(cache2.get("us2"));
+    }
+
+    @Test
+    public void putClientSession() {
+        ClientSessionEntity clientSession = new ClientSessionEntity();
+        clientSession.setId("cs1");
+        clientSession.setRealm("realm");
+        clientSession.setClient("client1");
+        clientSession.setUserSession("us1");
+        cache1.put("cs1", clientSession);
+
+        ClientSessionEntity replicated = (ClientSessionEntity) cache2.get("cs1");
+        Assert.assertEquals("client1", replicated.getClient());
+        Assert.assertEquals("us1", replicated.getUserSession());
+    }
+
+    private static UserSessionEntity userSession(String id, int lastSessionRefresh) {
+        UserSessionEntity session = new UserSessionEntity();
+        session.setId(id);
+        session.setRealm("realm");
+        session.setUser("user1");
+        session.setLastSessionRefresh(lastSessionRefresh);
+        session.setNotes(new HashMap<String, String>());
+        session.getNotes().put("note", "value");
+        return session;
+    }
+
+    private static EmbeddedCacheManager createCacheManager(String nodeName) {
+        GlobalConfigurationBuilder gcb = new GlobalConfigurationBuilder();
+        gcb.transport().defaultTransport().clusterName("keycloak-session-replication-test").nodeName(nodeName);
+        gcb.globalJmxStatistics().allowDuplicateDomains(true);
+
+        ConfigurationBuilder sessionConfigBuilder = new ConfigurationBuilder();
+        sessionConfigBuilder.clustering().cacheMode(CacheMode.DIST_SYNC).hash().numOwners(2);
+
+        EmbeddedCacheManager cacheManager = new DefaultCacheManager(gcb.build());
+        cacheManager.defineConfiguration(InfinispanConnectionProvider.SESSION_CACHE_NAME, sessionConfigBuilder.build());
+        return cacheManager;
+    }
+
+}
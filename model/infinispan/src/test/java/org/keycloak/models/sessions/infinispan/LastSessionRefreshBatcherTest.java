@@ -0,0 +1,202 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.sessions.infinispan;
+
+import org.infinispan.Cache;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class LastSessionRefreshBatcherTest {
+
+    @Test
+    public void toleranceIsSplitBetweenSkipAndFlush() {
+        LastSessionRefreshBatcher batcher = new LastSessionRefreshBatcher(60, new RecordingWriter(1));
+        Assert.assertEquals(30, batcher.getSkipWindow());
+        Assert.assertEquals(30000, batcher.getFlushIntervalMillis());
+
+        batcher = new LastSessionRefreshBatcher(1, new RecordingWriter(1));
+        Assert.assertEquals(0, batcher.getSkipWindow());
+        Assert.assertEquals(1000, batcher.getFlushIntervalMillis());
+    }
+
+    @Test
+    public void refreshWithinSkipWindowIsSkipped() {
+        RecordingWriter writer = new RecordingWriter(1);
+        LastSessionRefreshBatcher batcher = new LastSessionRefreshBatcher(60, writer);
+        Cache cache = cache("sessions");
+
+        Assert.assertFalse(batcher.refresh(cache, "s1", 100, 129));
+        Assert.assertTrue(batcher.refresh(cache, "s1", 100, 130));
+        Assert.assertEquals(1, batcher.getSkipped());
+        Assert.assertEquals(1, batcher.getQueued());
+        Assert.assertEquals(1, batcher.getQueueDepth());
+    }
+
+    @Test
+    public void latestRefreshOfSessionIsWritten() {
+        RecordingWriter writer = new RecordingWriter(2);
+        LastSessionRefreshBatcher batcher = new LastSessionRefreshBatcher(10, writer);
+        Cache sessions = cache("sessions");
+        Cache offlineSessions = cache("offlineSessions");
+
+        batcher.refresh(sessions, "s1", 100, 110);
+        batcher.refresh(sessions, "s1", 100, 130);
+        batcher.refresh(sessions, "s1", 100, 120);
+        batcher.refresh(sessions, "s2", 100, 140);
+        batcher.refresh(offlineSessions, "s1", 100, 150);
+        batcher.flush();
+
+        Assert.assertEquals(2, writer.batches.size());
+        Map<String, Integer> written = writer.written("sessions");
+        Assert.assertEquals(2, written.size());
+        Assert.assertEquals(130, written.get("s1").intValue());
+        Assert.assertEquals(140, written.get("s2").intValue());
+        Assert.assertEquals(150, writer.written("offlineSessions").get("s1").intValue());
+
+        Assert.assertEquals(0, batcher.getQueueDepth());
+        Assert.assertEquals(3, batcher.getWritten());
+
+        batcher.flush();
+        Assert.assertEquals(2, batcher.getFlushes());
+    }
+
+    @Test
+    public void repeatedRefreshesOnOwnerAreWritten() {
+        // Like on the owner node, the stored refresh only moves forward when an update is written
+        final Map<String, Integer> stored = new HashMap<>();
+        stored.put("s1", 0);
+        LastSessionRefreshBatcher batcher = new LastSessionRefreshBatcher(60, new LastSessionRefreshBatcher.RefreshWriter() {
+            @Override
+            public void write(Cache cache, Map<String, Integer> refreshes) {
+                stored.putAll(refreshes);
+            }
+        });
+        Cache cache = cache("sessions");
+
+        // Refreshed more often than the skip window, flushed once per flush interval
+        int lastFlush = 0;
+        for (int time = 10; time <= 1000; time += 10) {
+            batcher.refresh(cache, "s1", stored.get("s1"), time);
+            if (time - lastFlush >= batcher.getFlushIntervalMillis() / 1000) {
+                batcher.flush();
+                lastFlush = time;
+            }
+
+            Assert.assertTrue("Stored refresh " + stored.get("s1") + " more than the tolerance behind " + time, time - stored.get("s1") <= 60);
+        }
+
+        Assert.assertTrue(batcher.getWritten() >= 1000 / 60);
+    }
+
+    @Test
+    public void flushOnInterval() throws Exception {
+        RecordingWriter writer = new RecordingWriter(1);
+        LastSessionRefreshBatcher batcher = new LastSessionRefreshBatcher(1, writer);
+        batcher.start();
+        batcher.refresh(cache("sessions"), "s1", 100, 101);
+
+        Assert.assertTrue(writer.done.await(10, TimeUnit.SECONDS));
+        batcher.close();
+        Assert.assertEquals(1, batcher.getWritten());
+    }
+
+    @Test
+    public void closeWritesQueuedRefreshes() {
+        RecordingWriter writer = new RecordingWriter(1);
+        LastSessionRefreshBatcher batcher = new LastSessionRefreshBatcher(3600, writer);
+        batcher.start();
+        batcher.refresh(cache("sessions"), "s1", 100, 2000);
+        batcher.close();
+
+        Assert.assertEquals(1, batcher.getWritten());
+        Assert.assertEquals(0, batcher.getQueueDepth());
+    }
+
+    @Test
+    public void failedWriteIsCounted() {
+        LastSessionRefreshBatcher batcher = new LastSessionRefreshBatcher(10, new LastSessionRefreshBatcher.RefreshWriter() {
+            @Override
+            public void write(Cache cache, Map<String, Integer> refreshes) {
+                throw new RuntimeException("Cluster down");
+            }
+        });
+        batcher.refresh(cache("sessions"), "s1", 100, 200);
+        batcher.flush();
+
+        Assert.assertEquals(0, batcher.getWritten());
+        Assert.assertEquals(1, batcher.getFailed());
+    }
+
+    private static Cache cache(final String name) {
+        return (Cache) Proxy.newProxyInstance(Cache.class.getClassLoader(), new Class[] { Cache.class }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                switch (method.getName()) {
+                    case "getName":
+                    case "toString":
+                        return name;
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                }
+            }
+        });
+    }
+
+    private static class RecordingWriter implements LastSessionRefreshBatcher.RefreshWriter {
+
+        private final List<Map.Entry<String, Map<String, Integer>>> batches = Collections.synchronizedList(new ArrayList<Map.Entry<String, Map<String, Integer>>>());
+        private final CountDownLatch done;
+
+        private RecordingWriter(int expectedBatches) {
+            done = new CountDownLatch(expectedBatches);
+        }
+
+        @Override
+        public void write(Cache cache, Map<String, Integer> refreshes) {
+            batches.add(new AbstractMap.SimpleEntry<String, Map<String, Integer>>(cache.getName(), new HashMap<>(refreshes)));
+            done.countDown();
+        }
+
+        private Map<String, Integer> written(String cacheName) {
+            for (Map.Entry<String, Map<String, Integer>> batch : batches) {
+                if (batch.getKey().equals(cacheName)) {
+                    return batch.getValue();
+                }
+            }
+            return null;
+        }
+
+    }
+
+}
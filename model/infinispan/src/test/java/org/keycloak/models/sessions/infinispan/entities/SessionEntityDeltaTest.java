@@ -0,0 +1,216 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.sessions.infinispan.entities;
+
+import org.infinispan.commons.marshall.Externalizer;
+import org.junit.Assert;
+import org.junit.Test;
+import org.keycloak.models.ClientSessionModel;
+import org.keycloak.models.UserSessionModel;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.HashSet;
+
+public class SessionEntityDeltaTest {
+
+    @Test
+    public void userSessionDelta() throws Exception {
+        UserSessionEntity session = new UserSessionEntity();
+        session.setId("us1");
+        session.setUser("user1");
+        session.setLastSessionRefresh(100);
+        session.setState(UserSessionModel.State.LOGGING_IN);
+        session.setClientSessions(new HashSet<String>());
+        session.getClientSessions().add("cs1");
+        session.setNotes(new HashMap<String, String>());
+        session.getNotes().put("keep", "1");
+        session.getNotes().put("remove", "2");
+
+        UserSessionEntityDelta delta = new UserSessionEntityDelta();
+        delta.setLastSessionRefresh(200);
+        delta.setState(UserSessionModel.State.LOGGED_IN);
+        delta.setNote("added", "3");
+        delta.removeNote("remove");
+
+        UserSessionEntity merged = (UserSessionEntity) roundTrip(new UserSessionEntityDelta.ExternalizerImpl(), delta).merge(session);
+
+        Assert.assertNotSame(session, merged);
+        Assert.assertEquals("us1", merged.getId());
+        Assert.assertEquals("user1", merged.getUser());
+        Assert.assertEquals(200, merged.getLastSessionRefresh());
+        Assert.assertEquals(UserSessionModel.State.LOGGED_IN, merged.getState());
+        Assert.assertEquals(session.getClientSessions(), merged.getClientSessions());
+        Assert.assertEquals("1", merged.getNotes().get("keep"));
+        Assert.assertEquals("3", merged.getNotes().get("added"));
+        Assert.assertFalse(merged.getNotes().containsKey("remove"));
+
+        // The current entity isn't modified
+        Assert.assertEquals(100, session.getLastSessionRefresh());
+        Assert.assertTrue(session.getNotes().containsKey("remove"));
+    }
+
+    @Test
+    public void refreshOnlyDeltaIsSmall() throws Exception {
+        UserSessionEntityDelta delta = new UserSessionEntityDelta();
+        delta.setLastSessionRefresh(200);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream output = new ObjectOutputStream(bytes);
+        int header = bytes.size();
+        new UserSessionEntityDelta.ExternalizerImpl().writeObject(output, delta);
+        output.flush();
+
+        // Version, changed fields, timestamp and two empty note collections, plus the block data header of the stream
+        Assert.assertEquals(10, bytes.size() - header);
+    }
+
+    @Test
+    public void unchangedFieldsAreKept() {
+        UserSessionEntity session = new UserSessionEntity();
+        session.setId("us1");
+        session.setLastSessionRefresh(100);
+        session.setState(UserSessionModel.State.LOGGED_IN);
+
+        UserSessionEntityDelta delta = new UserSessionEntityDelta();
+        delta.setNote("note", "value");
+
+        UserSessionEntity merged = (UserSessionEntity) delta.merge(session);
+        Assert.assertEquals(100, merged.getLastSessionRefresh());
+        Assert.assertEquals(UserSessionModel.State.LOGGED_IN, merged.getState());
+        Assert.assertEquals("value", merged.getNotes().get("note"));
+    }
+
+    @Test
+    public void removedSessionIsNotRecreated() {
+        UserSessionEntityDelta delta = new UserSessionEntityDelta();
+        delta.setLastSessionRefresh(200);
+        Assert.assertNull(delta.merge(null));
+
+        ClientSessionEntityDelta clientDelta = new ClientSessionEntityDelta();
+        clientDelta.setTimestamp(200);
+        Assert.assertNull(clientDelta.merge(null));
+    }
+
+    @Test
+    public void lastSessionRefreshIfNewer() throws Exception {
+        UserSessionEntity session = new UserSessionEntity();
+        session.setLastSessionRefresh(200);
+
+        UserSessionEntityDelta older = new UserSessionEntityDelta();
+        older.setLastSessionRefreshIfNewer(150);
+        Assert.assertEquals(200, ((UserSessionEntity) roundTrip(new UserSessionEntityDelta.ExternalizerImpl(), older).merge(session)).getLastSessionRefresh());
+
+        UserSessionEntityDelta newer = new UserSessionEntityDelta();
+        newer.setLastSessionRefreshIfNewer(250);
+        Assert.assertEquals(250, ((UserSessionEntity) roundTrip(new UserSessionEntityDelta.ExternalizerImpl(), newer).merge(session)).getLastSessionRefresh());
+    }
+
+    @Test
+    public void fullDelta() throws Exception {
+        UserSessionEntity session = new UserSessionEntity();
+        session.setId("us1");
+        session.setUser("user1");
+        session.setLastSessionRefresh(200);
+        session.setNotes(new HashMap<String, String>());
+        session.getNotes().put("note", "value");
+
+        UserSessionEntity current = new UserSessionEntity();
+        current.setId("us1");
+        current.setLastSessionRefresh(100);
+
+        SessionEntityFullDelta delta = roundTrip(new SessionEntityFullDelta.ExternalizerImpl(), (SessionEntityFullDelta) session.delta());
+        UserSessionEntity merged = (UserSessionEntity) delta.merge(current);
+        Assert.assertNotSame(session, merged);
+        Assert.assertEquals("user1", merged.getUser());
+        Assert.assertEquals(200, merged.getLastSessionRefresh());
+        Assert.assertEquals("value", merged.getNotes().get("note"));
+
+        // Put of a session creates it, replace doesn't re-create a removed session
+        Assert.assertNotNull(delta.merge(null));
+        Assert.assertNull(roundTrip(new SessionEntityFullDelta.ExternalizerImpl(), new SessionEntityFullDelta(session, true)).merge(null));
+
+        ClientSessionEntity clientSession = new ClientSessionEntity();
+        clientSession.setId("cs1");
+        clientSession.setClient("client1");
+        ClientSessionEntity mergedClientSession = (ClientSessionEntity) roundTrip(new SessionEntityFullDelta.ExternalizerImpl(), (SessionEntityFullDelta) clientSession.delta()).merge(null);
+        Assert.assertEquals("client1", mergedClientSession.getClient());
+    }
+
+    @Test
+    public void noteSetAfterRemoval() {
+        UserSessionEntity session = new UserSessionEntity();
+        session.setNotes(new HashMap<String, String>());
+        session.getNotes().put("note", "old");
+
+        UserSessionEntityDelta delta = new UserSessionEntityDelta();
+        delta.removeNote("note");
+        delta.setNote("note", "new");
+        Assert.assertEquals("new", ((UserSessionEntity) delta.merge(session)).getNotes().get("note"));
+
+        delta = new UserSessionEntityDelta();
+        delta.setNote("note", "new");
+        delta.removeNote("note");
+        Assert.assertFalse(((UserSessionEntity) delta.merge(session)).getNotes().containsKey("note"));
+    }
+
+    @Test
+    public void clientSessionDelta() throws Exception {
+        ClientSessionEntity session = new ClientSessionEntity();
+        session.setId("cs1");
+        session.setClient("client1");
+        session.setTimestamp(100);
+        session.setAction("AUTHENTICATE");
+        session.setRoles(new HashSet<String>());
+        session.getRoles().add("role1");
+        session.getRequiredActions().add("VERIFY_EMAIL");
+
+        ClientSessionEntityDelta delta = new ClientSessionEntityDelta();
+        delta.setTimestamp(200);
+        delta.setAction(null);
+        delta.setNote("note", "value");
+        delta.setUserSessionNote("userNote", "value");
+        delta.setExecutionStatus("execution", ClientSessionModel.ExecutionStatus.SUCCESS);
+
+        ClientSessionEntity merged = (ClientSessionEntity) roundTrip(new ClientSessionEntityDelta.ExternalizerImpl(), delta).merge(session);
+
+        Assert.assertEquals("cs1", merged.getId());
+        Assert.assertEquals("client1", merged.getClient());
+        Assert.assertEquals(200, merged.getTimestamp());
+        Assert.assertNull(merged.getAction());
+        Assert.assertEquals(session.getRoles(), merged.getRoles());
+        Assert.assertEquals(session.getRequiredActions(), merged.getRequiredActions());
+        Assert.assertEquals("value", merged.getNotes().get("note"));
+        Assert.assertEquals("value", merged.getUserSessionNotes().get("userNote"));
+        Assert.assertEquals(ClientSessionModel.ExecutionStatus.SUCCESS, merged.getAuthenticatorStatus().get("execution"));
+        Assert.assertTrue(session.getAuthenticatorStatus().isEmpty());
+    }
+
+    private static <T> T roundTrip(Externalizer<T> externalizer, T object) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream output = new ObjectOutputStream(bytes);
+        externalizer.writeObject(output, object);
+        output.close();
+
+        return externalizer.readObject(new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.sessions.infinispan.entities;
+
+import org.infinispan.commons.marshall.Externalizer;
+import org.junit.Assert;
+import org.junit.Test;
+import org.keycloak.models.ClientSessionModel;
+import org.keycloak.models.UserSessionModel;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+public class SessionEntityExternalizerTest {
+
+    @Test
+    public void userSessionRoundTrip() throws Exception {
+        UserSessionEntity session = userSession();
+        UserSessionEntity copy = roundTrip(new UserSessionEntity.ExternalizerImpl(), session);
+
+        Assert.assertEquals(session.getId(), copy.getId());
+        Assert.assertEquals(session.getRealm(), copy.getRealm());
+        Assert.assertEquals(session.getUser(), copy.getUser());
+        Assert.assertEquals(session.getBrokerSessionId(), copy.getBrokerSessionId());
+        Assert.assertNull(copy.getBrokerUserId());
+        Assert.assertEquals(session.getLoginUsername(), copy.getLoginUsername());
+        Assert.assertEquals(session.getIpAddress(), copy.getIpAddress());
+        Assert.assertEquals(session.getAuthMethod(), copy.getAuthMethod());
+        Assert.assertTrue(copy.isRememberMe());
+        Assert.assertEquals(session.getStarted(), copy.getStarted());
+        Assert.assertEquals(session.getLastSessionRefresh(), copy.getLastSessionRefresh());
+        Assert.assertEquals(session.getClientSessions(), copy.getClientSessions());
+        Assert.assertEquals(UserSessionModel.State.LOGGED_IN, copy.getState());
+        Assert.assertEquals(session.getNotes(), copy.getNotes());
+    }
+
+    @Test
+    public void emptyUserSessionRoundTrip() throws Exception {
+        UserSessionEntity copy = roundTrip(new UserSessionEntity.ExternalizerImpl(), new UserSessionEntity());
+
+        Assert.assertNull(copy.getId());
+        Assert.assertNull(copy.getClientSessions());
+        Assert.assertNull(copy.getState());
+        Assert.assertNull(copy.getNotes());
+    }
+
+    @Test
+    public void clientSessionRoundTrip() throws Exception {
+        ClientSessionEntity session = clientSession();
+        ClientSessionEntity copy = roundTrip(new ClientSessionEntity.ExternalizerImpl(), session);
+
+        Assert.assertEquals(session.getId(), copy.getId());
+        Assert.assertEquals(session.getRealm(), copy.getRealm());
+        Assert.assertEquals(session.getClient(), copy.getClient());
+        Assert.assertEquals(session.getUserSession(), copy.getUserSession());
+        Assert.assertEquals(session.getAuthMethod(), copy.getAuthMethod());
+        Assert.assertEquals(session.getRedirectUri(), copy.getRedirectUri());
+        Assert.assertEquals(session.getTimestamp(), copy.getTimestamp());
+        Assert.assertEquals(session.getAction(), copy.getAction());
+        Assert.assertEquals(session.getRoles(), copy.getRoles());
+        Assert.assertNull(copy.getProtocolMappers());
+        Assert.assertEquals(session.getNotes(), copy.getNotes());
+        Assert.assertEquals(session.getUserSessionNotes(), copy.getUserSessionNotes());
+        Assert.assertEquals(session.getAuthenticatorStatus(), copy.getAuthenticatorStatus());
+        Assert.assertEquals(session.getAuthUserId(), copy.getAuthUserId());
+        Assert.assertEquals(session.getRequiredActions(), copy.getRequiredActions());
+    }
+
+    @Test
+    public void loginFailureRoundTrip() throws Exception {
+        LoginFailureEntity failure = new LoginFailureEntity();
+        failure.setUsername("jöhn");
+        failure.setRealm("realm");
+        failure.setFailedLoginNotBefore(100);
+        failure.setNumFailures(3);
+        failure.setLastFailure(1460000000000L);
+        failure.setLastIPFailure("10.0.0.1");
+
+        LoginFailureEntity copy = roundTrip(new LoginFailureEntity.ExternalizerImpl(), failure);
+        Assert.assertEquals("jöhn", copy.getUsername());
+        Assert.assertEquals("realm", copy.getRealm());
+        Assert.assertEquals(100, copy.getFailedLoginNotBefore());
+        Assert.assertEquals(3, copy.getNumFailures());
+        Assert.assertEquals(1460000000000L, copy.getLastFailure());
+        Assert.assertEquals("10.0.0.1", copy.getLastIPFailure());
+
+        LoginFailureKey key = new LoginFailureKey("realm", "john");
+        Assert.assertEquals(key, roundTrip(new LoginFailureKey.ExternalizerImpl(), key));
+    }
+
+    @Test
+    public void clientInitialAccessRoundTrip() throws Exception {
+        ClientInitialAccessEntity entity = new ClientInitialAccessEntity();
+        entity.setId("id");
+        entity.setRealm("realm");
+        entity.setTimestamp(1000);
+        entity.setExpiration(3600);
+        entity.setCount(10);
+        entity.setRemainingCount(9);
+
+        ClientInitialAccessEntity copy = roundTrip(new ClientInitialAccessEntity.ExternalizerImpl(), entity);
+        Assert.assertEquals("id", copy.getId());
+        Assert.assertEquals("realm", copy.getRealm());
+        Assert.assertEquals(1000, copy.getTimestamp());
+        Assert.assertEquals(3600, copy.getExpiration());
+        Assert.assertEquals(10, copy.getCount());
+        Assert.assertEquals(9, copy.getRemainingCount());
+    }
+
+    @Test
+    public void longValues() throws Exception {
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            value.append('x');
+        }
+
+        UserSessionEntity session = userSession();
+        session.getNotes().put("long", value.toString());
+        Assert.assertEquals(value.toString(), roundTrip(new UserSessionEntity.ExternalizerImpl(), session).getNotes().get("long"));
+    }
+
+    @Test(expected = IOException.class)
+    public void unknownVersion() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream output = new ObjectOutputStream(bytes);
+        output.writeByte(2);
+        output.close();
+
+        new UserSessionEntity.ExternalizerImpl().readObject(new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+
+    @Test
+    public void smallerThanJavaSerialization() throws Exception {
+        UserSessionEntity userSession = userSession();
+        ClientSessionEntity clientSession = clientSession();
+
+        int userSessionSize = externalizedSize(new UserSessionEntity.ExternalizerImpl(), userSession);
+        int clientSessionSize = externalizedSize(new ClientSessionEntity.ExternalizerImpl(), clientSession);
+
+        Assert.assertTrue(userSessionSize * 2 < serializedSize(userSession));
+        Assert.assertTrue(clientSessionSize * 2 < serializedSize(clientSession));
+    }
+
+    private static UserSessionEntity userSession() {
+        UserSessionEntity session = new UserSessionEntity();
+        session.setId("8f3d3f0e-3d5c-4b5a-9b5e-0c4a5d6e7f80");
+        session.setRealm("test");
+        session.setUser("a1b2c3d4-e5f6-4711-8899-aabbccddeeff");
+        session.setBrokerSessionId("broker-session");
+        session.setLoginUsername("john");
+        session.setIpAddress("127.0.0.1");
+        session.setAuthMethod("openid-connect");
+        session.setRememberMe(true);
+        session.setStarted(1000);
+        session.setLastSessionRefresh(2000);
+        session.setState(UserSessionModel.State.LOGGED_IN);
+
+        Set<String> clientSessions = new HashSet<>();
+        clientSessions.add("0a1b2c3d-4e5f-4711-8899-aabbccddee01");
+        clientSessions.add("0a1b2c3d-4e5f-4711-8899-aabbccddee02");
+        session.setClientSessions(clientSessions);
+
+        Map<String, String> notes = new HashMap<>();
+        notes.put("AUTH_TIME", "1000");
+        session.setNotes(notes);
+        return session;
+    }
+
+    private static ClientSessionEntity clientSession() {
+        ClientSessionEntity session = new ClientSessionEntity();
+        session.setId("0a1b2c3d-4e5f-4711-8899-aabbccddee01");
+        session.setRealm("test");
+        session.setClient("c1d2e3f4-a5b6-4711-8899-aabbccddee99");
+        session.setUserSession("8f3d3f0e-3d5c-4b5a-9b5e-0c4a5d6e7f80");
+        session.setAuthMethod("openid-connect");
+        session.setRedirectUri("http://localhost:8080/app");
+        session.setTimestamp(1500);
+        session.setAction("CODE_TO_TOKEN");
+        session.setAuthUserId("a1b2c3d4-e5f6-4711-8899-aabbccddeeff");
+
+        Set<String> roles = new HashSet<>();
+        roles.add("r1");
+        roles.add("r2");
+        session.setRoles(roles);
+
+        Map<String, String> notes = new HashMap<>();
+        notes.put("scope", "openid");
+        notes.put("response_type", "code");
+        session.setNotes(notes);
+        session.setUserSessionNotes(new HashMap<String, String>());
+
+        Map<String, ClientSessionModel.ExecutionStatus> status = new HashMap<>();
+        status.put("execution", ClientSessionModel.ExecutionStatus.SUCCESS);
+        session.setAuthenticatorStatus(status);
+        session.getRequiredActions().add("UPDATE_PASSWORD");
+        return session;
+    }
+
+    private static <T> T roundTrip(Externalizer<T> externalizer, T object) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream output = new ObjectOutputStream(bytes);
+        externalizer.writeObject(output, object);
+        output.close();
+
+        ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        T copy = externalizer.readObject(input);
+        Assert.assertEquals("Not all bytes were read", -1, input.read());
+        return copy;
+    }
+
+    private static <T> int externalizedSize(Externalizer<T> externalizer, T object) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream output = new ObjectOutputStream(bytes);
+        externalizer.writeObject(output, object);
+        output.close();
+        return bytes.size();
+    }
+
+    private static int serializedSize(Object object) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream output = new ObjectOutputStream(bytes);
+        output.writeObject(object);
+        output.close();
+        return bytes.size();
+    }
+
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.sessions.infinispan.index;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.keycloak.models.sessions.infinispan.entities.ClientSessionEntity;
+import org.keycloak.models.sessions.infinispan.entities.UserSessionEntity;
+
+import java.util.Set;
+
+public class SessionExpirationQueueTest {
+
+    private static final SessionExpirationQueue.Timeouts TIMEOUTS = new SessionExpirationQueue.Timeouts(1000, 100, 50, false);
+
+    @Test
+    public void testUserSessionExpiration() {
+        SessionExpirationQueue queue = new SessionExpirationQueue();
+
+        queue.update(userSession("us1", 0, 0));
+        queue.update(userSession("us2", 0, 950));
+        queue.update(userSession("us3", 500, 500));
+
+        // Nothing is scheduled until timeouts are known
+        Assert.assertTrue(queue.pollExpired("realm", 10000, 100).isEmpty());
+
+        queue.setTimeouts("realm", TIMEOUTS);
+
+        assertIds(queue.pollExpired("realm", 99, 100));
+        assertIds(queue.pollExpired("realm", 100, 100), "us1");
+
+        // us2 expires because of max lifespan, us3 because of idle timeout
+        assertIds(queue.pollExpired("realm", 1000, 100), "us3", "us2");
+        assertIds(queue.pollExpired("realm", 1000, 100));
+    }
+
+    @Test
+    public void testRefreshAndRemove() {
+        SessionExpirationQueue queue = new SessionExpirationQueue();
+        queue.setTimeouts("realm", TIMEOUTS);
+
+        UserSessionEntity session = userSession("us1", 0, 0);
+        queue.update(session);
+
+        session.setLastSessionRefresh(80);
+        queue.update(session);
+        assertIds(queue.pollExpired("realm", 100, 100));
+        assertIds(queue.pollExpired("realm", 180, 100), "us1");
+
+        queue.reschedule("realm", "us1");
+        queue.remove(session);
+        assertIds(queue.pollExpired("realm", 180, 100));
+        Assert.assertEquals(0, queue.size("realm"));
+    }
+
+    @Test
+    public void testTimeoutsChange() {
+        SessionExpirationQueue queue = new SessionExpirationQueue();
+        queue.setTimeouts("realm", TIMEOUTS);
+
+        queue.update(clientSession("cs1", 0, null));
+        queue.update(clientSession("cs2", 0, "us1"));
+
+        assertIds(queue.pollExpired("realm", 49, 100));
+        queue.setTimeouts("realm", new SessionExpirationQueue.Timeouts(1000, 100, 20, false));
+
+        // Attached client session never expires on its own
+        assertIds(queue.pollExpired("realm", 10000, 100), "cs1");
+    }
+
+    @Test
+    public void testBatches() {
+        SessionExpirationQueue queue = new SessionExpirationQueue();
+        queue.setTimeouts("realm", TIMEOUTS);
+
+        for (int i = 0; i < 10; i++) {
+            queue.update(userSession("us" + i, i, i));
+        }
+
+        Assert.assertEquals(4, queue.pollExpired("realm", 200, 4).size());
+        Assert.assertEquals(4, queue.pollExpired("realm", 200, 4).size());
+        Assert.assertEquals(2, queue.pollExpired("realm", 200, 4).size());
+        Assert.assertTrue(queue.pollExpired("realm", 200, 4).isEmpty());
+    }
+
+    private static UserSessionEntity userSession(String id, int started, int lastSessionRefresh) {
+        UserSessionEntity entity = new UserSessionEntity();
+        entity.setId(id);
+        entity.setRealm("realm");
+        entity.setStarted(started);
+        entity.setLastSessionRefresh(lastSessionRefresh);
+        return entity;
+    }
+
+    private static ClientSessionEntity clientSession(String id, int timestamp, String userSession) {
+        ClientSessionEntity entity = new ClientSessionEntity();
+        entity.setId(id);
+        entity.setRealm("realm");
+        entity.setTimestamp(timestamp);
+        entity.setUserSession(userSession);
+        return entity;
+    }
+
+    private static void assertIds(Set<String> ids, String... expected) {
+        Assert.assertEquals(expected.length, ids.size());
+        for (String id : expected) {
+            Assert.assertTrue(ids.contains(id));
+        }
+    }
+}
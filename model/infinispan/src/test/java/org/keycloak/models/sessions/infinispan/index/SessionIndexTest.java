@@ -0,0 +1,140 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.sessions.infinispan.index;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.keycloak.models.sessions.infinispan.entities.ClientSessionEntity;
+import org.keycloak.models.sessions.infinispan.entities.UserSessionEntity;
+
+import java.util.Set;
+
+public class SessionIndexTest {
+
+    @Test
+    public void testUserSessions() {
+        SessionIndex index = new SessionIndex();
+
+        UserSessionEntity session1 = userSession("us1", "user1", "broker1");
+        UserSessionEntity session2 = userSession("us2", "user1", null);
+        UserSessionEntity session3 = userSession("us3", "user2", "broker3");
+        index.add(session1);
+        index.add(session2);
+        index.add(session3);
+
+        assertIds(index.getUserSessionsByUser("user1"), "us1", "us2");
+        assertIds(index.getUserSessionsByUser("user2"), "us3");
+        assertIds(index.getUserSessionsByBrokerSession("broker1"), "us1");
+        assertIds(index.getUserSessionsByBrokerSession(null));
+
+        index.remove(session1);
+        assertIds(index.getUserSessionsByUser("user1"), "us2");
+        assertIds(index.getUserSessionsByBrokerSession("broker1"));
+
+        // Removing twice is no-op
+        index.remove(session1);
+        assertIds(index.getUserSessionsByUser("user1"), "us2");
+    }
+
+    @Test
+    public void testClientSessions() {
+        SessionIndex index = new SessionIndex();
+
+        ClientSessionEntity session1 = clientSession("cs1", "client1");
+        ClientSessionEntity session2 = clientSession("cs2", "client1");
+        index.add(session1);
+        index.add(session2);
+        index.add(session2);
+
+        assertIds(index.getClientSessionsByClient("client1"), "cs1", "cs2");
+        assertIds(index.getClientSessionsByClient("client2"));
+
+        index.remove(session1);
+        index.remove(session2);
+        assertIds(index.getClientSessionsByClient("client1"));
+    }
+
+    @Test
+    public void testUserSessionsCountByClient() {
+        SessionIndex index = new SessionIndex();
+
+        ClientSessionEntity session1 = clientSession("cs1", "client1", "us1");
+        ClientSessionEntity session2 = clientSession("cs2", "client1", "us1");
+        ClientSessionEntity session3 = clientSession("cs3", "client1", "us2");
+        ClientSessionEntity detached = clientSession("cs4", "client1", null);
+        index.add(session1);
+        index.add(session2);
+        index.add(session3);
+        index.add(detached);
+
+        // Adding again, like when the listener sees a session added by this node, doesn't change the count
+        index.add(session3);
+
+        Assert.assertEquals(2, index.getUserSessionsCountByClient("client1"));
+        Assert.assertEquals(0, index.getUserSessionsCountByClient("client2"));
+
+        // User session is still referenced by the other client session
+        index.remove(session1);
+        Assert.assertEquals(2, index.getUserSessionsCountByClient("client1"));
+
+        index.update(clientSession("cs4", "client1", "us3"));
+        Assert.assertEquals(3, index.getUserSessionsCountByClient("client1"));
+
+        index.update(clientSession("cs3", "client1", null));
+        index.update(clientSession("cs3", "client1", null));
+        Assert.assertEquals(2, index.getUserSessionsCountByClient("client1"));
+
+        index.remove(session2);
+        index.remove(detached);
+        index.remove(session3);
+        Assert.assertEquals(0, index.getUserSessionsCountByClient("client1"));
+
+        // Removing twice is no-op
+        index.remove(session2);
+        Assert.assertEquals(0, index.getUserSessionsCountByClient("client1"));
+    }
+
+    private static UserSessionEntity userSession(String id, String user, String brokerSessionId) {
+        UserSessionEntity entity = new UserSessionEntity();
+        entity.setId(id);
+        entity.setRealm("realm");
+        entity.setUser(user);
+        entity.setBrokerSessionId(brokerSessionId);
+        return entity;
+    }
+
+    private static ClientSessionEntity clientSession(String id, String client) {
+        return clientSession(id, client, null);
+    }
+
+    private static ClientSessionEntity clientSession(String id, String client, String userSession) {
+        ClientSessionEntity entity = new ClientSessionEntity();
+        entity.setUserSession(userSession);
+        entity.setId(id);
+        entity.setRealm("realm");
+        entity.setClient(client);
+        return entity;
+    }
+
+    private static void assertIds(Set<String> ids, String... expected) {
+        Assert.assertEquals(expected.length, ids.size());
+        for (String id : expected) {
+            Assert.assertTrue(ids.contains(id));
+        }
+    }
+}
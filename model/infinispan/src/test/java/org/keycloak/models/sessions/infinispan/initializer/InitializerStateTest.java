@@ -17,6 +17,7 @@
 
 package org.keycloak.models.sessions.infinispan.initializer;
 
+import java.util.Arrays;
 import java.util.List;
 
 import org.junit.Assert;
@@ -53,6 +54,22 @@ public class InitializerStateTest {
         Assert.assertTrue(state.isFinished());
     }
 
+    @Test
+    public void testSegmentStarts() {
+        InitializerState state = new InitializerState();
+        state.init(12, Arrays.asList(null, "e", "j"));
+
+        Assert.assertEquals(12, state.getSessionsCount());
+        Assert.assertEquals(3, state.getSegmentsCount());
+        Assert.assertNull(state.getSegmentStart(0));
+        Assert.assertEquals("e", state.getSegmentStart(1));
+        Assert.assertEquals("j", state.getSegmentStart(2));
+
+        state.markSegmentFinished(1);
+        Assert.assertEquals(1, state.getFinishedSegmentsCount());
+        assertContains(state.getUnfinishedSegments(Integer.MAX_VALUE), 2, 0, 2);
+    }
+
     private void assertContains(List<Integer> segments, int expectedLength, int... expected) {
         Assert.assertEquals(segments.size(), expectedLength);
         for (int i : expected) {
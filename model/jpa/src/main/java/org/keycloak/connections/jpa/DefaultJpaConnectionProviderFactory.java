@@ -144,6 +144,11 @@ public class DefaultJpaConnectionProviderFactory implements JpaConnectionProvide
                     properties.put("hibernate.show_sql", config.getBoolean("showSql", false));
                     properties.put("hibernate.format_sql", config.getBoolean("formatSql", true));
 
+                    Integer batchSize = config.getInt("batchSize");
+                    if (batchSize != null) {
+                        properties.put("hibernate.jdbc.batch_size", String.valueOf(batchSize));
+                    }
+
                     connection = getConnection();
                     try{ 
 	                    prepareOperationalInfo(connection);
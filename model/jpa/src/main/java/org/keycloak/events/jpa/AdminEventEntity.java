@@ -151,4 +151,8 @@ public class AdminEventEntity {
         this.error = error;
     }
 
+    @Override
+    public String toString() {
+        return "AdminEventEntity [id=" + id + ", operationType=" + operationType + ", realmId=" + realmId + ", time=" + time + "]";
+    }
 }
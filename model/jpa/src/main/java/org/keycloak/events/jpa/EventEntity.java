@@ -141,4 +141,8 @@ public class EventEntity {
         this.detailsJson = detailsJson;
     }
 
+    @Override
+    public String toString() {
+        return "EventEntity [id=" + id + ", type=" + type + ", realmId=" + realmId + ", time=" + time + "]";
+    }
 }
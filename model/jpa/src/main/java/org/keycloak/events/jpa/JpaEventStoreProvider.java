@@ -20,6 +20,7 @@ package org.keycloak.events.jpa;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.jboss.logging.Logger;
+import org.keycloak.events.AsyncEventWriter;
 import org.keycloak.events.admin.AdminEvent;
 import org.keycloak.events.admin.AdminEventQuery;
 import org.keycloak.events.admin.AuthDetails;
@@ -28,6 +29,7 @@ import org.keycloak.events.Event;
 import org.keycloak.events.EventQuery;
 import org.keycloak.events.EventStoreProvider;
 import org.keycloak.events.EventType;
+import org.keycloak.models.KeycloakTransactionManager;
 
 import javax.persistence.EntityManager;
 
@@ -46,9 +48,17 @@ public class JpaEventStoreProvider implements EventStoreProvider {
     private static final Logger logger = Logger.getLogger(JpaEventStoreProvider.class);
 
     private EntityManager em;
+    private AsyncEventWriter<Object> asyncWriter;
+    private KeycloakTransactionManager transaction;
 
     public JpaEventStoreProvider(EntityManager em) {
+        this(em, null, null);
+    }
+
+    public JpaEventStoreProvider(EntityManager em, AsyncEventWriter<Object> asyncWriter, KeycloakTransactionManager transaction) {
         this.em = em;
+        this.asyncWriter = asyncWriter;
+        this.transaction = transaction;
     }
 
     @Override
@@ -73,7 +83,7 @@ public class JpaEventStoreProvider implements EventStoreProvider {
 
     @Override
     public void onEvent(Event event) {
-        em.persist(convertEvent(event));
+        persist(convertEvent(event));
     }
 
     @Override
@@ -98,7 +108,15 @@ public class JpaEventStoreProvider implements EventStoreProvider {
 
     @Override
     public void onEvent(AdminEvent event, boolean includeRepresentation) {
-        em.persist(convertAdminEvent(event, includeRepresentation));
+        persist(convertAdminEvent(event, includeRepresentation));
+    }
+
+    private void persist(Object entity) {
+        if (asyncWriter != null) {
+            asyncWriter.add(transaction, entity);
+        } else {
+            em.persist(entity);
+        }
     }
 
     @Override
@@ -19,35 +19,81 @@ package org.keycloak.events.jpa;
 
 import org.keycloak.Config;
 import org.keycloak.connections.jpa.JpaConnectionProvider;
+import org.keycloak.events.AsyncEventWriter;
 import org.keycloak.events.EventStoreProvider;
 import org.keycloak.events.EventStoreProviderFactory;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.KeycloakSessionTask;
+import org.keycloak.models.utils.KeycloakModelUtils;
+import org.keycloak.models.utils.PreShutdownEvent;
+import org.keycloak.provider.ProviderEvent;
+import org.keycloak.provider.ProviderEventListener;
+import org.keycloak.provider.ServerInfoAwareProviderFactory;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+import java.util.Map;
 
 /**
  * @author <a href="mailto:sthorger@redhat.com">Stian Thorgersen</a>
  */
-public class JpaEventStoreProviderFactory implements EventStoreProviderFactory {
+public class JpaEventStoreProviderFactory implements EventStoreProviderFactory, ServerInfoAwareProviderFactory {
 
     public static final String ID = "jpa";
 
+    private Config.Scope config;
+
+    private AsyncEventWriter<Object> asyncWriter;
+
     @Override
     public EventStoreProvider create(KeycloakSession session) {
         JpaConnectionProvider connection = session.getProvider(JpaConnectionProvider.class);
-        return new JpaEventStoreProvider(connection.getEntityManager());
+        return new JpaEventStoreProvider(connection.getEntityManager(), asyncWriter, session.getTransaction());
     }
 
     @Override
     public void init(Config.Scope config) {
+        this.config = config;
     }
 
     @Override
-    public void postInit(KeycloakSessionFactory factory) {
+    public void postInit(final KeycloakSessionFactory factory) {
+        asyncWriter = AsyncEventWriter.create("jpa-events", config, new AsyncEventWriter.BatchWriter<Object>() {
+            @Override
+            public void write(final List<Object> batch) {
+                KeycloakModelUtils.runJobInTransaction(factory, new KeycloakSessionTask() {
+                    @Override
+                    public void run(KeycloakSession session) {
+                        EntityManager em = session.getProvider(JpaConnectionProvider.class).getEntityManager();
+                        for (Object entity : batch) {
+                            em.persist(entity);
+                        }
+                        em.flush();
+                    }
+                });
+            }
+        });
+        if (asyncWriter != null) {
+            asyncWriter.start();
 
+            // Write queued events while the JPA connection provider is still open
+            factory.register(new ProviderEventListener() {
+                @Override
+                public void onEvent(ProviderEvent event) {
+                    if (event instanceof PreShutdownEvent) {
+                        asyncWriter.close();
+                    }
+                }
+            });
+        }
     }
 
     @Override
     public void close() {
+        if (asyncWriter != null) {
+            asyncWriter.close();
+        }
     }
 
     @Override
@@ -55,4 +101,9 @@ public class JpaEventStoreProviderFactory implements EventStoreProviderFactory {
         return ID;
     }
 
+    @Override
+    public Map<String, String> getOperationalInfo() {
+        return asyncWriter != null ? asyncWriter.getOperationalInfo() : null;
+    }
+
 }
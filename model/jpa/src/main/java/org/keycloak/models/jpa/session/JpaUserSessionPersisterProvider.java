@@ -201,17 +201,73 @@ public class JpaUserSessionPersisterProvider implements UserSessionPersisterProv
             query.setMaxResults(maxResults);
         }
 
-        List<PersistentUserSessionEntity> results = query.getResultList();
+        List<UserSessionModel> result = toUserSessions(query.getResultList(), offline);
+
+        // Case when user was deleted in the meantime
+        if (result == null) {
+            return loadUserSessions(firstResult, maxResults, offline);
+        }
+        return result;
+    }
+
+    @Override
+    public List<UserSessionModel> loadUserSessions(String lastUserSessionId, int maxResults, boolean offline) {
+        String offlineStr = offlineToString(offline);
+
+        TypedQuery<PersistentUserSessionEntity> query;
+        if (lastUserSessionId == null) {
+            query = em.createNamedQuery("findUserSessions", PersistentUserSessionEntity.class);
+        } else {
+            query = em.createNamedQuery("findUserSessionsAfter", PersistentUserSessionEntity.class);
+            query.setParameter("lastUserSessionId", lastUserSessionId);
+        }
+        query.setParameter("offline", offlineStr);
+
+        if (maxResults != -1) {
+            query.setMaxResults(maxResults);
+        }
+
+        List<UserSessionModel> result = toUserSessions(query.getResultList(), offline);
+
+        // Case when user was deleted in the meantime
+        if (result == null) {
+            return loadUserSessions(lastUserSessionId, maxResults, offline);
+        }
+        return result;
+    }
+
+    @Override
+    public String getUserSessionIdAfter(String lastUserSessionId, int position, boolean offline) {
+        String offlineStr = offlineToString(offline);
+
+        TypedQuery<String> query;
+        if (lastUserSessionId == null) {
+            query = em.createNamedQuery("findUserSessionIds", String.class);
+        } else {
+            query = em.createNamedQuery("findUserSessionIdsAfter", String.class);
+            query.setParameter("lastUserSessionId", lastUserSessionId);
+        }
+        query.setParameter("offline", offlineStr);
+        query.setFirstResult(position);
+        query.setMaxResults(1);
+
+        List<String> ids = query.getResultList();
+        return ids.isEmpty() ? null : ids.get(0);
+    }
+
+    // Returns null if some user was deleted in the meantime, so the query needs to be executed again
+    private List<UserSessionModel> toUserSessions(List<PersistentUserSessionEntity> results, boolean offline) {
+        String offlineStr = offlineToString(offline);
+
         List<UserSessionModel> result = new ArrayList<>();
         List<String> userSessionIds = new ArrayList<>();
         for (PersistentUserSessionEntity entity : results) {
             RealmModel realm = session.realms().getRealm(entity.getRealmId());
             UserModel user = session.users().getUserById(entity.getUserId(), realm);
 
-            // Case when user was deleted in the meantime
             if (user == null) {
                 onUserRemoved(realm, entity.getUserId());
-                return loadUserSessions(firstResult, maxResults, offline);
+                return null;
             }
 
             result.add(toAdapter(realm, user, entity));
@@ -44,6 +44,9 @@ import org.keycloak.models.jpa.entities.UserEntity;
         @NamedQuery(name="deleteDetachedUserSessions", query="delete from PersistentUserSessionEntity sess where sess.userSessionId NOT IN (select c.userSessionId from PersistentClientSessionEntity c)"),
         @NamedQuery(name="findUserSessionsCount", query="select count(sess) from PersistentUserSessionEntity sess where sess.offline = :offline"),
         @NamedQuery(name="findUserSessions", query="select sess from PersistentUserSessionEntity sess where sess.offline = :offline order by sess.userSessionId"),
+        @NamedQuery(name="findUserSessionsAfter", query="select sess from PersistentUserSessionEntity sess where sess.offline = :offline and sess.userSessionId > :lastUserSessionId order by sess.userSessionId"),
+        @NamedQuery(name="findUserSessionIds", query="select sess.userSessionId from PersistentUserSessionEntity sess where sess.offline = :offline order by sess.userSessionId"),
+        @NamedQuery(name="findUserSessionIdsAfter", query="select sess.userSessionId from PersistentUserSessionEntity sess where sess.offline = :offline and sess.userSessionId > :lastUserSessionId order by sess.userSessionId"),
         @NamedQuery(name="updateUserSessionsTimestamps", query="update PersistentUserSessionEntity c set lastSessionRefresh = :lastSessionRefresh"),
 
 })
@@ -21,6 +21,7 @@ import com.mongodb.BasicDBObject;
 import com.mongodb.DBCollection;
 import com.mongodb.DBObject;
 
+import org.keycloak.events.AsyncEventWriter;
 import org.keycloak.events.admin.AdminEvent;
 import org.keycloak.events.admin.AdminEventQuery;
 import org.keycloak.events.admin.AuthDetails;
@@ -29,6 +30,7 @@ import org.keycloak.events.Event;
 import org.keycloak.events.EventQuery;
 import org.keycloak.events.EventStoreProvider;
 import org.keycloak.events.EventType;
+import org.keycloak.models.KeycloakTransactionManager;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -40,10 +42,20 @@ public class MongoEventStoreProvider implements EventStoreProvider {
     
     private DBCollection events;
     private DBCollection adminEvents;
+    private AsyncEventWriter<DBObject> asyncEvents;
+    private AsyncEventWriter<DBObject> asyncAdminEvents;
+    private KeycloakTransactionManager transaction;
 
     public MongoEventStoreProvider(DBCollection events, DBCollection adminEvents) {
+        this(events, adminEvents, null, null, null);
+    }
+
+    public MongoEventStoreProvider(DBCollection events, DBCollection adminEvents, AsyncEventWriter<DBObject> asyncEvents, AsyncEventWriter<DBObject> asyncAdminEvents, KeycloakTransactionManager transaction) {
         this.events = events;
         this.adminEvents = adminEvents;
+        this.asyncEvents = asyncEvents;
+        this.asyncAdminEvents = asyncAdminEvents;
+        this.transaction = transaction;
     }
 
     @Override
@@ -71,7 +83,11 @@ public class MongoEventStoreProvider implements EventStoreProvider {
 
     @Override
     public void onEvent(Event event) {
-        events.insert(convertEvent(event));
+        if (asyncEvents != null) {
+            asyncEvents.add(transaction, convertEvent(event));
+        } else {
+            events.insert(convertEvent(event));
+        }
     }
 
     @Override
@@ -99,7 +115,11 @@ public class MongoEventStoreProvider implements EventStoreProvider {
 
     @Override
     public void onEvent(AdminEvent adminEvent, boolean includeRepresentation) {
-        adminEvents.insert(convertAdminEvent(adminEvent, includeRepresentation));
+        if (asyncAdminEvents != null) {
+            asyncAdminEvents.add(transaction, convertAdminEvent(adminEvent, includeRepresentation));
+        } else {
+            adminEvents.insert(convertAdminEvent(adminEvent, includeRepresentation));
+        }
     }
 
     @Override
@@ -18,24 +18,41 @@
 package org.keycloak.events.mongo;
 
 import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
 import com.mongodb.WriteConcern;
 import org.jboss.logging.Logger;
 import org.keycloak.Config;
 import org.keycloak.connections.mongo.MongoConnectionProvider;
+import org.keycloak.events.AsyncEventWriter;
 import org.keycloak.events.EventStoreProvider;
 import org.keycloak.events.EventStoreProviderFactory;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.KeycloakSessionTask;
+import org.keycloak.models.utils.KeycloakModelUtils;
+import org.keycloak.models.utils.PreShutdownEvent;
+import org.keycloak.provider.ProviderEvent;
+import org.keycloak.provider.ProviderEventListener;
+import org.keycloak.provider.ServerInfoAwareProviderFactory;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * @author <a href="mailto:sthorger@redhat.com">Stian Thorgersen</a>
  */
-public class MongoEventStoreProviderFactory implements EventStoreProviderFactory {
+public class MongoEventStoreProviderFactory implements EventStoreProviderFactory, ServerInfoAwareProviderFactory {
 
     protected static final Logger logger = Logger.getLogger(MongoEventStoreProviderFactory.class);
 
     public static final String ID = "mongo";
 
+    private Config.Scope config;
+
+    private AsyncEventWriter<DBObject> asyncEvents;
+    private AsyncEventWriter<DBObject> asyncAdminEvents;
+
     @Override
     public EventStoreProvider create(KeycloakSession session) {
         MongoConnectionProvider connection = session.getProvider(MongoConnectionProvider.class);
@@ -46,20 +63,41 @@ public class MongoEventStoreProviderFactory implements EventStoreProviderFactory
         collection.setWriteConcern(WriteConcern.UNACKNOWLEDGED);
         adminCollection.setWriteConcern(WriteConcern.UNACKNOWLEDGED);
 
-        return new MongoEventStoreProvider(collection, adminCollection);
+        return new MongoEventStoreProvider(collection, adminCollection, asyncEvents, asyncAdminEvents, session.getTransaction());
     }
 
     @Override
     public void init(Config.Scope config) {
+        this.config = config;
     }
 
     @Override
     public void postInit(KeycloakSessionFactory factory) {
+        asyncEvents = AsyncEventWriter.create("mongo-events", config, new BulkInsert(factory, "events"));
+        asyncAdminEvents = AsyncEventWriter.create("mongo-admin-events", config, new BulkInsert(factory, "adminEvents"));
+        if (asyncEvents != null) {
+            asyncEvents.start();
+            asyncAdminEvents.start();
 
+            // Write queued events while the Mongo connection provider is still open
+            factory.register(new ProviderEventListener() {
+                @Override
+                public void onEvent(ProviderEvent event) {
+                    if (event instanceof PreShutdownEvent) {
+                        asyncEvents.close();
+                        asyncAdminEvents.close();
+                    }
+                }
+            });
+        }
     }
 
     @Override
     public void close() {
+        if (asyncEvents != null) {
+            asyncEvents.close();
+            asyncAdminEvents.close();
+        }
     }
 
     @Override
@@ -67,4 +105,43 @@ public class MongoEventStoreProviderFactory implements EventStoreProviderFactory
         return ID;
     }
 
+    @Override
+    public Map<String, String> getOperationalInfo() {
+        if (asyncEvents == null) {
+            return null;
+        }
+
+        Map<String, String> info = new LinkedHashMap<>();
+        for (Map.Entry<String, String> e : asyncEvents.getOperationalInfo().entrySet()) {
+            info.put("events." + e.getKey(), e.getValue());
+        }
+        for (Map.Entry<String, String> e : asyncAdminEvents.getOperationalInfo().entrySet()) {
+            info.put("adminEvents." + e.getKey(), e.getValue());
+        }
+        return info;
+    }
+
+    private static class BulkInsert implements AsyncEventWriter.BatchWriter<DBObject> {
+
+        private final KeycloakSessionFactory factory;
+        private final String collection;
+
+        private BulkInsert(KeycloakSessionFactory factory, String collection) {
+            this.factory = factory;
+            this.collection = collection;
+        }
+
+        @Override
+        public void write(final List<DBObject> batch) {
+            KeycloakModelUtils.runJobInTransaction(factory, new KeycloakSessionTask() {
+                @Override
+                public void run(KeycloakSession session) {
+                    MongoConnectionProvider connection = session.getProvider(MongoConnectionProvider.class);
+                    connection.getDB().getCollection(collection).insert(batch, WriteConcern.UNACKNOWLEDGED);
+                }
+            });
+        }
+
+    }
+
 }
@@ -299,6 +299,48 @@ public class MongoUserSessionPersisterProvider implements UserSessionPersisterPr
         return results;
     }
 
+    @Override
+    public List<UserSessionModel> loadUserSessions(String lastUserSessionId, int maxResults, boolean offline) {
+        QueryBuilder queryBuilder = new QueryBuilder();
+        if (lastUserSessionId != null) {
+            queryBuilder.and("_id").greaterThan(lastUserSessionId);
+        }
+        DBObject sort = new BasicDBObject("_id", 1);
+
+        Class<? extends MongoUserSessionEntity> clazz = offline ? MongoOfflineUserSessionEntity.class : MongoOnlineUserSessionEntity.class;
+
+        List<? extends MongoUserSessionEntity> entities = getMongoStore().loadEntities(clazz, queryBuilder.get(), sort, -1, maxResults, invocationContext);
+
+        List<UserSessionModel> results = new LinkedList<>();
+        for (MongoUserSessionEntity entity : entities) {
+            RealmModel realm = session.realms().getRealm(entity.getRealmId());
+            UserModel user = session.users().getUserById(entity.getUserId(), realm);
+
+            // Case when user was deleted in the meantime
+            if (user == null) {
+                onUserRemoved(realm, entity.getUserId());
+                return loadUserSessions(lastUserSessionId, maxResults, offline);
+            }
+
+            results.add(toAdapter(realm, user, entity));
+        }
+        return results;
+    }
+
+    @Override
+    public String getUserSessionIdAfter(String lastUserSessionId, int position, boolean offline) {
+        QueryBuilder queryBuilder = new QueryBuilder();
+        if (lastUserSessionId != null) {
+            queryBuilder.and("_id").greaterThan(lastUserSessionId);
+        }
+        DBObject sort = new BasicDBObject("_id", 1);
+
+        Class<? extends MongoUserSessionEntity> clazz = offline ? MongoOfflineUserSessionEntity.class : MongoOnlineUserSessionEntity.class;
+
+        List<? extends MongoUserSessionEntity> entities = getMongoStore().loadEntities(clazz, queryBuilder.get(), sort, position, 1, invocationContext);
+        return entities.isEmpty() ? null : entities.get(0).getId();
+    }
+
     private PersistentUserSessionAdapter toAdapter(RealmModel realm, UserModel user, PersistentUserSessionEntity entity) {
         PersistentUserSessionModel model = new PersistentUserSessionModel();
         model.setUserSessionId(entity.getId());
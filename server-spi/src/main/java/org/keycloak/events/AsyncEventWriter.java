@@ -0,0 +1,352 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.events;
+
+import org.jboss.logging.Logger;
+import org.keycloak.Config;
+import org.keycloak.models.KeycloakTransaction;
+import org.keycloak.models.KeycloakTransactionManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes events of an event store in batches from a background thread, so storing events doesn't add a database write
+ * to the request. A batch is written once it's full or when the flush interval has passed since its first event. If a
+ * batch can't be written, its events are retried one at a time, so a single bad event doesn't drop the whole batch.
+ *
+ * Event stores queue events with {@link #add(KeycloakTransactionManager, Object)}, so like synchronous writes, events of
+ * requests which are rolled back aren't stored.
+ *
+ * Events still queued when the server stops are written by {@link #close()}, which event store factories call when the
+ * {@link org.keycloak.models.utils.PreShutdownEvent} is published, while the connection providers are still open. Events
+ * which can't be written then and events queued when the server crashes are lost, so asynchronous writes are disabled by
+ * default.
+ *
+ * @param <T> the entity persisted by the event store
+ */
+public class AsyncEventWriter<T> {
+
+    private static final Logger logger = Logger.getLogger(AsyncEventWriter.class);
+
+    private static final long POLL_MILLIS = 100;
+
+    public enum OverflowPolicy {
+        /**
+         * Requests wait until there is space in the queue
+         */
+        BLOCK,
+        /**
+         * Events are dropped while the queue is full
+         */
+        DROP
+    }
+
+    public interface BatchWriter<T> {
+        void write(List<T> batch);
+    }
+
+    private final String name;
+    private final BatchWriter<T> writer;
+    private final BlockingQueue<T> queue;
+    private final int batchSize;
+    private final long flushIntervalMillis;
+    private final OverflowPolicy overflowPolicy;
+
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong flushMillis = new AtomicLong();
+    private volatile long lastFlushMillis;
+    private volatile long maxFlushMillis;
+
+    private volatile boolean running;
+    private Thread thread;
+
+    public AsyncEventWriter(String name, BatchWriter<T> writer, int queueSize, int batchSize, long flushIntervalMillis, OverflowPolicy overflowPolicy) {
+        this.name = name;
+        this.writer = writer;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.batchSize = batchSize;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * Creates a writer from the <code>async*</code> options of an event store provider, or returns null if asynchronous
+     * writes aren't enabled
+     */
+    public static <T> AsyncEventWriter<T> create(String name, Config.Scope config, BatchWriter<T> writer) {
+        if (!config.getBoolean("async", false)) {
+            return null;
+        }
+
+        int queueSize = config.getInt("asyncQueueSize", 10000);
+        int batchSize = config.getInt("asyncBatchSize", 100);
+        long flushInterval = config.getLong("asyncFlushInterval", 1000L);
+        OverflowPolicy overflowPolicy = OverflowPolicy.valueOf(config.get("asyncOverflowPolicy", OverflowPolicy.BLOCK.name()).toUpperCase());
+
+        logger.debugv("Writing {0} asynchronously: queueSize={1}, batchSize={2}, flushInterval={3}, overflowPolicy={4}", name, queueSize, batchSize, flushInterval, overflowPolicy);
+        return new AsyncEventWriter<>(name, writer, queueSize, batchSize, flushInterval, overflowPolicy);
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+
+        running = true;
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeBatches();
+            }
+        }, "keycloak-" + name + "-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Queues an event, blocking or dropping it if the queue is full depending on the overflow policy
+     *
+     * @return false if the event was dropped
+     */
+    public boolean add(T event) {
+        if (overflowPolicy == OverflowPolicy.DROP) {
+            if (queue.offer(event)) {
+                return true;
+            }
+        } else {
+            try {
+                queue.put(event);
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (dropped.incrementAndGet() == 1) {
+            logger.warnv("Event queue of {0} is full, dropping events", name);
+        }
+        return false;
+    }
+
+    /**
+     * Queues an event once the transaction has committed, or right away if there is no active transaction
+     */
+    public void add(KeycloakTransactionManager transaction, T event) {
+        if (transaction == null || !transaction.isActive()) {
+            add(event);
+        } else {
+            transaction.enlistAfterCompletion(new QueueOnCommit(event));
+        }
+    }
+
+    /**
+     * Stops the writer thread after it has written all queued events. Events, which couldn't be written in time, are
+     * logged as lost.
+     */
+    public void close() {
+        Thread thread;
+        synchronized (this) {
+            running = false;
+            thread = this.thread;
+            this.thread = null;
+        }
+
+        if (thread != null) {
+            try {
+                thread.join(30000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            int lost = queue.size();
+            if (lost > 0) {
+                logger.warnv("Writer of {0} stopped with {1} events not written, these events are lost", name, lost);
+            }
+        }
+    }
+
+    private void writeBatches() {
+        List<T> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                T first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+
+                batch.add(first);
+                long deadline = System.currentTimeMillis() + flushIntervalMillis;
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (batch.size() >= batchSize || remaining <= 0 || !running) {
+                        break;
+                    }
+
+                    // Wake up regularly, so close() doesn't wait for the flush interval
+                    T next = queue.poll(Math.min(remaining, POLL_MILLIS), TimeUnit.MILLISECONDS);
+                    if (next != null) {
+                        batch.add(next);
+                    }
+                }
+            } catch (InterruptedException e) {
+                running = false;
+            }
+
+            if (!batch.isEmpty()) {
+                flush(batch);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+    }
+
+    private void flush(List<T> batch) {
+        long start = System.currentTimeMillis();
+        try {
+            writer.write(batch);
+            written.addAndGet(batch.size());
+        } catch (RuntimeException e) {
+            if (batch.size() == 1) {
+                failed.incrementAndGet();
+                logger.errorv(e, "Failed to write event {0} of {1}, event is dropped", batch.get(0), name);
+            } else {
+                logger.warnv(e, "Failed to write {0} events of {1}, retrying events one at a time", batch.size(), name);
+                writeOneByOne(batch);
+            }
+        }
+
+        long time = System.currentTimeMillis() - start;
+        flushes.incrementAndGet();
+        flushMillis.addAndGet(time);
+        lastFlushMillis = time;
+        if (time > maxFlushMillis) {
+            maxFlushMillis = time;
+        }
+    }
+
+    private void writeOneByOne(List<T> batch) {
+        for (T event : batch) {
+            try {
+                writer.write(Collections.singletonList(event));
+                written.incrementAndGet();
+            } catch (RuntimeException e) {
+                failed.incrementAndGet();
+                logger.errorv(e, "Failed to write event {0} of {1}, event is dropped", event, name);
+            }
+        }
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public long getWritten() {
+        return written.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    public long getFlushes() {
+        return flushes.get();
+    }
+
+    public long getLastFlushMillis() {
+        return lastFlushMillis;
+    }
+
+    public long getMaxFlushMillis() {
+        return maxFlushMillis;
+    }
+
+    public Map<String, String> getOperationalInfo() {
+        long flushes = this.flushes.get();
+
+        Map<String, String> info = new LinkedHashMap<>();
+        info.put("queueDepth", String.valueOf(getQueueDepth()));
+        info.put("written", String.valueOf(getWritten()));
+        info.put("dropped", String.valueOf(getDropped()));
+        info.put("failed", String.valueOf(getFailed()));
+        info.put("flushes", String.valueOf(flushes));
+        info.put("averageFlushMillis", String.valueOf(flushes > 0 ? flushMillis.get() / flushes : 0));
+        info.put("lastFlushMillis", String.valueOf(getLastFlushMillis()));
+        info.put("maxFlushMillis", String.valueOf(getMaxFlushMillis()));
+        return info;
+    }
+
+    private class QueueOnCommit implements KeycloakTransaction {
+
+        private final T event;
+        private boolean active;
+        private boolean rollbackOnly;
+
+        private QueueOnCommit(T event) {
+            this.event = event;
+        }
+
+        @Override
+        public void begin() {
+            active = true;
+        }
+
+        @Override
+        public void commit() {
+            active = false;
+            add(event);
+        }
+
+        @Override
+        public void rollback() {
+            active = false;
+        }
+
+        @Override
+        public void setRollbackOnly() {
+            rollbackOnly = true;
+        }
+
+        @Override
+        public boolean getRollbackOnly() {
+            return rollbackOnly;
+        }
+
+        @Override
+        public boolean isActive() {
+            return active;
+        }
+
+    }
+
+}
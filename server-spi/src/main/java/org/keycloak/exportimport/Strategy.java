@@ -23,5 +23,6 @@ package org.keycloak.exportimport;
 public enum Strategy {
 
     IGNORE_EXISTING,         // Ignore existing user entries
-    OVERWRITE_EXISTING       // Overwrite existing user entries
+    OVERWRITE_EXISTING,      // Overwrite existing user entries
+    RESUME_EXISTING          // Keep existing realm and import just users, which don't exist yet. Used to restart interrupted import
 }
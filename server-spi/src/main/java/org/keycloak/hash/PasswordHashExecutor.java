@@ -0,0 +1,277 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.hash;
+
+import org.jboss.logging.Logger;
+import org.keycloak.Config;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs password hashing on a fixed number of worker threads, so a burst of logins can't use all request threads for
+ * hashing. Requests wait in a bounded queue, and are rejected with {@link PasswordHashRejectedException} if the queue
+ * is full or they didn't get a worker within the maximum wait time. Once a worker picked up a request, its hash is
+ * always waited for.
+ *
+ * Configured with the <code>workers</code>, <code>queueSize</code> and <code>maxWaitMillis</code> options of the
+ * <code>passwordHashing</code> scope. The shared instance is shut down by the PBKDF2 password hash provider factory when
+ * the server stops.
+ */
+public class PasswordHashExecutor {
+
+    private static final Logger logger = Logger.getLogger(PasswordHashExecutor.class);
+
+    public static final int DEFAULT_QUEUE_SIZE_PER_WORKER = 50;
+    public static final long DEFAULT_MAX_WAIT_MILLIS = 10000;
+
+    private static volatile PasswordHashExecutor instance;
+
+    private final ThreadPoolExecutor executor;
+    private final long maxWaitMillis;
+
+    private final AtomicLong hashes = new AtomicLong();
+    private final AtomicLong hashNanos = new AtomicLong();
+    private final AtomicLong queueWaitNanos = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private volatile long maxQueueWaitNanos;
+
+    private final ThreadLocal<Boolean> worker = new ThreadLocal<>();
+
+    public PasswordHashExecutor(int workers, int queueSize, long maxWaitMillis) {
+        this.maxWaitMillis = maxWaitMillis;
+        this.executor = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(queueSize), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "keycloak-password-hash-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public static PasswordHashExecutor getInstance() {
+        if (instance == null) {
+            synchronized (PasswordHashExecutor.class) {
+                if (instance == null) {
+                    Config.Scope config = Config.scope("passwordHashing");
+                    int workers = config.getInt("workers", Runtime.getRuntime().availableProcessors());
+                    int queueSize = config.getInt("queueSize", workers * DEFAULT_QUEUE_SIZE_PER_WORKER);
+                    long maxWaitMillis = config.getLong("maxWaitMillis", DEFAULT_MAX_WAIT_MILLIS);
+
+                    logger.debugv("Password hashing: workers={0}, queueSize={1}, maxWaitMillis={2}", workers, queueSize, maxWaitMillis);
+                    instance = new PasswordHashExecutor(workers, queueSize, maxWaitMillis);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Runs the hash task on a worker and waits for its result. Tasks started from a worker run directly.
+     *
+     * @throws PasswordHashRejectedException if the workers are saturated
+     */
+    public <T> T execute(Callable<T> task) {
+        if (worker.get() != null) {
+            return call(task);
+        }
+
+        HashTask<T> hashTask = new HashTask<>(task);
+        Future<T> future;
+        try {
+            future = executor.submit(hashTask);
+        } catch (RejectedExecutionException e) {
+            throw rejected("Password hash queue is full");
+        }
+
+        try {
+            // Only the wait for a worker is limited, the hash itself takes as long as its iterations need
+            if (!hashTask.awaitStart(maxWaitMillis)) {
+                future.cancel(false);
+                throw rejected("Password hash not started within " + maxWaitMillis + " ms");
+            }
+            return future.get();
+        } catch (InterruptedException e) {
+            hashTask.cancel();
+            future.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new PasswordHashRejectedException("Interrupted while waiting for password hash");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * Runs the task on a worker without waiting for it. The task is dropped if the workers are saturated.
+     *
+     * @return false if the task was dropped
+     */
+    public boolean executeAsync(final Runnable task) {
+        try {
+            executor.submit(new HashTask<>(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    task.run();
+                    return null;
+                }
+            }));
+            return true;
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            return false;
+        }
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Shuts down the shared instance. Hashes already queued are still done, a later {@link #getInstance()} creates a new
+     * instance.
+     */
+    public static void shutdownInstance() {
+        synchronized (PasswordHashExecutor.class) {
+            if (instance != null) {
+                instance.shutdown();
+                instance = null;
+            }
+        }
+    }
+
+    private PasswordHashRejectedException rejected(String message) {
+        rejected.incrementAndGet();
+        logger.debug(message);
+        return new PasswordHashRejectedException(message);
+    }
+
+    private <T> T call(Callable<T> task) {
+        try {
+            return task.call();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public long getHashes() {
+        return hashes.get();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public Map<String, String> getOperationalInfo() {
+        long hashes = this.hashes.get();
+
+        Map<String, String> info = new LinkedHashMap<>();
+        info.put("workers", String.valueOf(executor.getMaximumPoolSize()));
+        info.put("activeWorkers", String.valueOf(executor.getActiveCount()));
+        info.put("queueDepth", String.valueOf(getQueueDepth()));
+        info.put("hashes", String.valueOf(hashes));
+        info.put("rejected", String.valueOf(getRejected()));
+        info.put("averageHashMillis", String.valueOf(hashes > 0 ? TimeUnit.NANOSECONDS.toMillis(hashNanos.get() / hashes) : 0));
+        info.put("averageQueueWaitMillis", String.valueOf(hashes > 0 ? TimeUnit.NANOSECONDS.toMillis(queueWaitNanos.get() / hashes) : 0));
+        info.put("maxQueueWaitMillis", String.valueOf(TimeUnit.NANOSECONDS.toMillis(maxQueueWaitNanos)));
+        return info;
+    }
+
+    private class HashTask<T> implements Callable<T> {
+
+        private static final int QUEUED = 0;
+        private static final int STARTED = 1;
+        private static final int CANCELLED = 2;
+
+        private final Callable<T> task;
+        private final long queued = System.nanoTime();
+        private final AtomicInteger state = new AtomicInteger(QUEUED);
+        private final CountDownLatch started = new CountDownLatch(1);
+
+        private HashTask(Callable<T> task) {
+            this.task = task;
+        }
+
+        /**
+         * @return true if a worker started the task, false if it was cancelled because it didn't start in time
+         */
+        private boolean awaitStart(long maxWaitMillis) throws InterruptedException {
+            started.await(maxWaitMillis, TimeUnit.MILLISECONDS);
+            return !cancel();
+        }
+
+        /**
+         * @return true if the task was cancelled before a worker started it
+         */
+        private boolean cancel() {
+            return state.compareAndSet(QUEUED, CANCELLED);
+        }
+
+        @Override
+        public T call() throws Exception {
+            if (!state.compareAndSet(QUEUED, STARTED)) {
+                // The caller stopped waiting already
+                return null;
+            }
+            started.countDown();
+
+            long start = System.nanoTime();
+            long wait = start - queued;
+            queueWaitNanos.addAndGet(wait);
+            if (wait > maxQueueWaitNanos) {
+                maxQueueWaitNanos = wait;
+            }
+
+            worker.set(Boolean.TRUE);
+            try {
+                return task.call();
+            } finally {
+                worker.remove();
+                hashes.incrementAndGet();
+                hashNanos.addAndGet(System.nanoTime() - start);
+            }
+        }
+
+    }
+
+}
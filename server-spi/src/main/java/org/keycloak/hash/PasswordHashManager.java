@@ -20,7 +20,11 @@ package org.keycloak.hash;
 import org.jboss.logging.Logger;
 import org.keycloak.models.*;
 
+import java.util.concurrent.Callable;
+
 /**
+ * Hashes and verifies passwords on the workers of {@link PasswordHashExecutor}.
+ *
  * @author <a href="mailto:sthorger@redhat.com">Stian Thorgersen</a>
  */
 public class PasswordHashManager {
@@ -31,32 +35,42 @@ public class PasswordHashManager {
         return encode(session, realm.getPasswordPolicy(), rawPassword);
     }
 
-    public static UserCredentialValueModel encode(KeycloakSession session, PasswordPolicy passwordPolicy, String rawPassword) {
+    public static UserCredentialValueModel encode(KeycloakSession session, PasswordPolicy passwordPolicy, final String rawPassword) {
         String algorithm = passwordPolicy.getHashAlgorithm();
-        int iterations = passwordPolicy.getHashIterations();
-        if (iterations < 1) {
-            iterations = 1;
-        }
+        final int iterations = Math.max(1, passwordPolicy.getHashIterations());
         PasswordHashProvider provider = session.getProvider(PasswordHashProvider.class, passwordPolicy.getHashAlgorithm());
         if (provider == null) {
             log.warnv("Could not find hash provider {0} from password policy, using default provider {1}", algorithm, Constants.DEFAULT_HASH_ALGORITHM);
             provider = session.getProvider(PasswordHashProvider.class, Constants.DEFAULT_HASH_ALGORITHM);
         }
-        return provider.encode(rawPassword, iterations);
+
+        final PasswordHashProvider hashProvider = provider;
+        return PasswordHashExecutor.getInstance().execute(new Callable<UserCredentialValueModel>() {
+            @Override
+            public UserCredentialValueModel call() {
+                return hashProvider.encode(rawPassword, iterations);
+            }
+        });
     }
 
     public static boolean verify(KeycloakSession session, RealmModel realm, String password, UserCredentialValueModel credential) {
         return verify(session, realm.getPasswordPolicy(), password, credential);
     }
 
-    public static boolean verify(KeycloakSession session, PasswordPolicy passwordPolicy, String password, UserCredentialValueModel credential) {
+    public static boolean verify(KeycloakSession session, PasswordPolicy passwordPolicy, final String password, final UserCredentialValueModel credential) {
         String algorithm = credential.getAlgorithm() != null ? credential.getAlgorithm() : passwordPolicy.getHashAlgorithm();
-        PasswordHashProvider provider = session.getProvider(PasswordHashProvider.class, algorithm);
+        final PasswordHashProvider provider = session.getProvider(PasswordHashProvider.class, algorithm);
         if (provider == null) {
             log.warnv("Could not find hash provider {0} for password", algorithm);
             return false;
         }
-        return provider.verify(password, credential);
+
+        return PasswordHashExecutor.getInstance().execute(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return provider.verify(password, credential);
+            }
+        });
     }
 
 }
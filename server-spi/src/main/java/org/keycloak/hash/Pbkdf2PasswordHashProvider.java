@@ -23,6 +23,10 @@ import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.KeycloakSessionFactory;
 import org.keycloak.models.UserCredentialModel;
 import org.keycloak.models.UserCredentialValueModel;
+import org.keycloak.models.utils.PreShutdownEvent;
+import org.keycloak.provider.ProviderEvent;
+import org.keycloak.provider.ProviderEventListener;
+import org.keycloak.provider.ServerInfoAwareProviderFactory;
 
 import javax.crypto.SecretKeyFactory;
 import javax.crypto.spec.PBEKeySpec;
@@ -30,17 +34,32 @@ import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.KeySpec;
+import java.util.Map;
 
 /**
  * @author <a href="mailto:me@tsudot.com">Kunal Kerkar</a>
  */
-public class Pbkdf2PasswordHashProvider implements PasswordHashProviderFactory, PasswordHashProvider {
+public class Pbkdf2PasswordHashProvider implements PasswordHashProviderFactory, PasswordHashProvider, ServerInfoAwareProviderFactory {
 
     public static final String ID = "pbkdf2";
 
     private static final String PBKDF2_ALGORITHM = "PBKDF2WithHmacSHA1";
     private static final int DERIVED_KEY_SIZE = 512;
 
+    private static final SecureRandom SECURE_RANDOM = new SecureRandom();
+
+    // SecretKeyFactory isn't thread safe, so every hash worker keeps its own instance
+    private static final ThreadLocal<SecretKeyFactory> SECRET_KEY_FACTORY = new ThreadLocal<SecretKeyFactory>() {
+        @Override
+        protected SecretKeyFactory initialValue() {
+            try {
+                return SecretKeyFactory.getInstance(PBKDF2_ALGORITHM);
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException("PBKDF2 algorithm not found");
+            }
+        }
+    };
+
     public UserCredentialValueModel encode(String rawPassword, int iterations) {
         byte[] salt = getSalt();
         String encodedPassword = encode(rawPassword, iterations, salt);
@@ -69,6 +88,16 @@ public class Pbkdf2PasswordHashProvider implements PasswordHashProviderFactory,
 
     @Override
     public void postInit(KeycloakSessionFactory factory) {
+        // close() is called for every session as well, since the factory is its own provider, so the shared hash
+        // workers are only shut down when the server stops
+        factory.register(new ProviderEventListener() {
+            @Override
+            public void onEvent(ProviderEvent event) {
+                if (event instanceof PreShutdownEvent) {
+                    PasswordHashExecutor.shutdownInstance();
+                }
+            }
+        });
     }
 
     public void close() {
@@ -79,11 +108,16 @@ public class Pbkdf2PasswordHashProvider implements PasswordHashProviderFactory,
         return ID;
     }
 
+    @Override
+    public Map<String, String> getOperationalInfo() {
+        return PasswordHashExecutor.getInstance().getOperationalInfo();
+    }
+
     private String encode(String rawPassword, int iterations, byte[] salt) {
         KeySpec spec = new PBEKeySpec(rawPassword.toCharArray(), salt, iterations, DERIVED_KEY_SIZE);
 
         try {
-            byte[] key = getSecretKeyFactory().generateSecret(spec).getEncoded();
+            byte[] key = SECRET_KEY_FACTORY.get().generateSecret(spec).getEncoded();
             return Base64.encodeBytes(key);
         } catch (InvalidKeySpecException e) {
             throw new RuntimeException("Credential could not be encoded");
@@ -92,17 +126,8 @@ public class Pbkdf2PasswordHashProvider implements PasswordHashProviderFactory,
 
     private byte[] getSalt() {
         byte[] buffer = new byte[16];
-        SecureRandom secureRandom = new SecureRandom();
-        secureRandom.nextBytes(buffer);
+        SECURE_RANDOM.nextBytes(buffer);
         return buffer;
     }
 
-    private SecretKeyFactory getSecretKeyFactory() {
-        try {
-            return SecretKeyFactory.getInstance(PBKDF2_ALGORITHM);
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("PBKDF2 algorithm not found");
-        }
-    }
-
 }
@@ -50,6 +50,16 @@ public class LDAPConstants {
 
     public static final String SEARCH_SCOPE = "searchScope";
     public static final String CONNECTION_POOLING = "connectionPooling";
+
+    // Pools of LDAP contexts kept by Keycloak itself. Size 0 disables the pool
+    public static final String CONNECTION_POOL_SIZE = "connectionPoolSize";
+    public static final int DEFAULT_CONNECTION_POOL_SIZE = 20;
+    public static final String BIND_CONNECTION_POOL_SIZE = "bindConnectionPoolSize";
+    public static final int DEFAULT_BIND_CONNECTION_POOL_SIZE = 20;
+    public static final String CONNECTION_POOL_IDLE_TIMEOUT = "connectionPoolIdleTimeout";
+    public static final long DEFAULT_CONNECTION_POOL_IDLE_TIMEOUT = 300000;
+    public static final String CONNECTION_POOL_VALIDATION_INTERVAL = "connectionPoolValidationInterval";
+    public static final long DEFAULT_CONNECTION_POOL_VALIDATION_INTERVAL = 30000;
     public static final String PAGINATION = "pagination";
 
     public static final String EDIT_MODE = "editMode";
@@ -58,6 +68,10 @@ public class LDAPConstants {
     public static final String BATCH_SIZE_FOR_SYNC = "batchSizeForSync";
     public static final int DEFAULT_BATCH_SIZE_FOR_SYNC = 1000;
 
+    // Count of threads importing users in parallel during sync process
+    public static final String SYNC_IMPORT_WORKERS = "syncImportWorkers";
+    public static final int DEFAULT_SYNC_IMPORT_WORKERS = 4;
+
     // Config option to specify if registrations will be synced or not
     public static final String SYNC_REGISTRATIONS = "syncRegistrations";
 
@@ -22,6 +22,7 @@ import org.keycloak.provider.ProviderEventListener;
 
 /**
  * Provides "onProviderModelCreated" callback  invoked when UserFederationProviderModel for this factory implementation is created in realm
+ * and "onProviderModelRemoved" callback invoked when it's removed from realm on this node
  *
  * @author <a href="mailto:mposolda@redhat.com">Marek Posolda</a>
  */
@@ -47,4 +48,7 @@ public abstract class UserFederationEventAwareProviderFactory implements UserFed
     }
 
     public abstract void onProviderModelCreated(RealmModel realm, UserFederationProviderModel createdProviderModel);
+
+    public void onProviderModelRemoved(RealmModel realm, UserFederationProviderModel removedProviderModel) {
+    }
 }
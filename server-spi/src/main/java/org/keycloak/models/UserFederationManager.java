@@ -19,6 +19,7 @@ package org.keycloak.models;
 
 import org.jboss.logging.Logger;
 import org.keycloak.models.utils.KeycloakModelUtils;
+import org.keycloak.provider.ProviderFactory;
 import org.keycloak.services.managers.UserManager;
 
 import java.util.ArrayList;
@@ -406,6 +407,7 @@ public class UserFederationManager implements UserProvider {
         for (UserFederationProviderModel federation : realm.getUserFederationProviders()) {
             UserFederationProvider fed = getFederationProvider(federation);
             fed.preRemove(realm);
+            notifyProviderModelRemoved(realm, federation);
         }
         session.userStorage().preRemove(realm);
     }
@@ -413,6 +415,14 @@ public class UserFederationManager implements UserProvider {
     @Override
     public void preRemove(RealmModel realm, UserFederationProviderModel model) {
         session.userStorage().preRemove(realm, model);
+        notifyProviderModelRemoved(realm, model);
+    }
+
+    protected void notifyProviderModelRemoved(RealmModel realm, UserFederationProviderModel model) {
+        ProviderFactory factory = session.getKeycloakSessionFactory().getProviderFactory(UserFederationProvider.class, model.getProviderName());
+        if (factory instanceof UserFederationEventAwareProviderFactory) {
+            ((UserFederationEventAwareProviderFactory) factory).onProviderModelRemoved(realm, model);
+        }
     }
 
     @Override
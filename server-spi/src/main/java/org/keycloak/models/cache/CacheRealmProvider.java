@@ -18,6 +18,9 @@
 package org.keycloak.models.cache;
 
 import org.keycloak.models.RealmProvider;
+import org.keycloak.models.cache.entities.CachedRealm;
+
+import java.util.Map;
 
 /**
  * @author <a href="mailto:bill@burkecentral.com">Bill Burke</a>
@@ -29,10 +32,20 @@ public interface CacheRealmProvider extends RealmProvider {
 
     void registerRealmInvalidation(String id);
 
+    /**
+     * Registers an update that only affects the given slice of the cached realm. Providers that can't reload
+     * parts of a realm may treat it as a full realm invalidation.
+     */
+    void registerRealmInvalidation(String id, CachedRealm.Slice slice);
+
     void registerApplicationInvalidation(String id);
     void registerClientTemplateInvalidation(String id);
 
     void registerRoleInvalidation(String id);
 
     void registerGroupInvalidation(String id);
+
+    EffectiveRoleCache getEffectiveRoleCache();
+
+    Map<String, Long> getRealmCacheSizes();
 }
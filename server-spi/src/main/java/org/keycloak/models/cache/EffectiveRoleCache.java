@@ -0,0 +1,308 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.cache;
+
+import org.keycloak.models.ClientModel;
+import org.keycloak.models.ClientTemplateModel;
+import org.keycloak.models.GroupModel;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.RoleModel;
+
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cache of effective roles (composite role closures) of roles, groups and client scopes. Closures are stored as bitsets
+ * over per-realm role indexes, so checking whether a user has a role in client scope is a bit lookup instead of a walk
+ * over composite roles.
+ *
+ * Closures of a realm are dropped whenever any realm, role, group, client or client template of the realm is invalidated
+ * in the realm cache.
+ */
+public class EffectiveRoleCache {
+
+    private final ConcurrentMap<String, RealmEffectiveRoles> realms = new ConcurrentHashMap<>();
+
+    /**
+     * Returns roles in scope of the client, which the user has through <code>roleMappings</code> or role mappings of
+     * <code>groups</code> and their parents. Same as <code>TokenManager.applyScope</code>, scope mappings are walked from
+     * the top and the first role the user has on each path is returned; composite roles are not expanded.
+     */
+    public Set<RoleModel> getScopedRoles(RealmModel realm, ClientModel client, Set<RoleModel> roleMappings, Set<GroupModel> groups) {
+        RealmEffectiveRoles effectiveRoles = getRealmEffectiveRoles(realm);
+
+        BitSet mappedRoles = new BitSet();
+        for (RoleModel role : roleMappings) {
+            mappedRoles.set(effectiveRoles.getIndex(role));
+        }
+        for (GroupModel group : groups) {
+            mappedRoles.or(effectiveRoles.getGroupRoles(group));
+        }
+
+        int[] scopeRoots = effectiveRoles.getClientScopeRoots(client);
+        BitSet scopeClosure = effectiveRoles.getClientScopeClosure(client);
+
+        BitSet scoped = new BitSet();
+        for (int i = mappedRoles.nextSetBit(0); i >= 0; i = mappedRoles.nextSetBit(i + 1)) {
+            RoleModel role = effectiveRoles.getRole(realm, i);
+            if (role == null) {
+                continue;
+            }
+
+            BitSet closure = effectiveRoles.getRoleClosure(role);
+            if (!closure.intersects(scopeClosure)) {
+                continue;
+            }
+
+            BitSet visited = new BitSet();
+            LinkedList<Integer> stack = new LinkedList<>();
+            for (int root : scopeRoots) {
+                stack.push(root);
+            }
+
+            while (!stack.isEmpty()) {
+                int current = stack.pop();
+                if (visited.get(current)) {
+                    continue;
+                }
+                visited.set(current);
+
+                if (closure.get(current)) {
+                    scoped.set(current);
+                } else {
+                    for (int composite : effectiveRoles.getComposites(realm, current)) {
+                        stack.push(composite);
+                    }
+                }
+            }
+        }
+
+        return effectiveRoles.toRoles(realm, scoped);
+    }
+
+    /**
+     * Drops closures of the realm containing realm, role, group, client or client template with given id
+     */
+    public void invalidate(String id) {
+        if (realms.remove(id) != null) {
+            return;
+        }
+
+        for (RealmEffectiveRoles effectiveRoles : realms.values()) {
+            if (effectiveRoles.contains(id)) {
+                realms.remove(effectiveRoles.realmId, effectiveRoles);
+            }
+        }
+    }
+
+    public void invalidateRealm(String realmId) {
+        realms.remove(realmId);
+    }
+
+    public void clear() {
+        realms.clear();
+    }
+
+    private RealmEffectiveRoles getRealmEffectiveRoles(RealmModel realm) {
+        RealmEffectiveRoles effectiveRoles = realms.get(realm.getId());
+        if (effectiveRoles == null) {
+            effectiveRoles = new RealmEffectiveRoles(realm.getId());
+            RealmEffectiveRoles existing = realms.putIfAbsent(realm.getId(), effectiveRoles);
+            if (existing != null) {
+                effectiveRoles = existing;
+            }
+        }
+        return effectiveRoles;
+    }
+
+    private static class RealmEffectiveRoles {
+
+        private final String realmId;
+
+        private final AtomicInteger nextIndex = new AtomicInteger();
+        private final ConcurrentMap<String, Integer> indexes = new ConcurrentHashMap<>();
+        private final ConcurrentMap<Integer, String> roleIds = new ConcurrentHashMap<>();
+
+        // Bitsets are never modified once they are put to the maps
+        private final ConcurrentMap<String, BitSet> roleClosures = new ConcurrentHashMap<>();
+        private final ConcurrentMap<Integer, int[]> roleComposites = new ConcurrentHashMap<>();
+        private final ConcurrentMap<String, BitSet> groupRoles = new ConcurrentHashMap<>();
+        private final ConcurrentMap<String, int[]> clientScopeRoots = new ConcurrentHashMap<>();
+        private final ConcurrentMap<String, BitSet> clientScopeClosures = new ConcurrentHashMap<>();
+        private final Set<String> clientTemplates = ConcurrentHashMap.newKeySet();
+
+        private RealmEffectiveRoles(String realmId) {
+            this.realmId = realmId;
+        }
+
+        private boolean contains(String id) {
+            return indexes.containsKey(id) || groupRoles.containsKey(id) || clientScopeRoots.containsKey(id) || clientTemplates.contains(id);
+        }
+
+        private int getIndex(RoleModel role) {
+            Integer index = indexes.get(role.getId());
+            if (index == null) {
+                synchronized (indexes) {
+                    index = indexes.get(role.getId());
+                    if (index == null) {
+                        index = nextIndex.getAndIncrement();
+                        roleIds.put(index, role.getId());
+                        indexes.put(role.getId(), index);
+                    }
+                }
+            }
+            return index;
+        }
+
+        private BitSet getRoleClosure(RoleModel role) {
+            BitSet closure = roleClosures.get(role.getId());
+            if (closure != null) {
+                return closure;
+            }
+
+            closure = new BitSet();
+            Set<String> visited = new HashSet<>();
+            LinkedList<RoleModel> stack = new LinkedList<>();
+            stack.push(role);
+
+            while (!stack.isEmpty()) {
+                RoleModel current = stack.pop();
+                if (!visited.add(current.getId())) {
+                    continue;
+                }
+
+                BitSet currentClosure = current != role ? roleClosures.get(current.getId()) : null;
+                if (currentClosure != null) {
+                    closure.or(currentClosure);
+                    continue;
+                }
+
+                closure.set(getIndex(current));
+                if (current.isComposite()) {
+                    for (RoleModel composite : current.getComposites()) {
+                        stack.push(composite);
+                    }
+                }
+            }
+
+            roleClosures.putIfAbsent(role.getId(), closure);
+            return closure;
+        }
+
+        private RoleModel getRole(RealmModel realm, int index) {
+            return realm.getRoleById(roleIds.get(index));
+        }
+
+        private int[] getComposites(RealmModel realm, int index) {
+            int[] composites = roleComposites.get(index);
+            if (composites != null) {
+                return composites;
+            }
+
+            RoleModel role = getRole(realm, index);
+            if (role == null || !role.isComposite()) {
+                composites = new int[0];
+            } else {
+                composites = toIndexes(role.getComposites());
+            }
+
+            roleComposites.putIfAbsent(index, composites);
+            return composites;
+        }
+
+        /**
+         * Role mappings of the group and its parents, not expanded
+         */
+        private BitSet getGroupRoles(GroupModel group) {
+            BitSet roles = groupRoles.get(group.getId());
+            if (roles != null) {
+                return roles;
+            }
+
+            roles = new BitSet();
+            for (RoleModel role : group.getRoleMappings()) {
+                roles.set(getIndex(role));
+            }
+            if (group.getParentId() != null) {
+                roles.or(getGroupRoles(group.getParent()));
+            }
+
+            groupRoles.putIfAbsent(group.getId(), roles);
+            return roles;
+        }
+
+        private int[] getClientScopeRoots(ClientModel client) {
+            int[] roots = clientScopeRoots.get(client.getId());
+            if (roots != null) {
+                return roots;
+            }
+
+            Set<RoleModel> scopeMappings = new HashSet<>();
+            ClientTemplateModel template = client.getClientTemplate();
+            if (template != null && client.useTemplateScope()) {
+                clientTemplates.add(template.getId());
+                scopeMappings.addAll(template.getScopeMappings());
+            }
+            scopeMappings.addAll(client.getRoles());
+            scopeMappings.addAll(client.getScopeMappings());
+
+            // Closure is put first, so it's always available once the roots are
+            BitSet closure = new BitSet();
+            for (RoleModel role : scopeMappings) {
+                closure.or(getRoleClosure(role));
+            }
+            clientScopeClosures.putIfAbsent(client.getId(), closure);
+
+            roots = toIndexes(scopeMappings);
+            clientScopeRoots.putIfAbsent(client.getId(), roots);
+            return roots;
+        }
+
+        private BitSet getClientScopeClosure(ClientModel client) {
+            getClientScopeRoots(client);
+            return clientScopeClosures.get(client.getId());
+        }
+
+        private int[] toIndexes(Set<RoleModel> roles) {
+            int[] result = new int[roles.size()];
+            int i = 0;
+            for (RoleModel role : roles) {
+                result[i++] = getIndex(role);
+            }
+            return result;
+        }
+
+        private Set<RoleModel> toRoles(RealmModel realm, BitSet roles) {
+            Set<RoleModel> result = new HashSet<>();
+            for (int i = roles.nextSetBit(0); i >= 0; i = roles.nextSetBit(i + 1)) {
+                RoleModel role = realm.getRoleById(roleIds.get(i));
+                if (role != null) {
+                    result.add(role);
+                }
+            }
+            return result;
+        }
+
+    }
+
+}
@@ -23,6 +23,9 @@ import org.keycloak.models.cache.entities.CachedGroup;
 import org.keycloak.models.cache.entities.CachedRealm;
 import org.keycloak.models.cache.entities.CachedRole;
 
+import java.util.Map;
+import java.util.Set;
+
 /**
  * @author <a href="mailto:bill@burkecentral.com">Bill Burke</a>
  * @version $Revision: 1 $
@@ -40,6 +43,16 @@ public interface RealmCache {
 
     void invalidateRealmById(String id);
 
+    /**
+     * Marks the given slices of a cached realm as stale instead of evicting the realm with all its roles and clients
+     */
+    void invalidateRealmSlices(String id, Set<CachedRealm.Slice> slices);
+
+    /**
+     * Replaces a stale realm entry with its rebuilt version, unless the entry has changed in the meantime
+     */
+    void replaceRealm(CachedRealm stale, CachedRealm rebuilt);
+
     CachedClient getClient(String id);
 
     void invalidateClient(CachedClient app);
@@ -78,4 +91,9 @@ public interface RealmCache {
 
     void invalidateClientTemplateById(String id);
 
+    /**
+     * Estimated memory retained by the cached entries of each realm, in bytes, keyed by realm id
+     */
+    Map<String, Long> getRealmSizes();
+
 }
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.cache;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces concurrent cache misses for the same key, so only one thread per node loads an entry from the database
+ * while the others wait for its result.
+ *
+ * A waiter loads the entry itself if the loading thread fails or doesn't finish within the wait timeout, which also
+ * prevents deadlocks when loading one entry needs another entry that is being loaded by a different thread.
+ */
+public class SingleFlightLoader {
+
+    public interface Loader<T> {
+        T load();
+    }
+
+    private static final long DEFAULT_WAIT_MILLIS = 10000;
+
+    private final ConcurrentMap<Object, Flight> flights = new ConcurrentHashMap<>();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong coalescedLoads = new AtomicLong();
+    private final long waitMillis;
+
+    public SingleFlightLoader() {
+        this(DEFAULT_WAIT_MILLIS);
+    }
+
+    public SingleFlightLoader(long waitMillis) {
+        this.waitMillis = waitMillis;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T load(Object key, Loader<T> loader) {
+        Flight flight = new Flight();
+        Flight existing = flights.putIfAbsent(key, flight);
+
+        if (existing != null && existing.owner != Thread.currentThread()) {
+            coalescedLoads.incrementAndGet();
+            if (existing.await(waitMillis)) {
+                return (T) existing.value;
+            }
+            return loader.load();
+        } else if (existing != null) {
+            // Loading the entry needs the entry itself, load it directly
+            return loader.load();
+        }
+
+        loads.incrementAndGet();
+        try {
+            T value = loader.load();
+            flight.complete(value);
+            return value;
+        } finally {
+            flights.remove(key, flight);
+            flight.done.countDown();
+        }
+    }
+
+    /**
+     * @return number of entries loaded from the database
+     */
+    public long getLoads() {
+        return loads.get();
+    }
+
+    /**
+     * @return number of cache misses that waited for a load of another thread instead of loading the entry themselves
+     */
+    public long getCoalescedLoads() {
+        return coalescedLoads.get();
+    }
+
+    private static class Flight {
+
+        private final Thread owner = Thread.currentThread();
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile boolean completed;
+        private volatile Object value;
+
+        private void complete(Object value) {
+            this.value = value;
+            this.completed = true;
+        }
+
+        private boolean await(long waitMillis) {
+            try {
+                return done.await(waitMillis, TimeUnit.MILLISECONDS) && completed;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+    }
+
+}
@@ -27,7 +27,6 @@ import org.keycloak.models.cache.RealmCache;
 import java.io.Serializable;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -44,25 +43,25 @@ public class CachedClient implements Serializable {
     protected String name;
     protected String description;
     protected String realm;
-    protected Set<String> redirectUris = new HashSet<String>();
+    protected Set<String> redirectUris;
     protected boolean enabled;
     protected String clientAuthenticatorType;
     protected String secret;
     protected String registrationToken;
     protected String protocol;
-    protected Map<String, String> attributes = new HashMap<String, String>();
+    protected Map<String, String> attributes;
     protected boolean publicClient;
     protected boolean fullScopeAllowed;
     protected boolean frontchannelLogout;
     protected int notBefore;
-    protected Set<String> scope = new HashSet<String>();
-    protected Set<String> webOrigins = new HashSet<String>();
-    protected Set<ProtocolMapperModel> protocolMappers = new HashSet<ProtocolMapperModel>();
+    protected Set<String> scope;
+    protected Set<String> webOrigins;
+    protected Set<ProtocolMapperModel> protocolMappers;
     protected boolean surrogateAuthRequired;
     protected String managementUrl;
     protected String rootUrl;
     protected String baseUrl;
-    protected List<String> defaultRoles = new LinkedList<String>();
+    protected List<String> defaultRoles;
     protected boolean bearerOnly;
     protected boolean consentRequired;
     protected boolean standardFlowEnabled;
@@ -78,34 +77,34 @@ public class CachedClient implements Serializable {
     protected boolean useTemplateMappers;
 
     public CachedClient(RealmCache cache, RealmProvider delegate, RealmModel realm, ClientModel model) {
-        id = model.getId();
+        id = CompactCollections.intern(model.getId());
         clientAuthenticatorType = model.getClientAuthenticatorType();
         secret = model.getSecret();
         registrationToken = model.getRegistrationToken();
         clientId = model.getClientId();
         name = model.getName();
         description = model.getDescription();
-        this.realm = realm.getId();
+        this.realm = CompactCollections.intern(realm.getId());
         enabled = model.isEnabled();
-        protocol = model.getProtocol();
-        attributes.putAll(model.getAttributes());
+        protocol = CompactCollections.intern(model.getProtocol());
+        attributes = CompactCollections.sharedMap(model.getAttributes());
         notBefore = model.getNotBefore();
         frontchannelLogout = model.isFrontchannelLogout();
         publicClient = model.isPublicClient();
         fullScopeAllowed = model.isFullScopeAllowed();
-        redirectUris.addAll(model.getRedirectUris());
-        webOrigins.addAll(model.getWebOrigins());
+        redirectUris = CompactCollections.ids(model.getRedirectUris());
+        webOrigins = CompactCollections.ids(model.getWebOrigins());
+        Set<String> scope = new HashSet<String>();
         for (RoleModel role : model.getScopeMappings())  {
             scope.add(role.getId());
         }
-        for (ProtocolMapperModel mapper : model.getProtocolMappers()) {
-            this.protocolMappers.add(mapper);
-        }
+        this.scope = CompactCollections.ids(scope);
+        protocolMappers = CompactCollections.protocolMappers(model.getProtocolMappers());
         surrogateAuthRequired = model.isSurrogateAuthRequired();
         managementUrl = model.getManagementUrl();
         rootUrl = model.getRootUrl();
         baseUrl = model.getBaseUrl();
-        defaultRoles.addAll(model.getDefaultRoles());
+        defaultRoles = CompactCollections.list(model.getDefaultRoles());
         bearerOnly = model.isBearerOnly();
         consentRequired = model.isConsentRequired();
         standardFlowEnabled = model.isStandardFlowEnabled();
@@ -113,11 +112,12 @@ public class CachedClient implements Serializable {
         directAccessGrantsEnabled = model.isDirectAccessGrantsEnabled();
         serviceAccountsEnabled = model.isServiceAccountsEnabled();
         cacheRoles(cache, realm, model);
+        roles = CompactCollections.idMap(roles);
 
         nodeReRegistrationTimeout = model.getNodeReRegistrationTimeout();
         registeredNodes = new TreeMap<String, Integer>(model.getRegisteredNodes());
         if (model.getClientTemplate() != null) {
-            clientTemplate = model.getClientTemplate().getId();
+            clientTemplate = CompactCollections.intern(model.getClientTemplate().getId());
         }
         useTemplateConfig = model.useTemplateConfig();
         useTemplateMappers = model.useTemplateMappers();
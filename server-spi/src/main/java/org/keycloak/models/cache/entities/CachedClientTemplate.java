@@ -25,7 +25,6 @@ import org.keycloak.models.RoleModel;
 import org.keycloak.models.cache.RealmCache;
 
 import java.io.Serializable;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
@@ -50,24 +49,24 @@ public class CachedClientTemplate implements Serializable {
     private boolean implicitFlowEnabled;
     private boolean directAccessGrantsEnabled;
     private boolean serviceAccountsEnabled;
-    private Set<String> scope = new HashSet<String>();
-    private Set<ProtocolMapperModel> protocolMappers = new HashSet<ProtocolMapperModel>();
-    private Map<String, String> attributes = new HashMap<String, String>();
+    private Set<String> scope;
+    private Set<ProtocolMapperModel> protocolMappers;
+    private Map<String, String> attributes;
 
     public CachedClientTemplate(RealmCache cache, RealmProvider delegate, RealmModel realm, ClientTemplateModel model) {
-        id = model.getId();
+        id = CompactCollections.intern(model.getId());
         name = model.getName();
         description = model.getDescription();
-        this.realm = realm.getId();
-        protocol = model.getProtocol();
+        this.realm = CompactCollections.intern(realm.getId());
+        protocol = CompactCollections.intern(model.getProtocol());
         fullScopeAllowed = model.isFullScopeAllowed();
-        for (ProtocolMapperModel mapper : model.getProtocolMappers()) {
-            this.protocolMappers.add(mapper);
-        }
+        protocolMappers = CompactCollections.protocolMappers(model.getProtocolMappers());
+        Set<String> scope = new HashSet<String>();
         for (RoleModel role : model.getScopeMappings())  {
             scope.add(role.getId());
         }
-        attributes.putAll(model.getAttributes());
+        this.scope = CompactCollections.ids(scope);
+        attributes = CompactCollections.sharedMap(model.getAttributes());
         frontchannelLogout = model.isFrontchannelLogout();
         publicClient = model.isPublicClient();
         bearerOnly = model.isBearerOnly();
@@ -36,25 +36,29 @@ public class CachedGroup implements Serializable {
     private String name;
     private String parentId;
     private MultivaluedHashMap<String, String> attributes = new MultivaluedHashMap<>();
-    private Set<String> roleMappings = new HashSet<>();
-    private Set<String> subGroups = new HashSet<>();
+    private Set<String> roleMappings;
+    private Set<String> subGroups;
 
     public CachedGroup(RealmModel realm, GroupModel group) {
-        this.id = group.getId();
-        this.realm = realm.getId();
+        this.id = CompactCollections.intern(group.getId());
+        this.realm = CompactCollections.intern(realm.getId());
         this.name = group.getName();
-        this.parentId = group.getParentId();
+        this.parentId = CompactCollections.intern(group.getParentId());
 
         this.attributes.putAll(group.getAttributes());
+        Set<String> roleMappings = new HashSet<>();
         for (RoleModel role : group.getRoleMappings()) {
             roleMappings.add(role.getId());
         }
+        this.roleMappings = CompactCollections.ids(roleMappings);
+        Set<String> subGroups = new HashSet<>();
         Set<GroupModel> subGroups1 = group.getSubGroups();
         if (subGroups1 != null) {
             for (GroupModel subGroup : subGroups1) {
                 subGroups.add(subGroup.getId());
             }
         }
+        this.subGroups = CompactCollections.ids(subGroups);
     }
 
     public String getId() {
@@ -44,12 +44,15 @@ import java.security.PublicKey;
 import java.security.cert.Certificate;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * @author <a href="mailto:bill@burkecentral.com">Bill Burke</a>
@@ -145,11 +148,183 @@ public class CachedRealm implements Serializable {
     protected String defaultLocale;
     protected MultivaluedHashMap<String, IdentityProviderMapperModel> identityProviderMappers = new MultivaluedHashMap<>();
 
+    protected EnumSet<Slice> staleSlices = EnumSet.noneOf(Slice.class);
+    protected AtomicBoolean refreshing = new AtomicBoolean();
+
+    /**
+     * Independently reloadable parts of a cached realm. An update that only touches one slice marks the cached
+     * entry stale for that slice, so the next reader rebuilds just that part instead of evicting the whole realm
+     * together with all of its roles and clients.
+     */
+    public enum Slice {
+        SETTINGS,
+        ROLES,
+        CLIENTS,
+        IDENTITY_PROVIDERS,
+        AUTHENTICATION
+    }
+
     public CachedRealm() {
     }
 
     public CachedRealm(RealmCache cache, RealmProvider delegate, RealmModel model) {
-        id = model.getId();
+        id = CompactCollections.intern(model.getId());
+        for (Slice slice : Slice.values()) {
+            cacheSlice(slice, cache, delegate, model);
+        }
+    }
+
+    /**
+     * Rebuilds the stale slices of <code>previous</code> from <code>model</code> and shares everything else
+     */
+    public CachedRealm(CachedRealm previous, RealmCache cache, RealmProvider delegate, RealmModel model) {
+        previous.copyTo(this);
+        staleSlices = EnumSet.noneOf(Slice.class);
+        for (Slice slice : previous.staleSlices) {
+            cacheSlice(slice, cache, delegate, model);
+        }
+    }
+
+    protected void copyTo(CachedRealm target) {
+        target.id = id;
+        target.name = name;
+        target.displayName = displayName;
+        target.displayNameHtml = displayNameHtml;
+        target.enabled = enabled;
+        target.sslRequired = sslRequired;
+        target.registrationAllowed = registrationAllowed;
+        target.registrationEmailAsUsername = registrationEmailAsUsername;
+        target.rememberMe = rememberMe;
+        target.verifyEmail = verifyEmail;
+        target.resetPasswordAllowed = resetPasswordAllowed;
+        target.identityFederationEnabled = identityFederationEnabled;
+        target.editUsernameAllowed = editUsernameAllowed;
+        target.bruteForceProtected = bruteForceProtected;
+        target.maxFailureWaitSeconds = maxFailureWaitSeconds;
+        target.minimumQuickLoginWaitSeconds = minimumQuickLoginWaitSeconds;
+        target.waitIncrementSeconds = waitIncrementSeconds;
+        target.quickLoginCheckMilliSeconds = quickLoginCheckMilliSeconds;
+        target.maxDeltaTimeSeconds = maxDeltaTimeSeconds;
+        target.failureFactor = failureFactor;
+        target.revokeRefreshToken = revokeRefreshToken;
+        target.ssoSessionIdleTimeout = ssoSessionIdleTimeout;
+        target.ssoSessionMaxLifespan = ssoSessionMaxLifespan;
+        target.offlineSessionIdleTimeout = offlineSessionIdleTimeout;
+        target.accessTokenLifespan = accessTokenLifespan;
+        target.accessTokenLifespanForImplicitFlow = accessTokenLifespanForImplicitFlow;
+        target.accessCodeLifespan = accessCodeLifespan;
+        target.accessCodeLifespanUserAction = accessCodeLifespanUserAction;
+        target.accessCodeLifespanLogin = accessCodeLifespanLogin;
+        target.notBefore = notBefore;
+        target.passwordPolicy = passwordPolicy;
+        target.otpPolicy = otpPolicy;
+        target.publicKey = publicKey;
+        target.publicKeyPem = publicKeyPem;
+        target.privateKey = privateKey;
+        target.privateKeyPem = privateKeyPem;
+        target.certificate = certificate;
+        target.certificatePem = certificatePem;
+        target.codeSecret = codeSecret;
+        target.loginTheme = loginTheme;
+        target.accountTheme = accountTheme;
+        target.adminTheme = adminTheme;
+        target.emailTheme = emailTheme;
+        target.masterAdminClient = masterAdminClient;
+        target.requiredCredentials = requiredCredentials;
+        target.userFederationProviders = userFederationProviders;
+        target.userFederationMappers = userFederationMappers;
+        target.identityProviders = identityProviders;
+        target.browserSecurityHeaders = browserSecurityHeaders;
+        target.smtpConfig = smtpConfig;
+        target.authenticationFlows = authenticationFlows;
+        target.authenticatorConfigs = authenticatorConfigs;
+        target.requiredActionProviders = requiredActionProviders;
+        target.requiredActionProvidersByAlias = requiredActionProvidersByAlias;
+        target.authenticationExecutions = authenticationExecutions;
+        target.executionsById = executionsById;
+        target.browserFlow = browserFlow;
+        target.registrationFlow = registrationFlow;
+        target.directGrantFlow = directGrantFlow;
+        target.resetCredentialsFlow = resetCredentialsFlow;
+        target.clientAuthenticationFlow = clientAuthenticationFlow;
+        target.eventsEnabled = eventsEnabled;
+        target.eventsExpiration = eventsExpiration;
+        target.eventsListeners = eventsListeners;
+        target.enabledEventTypes = enabledEventTypes;
+        target.adminEventsEnabled = adminEventsEnabled;
+        target.adminEnabledEventOperations = adminEnabledEventOperations;
+        target.adminEventsDetailsEnabled = adminEventsDetailsEnabled;
+        target.defaultRoles = defaultRoles;
+        target.defaultGroups = defaultGroups;
+        target.groups = groups;
+        target.realmRoles = realmRoles;
+        target.clients = clients;
+        target.clientTemplates = clientTemplates;
+        target.internationalizationEnabled = internationalizationEnabled;
+        target.supportedLocales = supportedLocales;
+        target.defaultLocale = defaultLocale;
+        target.identityProviderMappers = identityProviderMappers;
+        target.staleSlices = EnumSet.copyOf(staleSlices);
+    }
+
+    /**
+     * Returns a copy of this entry whose given slices have to be reloaded before it is served again as fresh.
+     * The copy keeps answering with the previous data until a reader has rebuilt it.
+     */
+    public CachedRealm stale(Set<Slice> slices) {
+        CachedRealm copy = new CachedRealm();
+        copyTo(copy);
+        copy.staleSlices.addAll(slices);
+        return copy;
+    }
+
+    public boolean isStale() {
+        return !staleSlices.isEmpty();
+    }
+
+    public Set<Slice> getStaleSlices() {
+        return Collections.unmodifiableSet(staleSlices);
+    }
+
+    /**
+     * @return true if the caller won the right to rebuild this stale entry. Other readers keep using it meanwhile.
+     */
+    public boolean startRefresh() {
+        return refreshing.compareAndSet(false, true);
+    }
+
+    public void refreshFailed() {
+        refreshing.set(false);
+    }
+
+    protected void cacheSlice(Slice slice, RealmCache cache, RealmProvider delegate, RealmModel model) {
+        switch (slice) {
+            case SETTINGS:
+                cacheSettings(model);
+                break;
+            case ROLES:
+                realmRoles = new HashMap<String, String>();
+                cacheRealmRoles(cache, model);
+                realmRoles = CompactCollections.idMap(realmRoles);
+                break;
+            case CLIENTS:
+                clients = new HashMap<String, String>();
+                clientTemplates = new LinkedList<>();
+                cacheClients(cache, delegate, model);
+                cacheClientTemplates(cache, delegate, model);
+                clients = CompactCollections.idMap(clients);
+                clientTemplates = CompactCollections.list(clientTemplates);
+                break;
+            case IDENTITY_PROVIDERS:
+                cacheIdentityProviders(model);
+                break;
+            case AUTHENTICATION:
+                cacheAuthentication(model);
+                break;
+        }
+    }
+
+    protected void cacheSettings(RealmModel model) {
         name = model.getName();
         displayName = model.getDisplayName();
         displayNameHtml = model.getDisplayNameHtml();
@@ -200,46 +375,60 @@ public class CachedRealm implements Serializable {
 
         requiredCredentials = model.getRequiredCredentials();
         userFederationProviders = model.getUserFederationProviders();
+        userFederationMappers = new MultivaluedHashMap<String, UserFederationMapperModel>();
         for (UserFederationMapperModel mapper : model.getUserFederationMappers()) {
             userFederationMappers.add(mapper.getFederationProviderId(), mapper);
         }
 
-        this.identityProviders = new ArrayList<>();
-
-        for (IdentityProviderModel identityProviderModel : model.getIdentityProviders()) {
-            this.identityProviders.add(new IdentityProviderModel(identityProviderModel));
-        }
-
-        for (IdentityProviderMapperModel mapper : model.getIdentityProviderMappers()) {
-            identityProviderMappers.add(mapper.getIdentityProviderAlias(), mapper);
-        }
-
-
-
-        smtpConfig.putAll(model.getSmtpConfig());
-        browserSecurityHeaders.putAll(model.getBrowserSecurityHeaders());
+        smtpConfig = CompactCollections.map(model.getSmtpConfig());
+        browserSecurityHeaders = CompactCollections.sharedMap(model.getBrowserSecurityHeaders());
 
         eventsEnabled = model.isEventsEnabled();
         eventsExpiration = model.getEventsExpiration();
-        eventsListeners.addAll(model.getEventsListeners());
-        enabledEventTypes.addAll(model.getEnabledEventTypes());
-        
+        eventsListeners = CompactCollections.ids(model.getEventsListeners());
+        enabledEventTypes = CompactCollections.ids(model.getEnabledEventTypes());
+        adminEnabledEventOperations = CompactCollections.ids(adminEnabledEventOperations);
+
         adminEventsEnabled = model.isAdminEventsEnabled();
         adminEventsDetailsEnabled = model.isAdminEventsDetailsEnabled();
-        
-        defaultRoles.addAll(model.getDefaultRoles());
+
+        defaultRoles = CompactCollections.list(model.getDefaultRoles());
         ClientModel masterAdminClient = model.getMasterAdminClient();
         this.masterAdminClient = (masterAdminClient != null) ? masterAdminClient.getId() : null;
 
-        cacheRealmRoles(cache, model);
+        internationalizationEnabled = model.isInternationalizationEnabled();
+        supportedLocales = CompactCollections.ids(model.getSupportedLocales());
+        defaultLocale = model.getDefaultLocale();
 
-        cacheClients(cache, delegate, model);
+        Set<String> groups = new HashSet<String>();
+        for (GroupModel group : model.getGroups()) {
+            groups.add(group.getId());
+        }
+        this.groups = CompactCollections.ids(groups);
 
-        cacheClientTemplates(cache, delegate, model);
+        List<String> defaultGroups = new LinkedList<String>();
+        for (GroupModel group : model.getDefaultGroups()) {
+            defaultGroups.add(group.getId());
+        }
+        this.defaultGroups = CompactCollections.list(defaultGroups);
+    }
 
-        internationalizationEnabled = model.isInternationalizationEnabled();
-        supportedLocales.addAll(model.getSupportedLocales());
-        defaultLocale = model.getDefaultLocale();
+    protected void cacheIdentityProviders(RealmModel model) {
+        identityProviders = new ArrayList<>();
+        for (IdentityProviderModel identityProviderModel : model.getIdentityProviders()) {
+            identityProviders.add(new IdentityProviderModel(identityProviderModel));
+        }
+
+        identityProviderMappers = new MultivaluedHashMap<>();
+        for (IdentityProviderMapperModel mapper : model.getIdentityProviderMappers()) {
+            identityProviderMappers.add(mapper.getIdentityProviderAlias(), mapper);
+        }
+    }
+
+    protected void cacheAuthentication(RealmModel model) {
+        authenticationFlows = new HashMap<>();
+        authenticationExecutions = new MultivaluedHashMap<>();
+        executionsById = new HashMap<>();
         for (AuthenticationFlowModel flow : model.getAuthenticationFlows()) {
             authenticationFlows.put(flow.getId(), flow);
             authenticationExecutions.put(flow.getId(), new LinkedList<AuthenticationExecutionModel>());
@@ -248,27 +437,24 @@ public class CachedRealm implements Serializable {
                 executionsById.put(execution.getId(), execution);
             }
         }
-        for (GroupModel group : model.getGroups()) {
-            groups.add(group.getId());
-        }
+
+        authenticatorConfigs = new HashMap<>();
         for (AuthenticatorConfigModel authenticator : model.getAuthenticatorConfigs()) {
             authenticatorConfigs.put(authenticator.getId(), authenticator);
         }
+
+        requiredActionProviders = new HashMap<>();
+        requiredActionProvidersByAlias = new HashMap<>();
         for (RequiredActionProviderModel action : model.getRequiredActionProviders()) {
             requiredActionProviders.put(action.getId(), action);
             requiredActionProvidersByAlias.put(action.getAlias(), action);
         }
 
-        for (GroupModel group : model.getDefaultGroups()) {
-            defaultGroups.add(group.getId());
-        }
-
         browserFlow = model.getBrowserFlow();
         registrationFlow = model.getRegistrationFlow();
         directGrantFlow = model.getDirectGrantFlow();
         resetCredentialsFlow = model.getResetCredentialsFlow();
         clientAuthenticationFlow = model.getClientAuthenticationFlow();
-
     }
 
     protected void cacheClientTemplates(RealmCache cache, RealmProvider delegate, RealmModel model) {
@@ -36,20 +36,22 @@ public class CachedRole implements Serializable {
     final protected String description;
     final protected Boolean scopeParamRequired;
     final protected boolean composite;
-    final protected Set<String> composites = new HashSet<String>();
+    final protected Set<String> composites;
 
     public CachedRole(RoleModel model, RealmModel realm) {
         composite = model.isComposite();
         description = model.getDescription();
-        id = model.getId();
+        id = CompactCollections.intern(model.getId());
         name = model.getName();
         scopeParamRequired = model.isScopeParamRequired();
-        this.realm = realm.getId();
+        this.realm = CompactCollections.intern(realm.getId());
+        Set<String> composites = new HashSet<String>();
         if (composite) {
             for (RoleModel child : model.getComposites()) {
                 composites.add(child.getId());
             }
         }
+        this.composites = CompactCollections.ids(composites);
 
     }
 
@@ -0,0 +1,253 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.cache.entities;
+
+import org.keycloak.models.ProtocolMapperModel;
+
+import java.io.Serializable;
+import java.lang.ref.WeakReference;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Immutable, array based collections used by the cached entities. Ids and map keys are interned and identical maps (for example
+ * the config of the default protocol mappers every client has) are shared between entities. Large realms have
+ * thousands of clients and roles, and hash based collections and duplicate strings dominate the size of the cache.
+ * <p>
+ * Collections returned from here can't be modified.
+ */
+public class CompactCollections {
+
+    private static final Map<Object, WeakReference<Object>> shared = new WeakHashMap<>();
+
+    public static String intern(String value) {
+        return value != null ? value.intern() : null;
+    }
+
+    public static Set<String> ids(Collection<String> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return Collections.emptySet();
+        }
+        String[] elements = new String[ids.size()];
+        int i = 0;
+        for (String id : ids) {
+            if (id == null) {
+                return Collections.unmodifiableSet(new HashSet<>(ids));
+            }
+            elements[i++] = intern(id);
+        }
+        Arrays.sort(elements);
+        return new ArraySet(elements);
+    }
+
+    public static List<String> list(Collection<String> values) {
+        if (values == null || values.isEmpty()) {
+            return Collections.emptyList();
+        }
+        String[] elements = new String[values.size()];
+        int i = 0;
+        for (String value : values) {
+            elements[i++] = intern(value);
+        }
+        return Collections.unmodifiableList(Arrays.asList(elements));
+    }
+
+    /**
+     * Only keys are interned, as values may be secrets (for example the SMTP password) or unique user supplied values,
+     * which shouldn't be kept in the string pool.
+     */
+    public static Map<String, String> map(Map<String, String> map) {
+        return map(map, false);
+    }
+
+    /**
+     * Same as {@link #map(Map)}, but also interns the values, which have to be ids
+     */
+    public static Map<String, String> idMap(Map<String, String> map) {
+        return map(map, true);
+    }
+
+    private static Map<String, String> map(Map<String, String> map, boolean internValues) {
+        if (map == null || map.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        if (map.containsKey(null)) {
+            return Collections.unmodifiableMap(new HashMap<>(map));
+        }
+        String[] keys = map.keySet().toArray(new String[map.size()]);
+        Arrays.sort(keys);
+        String[] values = new String[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = intern(keys[i]);
+            String value = map.get(keys[i]);
+            values[i] = internValues ? intern(value) : value;
+        }
+        return new ArrayMap(keys, values);
+    }
+
+    /**
+     * Same as {@link #map(Map)}, but returns the same instance for equal maps.
+     */
+    public static Map<String, String> sharedMap(Map<String, String> map) {
+        Map<String, String> compact = map(map);
+        return compact.isEmpty() ? compact : share(compact);
+    }
+
+    public static Set<ProtocolMapperModel> protocolMappers(Collection<ProtocolMapperModel> mappers) {
+        if (mappers == null || mappers.isEmpty()) {
+            return Collections.emptySet();
+        }
+        Set<ProtocolMapperModel> copies = new HashSet<>();
+        for (ProtocolMapperModel mapper : mappers) {
+            ProtocolMapperModel copy = new ProtocolMapperModel();
+            copy.setId(intern(mapper.getId()));
+            copy.setName(intern(mapper.getName()));
+            copy.setProtocol(intern(mapper.getProtocol()));
+            copy.setProtocolMapper(intern(mapper.getProtocolMapper()));
+            copy.setConsentRequired(mapper.isConsentRequired());
+            copy.setConsentText(mapper.getConsentText());
+            copy.setConfig(sharedMap(mapper.getConfig()));
+            copies.add(copy);
+        }
+        return Collections.unmodifiableSet(copies);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T share(T value) {
+        synchronized (shared) {
+            WeakReference<Object> ref = shared.get(value);
+            Object existing = ref != null ? ref.get() : null;
+            if (existing != null) {
+                return (T) existing;
+            }
+            shared.put(value, new WeakReference<Object>(value));
+            return value;
+        }
+    }
+
+    private static class ArraySet extends AbstractSet<String> implements Serializable {
+
+        private final String[] elements;
+
+        private ArraySet(String[] elements) {
+            this.elements = elements;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return o instanceof String && Arrays.binarySearch(elements, o) >= 0;
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            return Collections.unmodifiableList(Arrays.asList(elements)).iterator();
+        }
+
+        @Override
+        public int size() {
+            return elements.length;
+        }
+
+    }
+
+    private static class ArrayMap extends AbstractMap<String, String> implements Serializable {
+
+        private final String[] keys;
+        private final String[] values;
+
+        private ArrayMap(String[] keys, String[] values) {
+            this.keys = keys;
+            this.values = values;
+        }
+
+        @Override
+        public String get(Object key) {
+            int i = indexOf(key);
+            return i >= 0 ? values[i] : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return indexOf(key) >= 0;
+        }
+
+        @Override
+        public int size() {
+            return keys.length;
+        }
+
+        @Override
+        public Set<String> keySet() {
+            return new ArraySet(keys);
+        }
+
+        @Override
+        public Set<Entry<String, String>> entrySet() {
+            return new AbstractSet<Entry<String, String>>() {
+                @Override
+                public Iterator<Entry<String, String>> iterator() {
+                    return new Iterator<Entry<String, String>>() {
+                        private int i;
+
+                        @Override
+                        public boolean hasNext() {
+                            return i < keys.length;
+                        }
+
+                        @Override
+                        public Entry<String, String> next() {
+                            if (i >= keys.length) {
+                                throw new NoSuchElementException();
+                            }
+                            Entry<String, String> entry = new SimpleImmutableEntry<>(keys[i], values[i]);
+                            i++;
+                            return entry;
+                        }
+
+                        @Override
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return keys.length;
+                }
+            };
+        }
+
+        private int indexOf(Object key) {
+            return key instanceof String ? Arrays.binarySearch(keys, key) : -1;
+        }
+
+    }
+
+}
@@ -119,6 +119,16 @@ public class DisabledUserSessionPersisterProvider implements UserSessionPersiste
         return Collections.emptyList();
     }
 
+    @Override
+    public List<UserSessionModel> loadUserSessions(String lastUserSessionId, int maxResults, boolean offline) {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public String getUserSessionIdAfter(String lastUserSessionId, int position, boolean offline) {
+        return null;
+    }
+
     @Override
     public int getUserSessionsCount(boolean offline) {
         return 0;
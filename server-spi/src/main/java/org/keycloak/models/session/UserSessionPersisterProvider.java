@@ -58,6 +58,12 @@ public interface UserSessionPersisterProvider extends Provider {
     // Called during startup. For each userSession, it loads also clientSessions
     List<UserSessionModel> loadUserSessions(int firstResult, int maxResults, boolean offline);
 
+    // Same as above, but loads userSessions ordered by ID after the userSession with ID lastUserSessionId (from the beginning if null). Cost of the query doesn't grow with count of already loaded userSessions
+    List<UserSessionModel> loadUserSessions(String lastUserSessionId, int maxResults, boolean offline);
+
+    // Returns ID of userSession, which is "position" userSessions after the userSession with ID lastUserSessionId (position 0 is the first one after it) in ordering by ID. Returns null if there are not so many userSessions
+    String getUserSessionIdAfter(String lastUserSessionId, int position, boolean offline);
+
     int getUserSessionsCount(boolean offline);
 
 }
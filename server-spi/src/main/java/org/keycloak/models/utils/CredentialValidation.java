@@ -17,11 +17,16 @@
 
 package org.keycloak.models.utils;
 
+import org.jboss.logging.Logger;
+import org.keycloak.hash.PasswordHashExecutor;
 import org.keycloak.hash.PasswordHashManager;
 import org.keycloak.jose.jws.JWSInput;
 import org.keycloak.jose.jws.JWSInputException;
 import org.keycloak.jose.jws.crypto.RSAProvider;
 import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.KeycloakSessionTask;
+import org.keycloak.models.KeycloakTransaction;
 import org.keycloak.models.OTPPolicy;
 import org.keycloak.models.PasswordPolicy;
 import org.keycloak.models.RealmModel;
@@ -39,6 +44,8 @@ import java.util.List;
  */
 public class CredentialValidation {
 
+    private static final Logger logger = Logger.getLogger(CredentialValidation.class);
+
     private static int hashIterations(RealmModel realm) {
         PasswordPolicy policy = realm.getPasswordPolicy();
         if (policy != null) {
@@ -49,7 +56,8 @@ public class CredentialValidation {
     }
 
     /**
-     * Will update password if hash iteration policy has changed
+     * Will update password if hash iteration policy has changed. The password is hashed again in the background after
+     * the transaction is committed, so it doesn't delay the login.
      *
      * @param realm
      * @param user
@@ -80,15 +88,97 @@ public class CredentialValidation {
         if (validated) {
             int iterations = hashIterations(realm);
             if (iterations > -1 && iterations != credential.getHashIterations()) {
-
-                UserCredentialValueModel newCred = PasswordHashManager.encode(session, realm, unhashedCredValue);
-                user.updateCredentialDirectly(newCred);
+                rehashAfterCommit(session, realm, user, unhashedCredValue, credential);
             }
 
         }
         return validated;
     }
 
+    private static void rehashAfterCommit(KeycloakSession session, RealmModel realm, UserModel user, final String unhashedCredValue, final UserCredentialValueModel credential) {
+        final KeycloakSessionFactory factory = session.getKeycloakSessionFactory();
+        final String realmId = realm.getId();
+        final String userId = user.getId();
+
+        session.getTransaction().enlistAfterCompletion(new KeycloakTransaction() {
+
+            private boolean active;
+            private boolean rollbackOnly;
+
+            @Override
+            public void begin() {
+                active = true;
+            }
+
+            @Override
+            public void commit() {
+                active = false;
+                if (rollbackOnly) {
+                    return;
+                }
+
+                boolean queued = PasswordHashExecutor.getInstance().executeAsync(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            KeycloakModelUtils.runJobInTransaction(factory, new KeycloakSessionTask() {
+                                @Override
+                                public void run(KeycloakSession session) {
+                                    rehash(session, realmId, userId, unhashedCredValue, credential);
+                                }
+                            });
+                        } catch (RuntimeException e) {
+                            logger.warnv(e, "Failed to update password hash of user {0}", userId);
+                        }
+                    }
+                });
+
+                if (!queued) {
+                    logger.debugv("Password hash workers busy, password hash of user {0} will be updated on a later login", userId);
+                }
+            }
+
+            @Override
+            public void rollback() {
+                active = false;
+            }
+
+            @Override
+            public void setRollbackOnly() {
+                rollbackOnly = true;
+            }
+
+            @Override
+            public boolean getRollbackOnly() {
+                return rollbackOnly;
+            }
+
+            @Override
+            public boolean isActive() {
+                return active;
+            }
+        });
+    }
+
+    private static void rehash(KeycloakSession session, String realmId, String userId, String unhashedCredValue, UserCredentialValueModel credential) {
+        RealmModel realm = session.realms().getRealm(realmId);
+        if (realm == null) return;
+        UserModel user = session.users().getUserById(userId, realm);
+        if (user == null) return;
+
+        int iterations = hashIterations(realm);
+        for (UserCredentialValueModel cred : user.getCredentialsDirectly()) {
+            // Skip if the password was changed in the meantime
+            if (cred.getType().equals(credential.getType()) && cred.getValue().equals(credential.getValue())) {
+                if (iterations > -1 && iterations != cred.getHashIterations()) {
+                    UserCredentialValueModel newCred = PasswordHashManager.encode(session, realm, unhashedCredValue);
+                    user.updateCredentialDirectly(newCred);
+                }
+                return;
+            }
+        }
+    }
+
     public static boolean validPasswordToken(RealmModel realm, UserModel user, String encodedPasswordToken) {
         try {
             JWSInput jws = new JWSInput(encodedPasswordToken);
@@ -40,6 +40,7 @@ import org.keycloak.models.UserModel;
 import org.keycloak.representations.idm.CertificateRepresentation;
 import org.keycloak.common.util.CertificateUtils;
 import org.keycloak.common.util.PemUtils;
+import org.keycloak.jose.jws.crypto.ParsedKeyCache;
 
 import javax.crypto.spec.SecretKeySpec;
 import java.io.IOException;
@@ -87,7 +88,7 @@ public final class KeycloakModelUtils {
     public static PublicKey getPublicKey(String publicKeyPem) {
         if (publicKeyPem != null) {
             try {
-                return PemUtils.decodePublicKey(publicKeyPem);
+                return ParsedKeyCache.getPublicKey(publicKeyPem);
             } catch (Exception e) {
                 throw new RuntimeException(e);
             }
@@ -99,7 +100,7 @@ public final class KeycloakModelUtils {
     public static X509Certificate getCertificate(String cert) {
         if (cert != null) {
             try {
-                return PemUtils.decodeCertificate(cert);
+                return ParsedKeyCache.getCertificate(cert);
             } catch (Exception e) {
                 throw new RuntimeException(e);
             }
@@ -112,7 +113,7 @@ public final class KeycloakModelUtils {
     public static PrivateKey getPrivateKey(String privateKeyPem) {
         if (privateKeyPem != null) {
             try {
-                return PemUtils.decodePrivateKey(privateKeyPem);
+                return ParsedKeyCache.getPrivateKey(privateKeyPem);
             } catch (Exception e) {
                 throw new RuntimeException(e);
             }
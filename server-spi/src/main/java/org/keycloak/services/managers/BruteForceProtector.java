@@ -30,4 +30,23 @@ public interface BruteForceProtector extends Provider {
     void failedLogin(RealmModel realm, String username, ClientConnection clientConnection);
 
     boolean isTemporarilyDisabled(KeycloakSession session, RealmModel realm, String username);
+
+    /**
+     * Checked before the authenticators of a flow run, so clients sending too many login requests to a realm are
+     * rejected before they cause any credential validation. Unlike the other checks, this doesn't depend on brute force
+     * detection being enabled for the realm.
+     *
+     * @return true if the request should be rejected
+     */
+    boolean isRateLimited(RealmModel realm, ClientConnection clientConnection);
+
+    /**
+     * Called when login failures of the user were removed, so the user isn't considered temporarily disabled anymore
+     */
+    void loginFailuresCleared(RealmModel realm, String username);
+
+    /**
+     * Called when login failures of all users of the realm were removed
+     */
+    void loginFailuresCleared(RealmModel realm);
 }
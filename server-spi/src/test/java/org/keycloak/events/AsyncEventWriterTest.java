@@ -0,0 +1,221 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.events;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.keycloak.models.KeycloakTransaction;
+import org.keycloak.models.KeycloakTransactionManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class AsyncEventWriterTest {
+
+    @Test
+    public void flushOnBatchSize() throws Exception {
+        RecordingWriter recorder = new RecordingWriter(1);
+        AsyncEventWriter<Integer> writer = new AsyncEventWriter<>("test", recorder, 100, 3, 60000, AsyncEventWriter.OverflowPolicy.BLOCK);
+        for (int i = 0; i < 3; i++) {
+            writer.add(i);
+        }
+        writer.start();
+
+        Assert.assertTrue(recorder.written.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(1, recorder.batches.size());
+        Assert.assertEquals(3, recorder.batches.get(0).size());
+
+        writer.close();
+        Assert.assertEquals(3, writer.getWritten());
+        Assert.assertEquals(1, writer.getFlushes());
+    }
+
+    @Test
+    public void flushOnInterval() throws Exception {
+        RecordingWriter recorder = new RecordingWriter(1);
+        AsyncEventWriter<Integer> writer = new AsyncEventWriter<>("test", recorder, 100, 100, 50, AsyncEventWriter.OverflowPolicy.BLOCK);
+        writer.start();
+        writer.add(1);
+        writer.add(2);
+
+        Assert.assertTrue(recorder.written.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(2, recorder.batches.get(0).size());
+        writer.close();
+    }
+
+    @Test
+    public void closeWritesQueuedEvents() {
+        RecordingWriter recorder = new RecordingWriter(1);
+        AsyncEventWriter<Integer> writer = new AsyncEventWriter<>("test", recorder, 100, 10, 60000, AsyncEventWriter.OverflowPolicy.BLOCK);
+        writer.start();
+        for (int i = 0; i < 25; i++) {
+            writer.add(i);
+        }
+        writer.close();
+
+        Assert.assertEquals(25, writer.getWritten());
+        Assert.assertEquals(0, writer.getQueueDepth());
+    }
+
+    @Test
+    public void dropWhenFull() {
+        RecordingWriter recorder = new RecordingWriter(1);
+        AsyncEventWriter<Integer> writer = new AsyncEventWriter<>("test", recorder, 2, 10, 60000, AsyncEventWriter.OverflowPolicy.DROP);
+
+        Assert.assertTrue(writer.add(1));
+        Assert.assertTrue(writer.add(2));
+        Assert.assertFalse(writer.add(3));
+        Assert.assertEquals(1, writer.getDropped());
+        Assert.assertEquals(2, writer.getQueueDepth());
+    }
+
+    @Test
+    public void failedBatchIsCounted() {
+        AsyncEventWriter<Integer> writer = new AsyncEventWriter<>("test", new AsyncEventWriter.BatchWriter<Integer>() {
+            @Override
+            public void write(List<Integer> batch) {
+                throw new RuntimeException("Database down");
+            }
+        }, 100, 10, 60000, AsyncEventWriter.OverflowPolicy.BLOCK);
+        writer.start();
+        writer.add(1);
+        writer.close();
+
+        Assert.assertEquals(0, writer.getWritten());
+        Assert.assertEquals(1, writer.getFailed());
+    }
+
+    @Test
+    public void failedBatchIsRetriedOneByOne() {
+        final List<Integer> stored = Collections.synchronizedList(new ArrayList<Integer>());
+        AsyncEventWriter<Integer> writer = new AsyncEventWriter<>("test", new AsyncEventWriter.BatchWriter<Integer>() {
+            @Override
+            public void write(List<Integer> batch) {
+                if (batch.contains(2)) {
+                    throw new RuntimeException("Invalid event");
+                }
+                stored.addAll(batch);
+            }
+        }, 100, 10, 60000, AsyncEventWriter.OverflowPolicy.BLOCK);
+        for (int i = 0; i < 4; i++) {
+            writer.add(i);
+        }
+        writer.start();
+        writer.close();
+
+        Assert.assertEquals(3, writer.getWritten());
+        Assert.assertEquals(1, writer.getFailed());
+        Assert.assertEquals(3, stored.size());
+        Assert.assertFalse(stored.contains(2));
+    }
+
+    @Test
+    public void queuedOnlyAfterCommit() {
+        RecordingWriter recorder = new RecordingWriter(1);
+        AsyncEventWriter<Integer> writer = new AsyncEventWriter<>("test", recorder, 100, 10, 60000, AsyncEventWriter.OverflowPolicy.BLOCK);
+
+        TestTransactionManager committed = new TestTransactionManager();
+        writer.add(committed, 1);
+        Assert.assertEquals(0, writer.getQueueDepth());
+        committed.commit();
+        Assert.assertEquals(1, writer.getQueueDepth());
+
+        TestTransactionManager rolledBack = new TestTransactionManager();
+        writer.add(rolledBack, 2);
+        rolledBack.rollback();
+        Assert.assertEquals(1, writer.getQueueDepth());
+
+        writer.add(null, 3);
+        Assert.assertEquals(2, writer.getQueueDepth());
+    }
+
+    private static class TestTransactionManager implements KeycloakTransactionManager {
+
+        private final List<KeycloakTransaction> afterCompletion = new ArrayList<>();
+
+        @Override
+        public void enlist(KeycloakTransaction transaction) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void enlistAfterCompletion(KeycloakTransaction transaction) {
+            transaction.begin();
+            afterCompletion.add(transaction);
+        }
+
+        @Override
+        public void enlistPrepare(KeycloakTransaction transaction) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void begin() {
+        }
+
+        @Override
+        public void commit() {
+            for (KeycloakTransaction tx : afterCompletion) {
+                tx.commit();
+            }
+        }
+
+        @Override
+        public void rollback() {
+            for (KeycloakTransaction tx : afterCompletion) {
+                tx.rollback();
+            }
+        }
+
+        @Override
+        public void setRollbackOnly() {
+        }
+
+        @Override
+        public boolean getRollbackOnly() {
+            return false;
+        }
+
+        @Override
+        public boolean isActive() {
+            return true;
+        }
+
+    }
+
+    private static class RecordingWriter implements AsyncEventWriter.BatchWriter<Integer> {
+
+        private final List<List<Integer>> batches = Collections.synchronizedList(new ArrayList<List<Integer>>());
+        private final CountDownLatch written;
+
+        private RecordingWriter(int expectedBatches) {
+            written = new CountDownLatch(expectedBatches);
+        }
+
+        @Override
+        public void write(List<Integer> batch) {
+            batches.add(new ArrayList<>(batch));
+            written.countDown();
+        }
+
+    }
+
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.hash;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class PasswordHashExecutorTest {
+
+    @Test
+    public void executeOnWorker() {
+        final PasswordHashExecutor executor = new PasswordHashExecutor(2, 10, 10000);
+        try {
+            String thread = executor.execute(new Callable<String>() {
+                @Override
+                public String call() {
+                    // Nested hashes run directly on the worker
+                    return executor.execute(new Callable<String>() {
+                        @Override
+                        public String call() {
+                            return Thread.currentThread().getName();
+                        }
+                    });
+                }
+            });
+
+            Assert.assertTrue(thread.startsWith("keycloak-password-hash-"));
+            Assert.assertEquals(1, executor.getHashes());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void rejectWhenQueueFull() throws Exception {
+        final PasswordHashExecutor executor = new PasswordHashExecutor(1, 1, 10000);
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            Runnable blocking = new Runnable() {
+                @Override
+                public void run() {
+                    await(release);
+                }
+            };
+            Assert.assertTrue(executor.executeAsync(blocking));
+            Assert.assertTrue(executor.executeAsync(blocking));
+            Assert.assertFalse(executor.executeAsync(blocking));
+
+            try {
+                executor.execute(constant(true));
+                Assert.fail("Expected rejection");
+            } catch (PasswordHashRejectedException expected) {
+            }
+
+            Assert.assertEquals(2, executor.getRejected());
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void rejectAfterMaxWait() {
+        final PasswordHashExecutor executor = new PasswordHashExecutor(1, 10, 50);
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            executor.executeAsync(new Runnable() {
+                @Override
+                public void run() {
+                    await(release);
+                }
+            });
+
+            try {
+                executor.execute(constant(true));
+                Assert.fail("Expected rejection");
+            } catch (PasswordHashRejectedException expected) {
+            }
+            Assert.assertEquals(1, executor.getRejected());
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void maxWaitDoesNotLimitHash() {
+        PasswordHashExecutor executor = new PasswordHashExecutor(1, 10, 50);
+        try {
+            boolean result = executor.execute(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    Thread.sleep(200);
+                    return true;
+                }
+            });
+
+            Assert.assertTrue(result);
+            Assert.assertEquals(0, executor.getRejected());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void taskNotStartedInTimeIsSkipped() {
+        final PasswordHashExecutor executor = new PasswordHashExecutor(1, 10, 50);
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            executor.executeAsync(new Runnable() {
+                @Override
+                public void run() {
+                    await(release);
+                }
+            });
+
+            try {
+                executor.execute(constant(true));
+                Assert.fail("Expected rejection");
+            } catch (PasswordHashRejectedException expected) {
+            }
+
+            release.countDown();
+            Assert.assertTrue(executor.execute(constant(true)));
+            Assert.assertEquals(2, executor.getHashes());
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void exceptionOfHashIsRethrown() {
+        PasswordHashExecutor executor = new PasswordHashExecutor(1, 10, 10000);
+        try {
+            executor.execute(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    throw new IllegalStateException("Hash failed");
+                }
+            });
+            Assert.fail("Expected exception");
+        } catch (IllegalStateException expected) {
+            Assert.assertEquals("Hash failed", expected.getMessage());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static Callable<Boolean> constant(final boolean value) {
+        return new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return value;
+            }
+        };
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.keycloak.models.ClientModel;
+import org.keycloak.models.GroupModel;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.RoleModel;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+public class EffectiveRoleCacheTest {
+
+    private final Map<String, RoleModel> roles = new HashMap<>();
+    private final Map<String, Set<RoleModel>> composites = new HashMap<>();
+
+    private final RealmModel realm = model(RealmModel.class, "realm", new HashMap<String, Object>());
+
+    @Test
+    public void testScopedRoles() {
+        RoleModel user = role("user");
+        RoleModel admin = role("admin", user);
+        RoleModel other = role("other");
+        RoleModel superAdmin = role("super-admin", admin, other);
+
+        ClientModel client = client("client", Collections.<RoleModel>emptySet(), set(admin));
+
+        EffectiveRoleCache cache = new EffectiveRoleCache();
+
+        // Only the topmost role in scope is returned, composites are not expanded
+        Assert.assertEquals(set(admin), cache.getScopedRoles(realm, client, set(superAdmin), Collections.<GroupModel>emptySet()));
+
+        Assert.assertEquals(set(user), cache.getScopedRoles(realm, client, set(user, other), Collections.<GroupModel>emptySet()));
+
+        Assert.assertEquals(Collections.<RoleModel>emptySet(), cache.getScopedRoles(realm, client, set(other), Collections.<GroupModel>emptySet()));
+    }
+
+    @Test
+    public void testScopedRolesOfEachMapping() {
+        RoleModel user = role("user");
+        RoleModel admin = role("admin", user);
+
+        ClientModel client = client("client", Collections.<RoleModel>emptySet(), set(admin));
+
+        EffectiveRoleCache cache = new EffectiveRoleCache();
+
+        // Same as TokenManager.applyScope, each role mapping contributes its own topmost roles in scope
+        Assert.assertEquals(set(admin, user), cache.getScopedRoles(realm, client, set(admin, user), Collections.<GroupModel>emptySet()));
+    }
+
+    @Test
+    public void testGroupRoles() {
+        RoleModel user = role("user");
+        RoleModel admin = role("admin");
+        RoleModel clientRole = role("client-role");
+
+        GroupModel parent = group("parent", null, set(admin));
+        GroupModel child = group("child", parent, set(user));
+
+        ClientModel client = client("client", set(clientRole), set(user, admin));
+
+        EffectiveRoleCache cache = new EffectiveRoleCache();
+
+        Assert.assertEquals(set(user, admin, clientRole), cache.getScopedRoles(realm, client, set(clientRole), set(child)));
+    }
+
+    @Test
+    public void testInvalidation() {
+        RoleModel user = role("user");
+        RoleModel admin = role("admin");
+
+        ClientModel client = client("client", Collections.<RoleModel>emptySet(), set(admin, user));
+
+        EffectiveRoleCache cache = new EffectiveRoleCache();
+        Assert.assertEquals(set(admin), cache.getScopedRoles(realm, client, set(admin), Collections.<GroupModel>emptySet()));
+
+        composites.get("admin").add(user);
+
+        // Cached closure is used until the role is invalidated
+        Assert.assertEquals(set(admin), cache.getScopedRoles(realm, client, set(admin), Collections.<GroupModel>emptySet()));
+
+        cache.invalidate("admin");
+        Assert.assertEquals(set(admin, user), cache.getScopedRoles(realm, client, set(admin), Collections.<GroupModel>emptySet()));
+    }
+
+    private RoleModel role(String id, RoleModel... roleComposites) {
+        Set<RoleModel> roleCompositesSet = new HashSet<>(Arrays.asList(roleComposites));
+        composites.put(id, roleCompositesSet);
+
+        Map<String, Object> values = new HashMap<>();
+        values.put("getComposites", roleCompositesSet);
+        RoleModel role = model(RoleModel.class, id, values);
+        roles.put(id, role);
+        return role;
+    }
+
+    private GroupModel group(String id, GroupModel parent, Set<RoleModel> roleMappings) {
+        Map<String, Object> values = new HashMap<>();
+        values.put("getRoleMappings", roleMappings);
+        values.put("getParent", parent);
+        values.put("getParentId", parent != null ? parent.getId() : null);
+        return model(GroupModel.class, id, values);
+    }
+
+    private ClientModel client(String id, Set<RoleModel> clientRoles, Set<RoleModel> scopeMappings) {
+        Map<String, Object> values = new HashMap<>();
+        values.put("getRoles", clientRoles);
+        values.put("getScopeMappings", scopeMappings);
+        values.put("useTemplateScope", false);
+        return model(ClientModel.class, id, values);
+    }
+
+    private <T> T model(Class<T> type, final String id, final Map<String, Object> values) {
+        return type.cast(Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { type }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                switch (method.getName()) {
+                    case "getId":
+                        return id;
+                    case "isComposite":
+                        return !composites.get(id).isEmpty();
+                    case "getComposites":
+                        return composites.get(id);
+                    case "getRoleById":
+                        return roles.get(args[0]);
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return id.hashCode();
+                    case "toString":
+                        return id;
+                    default:
+                        return values.get(method.getName());
+                }
+            }
+        }));
+    }
+
+    private static Set<RoleModel> set(RoleModel... roles) {
+        return new HashSet<>(Arrays.asList(roles));
+    }
+
+    private static Set<GroupModel> set(GroupModel... groups) {
+        return new HashSet<>(Arrays.asList(groups));
+    }
+
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class SingleFlightLoaderTest {
+
+    @Test
+    public void concurrentLoadsAreCoalesced() throws Exception {
+        final SingleFlightLoader loader = new SingleFlightLoader();
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger calls = new AtomicInteger();
+
+        final SingleFlightLoader.Loader<String> slow = new SingleFlightLoader.Loader<String>() {
+            @Override
+            public String load() {
+                calls.incrementAndGet();
+                loading.countDown();
+                await(release);
+                return "value";
+            }
+        };
+
+        final AtomicReference<String> first = new AtomicReference<>();
+        Thread leader = new Thread() {
+            @Override
+            public void run() {
+                first.set(loader.load("key", slow));
+            }
+        };
+        leader.start();
+        loading.await(10, TimeUnit.SECONDS);
+
+        final AtomicReference<String> second = new AtomicReference<>();
+        Thread waiter = new Thread() {
+            @Override
+            public void run() {
+                second.set(loader.load("key", slow));
+            }
+        };
+        waiter.start();
+
+        while (loader.getCoalescedLoads() == 0) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+        leader.join(10000);
+        waiter.join(10000);
+
+        Assert.assertEquals("value", first.get());
+        Assert.assertEquals("value", second.get());
+        Assert.assertEquals(1, calls.get());
+        Assert.assertEquals(1, loader.getLoads());
+        Assert.assertEquals(1, loader.getCoalescedLoads());
+    }
+
+    @Test
+    public void waiterLoadsItselfIfLeaderFails() throws Exception {
+        final SingleFlightLoader loader = new SingleFlightLoader();
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        Thread leader = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    loader.load("key", new SingleFlightLoader.Loader<String>() {
+                        @Override
+                        public String load() {
+                            loading.countDown();
+                            await(release);
+                            throw new IllegalStateException();
+                        }
+                    });
+                } catch (IllegalStateException expected) {
+                }
+            }
+        };
+        leader.start();
+        loading.await(10, TimeUnit.SECONDS);
+
+        final AtomicReference<String> result = new AtomicReference<>();
+        Thread waiter = new Thread() {
+            @Override
+            public void run() {
+                result.set(loader.load("key", constant("fallback")));
+            }
+        };
+        waiter.start();
+
+        while (loader.getCoalescedLoads() == 0) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+        leader.join(10000);
+        waiter.join(10000);
+
+        Assert.assertEquals("fallback", result.get());
+    }
+
+    @Test
+    public void nestedLoadOfSameKey() {
+        final SingleFlightLoader loader = new SingleFlightLoader();
+        String value = loader.load("key", new SingleFlightLoader.Loader<String>() {
+            @Override
+            public String load() {
+                return loader.load("key", constant("inner")) + "-outer";
+            }
+        });
+
+        Assert.assertEquals("inner-outer", value);
+        Assert.assertEquals(1, loader.getLoads());
+        Assert.assertEquals(0, loader.getCoalescedLoads());
+    }
+
+    @Test
+    public void waiterLoadsItselfAfterTimeout() {
+        SingleFlightLoader loader = new SingleFlightLoader(10);
+        final CountDownLatch release = new CountDownLatch(1);
+        startLoading(loader, release);
+
+        Assert.assertEquals("own", loader.load("key", constant("own")));
+        release.countDown();
+    }
+
+    private void startLoading(final SingleFlightLoader loader, final CountDownLatch release) {
+        final CountDownLatch loading = new CountDownLatch(1);
+        new Thread() {
+            @Override
+            public void run() {
+                loader.load("key", new SingleFlightLoader.Loader<String>() {
+                    @Override
+                    public String load() {
+                        loading.countDown();
+                        await(release);
+                        return "leader";
+                    }
+                });
+            }
+        }.start();
+        await(loading);
+    }
+
+    private static SingleFlightLoader.Loader<String> constant(final String value) {
+        return new SingleFlightLoader.Loader<String>() {
+            @Override
+            public String load() {
+                return value;
+            }
+        };
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
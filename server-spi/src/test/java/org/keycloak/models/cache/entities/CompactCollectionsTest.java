@@ -0,0 +1,150 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.cache.entities;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.keycloak.models.ProtocolMapperModel;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class CompactCollectionsTest {
+
+    @Test
+    public void testIds() {
+        Set<String> ids = CompactCollections.ids(Arrays.asList("c", "a", "b"));
+        Assert.assertEquals(new HashSet<>(Arrays.asList("a", "b", "c")), ids);
+        Assert.assertTrue(ids.contains("b"));
+        Assert.assertFalse(ids.contains("d"));
+        Assert.assertFalse(ids.contains(null));
+
+        Assert.assertSame(Collections.emptySet(), CompactCollections.ids(Collections.<String>emptySet()));
+        Assert.assertEquals(new HashSet<>(Arrays.asList("a", null)), CompactCollections.ids(Arrays.asList("a", null)));
+
+        try {
+            ids.add("d");
+            Assert.fail("Expected set to be immutable");
+        } catch (UnsupportedOperationException expected) {
+        }
+    }
+
+    @Test
+    public void testIdsInterned() {
+        String id = new String("3f2504e0-4f89-11d3-9a0c-0305e82c3301");
+        Set<String> ids = CompactCollections.ids(Collections.singleton(new String(id)));
+        Assert.assertSame(CompactCollections.intern(id), ids.iterator().next());
+    }
+
+    @Test
+    public void testList() {
+        List<String> list = CompactCollections.list(Arrays.asList("c", "a", "b"));
+        Assert.assertEquals(Arrays.asList("c", "a", "b"), list);
+    }
+
+    @Test
+    public void testMap() {
+        Map<String, String> map = new HashMap<>();
+        map.put("b", "2");
+        map.put("a", "1");
+        map.put("c", null);
+
+        Map<String, String> compact = CompactCollections.map(map);
+        Assert.assertEquals(map, compact);
+        Assert.assertEquals(map.hashCode(), compact.hashCode());
+        Assert.assertEquals("1", compact.get("a"));
+        Assert.assertTrue(compact.containsKey("c"));
+        Assert.assertFalse(compact.containsKey("d"));
+        Assert.assertNull(compact.get(1));
+
+        try {
+            compact.put("d", "4");
+            Assert.fail("Expected map to be immutable");
+        } catch (UnsupportedOperationException expected) {
+        }
+    }
+
+    @Test
+    public void testMapValuesNotInterned() {
+        String password = new String("secret");
+        Map<String, String> compact = CompactCollections.map(Collections.singletonMap(new String("password"), password));
+
+        Assert.assertSame("password", compact.keySet().iterator().next());
+        Assert.assertSame(password, compact.get("password"));
+        Assert.assertNotSame("secret", compact.get("password"));
+    }
+
+    @Test
+    public void testIdMap() {
+        String id = new String("role-id");
+        Map<String, String> compact = CompactCollections.idMap(Collections.singletonMap("role", id));
+
+        Assert.assertSame("role-id", compact.get("role"));
+    }
+
+    @Test
+    public void testSharedMap() {
+        Map<String, String> map1 = new HashMap<>();
+        map1.put("claim.name", "email");
+        map1.put("jsonType.label", "String");
+
+        Map<String, String> map2 = new HashMap<>(map1);
+
+        Map<String, String> compact1 = CompactCollections.sharedMap(map1);
+        Assert.assertSame(compact1, CompactCollections.sharedMap(map2));
+
+        map2.put("claim.name", "username");
+        Assert.assertNotSame(compact1, CompactCollections.sharedMap(map2));
+    }
+
+    @Test
+    public void testProtocolMappers() {
+        Map<String, String> config = new HashMap<>();
+        config.put("claim.name", "email");
+
+        ProtocolMapperModel mapper1 = new ProtocolMapperModel();
+        mapper1.setId("mapper1");
+        mapper1.setName("email");
+        mapper1.setConfig(new HashMap<>(config));
+
+        ProtocolMapperModel mapper2 = new ProtocolMapperModel();
+        mapper2.setId("mapper2");
+        mapper2.setName("email");
+        mapper2.setConfig(new HashMap<>(config));
+
+        Set<ProtocolMapperModel> mappers1 = CompactCollections.protocolMappers(Collections.singleton(mapper1));
+        Set<ProtocolMapperModel> mappers2 = CompactCollections.protocolMappers(Collections.singleton(mapper2));
+
+        ProtocolMapperModel cached1 = mappers1.iterator().next();
+        ProtocolMapperModel cached2 = mappers2.iterator().next();
+        Assert.assertEquals("mapper1", cached1.getId());
+        Assert.assertEquals(config, cached1.getConfig());
+        Assert.assertSame(cached1.getConfig(), cached2.getConfig());
+
+        // The models from the delegate aren't modified
+        Assert.assertNotSame(mapper1, cached1);
+        mapper1.getConfig().put("claim.name", "changed");
+        Assert.assertEquals("email", cached1.getConfig().get("claim.name"));
+    }
+
+}
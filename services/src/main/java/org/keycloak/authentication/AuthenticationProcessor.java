@@ -27,6 +27,7 @@ import org.keycloak.events.Details;
 import org.keycloak.events.Errors;
 import org.keycloak.events.EventBuilder;
 import org.keycloak.forms.login.LoginFormsProvider;
+import org.keycloak.hash.PasswordHashRejectedException;
 import org.keycloak.models.AuthenticationExecutionModel;
 import org.keycloak.models.AuthenticationFlowModel;
 import org.keycloak.models.AuthenticatorConfigModel;
@@ -64,6 +65,9 @@ import java.util.Map;
 public class AuthenticationProcessor {
     public static final String CURRENT_AUTHENTICATION_EXECUTION = "current.authentication.execution";
     protected static final ServicesLogger logger = ServicesLogger.ROOT_LOGGER;
+
+    // Not part of Response.Status in JAX-RS 2.0
+    protected static final int TOO_MANY_REQUESTS_STATUS = 429;
     protected RealmModel realm;
     protected UserSessionModel userSession;
     protected ClientSessionModel clientSession;
@@ -77,6 +81,7 @@ public class AuthenticationProcessor {
     protected boolean browserFlow;
     protected BruteForceProtector protector;
     protected boolean oneActionWasSuccessful;
+    protected boolean rateLimitChecked;
     /**
      * This could be an error message forwarded from another authenticator
      */
@@ -607,6 +612,10 @@ public class AuthenticationProcessor {
                 return ErrorPage.error(session, Messages.INVALID_USER);
             }
 
+        } else if (failure instanceof PasswordHashRejectedException) {
+            logger.failedAuthentication(failure);
+            event.error(Errors.TOO_MANY_REQUESTS);
+            return ErrorPage.error(session, Messages.TOO_MANY_LOGIN_ATTEMPTS);
         } else {
             logger.failedAuthentication(failure);
             event.error(Errors.INVALID_USER_CREDENTIALS);
@@ -728,6 +737,8 @@ public class AuthenticationProcessor {
     public Response authenticationAction(String execution) {
         logger.debug("authenticationAction");
         checkClientSession();
+        Response rateLimited = checkRateLimit();
+        if (rateLimited != null) return rateLimited;
         String current = clientSession.getNote(CURRENT_AUTHENTICATION_EXECUTION);
         if (!execution.equals(current)) {
             logger.debug("Current execution does not equal executed execution.  Might be a page refresh");
@@ -773,9 +784,36 @@ public class AuthenticationProcessor {
         clientSession.setTimestamp(Time.currentTime());
     }
 
+    /**
+     * Rejects the request before any authenticator runs if the client sent too many login requests. Checked once per
+     * request, even if the flow is restarted. Rate limiting is enabled for all realms by the <code>rateLimitPerMinute</code>
+     * option of the brute force protector, whether or not brute force detection is enabled for the realm.
+     */
+    protected Response checkRateLimit() {
+        if (rateLimitChecked) {
+            return null;
+        }
+        rateLimitChecked = true;
+
+        if (!getBruteForceProtector().isRateLimited(realm, connection)) {
+            return null;
+        }
+
+        logger.debugv("Too many login requests from {0} to realm {1}", connection.getRemoteAddr(), realm.getName());
+        event.client(clientSession.getClient().getClientId());
+        event.error(Errors.TOO_MANY_REQUESTS);
+        if (isBrowserFlow()) {
+            return ErrorPage.error(session, Messages.TOO_MANY_LOGIN_ATTEMPTS);
+        } else {
+            return ClientAuthUtil.errorResponse(TOO_MANY_REQUESTS_STATUS, Errors.TOO_MANY_REQUESTS, "Too many login attempts, try again later");
+        }
+    }
+
     public Response authenticateOnly() throws AuthenticationFlowException {
         logger.debug("AUTHENTICATE ONLY");
         checkClientSession();
+        Response rateLimited = checkRateLimit();
+        if (rateLimited != null) return rateLimited;
         event.client(clientSession.getClient().getClientId())
                 .detail(Details.REDIRECT_URI, clientSession.getRedirectUri())
                 .detail(Details.AUTH_METHOD, clientSession.getAuthMethod());
@@ -830,7 +868,7 @@ public class AuthenticationProcessor {
         if (remember) {
             event.detail(Details.REMEMBER_ME, "true");
         }
-        TokenManager.attachClientSession(userSession, clientSession);
+        TokenManager.attachClientSession(session, userSession, clientSession);
         event.user(userSession.getUser())
                 .detail(Details.USERNAME, username)
                 .session(userSession);
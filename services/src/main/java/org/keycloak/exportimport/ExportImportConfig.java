@@ -49,6 +49,14 @@ public class ExportImportConfig {
     public static final String USERS_PER_FILE = PREFIX + "usersPerFile";
     public static final Integer DEFAULT_USERS_PER_FILE = 5000;
 
+    // Number of users imported per DB transaction. Used by "singleFile" and "dir" providers
+    public static final String USERS_PER_TRANSACTION = PREFIX + "usersPerTransaction";
+    public static final Integer DEFAULT_USERS_PER_TRANSACTION = 1000;
+
+    // Number of threads importing users of a realm
+    public static final String IMPORT_WORKERS = PREFIX + "importWorkers";
+    public static final Integer DEFAULT_IMPORT_WORKERS = 1;
+
     // Strategy used during import data
     public static final String STRATEGY = PREFIX + "strategy";
     public static final Strategy DEFAULT_STRATEGY = Strategy.OVERWRITE_EXISTING;
@@ -131,8 +139,30 @@ public class ExportImportConfig {
         System.setProperty(USERS_PER_FILE, String.valueOf(usersPerFile));
     }
 
+    public static Integer getUsersPerTransaction() {
+        String usersPerTransaction = System.getProperty(USERS_PER_TRANSACTION, String.valueOf(DEFAULT_USERS_PER_TRANSACTION));
+        return Integer.parseInt(usersPerTransaction.trim());
+    }
+
+    public static void setUsersPerTransaction(Integer usersPerTransaction) {
+        System.setProperty(USERS_PER_TRANSACTION, String.valueOf(usersPerTransaction));
+    }
+
+    public static Integer getImportWorkers() {
+        String importWorkers = System.getProperty(IMPORT_WORKERS, String.valueOf(DEFAULT_IMPORT_WORKERS));
+        return Integer.parseInt(importWorkers.trim());
+    }
+
+    public static void setImportWorkers(Integer importWorkers) {
+        System.setProperty(IMPORT_WORKERS, String.valueOf(importWorkers));
+    }
+
     public static Strategy getStrategy() {
         String strategy = System.getProperty(STRATEGY, DEFAULT_STRATEGY.toString());
         return Enum.valueOf(Strategy.class, strategy);
     }
+
+    public static void setStrategy(Strategy strategy) {
+        System.setProperty(STRATEGY, strategy.toString());
+    }
 }
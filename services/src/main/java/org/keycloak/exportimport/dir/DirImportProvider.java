@@ -21,12 +21,8 @@ import org.jboss.logging.Logger;
 import org.keycloak.Config;
 import org.keycloak.exportimport.ImportProvider;
 import org.keycloak.exportimport.Strategy;
-import org.keycloak.exportimport.util.ExportImportSessionTask;
 import org.keycloak.exportimport.util.ImportUtils;
-import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.KeycloakSessionFactory;
-import org.keycloak.models.utils.KeycloakModelUtils;
-import org.keycloak.representations.idm.RealmRepresentation;
 import org.keycloak.util.JsonSerialization;
 
 import java.io.File;
@@ -115,29 +111,22 @@ public class DirImportProvider implements ImportProvider {
             }
         });
 
-        // Import realm first
+        // Import realm first. Users of realm file are imported in batches after it
         FileInputStream is = new FileInputStream(realmFile);
-        final RealmRepresentation realmRep = JsonSerialization.readValue(is, RealmRepresentation.class);
-
-        KeycloakModelUtils.runJobInTransaction(factory, new ExportImportSessionTask() {
-
-            @Override
-            public void runExportImportTask(KeycloakSession session) throws IOException {
-                ImportUtils.importRealm(session, realmRep, strategy);
-            }
-
-        });
+        try {
+            ImportUtils.importRealmsFromStream(factory, JsonSerialization.mapper, is, strategy, null);
+        } finally {
+            is.close();
+        }
 
         // Import users
         for (File userFile : userFiles) {
-            final FileInputStream fis = new FileInputStream(userFile);
-            KeycloakModelUtils.runJobInTransaction(factory, new ExportImportSessionTask() {
-
-                @Override
-                protected void runExportImportTask(KeycloakSession session) throws IOException {
-                    ImportUtils.importUsersFromStream(session, realmName, JsonSerialization.mapper, fis);
-                }
-            });
+            FileInputStream fis = new FileInputStream(userFile);
+            try {
+                ImportUtils.importUsersFromStream(factory, realmName, JsonSerialization.mapper, fis, strategy);
+            } finally {
+                fis.close();
+            }
         }
     }
 
@@ -21,18 +21,14 @@ import org.jboss.logging.Logger;
 import org.keycloak.Config;
 import org.keycloak.exportimport.ImportProvider;
 import org.keycloak.exportimport.Strategy;
-import org.keycloak.exportimport.util.ExportImportSessionTask;
 import org.keycloak.exportimport.util.ImportUtils;
-import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.KeycloakSessionFactory;
-import org.keycloak.models.utils.KeycloakModelUtils;
-import org.keycloak.representations.idm.RealmRepresentation;
 import org.keycloak.util.JsonSerialization;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.Map;
+import java.util.List;
 
 /**
  * @author <a href="mailto:mposolda@redhat.com">Marek Posolda</a>
@@ -43,38 +39,45 @@ public class SingleFileImportProvider implements ImportProvider {
 
     private File file;
 
-    // Allows to cache representation per provider to avoid parsing them twice
-    protected Map<String, RealmRepresentation> realmReps;
+    // Allows to cache realm names per provider to avoid parsing them twice
+    protected List<String> realmNames;
 
     public SingleFileImportProvider(File file) {
         this.file = file;
     }
 
     @Override
-    public void importModel(KeycloakSessionFactory factory, final Strategy strategy) throws IOException {
+    public void importModel(KeycloakSessionFactory factory, Strategy strategy) throws IOException {
         logger.infof("Full importing from file %s", this.file.getAbsolutePath());
-        checkRealmReps();
 
-        KeycloakModelUtils.runJobInTransaction(factory, new ExportImportSessionTask() {
-
-            @Override
-            protected void runExportImportTask(KeycloakSession session) throws IOException {
-                ImportUtils.importRealms(session, realmReps.values(), strategy);
-            }
+        // Realms are streamed from the file, so it's read twice to ensure that master realm is imported first
+        importFromFile(factory, strategy, true);
+        importFromFile(factory, strategy, false);
+    }
 
-        });
+    private void importFromFile(KeycloakSessionFactory factory, Strategy strategy, boolean masterRealm) throws IOException {
+        FileInputStream is = new FileInputStream(file);
+        try {
+            ImportUtils.importRealmsFromStream(factory, JsonSerialization.mapper, is, strategy, masterRealm);
+        } finally {
+            is.close();
+        }
     }
 
     @Override
     public boolean isMasterRealmExported() throws IOException {
-        checkRealmReps();
-        return (realmReps.containsKey(Config.getAdminRealm()));
+        checkRealmNames();
+        return (realmNames.contains(Config.getAdminRealm()));
     }
 
-    protected void checkRealmReps() throws IOException {
-        if (realmReps == null) {
+    protected void checkRealmNames() throws IOException {
+        if (realmNames == null) {
             FileInputStream is = new FileInputStream(file);
-            realmReps = ImportUtils.getRealmsFromStream(JsonSerialization.mapper, is);
+            try {
+                realmNames = ImportUtils.getRealmNamesFromStream(JsonSerialization.mapper, is);
+            } finally {
+                is.close();
+            }
         }
     }
 
@@ -18,25 +18,32 @@
 package org.keycloak.exportimport.util;
 
 import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.jboss.logging.Logger;
 import org.keycloak.Config;
 import org.keycloak.exportimport.ExportImportConfig;
 import org.keycloak.exportimport.Strategy;
-import org.keycloak.models.ClientModel;
 import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
 import org.keycloak.models.RealmModel;
 import org.keycloak.models.RealmProvider;
+import org.keycloak.models.utils.KeycloakModelUtils;
 import org.keycloak.models.utils.RealmImporter;
-import org.keycloak.models.utils.RepresentationToModel;
 import org.keycloak.representations.idm.RealmRepresentation;
 import org.keycloak.representations.idm.UserRepresentation;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * @author <a href="mailto:mposolda@redhat.com">Marek Posolda</a>
@@ -66,9 +73,10 @@ public class ImportUtils {
      * @param session
      * @param rep
      * @param strategy specifies whether to overwrite or ignore existing realm or user entries
-     * @return newly imported realm (or existing realm if ignoreExisting is true and realm of this name already exists)
+     * @return false if realm of this name already exists and import of it is skipped. True if realm was imported or if
+     * its import is resumed, so users of the realm should be imported
      */
-    public static void importRealm(KeycloakSession session, RealmRepresentation rep, Strategy strategy) {
+    public static boolean importRealm(KeycloakSession session, RealmRepresentation rep, Strategy strategy) {
         String realmName = rep.getRealm();
         RealmProvider model = session.realms();
         RealmModel realm = model.getRealmByName(realmName);
@@ -76,7 +84,10 @@ public class ImportUtils {
         if (realm != null) {
             if (strategy == Strategy.IGNORE_EXISTING) {
                 logger.infof("Realm '%s' already exists. Import skipped", realmName);
-                return;
+                return false;
+            } else if (strategy == Strategy.RESUME_EXISTING) {
+                logger.infof("Realm '%s' already exists. Importing just users, which don't exist yet", realmName);
+                return true;
             } else {
                 logger.infof("Realm '%s' already exists. Removing it before import", realmName);
                 if (Config.getAdminRealm().equals(realm.getId())) {
@@ -96,8 +107,8 @@ public class ImportUtils {
         if (System.getProperty(ExportImportConfig.ACTION) != null) {
             logger.infof("Realm '%s' imported", realmName);
         }
-        
-        return;
+
+        return true;
     }
 
     /**
@@ -114,6 +125,160 @@ public class ImportUtils {
         importRealms(session, realmReps.values(), strategy);
     }
 
+    /**
+     * Import realms from stream without reading their users to memory. Each realm is imported in its own transaction
+     * and then its users in batches of {@link ExportImportConfig#getUsersPerTransaction()} users.
+     *
+     * Realm export contains users before clients, which the users reference, so users are copied to temporary file while
+     * reading the realm and imported from there once the realm is imported.
+     *
+     * @param masterRealm true to import just master realm, false to import all realms except master, null to import all realms.
+     *                    Allows to import master realm first without reading all realms to memory
+     */
+    public static void importRealmsFromStream(KeycloakSessionFactory factory, ObjectMapper mapper, InputStream is, Strategy strategy, Boolean masterRealm) throws IOException {
+        JsonParser parser = mapper.getFactory().createParser(is);
+        try {
+            parser.nextToken();
+
+            if (parser.getCurrentToken() == JsonToken.START_ARRAY) {
+                // Case with more realms in stream
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    importRealmFromParser(factory, mapper, parser, strategy, masterRealm);
+                }
+            } else if (parser.getCurrentToken() == JsonToken.START_OBJECT) {
+                // Case with single realm in stream
+                importRealmFromParser(factory, mapper, parser, strategy, masterRealm);
+            }
+        } finally {
+            parser.close();
+        }
+    }
+
+    // Parser is on START_OBJECT of realm. Returns with parser on END_OBJECT of realm
+    private static void importRealmFromParser(KeycloakSessionFactory factory, ObjectMapper mapper, JsonParser parser, final Strategy strategy, Boolean masterRealm) throws IOException {
+        ObjectNode realmNode = mapper.createObjectNode();
+        Boolean included = null;
+        File usersFile = null;
+        try {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+
+                if (Boolean.FALSE.equals(included)) {
+                    parser.skipChildren();
+                } else if ("users".equals(field) && parser.getCurrentToken() == JsonToken.START_ARRAY) {
+                    usersFile = copyToTempFile(mapper, parser);
+                } else {
+                    JsonNode value = mapper.readTree(parser);
+                    realmNode.set(field, value);
+
+                    if ("realm".equals(field) && masterRealm != null) {
+                        included = masterRealm == Config.getAdminRealm().equals(value.asText());
+                    }
+                }
+            }
+
+            if (Boolean.FALSE.equals(included)) {
+                return;
+            }
+
+            final RealmRepresentation rep = mapper.treeToValue(realmNode, RealmRepresentation.class);
+            realmNode = null;
+
+            final AtomicBoolean importUsers = new AtomicBoolean();
+            KeycloakModelUtils.runJobInTransaction(factory, new ExportImportSessionTask() {
+
+                @Override
+                protected void runExportImportTask(KeycloakSession session) throws IOException {
+                    importUsers.set(importRealm(session, rep, strategy));
+                }
+
+            });
+
+            if (usersFile != null && importUsers.get()) {
+                InputStream is = new FileInputStream(usersFile);
+                JsonParser usersParser = mapper.getFactory().createParser(is);
+                try {
+                    usersParser.nextToken();
+                    importUsers(factory, rep.getRealm(), usersParser, strategy);
+                } finally {
+                    usersParser.close();
+                }
+            }
+        } finally {
+            if (usersFile != null && !usersFile.delete()) {
+                logger.warnf("Failed to delete temporary file %s", usersFile.getAbsolutePath());
+            }
+        }
+    }
+
+    private static File copyToTempFile(ObjectMapper mapper, JsonParser parser) throws IOException {
+        File file = File.createTempFile("keycloak-import-users-", ".json");
+        JsonGenerator generator = mapper.getFactory().createGenerator(new FileOutputStream(file));
+        try {
+            generator.copyCurrentStructure(parser);
+        } catch (IOException | RuntimeException e) {
+            generator.close();
+            file.delete();
+            throw e;
+        }
+        generator.close();
+        return file;
+    }
+
+    // Parser is on START_ARRAY of users. Returns with parser on END_ARRAY of users
+    private static void importUsers(KeycloakSessionFactory factory, String realmName, JsonParser parser, Strategy strategy) throws IOException {
+        UsersBatchImporter importer = new UsersBatchImporter(factory, realmName, strategy);
+        try {
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                importer.add(parser.readValueAs(UserRepresentation.class));
+            }
+            importer.finish();
+        } finally {
+            importer.close();
+        }
+    }
+
+    /**
+     * Returns names of realms in stream without reading whole realms to memory
+     */
+    public static List<String> getRealmNamesFromStream(ObjectMapper mapper, InputStream is) throws IOException {
+        List<String> result = new ArrayList<String>();
+
+        JsonParser parser = mapper.getFactory().createParser(is);
+        try {
+            parser.nextToken();
+
+            if (parser.getCurrentToken() == JsonToken.START_ARRAY) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    result.add(getRealmName(parser));
+                }
+            } else if (parser.getCurrentToken() == JsonToken.START_OBJECT) {
+                result.add(getRealmName(parser));
+            }
+        } finally {
+            parser.close();
+        }
+
+        return result;
+    }
+
+    // Parser is on START_OBJECT of realm. Returns with parser on END_OBJECT of realm
+    private static String getRealmName(JsonParser parser) throws IOException {
+        String realmName = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+
+            if ("realm".equals(field)) {
+                realmName = parser.getText();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return realmName;
+    }
+
     public static Map<String, RealmRepresentation> getRealmsFromStream(ObjectMapper mapper, InputStream is) throws IOException {
         Map<String, RealmRepresentation> result = new HashMap<String, RealmRepresentation>();
 
@@ -155,11 +320,12 @@ public class ImportUtils {
     }
 
 
-    // Assuming that it's invoked inside transaction
-    public static void importUsersFromStream(KeycloakSession session, String realmName, ObjectMapper mapper, InputStream is) throws IOException {
-        RealmProvider model = session.realms();
-        JsonFactory factory = mapper.getJsonFactory();
-        JsonParser parser = factory.createJsonParser(is);
+    /**
+     * Import users of realm from users file in batches of {@link ExportImportConfig#getUsersPerTransaction()} users, each
+     * in its own transaction
+     */
+    public static void importUsersFromStream(KeycloakSessionFactory factory, String realmName, ObjectMapper mapper, InputStream is, Strategy strategy) throws IOException {
+        JsonParser parser = mapper.getFactory().createParser(is);
         try {
             parser.nextToken();
 
@@ -174,22 +340,13 @@ public class ImportUtils {
                     parser.nextToken();
 
                     if (parser.getCurrentToken() == JsonToken.START_ARRAY) {
-                        parser.nextToken();
-                    }
-
-                    // TODO: support for more transactions per single users file (if needed)
-                    List<UserRepresentation> userReps = new ArrayList<UserRepresentation>();
-                    while (parser.getCurrentToken() == JsonToken.START_OBJECT) {
-                        UserRepresentation user = parser.readValueAs(UserRepresentation.class);
-                        userReps.add(user);
-                        parser.nextToken();
-                    }
-
-                    importUsers(session, model, realmName, userReps);
-
-                    if (parser.getCurrentToken() == JsonToken.END_ARRAY) {
-                        parser.nextToken();
+                        importUsers(factory, realmName, parser, strategy);
+                    } else {
+                        parser.skipChildren();
                     }
+                } else {
+                    parser.nextToken();
+                    parser.skipChildren();
                 }
             }
         } finally {
@@ -197,12 +354,4 @@ public class ImportUtils {
         }
     }
 
-    private static void importUsers(KeycloakSession session, RealmProvider model, String realmName, List<UserRepresentation> userReps) {
-        RealmModel realm = model.getRealmByName(realmName);
-        Map<String, ClientModel> apps = realm.getClientNameMap();
-        for (UserRepresentation user : userReps) {
-            RepresentationToModel.createUser(session, realm, user, apps);
-        }
-    }
-
 }
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.exportimport.util;
+
+import org.jboss.logging.Logger;
+import org.keycloak.exportimport.ExportImportConfig;
+import org.keycloak.exportimport.Strategy;
+import org.keycloak.models.ClientModel;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.KeycloakSessionTask;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.utils.KeycloakModelUtils;
+import org.keycloak.models.utils.RepresentationToModel;
+import org.keycloak.representations.idm.UserRepresentation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Imports users of a realm in batches, each batch in its own transaction, so importing a realm with many users neither
+ * keeps them all in memory nor in a single transaction. Batches are imported by a pool of workers. Only one batch per
+ * worker is queued, and when the queue is full the reading thread imports the batch itself, so reading never gets far
+ * ahead of the database.
+ *
+ * With {@link Strategy#RESUME_EXISTING} users which already exist are skipped, so an interrupted import can be
+ * restarted with the same file.
+ */
+public class UsersBatchImporter {
+
+    private static final Logger logger = Logger.getLogger(UsersBatchImporter.class);
+
+    private final KeycloakSessionFactory factory;
+    private final String realmName;
+    private final int batchSize;
+    private final boolean skipExisting;
+    private final ThreadPoolExecutor executor;
+
+    private List<UserRepresentation> batch;
+
+    private final AtomicLong imported = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+
+    public UsersBatchImporter(KeycloakSessionFactory factory, String realmName, Strategy strategy) {
+        this(factory, realmName, ExportImportConfig.getUsersPerTransaction(), ExportImportConfig.getImportWorkers(), strategy == Strategy.RESUME_EXISTING);
+    }
+
+    public UsersBatchImporter(KeycloakSessionFactory factory, String realmName, int batchSize, int workers, boolean skipExisting) {
+        this.factory = factory;
+        this.realmName = realmName;
+        this.batchSize = Math.max(batchSize, 1);
+        this.skipExisting = skipExisting;
+        this.executor = workers > 1 ? createExecutor(realmName, workers) : null;
+        this.batch = new ArrayList<>(this.batchSize);
+    }
+
+    private static ThreadPoolExecutor createExecutor(final String realmName, int workers) {
+        final AtomicInteger counter = new AtomicInteger();
+        return new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(workers), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "keycloak-import-" + realmName + "-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Adds user to the current batch and imports the batch once it's full
+     */
+    public void add(UserRepresentation user) {
+        checkFailure();
+
+        batch.add(user);
+        if (batch.size() >= batchSize) {
+            submit();
+        }
+    }
+
+    /**
+     * Imports the remaining users and waits until all batches are committed
+     *
+     * @throws RuntimeException if any batch failed. Batches committed before the failure are kept
+     */
+    public void finish() {
+        if (!batch.isEmpty()) {
+            submit();
+        }
+
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                while (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                    logger.debugf("Waiting for import of users of realm '%s'", realmName);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while importing users of realm " + realmName, e);
+            }
+        }
+
+        checkFailure();
+        logger.infof("Imported %d users of realm '%s', skipped %d existing users", imported.get(), realmName, skipped.get());
+    }
+
+    /**
+     * Stops the workers without waiting for queued batches. Needed just if {@link #finish()} wasn't called or failed
+     */
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    public long getImported() {
+        return imported.get();
+    }
+
+    public long getSkipped() {
+        return skipped.get();
+    }
+
+    private void submit() {
+        final List<UserRepresentation> users = batch;
+        batch = new ArrayList<>(batchSize);
+
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                if (failure.get() != null) {
+                    return;
+                }
+
+                try {
+                    importBatch(users);
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                }
+            }
+        };
+
+        if (executor != null) {
+            executor.execute(task);
+        } else {
+            task.run();
+        }
+    }
+
+    private void importBatch(final List<UserRepresentation> users) {
+        final AtomicInteger skippedInBatch = new AtomicInteger();
+
+        KeycloakModelUtils.runJobInTransaction(factory, new KeycloakSessionTask() {
+
+            @Override
+            public void run(KeycloakSession session) {
+                RealmModel realm = session.realms().getRealmByName(realmName);
+                Map<String, ClientModel> apps = realm.getClientNameMap();
+                for (UserRepresentation user : users) {
+                    if (skipExisting && session.users().getUserByUsername(user.getUsername(), realm) != null) {
+                        skippedInBatch.incrementAndGet();
+                        continue;
+                    }
+
+                    // Same conversion as RepresentationToModel does for users embedded in realm
+                    if (user.getApplicationRoles() != null && user.getClientRoles() == null) {
+                        user.setClientRoles(user.getApplicationRoles());
+                    }
+                    RepresentationToModel.createUser(session, realm, user, apps);
+                }
+            }
+
+        });
+
+        long count = imported.addAndGet(users.size() - skippedInBatch.get());
+        skipped.addAndGet(skippedInBatch.get());
+        logger.infof("Imported %d users of realm '%s'", count, realmName);
+    }
+
+    private void checkFailure() {
+        RuntimeException e = failure.get();
+        if (e != null) {
+            throw new RuntimeException("Failed to import users of realm " + realmName + ". Import can be restarted with strategy " + Strategy.RESUME_EXISTING, e);
+        }
+    }
+
+}
@@ -39,6 +39,7 @@ import org.keycloak.models.RoleModel;
 import org.keycloak.models.UserModel;
 import org.keycloak.models.UserSessionModel;
 import org.keycloak.models.UserSessionProvider;
+import org.keycloak.models.cache.CacheRealmProvider;
 import org.keycloak.models.utils.KeycloakModelUtils;
 import org.keycloak.protocol.ProtocolMapper;
 import org.keycloak.protocol.oidc.mappers.OIDCAccessTokenMapper;
@@ -168,7 +169,7 @@ public class TokenManager {
 
         // recreate token.
         String scopeParam = clientSession.getNote(OAuth2Constants.SCOPE);
-        Set<RoleModel> requestedRoles = TokenManager.getAccess(scopeParam, true, clientSession.getClient(), user);
+        Set<RoleModel> requestedRoles = TokenManager.getAccess(session, scopeParam, true, clientSession.getClient(), user);
         AccessToken newToken = createClientAccessToken(session, requestedRoles, realm, client, user, userSession, clientSession);
         verifyAccess(oldToken, newToken);
 
@@ -272,6 +273,10 @@ public class TokenManager {
     }
 
     public static void attachClientSession(UserSessionModel session, ClientSessionModel clientSession) {
+        attachClientSession(null, session, clientSession);
+    }
+
+    public static void attachClientSession(KeycloakSession keycloakSession, UserSessionModel session, ClientSessionModel clientSession) {
         if (clientSession.getUserSession() != null) {
             return;
         }
@@ -282,7 +287,7 @@ public class TokenManager {
         // todo scope param protocol independent
         String scopeParam = clientSession.getNote(OAuth2Constants.SCOPE);
         ClientModel client = clientSession.getClient();
-        for (RoleModel r : TokenManager.getAccess(scopeParam, true, client, user)) {
+        for (RoleModel r : TokenManager.getAccess(keycloakSession, scopeParam, true, client, user)) {
             requestedRoles.add(r.getId());
         }
         clientSession.setRoles(requestedRoles);
@@ -334,39 +339,57 @@ public class TokenManager {
     }
 
     public static Set<RoleModel> getAccess(String scopeParam, boolean applyScopeParam, ClientModel client, UserModel user) {
+        return getAccess(null, scopeParam, applyScopeParam, client, user);
+    }
+
+    /**
+     * Same as {@link #getAccess(String, boolean, ClientModel, UserModel)}, but uses cached effective roles of the realm cache
+     * when available.
+     */
+    public static Set<RoleModel> getAccess(KeycloakSession session, String scopeParam, boolean applyScopeParam, ClientModel client, UserModel user) {
         Set<RoleModel> requestedRoles = new HashSet<RoleModel>();
 
         Set<RoleModel> mappings = user.getRoleMappings();
-        Set<RoleModel> roleMappings = new HashSet<>();
-        roleMappings.addAll(mappings);
-        for (GroupModel group : user.getGroups()) {
-            addGroupRoles(group, roleMappings);
-        }
-
+        Set<GroupModel> groups = user.getGroups();
 
         ClientTemplateModel template = client.getClientTemplate();
 
         boolean useTemplateScope = template != null && client.useTemplateScope();
+        boolean fullScope = (useTemplateScope && template.isFullScopeAllowed()) || (client.isFullScopeAllowed());
 
-        if ( (useTemplateScope && template.isFullScopeAllowed()) || (client.isFullScopeAllowed())) {
-            logger.debug("Using full scope for client");
-            requestedRoles = roleMappings;
+        CacheRealmProvider realmCache = session != null ? session.getProvider(CacheRealmProvider.class) : null;
+
+        if (!fullScope && realmCache != null) {
+            logger.debug("Using cached effective roles for client scope");
+            requestedRoles = realmCache.getEffectiveRoleCache().getScopedRoles(client.getRealm(), client, mappings, groups);
         } else {
-            Set<RoleModel> scopeMappings = new HashSet<>();
-            if (useTemplateScope) {
-                logger.debug("Adding template scope mappings");
-                scopeMappings.addAll(template.getScopeMappings());
+            Set<RoleModel> roleMappings = new HashSet<>();
+            roleMappings.addAll(mappings);
+            for (GroupModel group : groups) {
+                addGroupRoles(group, roleMappings);
             }
-            scopeMappings.addAll(client.getRoles());
-            Set<RoleModel> clientScopeMappings = client.getScopeMappings();
-            scopeMappings.addAll(clientScopeMappings);
-            for (RoleModel role : roleMappings) {
-                for (RoleModel desiredRole : scopeMappings) {
-                    Set<RoleModel> visited = new HashSet<RoleModel>();
-                    applyScope(role, desiredRole, visited, requestedRoles);
+
+            if (fullScope) {
+                logger.debug("Using full scope for client");
+                requestedRoles = roleMappings;
+            } else {
+                Set<RoleModel> scopeMappings = new HashSet<>();
+                if (useTemplateScope) {
+                    logger.debug("Adding template scope mappings");
+                    scopeMappings.addAll(template.getScopeMappings());
+                }
+                scopeMappings.addAll(client.getRoles());
+                Set<RoleModel> clientScopeMappings = client.getScopeMappings();
+                scopeMappings.addAll(clientScopeMappings);
+                for (RoleModel role : roleMappings) {
+                    for (RoleModel desiredRole : scopeMappings) {
+                        Set<RoleModel> visited = new HashSet<RoleModel>();
+                        applyScope(role, desiredRole, visited, requestedRoles);
+                    }
                 }
             }
         }
+
         if (applyScopeParam) {
             Collection<String> scopeParamRoles;
             if (scopeParam != null) {
@@ -588,7 +611,7 @@ public class TokenManager {
         public AccessTokenResponseBuilder generateAccessToken() {
             UserModel user = userSession.getUser();
             String scopeParam = clientSession.getNote(OIDCLoginProtocol.SCOPE_PARAM);
-            Set<RoleModel> requestedRoles = getAccess(scopeParam, true, client, user);
+            Set<RoleModel> requestedRoles = getAccess(session, scopeParam, true, client, user);
             accessToken = createClientAccessToken(session, requestedRoles, realm, client, user, userSession, clientSession);
             return this;
         }
@@ -445,7 +445,7 @@ public class TokenEndpoint {
         UserSessionModel userSession = sessions.createUserSession(realm, clientUser, clientUsername, clientConnection.getRemoteAddr(), ServiceAccountConstants.CLIENT_AUTH, false, null, null);
         event.session(userSession);
 
-        TokenManager.attachClientSession(userSession, clientSession);
+        TokenManager.attachClientSession(session, userSession, clientSession);
 
         // Notes about client details
         userSession.setNote(ServiceAccountConstants.CLIENT_ID, client.getClientId());
@@ -20,6 +20,7 @@ package org.keycloak.services.managers;
 import org.keycloak.common.ClientConnection;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.KeycloakTransaction;
 import org.keycloak.models.RealmModel;
 import org.keycloak.models.UserModel;
 import org.keycloak.models.UsernameLoginFailureModel;
@@ -27,45 +28,84 @@ import org.keycloak.services.ServicesLogger;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * A single thread will log failures.  This is so that we can avoid concurrent writes as we want an accurate failure count
+ * Failures are logged by worker threads. Failures of the same user always go to the same worker, so we avoid concurrent
+ * writes as we want an accurate failure count, while failures of different users are logged in parallel.
+ *
+ * Request threads don't wait for the failure to be logged. Instead, checking whether the user is temporarily disabled
+ * waits for failures of this user queued on this node. Users found to be disabled are remembered locally for a short
+ * time, so repeated attempts don't need to read the login failure from the cluster.
+ *
+ * Optionally, login requests are also rate limited per remote address and realm. The limit is enforced on each node
+ * separately, see {@link TokenBucketRateLimiter}. It's enabled with the <code>rateLimitPerMinute</code> option and applies
+ * to all realms, also those without brute force detection.
  *
  * @author <a href="mailto:bill@burkecentral.com">Bill Burke</a>
  * @version $Revision: 1 $
  */
-public class DefaultBruteForceProtector implements Runnable, BruteForceProtector {
+public class DefaultBruteForceProtector implements BruteForceProtector {
     protected static ServicesLogger logger = ServicesLogger.ROOT_LOGGER;
 
-    protected volatile boolean run = true;
     protected int maxDeltaTimeSeconds = 60 * 60 * 12; // 12 hours
     protected KeycloakSessionFactory factory;
-    protected CountDownLatch shutdownLatch = new CountDownLatch(1);
 
-    protected volatile long failures;
+    protected final AtomicLong failures = new AtomicLong();
     protected volatile long lastFailure;
     protected volatile long totalTime;
 
-    protected LinkedBlockingQueue<LoginEvent> queue = new LinkedBlockingQueue<LoginEvent>();
     public static final int TRANSACTION_SIZE = 20;
+    public static final int DEFAULT_QUEUE_SIZE = 10000;
+    public static final long DEFAULT_NEAR_CACHE_MILLIS = 1000;
+    public static final long MAX_WAIT_MILLIS = 5000;
+    public static final int DEFAULT_RATE_LIMITER_MAX_KEYS = 100000;
+    public static final long MIN_LOCKOUTS_SWEEP_MILLIS = 1000;
+
+    protected final Worker[] workers;
+    protected final long nearCacheMillis;
+
+    // Null if rate limiting is disabled
+    protected final TokenBucketRateLimiter rateLimiter;
+
+    // Latest failure of the user queued on this node, which isn't logged yet
+    protected final ConcurrentMap<String, FailedLogin> pending = new ConcurrentHashMap<>();
+
+    // Users known to be temporarily disabled, expired lockouts are removed by the workers
+    protected final ConcurrentMap<String, Lockout> lockouts = new ConcurrentHashMap<>();
+    protected final AtomicLong nextLockoutsSweep = new AtomicLong();
+
+    protected final AtomicLong lockoutsCount = new AtomicLong();
+    protected final AtomicLong nearCacheHits = new AtomicLong();
 
 
     protected abstract class LoginEvent implements Comparable<LoginEvent> {
         protected final String realmId;
         protected final String username;
         protected final String ip;
+        protected final String key;
 
         protected LoginEvent(String realmId, String username, String ip) {
             this.realmId = realmId;
             this.username = username;
             this.ip = ip;
+            this.key = username != null ? key(realmId, username) : null;
         }
 
         @Override
         public int compareTo(LoginEvent o) {
+            if (username == null || o.username == null) {
+                return username == null ? (o.username == null ? 0 : 1) : -1;
+            }
             return username.compareTo(o.username);
         }
     }
@@ -84,8 +124,32 @@ public class DefaultBruteForceProtector implements Runnable, BruteForceProtector
         }
     }
 
+    protected static class Lockout {
+        protected final int notBefore;
+        protected final long expiration;
+
+        protected Lockout(int notBefore, long expiration) {
+            this.notBefore = notBefore;
+            this.expiration = expiration;
+        }
+
+        protected boolean isValid(long currentTime) {
+            return currentTime < expiration && (int) (currentTime / 1000) < notBefore;
+        }
+    }
+
     public DefaultBruteForceProtector(KeycloakSessionFactory factory) {
+        this(factory, Runtime.getRuntime().availableProcessors(), DEFAULT_QUEUE_SIZE, DEFAULT_NEAR_CACHE_MILLIS, null);
+    }
+
+    public DefaultBruteForceProtector(KeycloakSessionFactory factory, int workersCount, int queueSize, long nearCacheMillis, TokenBucketRateLimiter rateLimiter) {
         this.factory = factory;
+        this.nearCacheMillis = nearCacheMillis;
+        this.rateLimiter = rateLimiter;
+        this.workers = new Worker[Math.max(1, workersCount)];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Worker(i, queueSize);
+        }
     }
 
     public void failure(KeycloakSession session, LoginEvent event) {
@@ -130,11 +194,58 @@ public class DefaultBruteForceProtector implements Runnable, BruteForceProtector
                 int notBefore = (int) (currentTime / 1000) + waitSeconds;
                 logger.debugv("set notBefore: {0}", notBefore);
                 userLoginFailure.setFailedLoginNotBefore(notBefore);
+
+                // Remembered once the failure is committed, so it's visible before the pending failure is released
+                session.getTransaction().enlistAfterCompletion(new AddLockout(event.key, new Lockout(notBefore, currentTime + nearCacheMillis)));
             }
         }
     }
 
 
+    protected class AddLockout implements KeycloakTransaction {
+        protected final String key;
+        protected final Lockout lockout;
+        protected boolean active;
+        protected boolean rollbackOnly;
+
+        protected AddLockout(String key, Lockout lockout) {
+            this.key = key;
+            this.lockout = lockout;
+        }
+
+        @Override
+        public void begin() {
+            active = true;
+        }
+
+        @Override
+        public void commit() {
+            active = false;
+            lockouts.put(key, lockout);
+            lockoutsCount.incrementAndGet();
+        }
+
+        @Override
+        public void rollback() {
+            active = false;
+        }
+
+        @Override
+        public void setRollbackOnly() {
+            rollbackOnly = true;
+        }
+
+        @Override
+        public boolean getRollbackOnly() {
+            return rollbackOnly;
+        }
+
+        @Override
+        public boolean isActive() {
+            return active;
+        }
+    }
+
     protected UsernameLoginFailureModel getUserModel(KeycloakSession session, LoginEvent event) {
         RealmModel realm = getRealmModel(session, event);
         if (realm == null) return null;
@@ -150,70 +261,117 @@ public class DefaultBruteForceProtector implements Runnable, BruteForceProtector
     }
 
     public void start() {
-        new Thread(this, "Brute Force Protector").start();
+        for (Worker worker : workers) {
+            worker.start();
+        }
     }
 
     public void shutdown() {
-        run = false;
+        for (Worker worker : workers) {
+            worker.stop();
+        }
         try {
-            queue.offer(new ShutdownEvent());
-            shutdownLatch.await(10, TimeUnit.SECONDS);
+            for (Worker worker : workers) {
+                worker.shutdownLatch.await(10, TimeUnit.SECONDS);
+            }
         } catch (InterruptedException e) {
             throw new RuntimeException(e);
         }
     }
 
-    public void run() {
-        final ArrayList<LoginEvent> events = new ArrayList<LoginEvent>(TRANSACTION_SIZE + 1);
-        try {
-            while (run) {
-                try {
-                    LoginEvent take = queue.poll(2, TimeUnit.SECONDS);
-                    if (take == null) {
-                        continue;
-                    }
+    protected class Worker implements Runnable {
+
+        protected final BlockingQueue<LoginEvent> queue;
+        protected final CountDownLatch shutdownLatch = new CountDownLatch(1);
+        protected final String name;
+        protected volatile boolean run = true;
+
+        protected Worker(int index, int queueSize) {
+            this.queue = new LinkedBlockingQueue<LoginEvent>(queueSize);
+            this.name = "Brute Force Protector " + index;
+        }
+
+        protected void start() {
+            new Thread(this, name).start();
+        }
+
+        protected void stop() {
+            run = false;
+            queue.offer(new ShutdownEvent());
+        }
+
+        public void run() {
+            final ArrayList<LoginEvent> events = new ArrayList<LoginEvent>(TRANSACTION_SIZE + 1);
+            try {
+                while (run) {
                     try {
-                        events.add(take);
-                        queue.drainTo(events, TRANSACTION_SIZE);
-                        Collections.sort(events); // we sort to avoid deadlock due to ordered updates.  Maybe I'm overthinking this.
-                        KeycloakSession session = factory.create();
-                        session.getTransaction().begin();
+                        LoginEvent take = queue.poll(2, TimeUnit.SECONDS);
+                        removeExpiredLockouts(System.currentTimeMillis());
+                        if (take == null) {
+                            continue;
+                        }
                         try {
-                            for (LoginEvent event : events) {
-                                if (event instanceof FailedLogin) {
-                                    failure(session, event);
-                                } else if (event instanceof ShutdownEvent) {
-                                    run = false;
+                            events.add(take);
+                            queue.drainTo(events, TRANSACTION_SIZE);
+                            Collections.sort(events); // we sort to avoid deadlock due to ordered updates.  Maybe I'm overthinking this.
+                            KeycloakSession session = factory.create();
+                            session.getTransaction().begin();
+                            try {
+                                for (LoginEvent event : events) {
+                                    if (event instanceof FailedLogin) {
+                                        failure(session, event);
+                                    } else if (event instanceof ShutdownEvent) {
+                                        run = false;
+                                    }
                                 }
-                            }
-                            session.getTransaction().commit();
-                        } catch (Exception e) {
-                            session.getTransaction().rollback();
-                            throw e;
-                        } finally {
-                            for (LoginEvent event : events) {
-                                if (event instanceof FailedLogin) {
-                                    ((FailedLogin) event).latch.countDown();
+                                session.getTransaction().commit();
+                            } catch (Exception e) {
+                                session.getTransaction().rollback();
+                                throw e;
+                            } finally {
+                                for (LoginEvent event : events) {
+                                    if (event instanceof FailedLogin) {
+                                        pending.remove(event.key, event);
+                                        ((FailedLogin) event).latch.countDown();
+                                    }
                                 }
+                                events.clear();
+                                session.close();
                             }
-                            events.clear();
-                            session.close();
+                        } catch (Exception e) {
+                            logger.failedProcessingType(e);
                         }
-                    } catch (Exception e) {
-                        logger.failedProcessingType(e);
+                    } catch (InterruptedException e) {
+                        break;
                     }
-                } catch (InterruptedException e) {
-                    break;
                 }
+            } finally {
+                shutdownLatch.countDown();
+            }
+        }
+    }
+
+    /**
+     * Removes lockouts which aren't valid anymore, so users who don't try to log in again aren't remembered forever.
+     * Called by all workers, but runs at most once per near cache expiration.
+     */
+    protected void removeExpiredLockouts(long currentTime) {
+        long next = nextLockoutsSweep.get();
+        if (currentTime < next || !nextLockoutsSweep.compareAndSet(next, currentTime + Math.max(nearCacheMillis, MIN_LOCKOUTS_SWEEP_MILLIS))) {
+            return;
+        }
+
+        Iterator<Lockout> itr = lockouts.values().iterator();
+        while (itr.hasNext()) {
+            if (!itr.next().isValid(currentTime)) {
+                itr.remove();
             }
-        } finally {
-            shutdownLatch.countDown();
         }
     }
 
     protected void logFailure(LoginEvent event) {
         logger.loginFailure(event.username, event.ip);
-        failures++;
+        failures.incrementAndGet();
         long delta = 0;
         if (lastFailure > 0) {
             delta = System.currentTimeMillis() - lastFailure;
@@ -228,33 +386,108 @@ public class DefaultBruteForceProtector implements Runnable, BruteForceProtector
 
     @Override
     public void failedLogin(RealmModel realm, String username, ClientConnection clientConnection) {
+        FailedLogin event = new FailedLogin(realm.getId(), username, clientConnection.getRemoteAddr());
+        pending.put(event.key, event);
         try {
-            FailedLogin event = new FailedLogin(realm.getId(), username, clientConnection.getRemoteAddr());
-            queue.offer(event);
-            // wait a minimum of seconds for type to process so that a hacker
-            // cannot flood with failed logins and overwhelm the queue and not have notBefore updated to block next requests
-            // todo failure HTTP responses should be queued via async HTTP
-            event.latch.await(5, TimeUnit.SECONDS);
-
+            // Blocks just if the worker is that much behind, so a hacker cannot flood with failed logins and overwhelm the queue
+            getWorker(event.key).queue.put(event);
         } catch (InterruptedException e) {
+            pending.remove(event.key, event);
+            Thread.currentThread().interrupt();
         }
     }
 
     @Override
     public boolean isTemporarilyDisabled(KeycloakSession session, RealmModel realm, String username) {
+        String key = key(realm.getId(), username);
+
+        // wait for failures of the user, which are not processed yet, so that a hacker cannot try next password before notBefore is updated
+        FailedLogin pendingFailure = pending.get(key);
+        if (pendingFailure != null) {
+            try {
+                pendingFailure.latch.await(MAX_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        long currentTime = System.currentTimeMillis();
+
+        Lockout lockout = lockouts.get(key);
+        if (lockout != null) {
+            if (lockout.isValid(currentTime)) {
+                nearCacheHits.incrementAndGet();
+                return true;
+            }
+            lockouts.remove(key, lockout);
+        }
+
         UsernameLoginFailureModel failure = session.sessions().getUserLoginFailure(realm, username.toLowerCase());
         if (failure == null) {
             return false;
         }
 
-        int currTime = (int)(System.currentTimeMillis()/1000);
+        int currTime = (int)(currentTime/1000);
         if (currTime < failure.getFailedLoginNotBefore()) {
             logger.debugv("Current: {0} notBefore: {1}", currTime , failure.getFailedLoginNotBefore());
+            lockouts.put(key, new Lockout(failure.getFailedLoginNotBefore(), currentTime + nearCacheMillis));
             return true;
         }
         return false;
     }
 
+    @Override
+    public boolean isRateLimited(RealmModel realm, ClientConnection clientConnection) {
+        if (rateLimiter == null || clientConnection == null) {
+            return false;
+        }
+        return !rateLimiter.tryAcquire(realm.getId() + "/" + clientConnection.getRemoteAddr());
+    }
+
+    @Override
+    public void loginFailuresCleared(RealmModel realm, String username) {
+        lockouts.remove(key(realm.getId(), username));
+    }
+
+    @Override
+    public void loginFailuresCleared(RealmModel realm) {
+        String prefix = realm.getId() + "/";
+        Iterator<String> itr = lockouts.keySet().iterator();
+        while (itr.hasNext()) {
+            if (itr.next().startsWith(prefix)) {
+                itr.remove();
+            }
+        }
+    }
+
+    protected Worker getWorker(String key) {
+        return workers[(key.hashCode() & Integer.MAX_VALUE) % workers.length];
+    }
+
+    protected static String key(String realmId, String username) {
+        return realmId + "/" + username.toLowerCase();
+    }
+
+    public Map<String, String> getOperationalInfo() {
+        int queueDepth = 0;
+        for (Worker worker : workers) {
+            queueDepth += worker.queue.size();
+        }
+
+        Map<String, String> info = new LinkedHashMap<>();
+        info.put("workers", String.valueOf(workers.length));
+        info.put("queueDepth", String.valueOf(queueDepth));
+        info.put("failures", String.valueOf(failures.get()));
+        info.put("lockouts", String.valueOf(lockoutsCount.get()));
+        info.put("lockedUsers", String.valueOf(lockouts.size()));
+        info.put("nearCacheHits", String.valueOf(nearCacheHits.get()));
+        if (rateLimiter != null) {
+            info.put("rateLimited", String.valueOf(rateLimiter.getRejected()));
+            info.put("rateLimiterKeys", String.valueOf(rateLimiter.getKeysCount()));
+        }
+        return info;
+    }
+
     @Override
     public void close() {
 
@@ -20,14 +20,24 @@ package org.keycloak.services.managers;
 import org.keycloak.Config;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.provider.ServerInfoAwareProviderFactory;
+
+import java.util.Map;
 
 /**
  * @author <a href="mailto:bill@burkecentral.com">Bill Burke</a>
  * @version $Revision: 1 $
  */
-public class DefaultBruteForceProtectorFactory implements BruteForceProtectorFactory {
+public class DefaultBruteForceProtectorFactory implements BruteForceProtectorFactory, ServerInfoAwareProviderFactory {
     DefaultBruteForceProtector protector;
 
+    private int workers;
+    private int queueSize;
+    private long nearCacheMillis;
+    private int rateLimitPerMinute;
+    private int rateLimitBurst;
+    private int rateLimitMaxKeys;
+
     @Override
     public BruteForceProtector create(KeycloakSession session) {
         return protector;
@@ -35,12 +45,22 @@ public class DefaultBruteForceProtectorFactory implements BruteForceProtectorFac
 
     @Override
     public void init(Config.Scope config) {
-
+        workers = config.getInt("workers", Runtime.getRuntime().availableProcessors());
+        queueSize = config.getInt("queueSize", DefaultBruteForceProtector.DEFAULT_QUEUE_SIZE);
+        nearCacheMillis = config.getLong("nearCacheMillis", DefaultBruteForceProtector.DEFAULT_NEAR_CACHE_MILLIS);
+        rateLimitPerMinute = config.getInt("rateLimitPerMinute", 0);
+        rateLimitBurst = config.getInt("rateLimitBurst", rateLimitPerMinute);
+        rateLimitMaxKeys = config.getInt("rateLimitMaxKeys", DefaultBruteForceProtector.DEFAULT_RATE_LIMITER_MAX_KEYS);
     }
 
     @Override
     public void postInit(KeycloakSessionFactory factory) {
-        protector = new DefaultBruteForceProtector(factory);
+        TokenBucketRateLimiter rateLimiter = null;
+        if (rateLimitPerMinute > 0) {
+            rateLimiter = new TokenBucketRateLimiter(rateLimitPerMinute, Math.max(1, rateLimitBurst), rateLimitMaxKeys);
+        }
+
+        protector = new DefaultBruteForceProtector(factory, workers, queueSize, nearCacheMillis, rateLimiter);
         protector.start();
 
     }
@@ -55,4 +75,9 @@ public class DefaultBruteForceProtectorFactory implements BruteForceProtectorFac
     public String getId() {
         return "default-brute-force-detector";
     }
+
+    @Override
+    public Map<String, String> getOperationalInfo() {
+        return protector != null ? protector.getOperationalInfo() : null;
+    }
 }
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.services.managers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local token bucket per key. Every key may do <code>burst</code> requests at once, and then <code>permitsPerMinute</code>
+ * requests per minute.
+ *
+ * Buckets are kept just on this node, so in a cluster a key may do one burst per node. To keep memory bounded, full
+ * (idle) buckets are dropped once there are <code>maxKeys</code> of them, then the least recently used buckets which
+ * still have permits left. Throttled buckets are never dropped, so a key can't get a new burst by making others create
+ * buckets. If all buckets are throttled, requests of new keys are rejected until buckets refill.
+ */
+public class TokenBucketRateLimiter {
+
+    private static final long NANOS_PER_MINUTE = TimeUnit.MINUTES.toNanos(1);
+
+    private final ConcurrentMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+    private final AtomicLong rejected = new AtomicLong();
+
+    private final double permitsPerNano;
+    private final int burst;
+    private final int maxKeys;
+
+    public TokenBucketRateLimiter(int permitsPerMinute, int burst, int maxKeys) {
+        this.permitsPerNano = (double) permitsPerMinute / NANOS_PER_MINUTE;
+        this.burst = burst;
+        this.maxKeys = maxKeys;
+    }
+
+    /**
+     * @return false if the key is over its rate
+     */
+    public boolean tryAcquire(String key) {
+        return tryAcquire(key, System.nanoTime());
+    }
+
+    public boolean tryAcquire(String key, long currentTimeNanos) {
+        Bucket bucket = buckets.get(key);
+        if (bucket == null) {
+            if (buckets.size() >= maxKeys) {
+                evict(currentTimeNanos);
+
+                if (buckets.size() >= maxKeys) {
+                    rejected.incrementAndGet();
+                    return false;
+                }
+            }
+
+            bucket = new Bucket(burst, currentTimeNanos);
+            Bucket existing = buckets.putIfAbsent(key, bucket);
+            if (existing != null) {
+                bucket = existing;
+            }
+        }
+
+        if (bucket.tryAcquire(currentTimeNanos)) {
+            return true;
+        }
+        rejected.incrementAndGet();
+        return false;
+    }
+
+    private void evict(long currentTimeNanos) {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            List<EvictionCandidate> evictable = new ArrayList<>();
+            Iterator<Map.Entry<String, Bucket>> itr = buckets.entrySet().iterator();
+            while (itr.hasNext()) {
+                Map.Entry<String, Bucket> entry = itr.next();
+                Bucket bucket = entry.getValue();
+                if (bucket.isFull(currentTimeNanos)) {
+                    itr.remove();
+                } else if (!bucket.isThrottled(currentTimeNanos)) {
+                    evictable.add(new EvictionCandidate(entry.getKey(), bucket));
+                }
+            }
+
+            // Leave some room, so not every new key has to evict
+            int target = maxKeys - Math.max(1, maxKeys / 10);
+            if (buckets.size() > target) {
+                Collections.sort(evictable);
+                for (EvictionCandidate candidate : evictable) {
+                    if (buckets.size() <= target) {
+                        break;
+                    }
+                    buckets.remove(candidate.key, candidate.bucket);
+                }
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    public int getKeysCount() {
+        return buckets.size();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    private class Bucket {
+
+        private double tokens;
+        private long lastRefill;
+        private volatile long lastAccess;
+
+        private Bucket(double tokens, long lastRefill) {
+            this.tokens = tokens;
+            this.lastRefill = lastRefill;
+            this.lastAccess = lastRefill;
+        }
+
+        private synchronized boolean tryAcquire(long currentTimeNanos) {
+            lastAccess = currentTimeNanos;
+            refill(currentTimeNanos);
+            if (tokens < 1) {
+                return false;
+            }
+            tokens--;
+            return true;
+        }
+
+        private synchronized boolean isFull(long currentTimeNanos) {
+            refill(currentTimeNanos);
+            return tokens >= burst;
+        }
+
+        private synchronized boolean isThrottled(long currentTimeNanos) {
+            refill(currentTimeNanos);
+            return tokens < 1;
+        }
+
+        private void refill(long currentTimeNanos) {
+            long elapsed = currentTimeNanos - lastRefill;
+            if (elapsed > 0) {
+                tokens = Math.min(burst, tokens + elapsed * permitsPerNano);
+                lastRefill = currentTimeNanos;
+            }
+        }
+
+    }
+
+    private static class EvictionCandidate implements Comparable<EvictionCandidate> {
+
+        private final String key;
+        private final Bucket bucket;
+        private final long lastAccess;
+
+        private EvictionCandidate(String key, Bucket bucket) {
+            this.key = key;
+            this.bucket = bucket;
+            this.lastAccess = bucket.lastAccess;
+        }
+
+        @Override
+        public int compareTo(EvictionCandidate o) {
+            return Long.compare(lastAccess, o.lastAccess);
+        }
+
+    }
+
+}
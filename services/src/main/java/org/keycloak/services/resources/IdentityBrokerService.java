@@ -512,7 +512,7 @@ public class IdentityBrokerService implements IdentityProvider.AuthenticationCal
         this.event.user(federatedUser);
         this.event.session(userSession);
 
-        TokenManager.attachClientSession(userSession, clientSession);
+        TokenManager.attachClientSession(session, userSession, clientSession);
         context.getIdp().attachUserSession(userSession, clientSession, context);
         userSession.setNote(Details.IDENTITY_PROVIDER, providerId);
         userSession.setNote(Details.IDENTITY_PROVIDER_USERNAME, context.getUsername());
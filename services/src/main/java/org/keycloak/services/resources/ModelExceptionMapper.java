@@ -21,6 +21,7 @@ import javax.ws.rs.core.Response;
 import javax.ws.rs.ext.ExceptionMapper;
 import javax.ws.rs.ext.Provider;
 
+import org.keycloak.hash.PasswordHashRejectedException;
 import org.keycloak.messages.MessagesProvider;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.ModelException;
@@ -43,6 +44,11 @@ public class ModelExceptionMapper implements ExceptionMapper<ModelException> {
         String message = session.getProvider(MessagesProvider.class, "admin")
                 .getMessage(ex.getMessage(), ex.getParameters());
 
+        if (ex instanceof PasswordHashRejectedException) {
+            logger.debug(message);
+            return ErrorResponse.error(message, Response.Status.SERVICE_UNAVAILABLE);
+        }
+
         logger.error(message, ex);
         return ErrorResponse.error(message, Response.Status.BAD_REQUEST);
     }
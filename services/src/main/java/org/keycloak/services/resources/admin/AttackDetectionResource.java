@@ -113,6 +113,7 @@ public class AttackDetectionResource {
         UsernameLoginFailureModel model = session.sessions().getUserLoginFailure(realm, username.toLowerCase());
         if (model != null) {
             session.sessions().removeUserLoginFailure(realm, username);
+            session.getProvider(BruteForceProtector.class).loginFailuresCleared(realm, username);
             adminEvent.operation(OperationType.DELETE).success();
         }
     }
@@ -128,6 +129,7 @@ public class AttackDetectionResource {
     public void clearAllBruteForce() {
         auth.requireManage();
         session.sessions().removeAllUserLoginFailures(realm);
+        session.getProvider(BruteForceProtector.class).loginFailuresCleared(realm);
         adminEvent.operation(OperationType.DELETE).success();
     }
 
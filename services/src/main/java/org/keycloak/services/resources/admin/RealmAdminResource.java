@@ -360,7 +360,8 @@ public class RealmAdminResource {
      * Get client session stats
      *
      * Returns a JSON map.  The key is the client id, the value is the number of sessions that currently are active
-     * with that client.  Only clients that actually have a session associated with them will be in this map.
+     * with that client and the number of its offline sessions.  Only clients that actually have a session associated
+     * with them will be in this map.
      *
      * @return
      */
@@ -373,11 +374,13 @@ public class RealmAdminResource {
         List<Map<String, String>> data = new LinkedList<Map<String, String>>();
         for (ClientModel client : realm.getClients()) {
             long size = session.sessions().getActiveUserSessions(client.getRealm(), client);
-            if (size == 0) continue;
+            long offline = session.sessions().getOfflineSessionsCount(client.getRealm(), client);
+            if (size == 0 && offline == 0) continue;
             Map<String, String> map = new HashMap<>();
             map.put("id", client.getId());
             map.put("clientId", client.getClientId());
             map.put("active", size + "");
+            map.put("offline", offline + "");
             data.add(map);
         }
         return data;
@@ -758,6 +761,29 @@ public class RealmAdminResource {
         }
     }
 
+    /**
+     * Get realm cache size
+     *
+     * Returns a JSON map with the estimated memory in bytes retained by the realm cache for this realm. Computing the
+     * estimate walks all cached entries, so it shouldn't be called frequently.
+     *
+     * @return
+     */
+    @Path("realm-cache-size")
+    @GET
+    @NoCache
+    @Produces(MediaType.APPLICATION_JSON)
+    public Map<String, Long> getRealmCacheSize() {
+        auth.requireView();
+        Map<String, Long> data = new HashMap<>();
+        CacheRealmProvider cache = session.getProvider(CacheRealmProvider.class);
+        if (cache != null) {
+            Long size = cache.getRealmCacheSizes().get(realm.getId());
+            data.put("size", size != null ? size : 0L);
+        }
+        return data;
+    }
+
     /**
      * Clear user cache
      *
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.keycloak.services.managers.TokenBucketRateLimiter;
+
+import java.util.concurrent.TimeUnit;
+
+public class TokenBucketRateLimiterTest {
+
+    @Test
+    public void testBurstAndRefill() {
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(60, 3, 100);
+        long time = 0;
+
+        Assert.assertTrue(limiter.tryAcquire("realm/127.0.0.1", time));
+        Assert.assertTrue(limiter.tryAcquire("realm/127.0.0.1", time));
+        Assert.assertTrue(limiter.tryAcquire("realm/127.0.0.1", time));
+        Assert.assertFalse(limiter.tryAcquire("realm/127.0.0.1", time));
+
+        // Other keys have their own buckets
+        Assert.assertTrue(limiter.tryAcquire("realm/127.0.0.2", time));
+        Assert.assertTrue(limiter.tryAcquire("other/127.0.0.1", time));
+
+        // One permit per second
+        time += TimeUnit.MILLISECONDS.toNanos(500);
+        Assert.assertFalse(limiter.tryAcquire("realm/127.0.0.1", time));
+        time += TimeUnit.MILLISECONDS.toNanos(500);
+        Assert.assertTrue(limiter.tryAcquire("realm/127.0.0.1", time));
+        Assert.assertFalse(limiter.tryAcquire("realm/127.0.0.1", time));
+
+        // Never more than burst
+        time += TimeUnit.MINUTES.toNanos(1);
+        for (int i = 0; i < 3; i++) {
+            Assert.assertTrue(limiter.tryAcquire("realm/127.0.0.1", time));
+        }
+        Assert.assertFalse(limiter.tryAcquire("realm/127.0.0.1", time));
+
+        Assert.assertEquals(4, limiter.getRejected());
+    }
+
+    @Test
+    public void testIdleKeysEvicted() {
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(60, 2, 10);
+
+        for (int i = 0; i < 9; i++) {
+            limiter.tryAcquire("key-" + i, 0);
+        }
+        limiter.tryAcquire("busy", 0);
+        limiter.tryAcquire("busy", 0);
+        Assert.assertEquals(10, limiter.getKeysCount());
+
+        // Buckets refilled in the meantime are dropped once there are too many keys, the others are kept
+        long time = TimeUnit.MINUTES.toNanos(1);
+        limiter.tryAcquire("busy", time);
+        limiter.tryAcquire("busy", time);
+        limiter.tryAcquire("new", time);
+        Assert.assertEquals(2, limiter.getKeysCount());
+        Assert.assertFalse(limiter.tryAcquire("busy", time));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEvicted() {
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(60, 3, 10);
+
+        for (int i = 0; i < 10; i++) {
+            limiter.tryAcquire("key-" + i, i);
+        }
+        limiter.tryAcquire("key-0", 10);
+
+        // None of the buckets is full, so the least recently used one is dropped, but not key-0 used last
+        Assert.assertTrue(limiter.tryAcquire("new", 11));
+        Assert.assertEquals(10, limiter.getKeysCount());
+        Assert.assertTrue(limiter.tryAcquire("key-0", 12));
+        Assert.assertFalse(limiter.tryAcquire("key-0", 12));
+    }
+
+    @Test
+    public void testThrottledKeysNotEvicted() {
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(60, 1, 10);
+
+        for (int i = 0; i < 10; i++) {
+            limiter.tryAcquire("key-" + i, 0);
+        }
+
+        // All buckets are throttled, so new keys are rejected instead of resetting the limits of others
+        Assert.assertFalse(limiter.tryAcquire("new", 0));
+        Assert.assertEquals(10, limiter.getKeysCount());
+        Assert.assertFalse(limiter.tryAcquire("key-0", 0));
+
+        // Once buckets refill there is room again
+        Assert.assertTrue(limiter.tryAcquire("new", TimeUnit.SECONDS.toNanos(1)));
+    }
+
+}
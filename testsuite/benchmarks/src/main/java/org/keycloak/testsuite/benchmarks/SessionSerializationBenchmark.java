@@ -0,0 +1,202 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.keycloak.testsuite.benchmarks;
+
+import org.infinispan.commons.marshall.Externalizer;
+import org.keycloak.models.ClientSessionModel;
+import org.keycloak.models.UserSessionModel;
+import org.keycloak.models.sessions.infinispan.entities.ClientSessionEntity;
+import org.keycloak.models.sessions.infinispan.entities.UserSessionEntity;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Marshalling user and client sessions with their externalizers compared to default Java serialization, as done when
+ * sessions are replicated between nodes
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SessionSerializationBenchmark {
+
+    private final UserSessionEntity.ExternalizerImpl userSessionExternalizer = new UserSessionEntity.ExternalizerImpl();
+    private final ClientSessionEntity.ExternalizerImpl clientSessionExternalizer = new ClientSessionEntity.ExternalizerImpl();
+
+    private UserSessionEntity userSession;
+    private ClientSessionEntity clientSession;
+
+    private byte[] serializedUserSession;
+    private byte[] externalizedUserSession;
+    private byte[] serializedClientSession;
+    private byte[] externalizedClientSession;
+
+    @Setup
+    public void setup() throws Exception {
+        userSession = createUserSession();
+        clientSession = createClientSession();
+
+        serializedUserSession = serialize(userSession);
+        externalizedUserSession = externalize(userSessionExternalizer, userSession);
+        serializedClientSession = serialize(clientSession);
+        externalizedClientSession = externalize(clientSessionExternalizer, clientSession);
+    }
+
+    @Benchmark
+    public byte[] writeUserSessionSerialization() throws Exception {
+        return serialize(userSession);
+    }
+
+    @Benchmark
+    public byte[] writeUserSessionExternalizer() throws Exception {
+        return externalize(userSessionExternalizer, userSession);
+    }
+
+    @Benchmark
+    public Object readUserSessionSerialization() throws Exception {
+        return deserialize(serializedUserSession);
+    }
+
+    @Benchmark
+    public Object readUserSessionExternalizer() throws Exception {
+        return internalize(userSessionExternalizer, externalizedUserSession);
+    }
+
+    @Benchmark
+    public byte[] writeClientSessionSerialization() throws Exception {
+        return serialize(clientSession);
+    }
+
+    @Benchmark
+    public byte[] writeClientSessionExternalizer() throws Exception {
+        return externalize(clientSessionExternalizer, clientSession);
+    }
+
+    @Benchmark
+    public Object readClientSessionSerialization() throws Exception {
+        return deserialize(serializedClientSession);
+    }
+
+    @Benchmark
+    public Object readClientSessionExternalizer() throws Exception {
+        return internalize(clientSessionExternalizer, externalizedClientSession);
+    }
+
+    // Java serialization ignores @SerializeWith, so writeObject uses the default serialization of the entity
+    private static byte[] serialize(Object object) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream output = new ObjectOutputStream(bytes);
+        output.writeObject(object);
+        output.close();
+        return bytes.toByteArray();
+    }
+
+    private static Object deserialize(byte[] bytes) throws Exception {
+        ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(bytes));
+        return input.readObject();
+    }
+
+    private static <T> byte[] externalize(Externalizer<T> externalizer, T object) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream output = new ObjectOutputStream(bytes);
+        externalizer.writeObject(output, object);
+        output.close();
+        return bytes.toByteArray();
+    }
+
+    private static <T> T internalize(Externalizer<T> externalizer, byte[] bytes) throws Exception {
+        ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(bytes));
+        return externalizer.readObject(input);
+    }
+
+    static UserSessionEntity createUserSession() {
+        UserSessionEntity session = new UserSessionEntity();
+        session.setId("8f3d3f0e-3d5c-4b5a-9b5e-0c4a5d6e7f80");
+        session.setRealm("benchmark");
+        session.setUser("a1b2c3d4-e5f6-4711-8899-aabbccddeeff");
+        session.setLoginUsername("user-0");
+        session.setIpAddress("127.0.0.1");
+        session.setAuthMethod("openid-connect");
+        session.setRememberMe(false);
+        session.setStarted(1460000000);
+        session.setLastSessionRefresh(1460000300);
+        session.setState(UserSessionModel.State.LOGGED_IN);
+
+        Set<String> clientSessions = new HashSet<>();
+        clientSessions.add("0a1b2c3d-4e5f-4711-8899-aabbccddee01");
+        clientSessions.add("0a1b2c3d-4e5f-4711-8899-aabbccddee02");
+        session.setClientSessions(clientSessions);
+
+        Map<String, String> notes = new HashMap<>();
+        notes.put("AUTH_TIME", "1460000000");
+        session.setNotes(notes);
+        return session;
+    }
+
+    static ClientSessionEntity createClientSession() {
+        ClientSessionEntity session = new ClientSessionEntity();
+        session.setId("0a1b2c3d-4e5f-4711-8899-aabbccddee01");
+        session.setRealm("benchmark");
+        session.setClient("c1d2e3f4-a5b6-4711-8899-aabbccddee99");
+        session.setUserSession("8f3d3f0e-3d5c-4b5a-9b5e-0c4a5d6e7f80");
+        session.setAuthMethod("openid-connect");
+        session.setRedirectUri("http://localhost:8080/app");
+        session.setTimestamp(1460000300);
+        session.setAction("CODE_TO_TOKEN");
+        session.setAuthUserId("a1b2c3d4-e5f6-4711-8899-aabbccddeeff");
+
+        Set<String> roles = new HashSet<>();
+        for (int i = 0; i < 10; i++) {
+            roles.add("role-" + i);
+        }
+        session.setRoles(roles);
+
+        Map<String, String> notes = new HashMap<>();
+        notes.put("scope", "openid");
+        notes.put("response_type", "code");
+        notes.put("redirect_uri", "http://localhost:8080/app");
+        session.setNotes(notes);
+        session.setUserSessionNotes(new HashMap<String, String>());
+
+        Map<String, ClientSessionModel.ExecutionStatus> status = new HashMap<>();
+        status.put("auth-username-password-form", ClientSessionModel.ExecutionStatus.SUCCESS);
+        session.setAuthenticatorStatus(status);
+        return session;
+    }
+
+}
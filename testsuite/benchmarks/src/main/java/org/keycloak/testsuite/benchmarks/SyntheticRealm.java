@@ -0,0 +1,159 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.keycloak.testsuite.benchmarks;
+
+import org.keycloak.models.ClientModel;
+import org.keycloak.models.GroupModel;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.RoleModel;
+import org.keycloak.models.UserModel;
+import org.keycloak.models.utils.KeycloakModelUtils;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * In-memory realm with layered composite roles, so role expansion can be measured without a database. Every
+ * {@link #FAN_OUT} roles of a layer are composites of one role of the layer above, up to a single top role.
+ *
+ * The user is mapped to the top role and is member of a group mapped to the first composite role. The client isn't
+ * full scope and has every other role of the bottom layer in scope.
+ */
+public class SyntheticRealm {
+
+    public static final int FAN_OUT = 10;
+
+    private final Map<String, RoleModel> roles = new HashMap<>();
+    private final Map<String, Set<RoleModel>> composites = new HashMap<>();
+
+    private final RealmModel realm;
+    private final ClientModel client;
+    private final UserModel user;
+    private final GroupModel group;
+
+    public SyntheticRealm(String name, int roleCount) {
+        realm = model(RealmModel.class, name, new HashMap<String, Object>());
+
+        List<RoleModel> layer = new ArrayList<>();
+        Set<RoleModel> scopeMappings = new HashSet<>();
+        for (int i = 0; i < roleCount; i++) {
+            RoleModel role = role("role-" + i, Collections.<RoleModel>emptyList());
+            layer.add(role);
+            if (i % 2 == 0) {
+                scopeMappings.add(role);
+            }
+        }
+
+        int level = 0;
+        while (layer.size() > 1) {
+            List<RoleModel> parents = new ArrayList<>();
+            for (int i = 0; i < layer.size(); i += FAN_OUT) {
+                parents.add(role("composite-" + level + "-" + parents.size(), layer.subList(i, Math.min(i + FAN_OUT, layer.size()))));
+            }
+            layer = parents;
+            level++;
+        }
+        RoleModel top = layer.get(0);
+
+        Map<String, Object> clientValues = new HashMap<>();
+        clientValues.put("getRealm", realm);
+        clientValues.put("getRoles", Collections.<RoleModel>emptySet());
+        clientValues.put("getScopeMappings", scopeMappings);
+        client = model(ClientModel.class, "client", clientValues);
+
+        Map<String, Object> groupValues = new HashMap<>();
+        groupValues.put("getRoleMappings", Collections.singleton(roles.get("composite-0-0")));
+        group = model(GroupModel.class, "group", groupValues);
+
+        Map<String, Object> userValues = new HashMap<>();
+        userValues.put("getUsername", "user");
+        userValues.put("getRoleMappings", Collections.singleton(top));
+        userValues.put("getGroups", Collections.singleton(group));
+        user = model(UserModel.class, "user", userValues);
+    }
+
+    public RealmModel getRealm() {
+        return realm;
+    }
+
+    public ClientModel getClient() {
+        return client;
+    }
+
+    public UserModel getUser() {
+        return user;
+    }
+
+    public GroupModel getGroup() {
+        return group;
+    }
+
+    public int getRoleCount() {
+        return roles.size();
+    }
+
+    private RoleModel role(String id, List<RoleModel> roleComposites) {
+        composites.put(id, new HashSet<>(roleComposites));
+
+        RoleModel role = model(RoleModel.class, id, new HashMap<String, Object>());
+        roles.put(id, role);
+        return role;
+    }
+
+    private <T> T model(Class<T> type, final String id, final Map<String, Object> values) {
+        return type.cast(Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { type }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                switch (method.getName()) {
+                    case "getId":
+                    case "getName":
+                    case "getClientId":
+                        return id;
+                    case "isComposite":
+                        return !composites.get(id).isEmpty();
+                    case "getComposites":
+                        return composites.get(id);
+                    case "hasRole":
+                        return proxy.equals(args[0]) || KeycloakModelUtils.searchFor((RoleModel) args[0], (RoleModel) proxy, new HashSet<RoleModel>());
+                    case "getRoleById":
+                        return roles.get(args[0]);
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return id.hashCode();
+                    case "toString":
+                        return id;
+                    default:
+                        Object value = values.get(method.getName());
+                        if (value == null && method.getReturnType() == boolean.class) {
+                            return false;
+                        }
+                        return value;
+                }
+            }
+        }));
+    }
+
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.keycloak.testsuite.benchmarks;
+
+import org.keycloak.models.GroupModel;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RoleModel;
+import org.keycloak.models.cache.EffectiveRoleCache;
+import org.keycloak.protocol.oidc.TokenManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolving roles of a user in scope of a client, as done for every issued token, on a {@link SyntheticRealm}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenAccessBenchmark {
+
+    @Param({"100", "1000"})
+    private int roleCount;
+
+    private SyntheticRealm realm;
+    private EffectiveRoleCache effectiveRoleCache;
+
+    @Setup
+    public void setup() {
+        realm = new SyntheticRealm("benchmark", roleCount);
+        effectiveRoleCache = new EffectiveRoleCache();
+    }
+
+    /**
+     * Walks composite roles of the scope for every request, as without the realm cache
+     */
+    @Benchmark
+    public Set<RoleModel> getAccess() {
+        return TokenManager.getAccess((KeycloakSession) null, null, false, realm.getClient(), realm.getUser());
+    }
+
+    /**
+     * Intersects cached role closures, as with the realm cache
+     */
+    @Benchmark
+    public Set<RoleModel> getAccessCached() {
+        Set<RoleModel> mappings = realm.getUser().getRoleMappings();
+        Set<GroupModel> groups = realm.getUser().getGroups();
+        return effectiveRoleCache.getScopedRoles(realm.getRealm(), realm.getClient(), mappings, groups);
+    }
+
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.keycloak.testsuite.benchmarks;
+
+import org.keycloak.RSATokenVerifier;
+import org.keycloak.common.util.Time;
+import org.keycloak.jose.jws.JWSBuilder;
+import org.keycloak.representations.AccessToken;
+import org.keycloak.util.TokenUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Signing and verifying access tokens with RS256, as done for every issued token and every bearer token request
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenSignatureBenchmark {
+
+    static final String REALM_URL = "http://localhost:8080/auth/realms/benchmark";
+
+    private KeyPair keyPair;
+    private AccessToken token;
+    private String encodedToken;
+
+    @Setup
+    public void setup() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        keyPair = generator.generateKeyPair();
+
+        token = createAccessToken();
+        encodedToken = new JWSBuilder().jsonContent(token).rsa256(keyPair.getPrivate());
+    }
+
+    @Benchmark
+    public String sign() {
+        return new JWSBuilder().jsonContent(token).rsa256(keyPair.getPrivate());
+    }
+
+    @Benchmark
+    public AccessToken verify() throws Exception {
+        return RSATokenVerifier.verifyToken(encodedToken, keyPair.getPublic(), REALM_URL);
+    }
+
+    /**
+     * Access token of a typical size, with a handful of realm and client roles
+     */
+    static AccessToken createAccessToken() {
+        AccessToken token = new AccessToken();
+        token.id("2d4a7e2e-6bb1-4e4c-9e1b-0c2d8a4f7f11");
+        token.issuer(REALM_URL);
+        token.subject("8c1a5e3f-1f2b-4d6e-a7c8-9b0d1e2f3a4b");
+        token.issuedFor("benchmark-app");
+        token.type(TokenUtil.TOKEN_TYPE_BEARER);
+        token.issuedNow();
+        token.expiration(Time.currentTime() + 3600);
+        token.clientSession("5f6e7d8c-9b0a-4c1d-8e2f-3a4b5c6d7e8f");
+        token.setSessionState("0a1b2c3d-4e5f-4a6b-8c7d-9e0f1a2b3c4d");
+        token.setPreferredUsername("benchmark-user");
+        token.setEmail("benchmark-user@keycloak.org");
+        token.setName("Benchmark User");
+
+        AccessToken.Access realmAccess = new AccessToken.Access();
+        for (int i = 0; i < 5; i++) {
+            realmAccess.addRole("realm-role-" + i);
+        }
+        token.setRealmAccess(realmAccess);
+
+        for (int i = 0; i < 3; i++) {
+            AccessToken.Access clientAccess = token.addAccess("client-" + i);
+            for (int j = 0; j < 3; j++) {
+                clientAccess.addRole("client-role-" + j);
+            }
+        }
+        return token;
+    }
+
+}
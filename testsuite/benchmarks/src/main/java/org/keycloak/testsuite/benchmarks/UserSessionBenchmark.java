@@ -0,0 +1,187 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.keycloak.testsuite.benchmarks;
+
+import org.infinispan.Cache;
+import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.infinispan.configuration.global.GlobalConfigurationBuilder;
+import org.infinispan.manager.DefaultCacheManager;
+import org.keycloak.connections.infinispan.InfinispanConnectionProvider;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakTransactionManager;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.UserModel;
+import org.keycloak.models.UserSessionModel;
+import org.keycloak.models.sessions.infinispan.InfinispanUserSessionProvider;
+import org.keycloak.models.sessions.infinispan.entities.LoginFailureEntity;
+import org.keycloak.models.sessions.infinispan.entities.LoginFailureKey;
+import org.keycloak.models.sessions.infinispan.entities.SessionEntity;
+import org.keycloak.models.sessions.infinispan.index.SessionIndex;
+import org.keycloak.models.sessions.infinispan.index.SessionIndexListener;
+import org.keycloak.services.DefaultKeycloakTransactionManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creating, looking up and removing user sessions with {@link InfinispanUserSessionProvider} on an embedded local
+ * cache. Every operation runs in its own transaction, like a request does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserSessionBenchmark {
+
+    @Param({"10000"})
+    private int existingSessions;
+
+    private DefaultCacheManager cacheManager;
+    private Cache<String, SessionEntity> sessionCache;
+    private Cache<String, SessionEntity> offlineSessionCache;
+    private Cache<LoginFailureKey, LoginFailureEntity> loginFailureCache;
+    private SessionIndex sessionIndex;
+    private SessionIndex offlineSessionIndex;
+
+    private RealmModel realm;
+    private UserModel user;
+    private String[] sessionIds;
+
+    @Setup
+    public void setup() {
+        GlobalConfigurationBuilder gcb = new GlobalConfigurationBuilder();
+        gcb.globalJmxStatistics().allowDuplicateDomains(true);
+        cacheManager = new DefaultCacheManager(gcb.build());
+
+        ConfigurationBuilder cb = new ConfigurationBuilder();
+        cacheManager.defineConfiguration(InfinispanConnectionProvider.SESSION_CACHE_NAME, cb.build());
+        cacheManager.defineConfiguration(InfinispanConnectionProvider.OFFLINE_SESSION_CACHE_NAME, cb.build());
+        cacheManager.defineConfiguration(InfinispanConnectionProvider.LOGIN_FAILURE_CACHE_NAME, cb.build());
+
+        sessionCache = cacheManager.getCache(InfinispanConnectionProvider.SESSION_CACHE_NAME);
+        offlineSessionCache = cacheManager.getCache(InfinispanConnectionProvider.OFFLINE_SESSION_CACHE_NAME);
+        loginFailureCache = cacheManager.getCache(InfinispanConnectionProvider.LOGIN_FAILURE_CACHE_NAME);
+
+        sessionIndex = new SessionIndex();
+        offlineSessionIndex = new SessionIndex();
+        sessionCache.addListener(new SessionIndexListener(sessionIndex));
+        offlineSessionCache.addListener(new SessionIndexListener(offlineSessionIndex));
+
+        SyntheticRealm syntheticRealm = new SyntheticRealm("benchmark", 1);
+        realm = syntheticRealm.getRealm();
+        user = syntheticRealm.getUser();
+
+        populate();
+    }
+
+    /**
+     * Drops sessions added by {@link #createUserSession()}, so the cache doesn't keep growing between iterations
+     */
+    @TearDown(Level.Iteration)
+    public void reset() {
+        sessionCache.clear();
+        sessionIndex.clear();
+        populate();
+    }
+
+    private void populate() {
+        sessionIds = new String[existingSessions];
+        for (int i = 0; i < existingSessions; i++) {
+            sessionIds[i] = createUserSession().getId();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        cacheManager.stop();
+    }
+
+    @Benchmark
+    public UserSessionModel createUserSession() {
+        Transaction tx = new Transaction();
+        UserSessionModel userSession = tx.provider.createUserSession(realm, user, "user", "127.0.0.1", "form", false, null, null);
+        tx.commit();
+        return userSession;
+    }
+
+    @Benchmark
+    public UserSessionModel getUserSession() {
+        String id = sessionIds[ThreadLocalRandom.current().nextInt(sessionIds.length)];
+
+        Transaction tx = new Transaction();
+        UserSessionModel userSession = tx.provider.getUserSession(realm, id);
+        tx.commit();
+        return userSession;
+    }
+
+    /**
+     * Removes a session created just before, so the number of sessions in the cache doesn't change
+     */
+    @Benchmark
+    public void removeUserSession() {
+        UserSessionModel created = createUserSession();
+
+        Transaction tx = new Transaction();
+        tx.provider.removeUserSession(realm, created);
+        tx.commit();
+    }
+
+    private class Transaction {
+
+        private final KeycloakTransactionManager transactionManager = new DefaultKeycloakTransactionManager();
+        private final InfinispanUserSessionProvider provider;
+
+        private Transaction() {
+            KeycloakSession session = (KeycloakSession) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { KeycloakSession.class }, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    if (method.getName().equals("getTransaction")) {
+                        return transactionManager;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                }
+            });
+
+            transactionManager.begin();
+            provider = new InfinispanUserSessionProvider(session, sessionCache, offlineSessionCache, loginFailureCache, sessionIndex, offlineSessionIndex, 1000, null);
+        }
+
+        private void commit() {
+            transactionManager.commit();
+        }
+
+    }
+
+}
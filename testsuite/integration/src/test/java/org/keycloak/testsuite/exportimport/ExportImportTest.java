@@ -24,6 +24,7 @@ import org.junit.rules.ExternalResource;
 import org.junit.rules.RuleChain;
 import org.junit.rules.TestRule;
 import org.keycloak.exportimport.ExportImportConfig;
+import org.keycloak.exportimport.Strategy;
 import org.keycloak.exportimport.dir.DirExportProvider;
 import org.keycloak.exportimport.dir.DirExportProviderFactory;
 import org.keycloak.exportimport.singlefile.SingleFileExportProviderFactory;
@@ -203,6 +204,63 @@ public class ExportImportTest {
         testRealmExportImport();
     }
 
+    @Test
+    public void testSingleFileRealmExportImportInBatches() throws Throwable {
+        ExportImportConfig.setProvider(SingleFileExportProviderFactory.PROVIDER_ID);
+        String targetFilePath = getExportImportTestDirectory() + File.separator + "singleFile-realm-batches.json";
+        ExportImportConfig.setFile(targetFilePath);
+        ExportImportConfig.setUsersPerTransaction(2);
+        ExportImportConfig.setImportWorkers(2);
+
+        try {
+            testRealmExportImport();
+        } finally {
+            ExportImportConfig.setUsersPerTransaction(ExportImportConfig.DEFAULT_USERS_PER_TRANSACTION);
+            ExportImportConfig.setImportWorkers(ExportImportConfig.DEFAULT_IMPORT_WORKERS);
+        }
+    }
+
+    @Test
+    public void testSingleFileResumeImport() throws Throwable {
+        ExportImportConfig.setProvider(SingleFileExportProviderFactory.PROVIDER_ID);
+        String targetFilePath = getExportImportTestDirectory() + File.separator + "singleFile-realm-resume.json";
+        ExportImportConfig.setFile(targetFilePath);
+
+        ExportImportConfig.setAction(ExportImportConfig.ACTION_EXPORT);
+        ExportImportConfig.setRealmName("test");
+        keycloakRule.restartServer();
+
+        // Simulate import interrupted before some users were imported
+        KeycloakSession session = keycloakRule.startSession();
+        try {
+            RealmModel realm = session.realms().getRealmByName("test");
+            session.users().removeUser(realm, session.users().getUserByUsername("user2", realm));
+            session.users().removeUser(realm, session.users().getUserByUsername("user3", realm));
+        } finally {
+            keycloakRule.stopSession(session, true);
+        }
+
+        ExportImportConfig.setAction(ExportImportConfig.ACTION_IMPORT);
+        ExportImportConfig.setStrategy(Strategy.RESUME_EXISTING);
+        try {
+            keycloakRule.restartServer();
+        } finally {
+            ExportImportConfig.setStrategy(ExportImportConfig.DEFAULT_STRATEGY);
+        }
+
+        session = keycloakRule.startSession();
+        try {
+            RealmProvider realmProvider = session.realms();
+            UserProvider userProvider = session.users();
+            assertAuthenticated(userProvider, realmProvider, "test", "test-user@localhost", "password");
+            assertAuthenticated(userProvider, realmProvider, "test", "user1", "password");
+            assertAuthenticated(userProvider, realmProvider, "test", "user2", "password");
+            assertAuthenticated(userProvider, realmProvider, "test", "user3", "password");
+        } finally {
+            keycloakRule.stopSession(session, true);
+        }
+    }
+
     @Test
     public void testSingleFileRealmWithoutBuiltinsImport() throws Throwable {
         // Remove test realm
@@ -0,0 +1,286 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.testsuite.forms;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.keycloak.common.ClientConnection;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.UsernameLoginFailureModel;
+import org.keycloak.services.managers.DefaultBruteForceProtector;
+import org.keycloak.services.managers.RealmManager;
+import org.keycloak.testsuite.rule.KeycloakRule;
+import org.keycloak.testsuite.rule.KeycloakRule.KeycloakSetup;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests {@link DefaultBruteForceProtector} directly against the model, without going through the login flows
+ */
+public class BruteForceProtectorTest {
+
+    private static final int USERS = 10;
+
+    @ClassRule
+    public static KeycloakRule keycloakRule = new KeycloakRule(new KeycloakSetup() {
+
+        @Override
+        public void config(RealmManager manager, RealmModel defaultRealm, RealmModel appRealm) {
+            appRealm.setBruteForceProtected(true);
+            appRealm.setFailureFactor(2);
+            appRealm.setWaitIncrementSeconds(60);
+
+            for (int i = 0; i < USERS; i++) {
+                manager.getSession().users().addUser(appRealm, "bf-user-" + i);
+            }
+        }
+
+    });
+
+    private TestBruteForceProtector protector;
+
+    @After
+    public void after() {
+        if (protector != null) {
+            protector.shutdown();
+            protector = null;
+        }
+
+        KeycloakSession session = keycloakRule.startSession();
+        session.sessions().removeAllUserLoginFailures(session.realms().getRealm("test"));
+        keycloakRule.stopSession(session, true);
+    }
+
+    @Test
+    public void failuresOfUsersLoggedByWorkers() {
+        protector = createProtector(4, 60000);
+        protector.start();
+
+        for (int i = 0; i < USERS; i++) {
+            failedLogin("bf-user-" + i);
+        }
+        for (int i = 0; i < USERS; i += 2) {
+            failedLogin("bf-user-" + i);
+        }
+
+        // Waits for the failures of the user queued on this node
+        for (int i = 0; i < USERS; i++) {
+            Assert.assertEquals(i % 2 == 0, isTemporarilyDisabled("bf-user-" + i));
+            Assert.assertEquals(i % 2 == 0 ? 2 : 1, getNumFailures("bf-user-" + i));
+        }
+    }
+
+    @Test
+    public void pendingFailureIsAwaited() throws Exception {
+        protector = createProtector(1, 60000);
+        failedLogin("bf-user-0");
+        failedLogin("bf-user-0");
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Boolean> disabled = executor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return isTemporarilyDisabled("bf-user-0");
+                }
+            });
+
+            // The worker isn't running yet, so the check waits for the failure to be logged
+            try {
+                disabled.get(500, TimeUnit.MILLISECONDS);
+                Assert.fail("Check didn't wait for the pending failure");
+            } catch (TimeoutException expected) {
+            }
+
+            protector.start();
+            Assert.assertTrue(disabled.get(DefaultBruteForceProtector.MAX_WAIT_MILLIS, TimeUnit.MILLISECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void lockoutNearCached() {
+        protector = createProtector(2, 60000);
+        protector.start();
+
+        lockOut("bf-user-0");
+        Assert.assertEquals("1", protector.getOperationalInfo().get("lockedUsers"));
+        Assert.assertEquals("1", protector.getOperationalInfo().get("nearCacheHits"));
+
+        // Still disabled although the failure is gone from the store, as the lockout is remembered locally
+        removeLoginFailure("bf-user-0");
+        Assert.assertTrue(isTemporarilyDisabled("bf-user-0"));
+        Assert.assertEquals("2", protector.getOperationalInfo().get("nearCacheHits"));
+    }
+
+    @Test
+    public void lockoutNotNearCachedWhenFailureRolledBack() {
+        final AtomicInteger failures = new AtomicInteger();
+        protector = new TestBruteForceProtector(getSessionFactory(), 1, 60000) {
+            @Override
+            public void failure(KeycloakSession session, LoginEvent event) {
+                super.failure(session, event);
+                if (failures.incrementAndGet() == 2) {
+                    throw new RuntimeException("Failed to log failure");
+                }
+            }
+        };
+        protector.start();
+
+        failedLogin("bf-user-0");
+        failedLogin("bf-user-0");
+        Assert.assertFalse(isTemporarilyDisabled("bf-user-0"));
+        Assert.assertEquals("0", protector.getOperationalInfo().get("lockedUsers"));
+    }
+
+    @Test
+    public void loginFailuresCleared() {
+        protector = createProtector(2, 60000);
+        protector.start();
+
+        lockOut("bf-user-0");
+        lockOut("bf-user-1");
+
+        removeLoginFailure("bf-user-0");
+        KeycloakSession session = keycloakRule.startSession();
+        protector.loginFailuresCleared(session.realms().getRealm("test"), "bf-user-0");
+        keycloakRule.stopSession(session, true);
+
+        Assert.assertFalse(isTemporarilyDisabled("bf-user-0"));
+        Assert.assertTrue(isTemporarilyDisabled("bf-user-1"));
+
+        session = keycloakRule.startSession();
+        RealmModel realm = session.realms().getRealm("test");
+        session.sessions().removeAllUserLoginFailures(realm);
+        protector.loginFailuresCleared(realm);
+        keycloakRule.stopSession(session, true);
+
+        Assert.assertFalse(isTemporarilyDisabled("bf-user-1"));
+        Assert.assertEquals("0", protector.getOperationalInfo().get("lockedUsers"));
+    }
+
+    @Test
+    public void expiredLockoutsRemoved() {
+        protector = createProtector(1, 100);
+        protector.start();
+
+        lockOut("bf-user-0");
+        Assert.assertEquals("1", protector.getOperationalInfo().get("lockedUsers"));
+
+        protector.removeExpiredLockouts(System.currentTimeMillis() + DefaultBruteForceProtector.MIN_LOCKOUTS_SWEEP_MILLIS);
+        Assert.assertEquals("0", protector.getOperationalInfo().get("lockedUsers"));
+    }
+
+    private TestBruteForceProtector createProtector(int workers, long nearCacheMillis) {
+        return new TestBruteForceProtector(getSessionFactory(), workers, nearCacheMillis);
+    }
+
+    private KeycloakSessionFactory getSessionFactory() {
+        KeycloakSession session = keycloakRule.startSession();
+        try {
+            return session.getKeycloakSessionFactory();
+        } finally {
+            keycloakRule.stopSession(session, false);
+        }
+    }
+
+    private void lockOut(String username) {
+        failedLogin(username);
+        failedLogin(username);
+        Assert.assertTrue(isTemporarilyDisabled(username));
+    }
+
+    private void failedLogin(String username) {
+        KeycloakSession session = keycloakRule.startSession();
+        protector.failedLogin(session.realms().getRealm("test"), username, new TestClientConnection());
+        keycloakRule.stopSession(session, true);
+    }
+
+    private boolean isTemporarilyDisabled(String username) {
+        KeycloakSession session = keycloakRule.startSession();
+        try {
+            return protector.isTemporarilyDisabled(session, session.realms().getRealm("test"), username);
+        } finally {
+            keycloakRule.stopSession(session, true);
+        }
+    }
+
+    private int getNumFailures(String username) {
+        KeycloakSession session = keycloakRule.startSession();
+        try {
+            return getNumFailures(session, username);
+        } finally {
+            keycloakRule.stopSession(session, true);
+        }
+    }
+
+    private static int getNumFailures(KeycloakSession session, String username) {
+        UsernameLoginFailureModel failure = session.sessions().getUserLoginFailure(session.realms().getRealm("test"), username);
+        return failure != null ? failure.getNumFailures() : 0;
+    }
+
+    private void removeLoginFailure(String username) {
+        KeycloakSession session = keycloakRule.startSession();
+        session.sessions().removeUserLoginFailure(session.realms().getRealm("test"), username);
+        keycloakRule.stopSession(session, true);
+    }
+
+    private static class TestBruteForceProtector extends DefaultBruteForceProtector {
+
+        private TestBruteForceProtector(KeycloakSessionFactory factory, int workers, long nearCacheMillis) {
+            super(factory, workers, DEFAULT_QUEUE_SIZE, nearCacheMillis, null);
+        }
+
+        @Override
+        protected void removeExpiredLockouts(long currentTime) {
+            super.removeExpiredLockouts(currentTime);
+        }
+
+    }
+
+    private static class TestClientConnection implements ClientConnection {
+
+        @Override
+        public String getRemoteAddr() {
+            return "127.0.0.1";
+        }
+
+        @Override
+        public String getRemoteHost() {
+            return "localhost";
+        }
+
+        @Override
+        public int getReportPort() {
+            return 0;
+        }
+
+    }
+
+}
@@ -167,7 +167,22 @@ public class AdapterTest extends AbstractModelTest {
         realmModel.setPasswordPolicy(new PasswordPolicy("hashIterations(200)"));
         Assert.assertTrue(userProvider.validCredentials(session, realmModel, user, UserCredentialModel.password("geheim")));
         creds = user.getCredentialsDirectly();
+        Assert.assertEquals(creds.get(0).getHashIterations(), 1);
+
+        // Password is hashed again in the background once the transaction is committed
+        commit();
+        for (int i = 0; i < 100; i++) {
+            realmModel = model.getRealmByName("JUGGLER");
+            user = session.users().getUserByUsername("bburke", realmModel);
+            creds = user.getCredentialsDirectly();
+            if (creds.get(0).getHashIterations() == 200) {
+                break;
+            }
+            Thread.sleep(100);
+            resetSession();
+        }
         Assert.assertEquals(creds.get(0).getHashIterations(), 200);
+        Assert.assertTrue(session.users().validCredentials(session, realmModel, user, UserCredentialModel.password("geheim")));
         realmModel.setPasswordPolicy(new PasswordPolicy("hashIterations(1)"));
     }
 
@@ -356,6 +356,39 @@ public class UserSessionPersisterProviderTest {
         Assert.assertEquals(0, sessions.size());
     }
 
+    @Test
+    public void testLoadAfterLastSession() {
+        int started = Time.currentTime();
+        UserSessionModel[] origSessions = createSessions();
+
+        resetSession();
+
+        ClientModel testApp = realm.getClientByClientId("test-app");
+        for (UserSessionModel userSession : session.sessions().getUserSessions(realm, testApp)) {
+            persistUserSession(userSession, true);
+        }
+
+        resetSession();
+
+        // Segment boundaries
+        String first = persister.getUserSessionIdAfter(null, 0, true);
+        String second = persister.getUserSessionIdAfter(first, 0, true);
+        Assert.assertEquals(persister.getUserSessionIdAfter(null, 2, true), persister.getUserSessionIdAfter(first, 1, true));
+        Assert.assertNull(persister.getUserSessionIdAfter(null, 3, true));
+
+        List<UserSessionModel> loadedSessions = new ArrayList<>();
+        loadedSessions.addAll(persister.loadUserSessions(null, 1, true));
+        loadedSessions.addAll(persister.loadUserSessions(first, 1, true));
+        loadedSessions.addAll(persister.loadUserSessions(second, 2, true));
+
+        Assert.assertEquals(first, loadedSessions.get(0).getId());
+        Assert.assertEquals(second, loadedSessions.get(1).getId());
+        UserSessionProviderTest.assertSessions(loadedSessions, origSessions);
+
+        assertSessionLoaded(loadedSessions, origSessions[0].getId(), session.users().getUserByUsername("user1", realm), "127.0.0.1", started, started, "test-app", "third-party");
+        assertSessionLoaded(loadedSessions, origSessions[2].getId(), session.users().getUserByUsername("user2", realm), "127.0.0.3", started, started, "test-app");
+    }
+
 
     private ClientSessionModel createClientSession(ClientModel client, UserSessionModel userSession, String redirect, String state, Set<String> roles, Set<String> protocolMappers) {
         ClientSessionModel clientSession = session.sessions().createClientSession(realm, client);